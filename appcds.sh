@@ -0,0 +1,48 @@
+#!/bin/sh
+# Builds an AppCDS archive for oms-v6 so the JVM maps pre-parsed classes instead of loading them.
+#
+#   ./appcds.sh extract [jar] [dir]  unpack the Spring Boot jar into dir/app.jar + dir/lib (needs a JDK)
+#   ./appcds.sh train [dir]          start the app up to context refresh and dump dir/app.jsa
+#   ./appcds.sh [jar] [dir]          both
+#
+# Run with: java -XX:SharedArchiveFile=dir/app.jsa -jar dir/app.jar
+# The archive is only used by the exact JVM build that wrote it and the exact same classpath;
+# otherwise the JVM warns and starts without it.
+
+set -e
+
+extract() {
+    JAR=${1:-$(ls target/oms-v6-*.jar | head -1)}
+    OUT=${2:-target/cds}
+    WORK=$(mktemp -d)
+    rm -rf "$OUT"
+    mkdir -p "$OUT/lib"
+    (cd "$WORK" && jar xf "$OLDPWD/$JAR")
+    cp "$WORK"/BOOT-INF/lib/*.jar "$OUT/lib/"
+
+    # Class-Path in the manifest: CDS needs jars (not directories) and a stable classpath order
+    {
+        echo "Main-Class: com.example.omsv6.Application"
+        echo "Class-Path: "
+        for lib in "$OUT"/lib/*.jar; do
+            echo "  lib/$(basename "$lib")"
+        done
+    } > "$WORK/MANIFEST.MF"
+    jar cfm "$OUT/app.jar" "$WORK/MANIFEST.MF" -C "$WORK/BOOT-INF/classes" .
+    rm -rf "$WORK"
+    echo "Extracted $JAR to $OUT"
+}
+
+train() {
+    OUT=${1:-target/cds}
+    # spring.context.exit=onRefresh: load and initialize everything, then exit before serving
+    java -XX:ArchiveClassesAtExit="$OUT/app.jsa" -Xlog:cds=error -Dspring.context.exit=onRefresh \
+        -jar "$OUT/app.jar" --logging.level.root=WARN --spring.jpa.show-sql=false
+    echo "Wrote $OUT/app.jsa"
+}
+
+case "$1" in
+    extract) shift; extract "$@" ;;
+    train) shift; train "$@" ;;
+    *) extract "$@"; train "$2" ;;
+esac
@@ -0,0 +1,50 @@
+package com.example.omsv6.jmh;
+
+import com.example.omsv6.Application;
+import com.example.omsv6.support.StubExternalApi;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The full application on its own in-memory H2 database, with the external provider replaced
+ * by an in-process {@link StubExternalApi}.
+ */
+final class BenchmarkApp implements AutoCloseable {
+
+  final StubExternalApi stub;
+  final ConfigurableApplicationContext context;
+
+  private BenchmarkApp(StubExternalApi stub, ConfigurableApplicationContext context) {
+    this.stub = stub;
+    this.context = context;
+  }
+
+  static BenchmarkApp start(String database, String... extraArgs) throws IOException {
+    StubExternalApi stub = new StubExternalApi();
+    List<String> args = new ArrayList<>(List.of(
+        "--server.port=0",
+        "--spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+        "--spring.jpa.show-sql=false",
+        "--logging.level.root=WARN",
+        "--external.api.base-url=" + stub.baseUrl()));
+    args.addAll(List.of(extraArgs));
+    // Command-line arguments so they win over application.properties
+    ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+        .run(args.toArray(new String[0]));
+    return new BenchmarkApp(stub, context);
+  }
+
+  <T> T bean(Class<T> type) {
+    return context.getBean(type);
+  }
+
+  @Override
+  public void close() {
+    context.close();
+    stub.close();
+  }
+}
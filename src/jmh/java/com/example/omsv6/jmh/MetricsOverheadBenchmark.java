@@ -0,0 +1,63 @@
+package com.example.omsv6.jmh;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreateOrderResponse;
+import com.example.omsv6.dto.OrderResponse;
+import com.example.omsv6.service.InventoryService;
+import com.example.omsv6.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of the hot-path timers: {@code createOrder} (three service calls, four repository calls)
+ * and {@code getOrderById} (one of each) with {@code metrics=on}, the shipped configuration, against
+ * {@code metrics=off}, where the {@code @Timed} aspect and the repository timers are not installed.
+ * Both run against the Prometheus registry, as in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class MetricsOverheadBenchmark {
+
+  private static final String SKU = "JMH-METRICS";
+  private static final CreateOrderRequest ORDER = new CreateOrderRequest("jmh", SKU, 1, new BigDecimal("9.99"));
+
+  @Param({"off", "on"})
+  String metrics;
+
+  private BenchmarkApp app;
+  private OrderService orderService;
+  private Long orderId;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    boolean on = "on".equals(metrics);
+    app = BenchmarkApp.start("jmh-metrics-" + metrics,
+        "--app.metrics.service-timers.enabled=" + on,
+        "--management.metrics.data.repository.autotime.enabled=" + on);
+    orderService = app.bean(OrderService.class);
+    app.bean(InventoryService.class).createItem(new CreateInventoryItemRequest(SKU, SKU, 1_000_000_000));
+    orderId = orderService.createOrder(ORDER).orderId();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    app.close();
+  }
+
+  @Benchmark
+  public CreateOrderResponse createOrder() {
+    return orderService.createOrder(ORDER);
+  }
+
+  @Benchmark
+  public OrderResponse getOrderById() {
+    return orderService.getOrderById(orderId);
+  }
+}
@@ -0,0 +1,63 @@
+package com.example.omsv6.jmh;
+
+import com.example.omsv6.dto.CancelOrderResponse;
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreateOrderResponse;
+import com.example.omsv6.service.InventoryService;
+import com.example.omsv6.service.OrderService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code OrderService.createOrder} and {@code cancelOrder}, including the guarded stock
+ * UPDATE, rollup maintenance and event publication.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class OrderBenchmark {
+
+  private static final String SKU = "JMH-ORDER";
+  private static final CreateOrderRequest ORDER = new CreateOrderRequest("jmh", SKU, 1, new BigDecimal("9.99"));
+
+  private BenchmarkApp app;
+  OrderService orderService;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    app = BenchmarkApp.start("jmh-orders");
+    orderService = app.bean(OrderService.class);
+    app.bean(InventoryService.class).createItem(new CreateInventoryItemRequest(SKU, SKU, 1_000_000_000));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    app.close();
+  }
+
+  @Benchmark
+  public CreateOrderResponse createOrder() {
+    return orderService.createOrder(ORDER);
+  }
+
+  @Benchmark
+  public CancelOrderResponse cancelOrder(PendingOrder order) {
+    return orderService.cancelOrder(order.orderId);
+  }
+
+  @State(Scope.Thread)
+  public static class PendingOrder {
+    Long orderId;
+
+    @Setup(Level.Invocation)
+    public void create(OrderBenchmark benchmark) {
+      orderId = benchmark.orderService.createOrder(ORDER).orderId();
+    }
+  }
+}
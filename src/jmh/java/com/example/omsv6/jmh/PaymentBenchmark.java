@@ -0,0 +1,92 @@
+package com.example.omsv6.jmh;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreatePaymentRequest;
+import com.example.omsv6.dto.PaymentCreatedResponse;
+import com.example.omsv6.dto.PaymentStatusResponse;
+import com.example.omsv6.dto.RefundPaymentRequest;
+import com.example.omsv6.service.InventoryService;
+import com.example.omsv6.service.OrderService;
+import com.example.omsv6.service.PaymentService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code PaymentService} authorize, capture and refund: the payment change plus its outbox row.
+ * Provider calls happen later on the outbox dispatcher and are not part of the measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PaymentBenchmark {
+
+  private BenchmarkApp app;
+  PaymentService paymentService;
+  CreatePaymentRequest authorizeRequest;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    app = BenchmarkApp.start("jmh-payments", "--app.payments.outbox.poll-interval=5ms");
+    paymentService = app.bean(PaymentService.class);
+    app.bean(InventoryService.class).createItem(new CreateInventoryItemRequest("JMH-PAY", "JMH-PAY", 10));
+    Long orderId = app.bean(OrderService.class)
+        .createOrder(new CreateOrderRequest("jmh", "JMH-PAY", 1, new BigDecimal("25.00"))).orderId();
+    authorizeRequest = new CreatePaymentRequest(orderId, null, "USD");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    app.close();
+  }
+
+  @Benchmark
+  public PaymentCreatedResponse authorize() {
+    return paymentService.createPayment(authorizeRequest);
+  }
+
+  @Benchmark
+  public PaymentStatusResponse capture(AuthorizedPayment payment) {
+    return paymentService.capturePayment(payment.paymentId, null);
+  }
+
+  @Benchmark
+  public PaymentStatusResponse refund(CapturedPayment payment) {
+    return paymentService.refundPayment(payment.paymentId, new RefundPaymentRequest(null));
+  }
+
+  void awaitStatus(Long paymentId, String status) throws InterruptedException {
+    while (!status.equals(paymentService.getPaymentById(paymentId).payment().status())) {
+      Thread.sleep(1);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class AuthorizedPayment {
+    Long paymentId;
+
+    @Setup(Level.Invocation)
+    public void create(PaymentBenchmark benchmark) throws InterruptedException {
+      paymentId = benchmark.paymentService.createPayment(benchmark.authorizeRequest).paymentId();
+      benchmark.awaitStatus(paymentId, "AUTHORIZED");
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class CapturedPayment {
+    Long paymentId;
+
+    @Setup(Level.Invocation)
+    public void create(PaymentBenchmark benchmark) throws InterruptedException {
+      paymentId = benchmark.paymentService.createPayment(benchmark.authorizeRequest).paymentId();
+      benchmark.awaitStatus(paymentId, "AUTHORIZED");
+      benchmark.paymentService.capturePayment(paymentId, null);
+      benchmark.awaitStatus(paymentId, "CAPTURED");
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.example.omsv6.jmh;
+
+import com.example.omsv6.dto.PaymentSummaryReport;
+import com.example.omsv6.dto.SalesReport;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.service.ReportService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code salesReport} and {@code paymentSummary} over generated orders and payments spread
+ * across 30 days. Larger datasets: {@code -Djmh.args="ReportBenchmark -p rows=10000000"}
+ * (give the fork more heap with {@code -jvmArgsAppend -Xmx8g}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ReportBenchmark {
+
+  private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+  private static final int DAYS = 30;
+  private static final String FROM = FIRST_DAY.toString();
+  private static final String TO = FIRST_DAY.plusDays(DAYS - 1).toString();
+
+  @Param({"10000", "100000", "1000000"})
+  public int rows;
+
+  private BenchmarkApp app;
+  private ReportService reportService;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    app = BenchmarkApp.start("jmh-reports-" + rows);
+    reportService = app.bean(ReportService.class);
+    seed(app.bean(JdbcTemplate.class));
+    reportService.rebuildSalesRollups(FROM, TO);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    app.close();
+  }
+
+  @Benchmark
+  public SalesReport salesReport() {
+    return reportService.salesReport(FROM, TO);
+  }
+
+  @Benchmark
+  public PaymentSummaryReport paymentSummary() {
+    return reportService.paymentSummary(FROM, TO, null);
+  }
+
+  @Benchmark
+  public PaymentSummaryReport paymentSummaryByDay() {
+    return reportService.paymentSummary(FROM, TO, "day");
+  }
+
+  // Generated inside H2 (SYSTEM_RANGE) so seeding 10M rows does not take longer than the runs
+  private void seed(JdbcTemplate jdbc) {
+    String createdAt = "dateadd(second, mod(x * 7919, " + DAYS * 86_400 + "), timestamp '" + FIRST_DAY + " 00:00:00')";
+    jdbc.update("insert into orders (id, customer_id, amount, status, created_at, updated_at, "
+        + "shipping_quote_status) select x, 'cust-' || mod(x, 5000), "
+        + "cast(10 + mod(x, 90) as decimal(19, 2)), "
+        + "case mod(x, 4) when 0 then " + OrderStatus.CREATED.code() + " when 1 then " + OrderStatus.PAID.code()
+        + " when 2 then " + OrderStatus.SHIPPED.code() + " else " + OrderStatus.CANCELLED.code() + " end, "
+        + createdAt + ", " + createdAt + ", 'READY' from system_range(1, ?)", rows);
+    jdbc.update("insert into order_lines (order_id, line_no, sku, quantity, amount) select x, 0, "
+        + "'SKU-' || mod(x, 500), 1 + mod(x, 5), cast(10 + mod(x, 90) as decimal(19, 2)) from system_range(1, ?)", rows);
+    jdbc.update("insert into payments (order_id, amount, currency, provider, external_reference, status, "
+        + "created_at, updated_at) select x, cast(10 + mod(x, 90) as decimal(19, 2)), "
+        + "case mod(x, 3) when 0 then 'EUR' else 'USD' end, 'JMH', 'REF-' || x, "
+        + "case mod(x, 3) when 0 then " + PaymentStatus.AUTHORIZED.code() + " when 1 then " + PaymentStatus.CAPTURED.code()
+        + " else " + PaymentStatus.REFUNDED.code() + " end, "
+        + createdAt + ", " + createdAt + " from system_range(1, ?)", rows);
+  }
+}
@@ -0,0 +1,133 @@
+package com.example.omsv6.jmh;
+
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.OrderPage;
+import com.example.omsv6.dto.OrderView;
+import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.entity.OrderStatus;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Web-layer cost of one request with typed records versus the former {@code Map<String,Object>}
+ * bodies: binding a create-order body, and writing a page of orders. No database, so the GC
+ * profiler's {@code gc.alloc.rate.norm} is the per-request allocation of binding and serializing
+ * alone: {@code -Djmh.args="SerializationBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class SerializationBenchmark {
+
+  private static final byte[] CREATE_ORDER_BODY =
+      "{\"customerId\":\"cust-42\",\"sku\":\"SKU-7\",\"quantity\":2,\"amount\":\"19.98\"}"
+          .getBytes(StandardCharsets.UTF_8);
+
+  // Configured as Spring Boot configures the application's mapper; the response stream stays open
+  private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+      .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+      .build();
+  private final OutputStream out = OutputStream.nullOutputStream();
+
+  @Benchmark
+  public Object bindRequestAsMap() throws IOException {
+    Map<?, ?> request = objectMapper.readValue(CREATE_ORDER_BODY, Map.class);
+    // What the services did with each field before the typed requests
+    String customerId = request.get("customerId").toString();
+    String sku = request.get("sku").toString();
+    int quantity = Integer.parseInt(request.get("quantity").toString());
+    BigDecimal amount = new BigDecimal(request.get("amount").toString());
+    return new CreateOrderRequest(customerId, sku, quantity, amount);
+  }
+
+  @Benchmark
+  public CreateOrderRequest bindRequestAsRecord() throws IOException {
+    return objectMapper.readValue(CREATE_ORDER_BODY, CreateOrderRequest.class);
+  }
+
+  @Benchmark
+  public void writePageAsMaps(Page page) throws IOException {
+    List<Map<String, Object>> list = new ArrayList<>(page.orders.size());
+    for (OrderEntity o : page.orders) {
+      list.add(toOrderMap(o));
+    }
+    Map<String, Object> response = new HashMap<>();
+    response.put("message", "Orders listed");
+    response.put("count", list.size());
+    response.put("limit", page.size);
+    response.put("orders", list);
+    response.put("nextCursor", null);
+    objectMapper.writeValue(out, response);
+  }
+
+  @Benchmark
+  public void writePageAsRecords(Page page) throws IOException {
+    List<OrderView> list = new ArrayList<>(page.orders.size());
+    for (OrderEntity o : page.orders) {
+      list.add(OrderView.from(o));
+    }
+    objectMapper.writeValue(out, new OrderPage("Orders listed", list.size(), page.size, list, null));
+  }
+
+  private static Map<String, Object> toOrderMap(OrderEntity o) {
+    Map<String, Object> m = new HashMap<>();
+    m.put("id", o.getId());
+    m.put("customerId", o.getCustomerId());
+    List<Map<String, Object>> lines = new ArrayList<>(o.getLines().size());
+    for (OrderLine l : o.getLines()) {
+      Map<String, Object> line = new HashMap<>();
+      line.put("sku", l.getSku());
+      line.put("quantity", l.getQuantity());
+      line.put("amount", l.getAmount());
+      lines.add(line);
+    }
+    m.put("lines", lines);
+    m.put("amount", o.getAmount());
+    m.put("status", o.getStatus().name());
+    m.put("shippingQuoteStatus", o.getShippingQuoteStatus());
+    m.put("createdAt", o.getCreatedAt() != null ? o.getCreatedAt().toString() : null);
+    m.put("updatedAt", o.getUpdatedAt() != null ? o.getUpdatedAt().toString() : null);
+    return m;
+  }
+
+  @State(Scope.Benchmark)
+  public static class Page {
+    @Param({"50", "200"})
+    public int size;
+
+    List<OrderEntity> orders;
+
+    @Setup(Level.Trial)
+    public void create() {
+      orders = new ArrayList<>(size);
+      LocalDateTime now = LocalDateTime.of(2030, 1, 1, 12, 0);
+      for (int i = 0; i < size; i++) {
+        OrderEntity o = new OrderEntity();
+        o.setId((long) i);
+        o.setCustomerId("cust-" + (i % 50));
+        o.getLines().add(new OrderLine("SKU-" + (i % 20), 1 + i % 5, new BigDecimal("9.99")));
+        o.setAmount(new BigDecimal("9.99"));
+        o.setStatus(OrderStatus.CREATED);
+        o.setShippingQuoteStatus("READY");
+        o.setCreatedAt(now.minusSeconds(i));
+        o.setUpdatedAt(now.minusSeconds(i));
+        orders.add(o);
+      }
+    }
+  }
+}
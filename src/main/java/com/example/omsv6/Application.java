@@ -1,12 +1,15 @@
-
 package com.example.omsv6;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 
 @SpringBootApplication
 public class Application {
   public static void main(String[] args) {
-    SpringApplication.run(Application.class, args);
+    SpringApplication app = new SpringApplication(Application.class);
+    // Records startup steps for GET /actuator/startup and StartupTimingReporter
+    app.setApplicationStartup(new BufferingApplicationStartup(10_000));
+    app.run(args);
   }
 }
@@ -0,0 +1,114 @@
+package com.example.omsv6.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class AsyncConfig {
+
+    @Value("${app.shipping-quote.pool-size:8}")
+    private int shippingQuotePoolSize;
+
+    @Value("${app.shipping-quote.queue-capacity:10000}")
+    private int shippingQuoteQueueCapacity;
+
+    @Value("${app.payments.outbox.parallelism:8}")
+    private int paymentOutboxParallelism;
+
+    @Value("${app.payments.outbox.batch-size:50}")
+    private int paymentOutboxBatchSize;
+
+    @Value("${app.payments.reconciliation.parallelism:4}")
+    private int paymentReconciliationParallelism;
+
+    @Value("${app.payments.reconciliation.page-size:1000}")
+    private int paymentReconciliationPageSize;
+
+    // Post-commit shipping quotes; once the queue is full a quote is rejected and marked FAILED
+    // rather than fetched on the request thread
+    @Bean(name = "shippingQuoteExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor shippingQuoteExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("shipping-quote-");
+        executor.setCorePoolSize(shippingQuotePoolSize);
+        executor.setMaxPoolSize(shippingQuotePoolSize);
+        executor.setQueueCapacity(shippingQuoteQueueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    // With spring.threads.virtual.enabled (Java 21+) every quote gets its own virtual thread;
+    // concurrency towards the provider is bounded by the shipping-quote bulkhead instead of a pool
+    @Bean(name = "shippingQuoteExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskExecutor virtualShippingQuoteExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("shipping-quote-");
+        executor.setVirtualThreads(true);
+        executor.setTaskTerminationTimeout(10_000);
+        return executor;
+    }
+
+    // Provider calls for one claimed outbox batch; the dispatcher waits for the batch before claiming more
+    @Bean(name = "paymentOutboxExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor paymentOutboxExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("payment-outbox-");
+        executor.setCorePoolSize(paymentOutboxParallelism);
+        executor.setMaxPoolSize(paymentOutboxParallelism);
+        executor.setQueueCapacity(paymentOutboxBatchSize);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    @Bean(name = "paymentOutboxExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskExecutor virtualPaymentOutboxExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("payment-outbox-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(paymentOutboxParallelism);
+        executor.setTaskTerminationTimeout(10_000);
+        return executor;
+    }
+
+    // Provider lookups for one reconciliation page; the job waits for the page before reading the next
+    @Bean(name = "paymentReconciliationExecutor")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor paymentReconciliationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("payment-reconciliation-");
+        executor.setCorePoolSize(paymentReconciliationParallelism);
+        executor.setMaxPoolSize(paymentReconciliationParallelism);
+        executor.setQueueCapacity(paymentReconciliationPageSize);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    @Bean(name = "paymentReconciliationExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskExecutor virtualPaymentReconciliationExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("payment-reconciliation-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(paymentReconciliationParallelism);
+        executor.setTaskTerminationTimeout(10_000);
+        return executor;
+    }
+}
@@ -3,6 +3,7 @@ package com.example.omsv6.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.core.userdetails.User;
@@ -34,7 +35,14 @@ public class BasicSecurityConfig {
         http
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(auth -> auth
-                .requestMatchers("/swagger-ui/**", "/v3/**", "/api-docs/**","/actuator/**").permitAll()
+                // Probes stay open; metrics, prometheus and the startup timeline describe the internals: admins only
+                .requestMatchers("/actuator/health/**", "/actuator/info").permitAll()
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
+                // Rebuilds lock out writers while they run, and a reconciliation run rewrites payments
+                .requestMatchers(HttpMethod.POST, "/api/reports/sales/rollups/rebuild",
+                        "/api/customers/*/order-history/rebuild", "/api/reports/payments/reconciliation/start")
+                    .hasRole("ADMIN")
+                .requestMatchers("/swagger-ui/**", "/v3/**", "/api-docs/**").permitAll()
                 .anyRequest().authenticated()
             )
             .httpBasic(basic -> {});
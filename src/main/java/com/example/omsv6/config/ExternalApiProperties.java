@@ -0,0 +1,96 @@
+package com.example.omsv6.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code external.api.*}: transport, pool and per-operation timeouts for {@code ExternalApiClient}.
+ * Operations without their own entry under {@code operations} use the top-level timeouts.
+ */
+@ConfigurationProperties(prefix = "external.api")
+public class ExternalApiProperties {
+
+    public static final String AUTHORIZE = "authorize";
+    public static final String CAPTURE = "capture";
+    public static final String REFUND = "refund";
+    public static final String VOID = "void";
+    public static final String SHIPPING_QUOTE = "shipping-quote";
+    public static final String PAYMENT_LOOKUP = "payment-lookup";
+
+    public enum Protocol { HTTP_1_1, HTTP_2 }
+
+    private String baseUrl = "https://httpbin.org";
+    private Protocol protocol = Protocol.HTTP_1_1;
+    private Duration connectTimeout = Duration.ofSeconds(1);
+    private Duration readTimeout = Duration.ofSeconds(2);
+    private final Pool pool = new Pool();
+    private final Map<String, Timeouts> operations = new HashMap<>();
+
+    public Timeouts timeoutsFor(String operation) {
+        Timeouts configured = operations.get(operation);
+        Timeouts t = new Timeouts();
+        t.setConnectTimeout(configured != null && configured.getConnectTimeout() != null
+                ? configured.getConnectTimeout() : connectTimeout);
+        t.setReadTimeout(configured != null && configured.getReadTimeout() != null
+                ? configured.getReadTimeout() : readTimeout);
+        return t;
+    }
+
+    public String getBaseUrl() { return baseUrl; }
+    public void setBaseUrl(String baseUrl) { this.baseUrl = baseUrl; }
+
+    public Protocol getProtocol() { return protocol; }
+    public void setProtocol(Protocol protocol) { this.protocol = protocol; }
+
+    public Duration getConnectTimeout() { return connectTimeout; }
+    public void setConnectTimeout(Duration connectTimeout) { this.connectTimeout = connectTimeout; }
+
+    public Duration getReadTimeout() { return readTimeout; }
+    public void setReadTimeout(Duration readTimeout) { this.readTimeout = readTimeout; }
+
+    public Pool getPool() { return pool; }
+
+    public Map<String, Timeouts> getOperations() { return operations; }
+
+    public static class Pool {
+        private int maxTotal = 100;
+        private int maxPerRoute = 50;
+        // How long a request may wait for a pooled connection before failing
+        private Duration acquireTimeout = Duration.ofMillis(500);
+        private Duration idleTimeout = Duration.ofSeconds(30);
+        private Duration timeToLive = Duration.ofMinutes(5);
+        private Duration validateAfterInactivity = Duration.ofSeconds(2);
+
+        public int getMaxTotal() { return maxTotal; }
+        public void setMaxTotal(int maxTotal) { this.maxTotal = maxTotal; }
+
+        public int getMaxPerRoute() { return maxPerRoute; }
+        public void setMaxPerRoute(int maxPerRoute) { this.maxPerRoute = maxPerRoute; }
+
+        public Duration getAcquireTimeout() { return acquireTimeout; }
+        public void setAcquireTimeout(Duration acquireTimeout) { this.acquireTimeout = acquireTimeout; }
+
+        public Duration getIdleTimeout() { return idleTimeout; }
+        public void setIdleTimeout(Duration idleTimeout) { this.idleTimeout = idleTimeout; }
+
+        public Duration getTimeToLive() { return timeToLive; }
+        public void setTimeToLive(Duration timeToLive) { this.timeToLive = timeToLive; }
+
+        public Duration getValidateAfterInactivity() { return validateAfterInactivity; }
+        public void setValidateAfterInactivity(Duration validateAfterInactivity) { this.validateAfterInactivity = validateAfterInactivity; }
+    }
+
+    public static class Timeouts {
+        private Duration connectTimeout;
+        private Duration readTimeout;
+
+        public Duration getConnectTimeout() { return connectTimeout; }
+        public void setConnectTimeout(Duration connectTimeout) { this.connectTimeout = connectTimeout; }
+
+        public Duration getReadTimeout() { return readTimeout; }
+        public void setReadTimeout(Duration readTimeout) { this.readTimeout = readTimeout; }
+    }
+}
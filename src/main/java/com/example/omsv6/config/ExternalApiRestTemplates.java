@@ -0,0 +1,24 @@
+package com.example.omsv6.config;
+
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+
+/**
+ * One {@link RestTemplate} per external operation. All of them share a single connection pool
+ * (or HTTP/2 client); they differ only in the timeouts applied to each request.
+ */
+public class ExternalApiRestTemplates {
+
+    private final Map<String, RestTemplate> byOperation;
+    private final RestTemplate fallback;
+
+    public ExternalApiRestTemplates(Map<String, RestTemplate> byOperation, RestTemplate fallback) {
+        this.byOperation = Map.copyOf(byOperation);
+        this.fallback = fallback;
+    }
+
+    public RestTemplate forOperation(String operation) {
+        return byOperation.getOrDefault(operation, fallback);
+    }
+}
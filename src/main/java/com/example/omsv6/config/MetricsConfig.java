@@ -0,0 +1,26 @@
+package com.example.omsv6.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Times every public method of the {@code @Timed("service.calls")} services, tagged with
+ * {@code class}, {@code method} and {@code exception}. Repository calls are timed by Spring Boot as
+ * {@code spring.data.repository.invocations} and the connection pool is published as
+ * {@code hikaricp.connections.*}; histograms and percentiles are set in application.properties.
+ *
+ * <p>{@code app.metrics.service-timers.enabled=false} removes the aspect altogether, which is
+ * what {@code MetricsOverheadBenchmark} compares against.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.metrics.service-timers.enabled", havingValue = "true", matchIfMissing = true)
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
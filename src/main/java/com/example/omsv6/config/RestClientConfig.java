@@ -1,14 +1,154 @@
 package com.example.omsv6.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP transport for {@code ExternalApiClient}. By default a pooled Apache HttpClient 5
+ * (HTTP/1.1, keep-alive); with {@code external.api.protocol=HTTP_2} the JDK client, which
+ * multiplexes requests over one connection per host.
+ *
+ * <p>Calls block the calling thread, so with {@code spring.threads.virtual.enabled} they run on the
+ * request's (or the async executor's) virtual thread.
+ */
 @Configuration
+@EnableConfigurationProperties(ExternalApiProperties.class)
 public class RestClientConfig {
 
+    private static final List<String> OPERATIONS = List.of(ExternalApiProperties.AUTHORIZE,
+            ExternalApiProperties.CAPTURE, ExternalApiProperties.REFUND, ExternalApiProperties.VOID,
+            ExternalApiProperties.SHIPPING_QUOTE,
+            ExternalApiProperties.PAYMENT_LOOKUP);
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "external.api.protocol", havingValue = "HTTP_1_1", matchIfMissing = true)
+    public PoolingHttpClientConnectionManager externalApiConnectionManager(ExternalApiProperties properties) {
+        ExternalApiProperties.Pool pool = properties.getPool();
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(pool.getMaxTotal())
+                .setMaxConnPerRoute(pool.getMaxPerRoute())
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                // LIFO keeps a small hot set of connections and lets the rest idle out
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(properties.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(properties.getReadTimeout()))
+                        .setTimeToLive(TimeValue.of(pool.getTimeToLive()))
+                        .setValidateAfterInactivity(TimeValue.of(pool.getValidateAfterInactivity()))
+                        .build())
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "external.api.protocol", havingValue = "HTTP_1_1", matchIfMissing = true)
+    public CloseableHttpClient externalApiHttpClient(PoolingHttpClientConnectionManager externalApiConnectionManager,
+                                                     ExternalApiProperties properties) {
+        return HttpClients.custom()
+                .setConnectionManager(externalApiConnectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(properties.getPool().getIdleTimeout()))
+                .build();
+    }
+
+    @Bean
+    public ExternalApiRestTemplates externalApiRestTemplates(ExternalApiProperties properties,
+                                                             ObjectProvider<CloseableHttpClient> externalApiHttpClient,
+                                                             Environment environment) {
+        Map<String, RestTemplate> templates = new HashMap<>();
+        if (properties.getProtocol() == ExternalApiProperties.Protocol.HTTP_2) {
+            // The JDK client only takes a connect timeout per client; every operation shares it
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(properties.getConnectTimeout());
+            if (Threading.VIRTUAL.isActive(environment)) {
+                // Response handling otherwise runs on the client's own cached platform-thread pool
+                SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("external-api-");
+                executor.setVirtualThreads(true);
+                builder.executor(executor);
+            }
+            HttpClient client = builder.build();
+            for (String op : OPERATIONS) {
+                templates.put(op, new RestTemplate(jdkFactory(client, properties.timeoutsFor(op))));
+            }
+            return new ExternalApiRestTemplates(templates,
+                    new RestTemplate(jdkFactory(client, properties.timeoutsFor(""))));
+        }
+
+        CloseableHttpClient client = externalApiHttpClient.getIfAvailable();
+        for (String op : OPERATIONS) {
+            templates.put(op, new RestTemplate(pooledFactory(client, properties, properties.timeoutsFor(op))));
+        }
+        return new ExternalApiRestTemplates(templates,
+                new RestTemplate(pooledFactory(client, properties, properties.timeoutsFor(""))));
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public MeterBinder externalApiPoolMetrics(ObjectProvider<PoolingHttpClientConnectionManager> externalApiConnectionManager) {
+        return registry -> externalApiConnectionManager.ifAvailable(cm -> {
+            Gauge.builder("external.api.pool.leased", cm, m -> m.getTotalStats().getLeased())
+                    .description("Connections currently in use").register(registry);
+            Gauge.builder("external.api.pool.idle", cm, m -> m.getTotalStats().getAvailable())
+                    .description("Open connections waiting in the pool").register(registry);
+            Gauge.builder("external.api.pool.pending", cm, m -> m.getTotalStats().getPending())
+                    .description("Requests waiting for a connection").register(registry);
+            Gauge.builder("external.api.pool.max", cm, m -> m.getTotalStats().getMax())
+                    .register(registry);
+        });
+    }
+
+    private static ClientHttpRequestFactory pooledFactory(CloseableHttpClient client, ExternalApiProperties properties,
+                                                          ExternalApiProperties.Timeouts timeouts) {
+        RequestConfig requestConfig = requestConfig(properties, timeouts);
+        HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(client);
+        factory.setHttpContextFactory((method, uri) -> {
+            HttpClientContext context = HttpClientContext.create();
+            context.setRequestConfig(requestConfig);
+            return context;
+        });
+        return factory;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static RequestConfig requestConfig(ExternalApiProperties properties, ExternalApiProperties.Timeouts timeouts) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(properties.getPool().getAcquireTimeout()))
+                // Per-request connect timeout overrides the pool's default for new connections
+                .setConnectTimeout(Timeout.of(timeouts.getConnectTimeout()))
+                .setResponseTimeout(Timeout.of(timeouts.getReadTimeout()))
+                .build();
+    }
+
+    private static ClientHttpRequestFactory jdkFactory(HttpClient client, ExternalApiProperties.Timeouts timeouts) {
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(client);
+        factory.setReadTimeout(timeouts.getReadTimeout());
+        return factory;
     }
 }
@@ -0,0 +1,55 @@
+package com.example.omsv6.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Logs where boot time went once the application is ready: JVM start to ready, and the slowest
+ * startup steps (bean instantiations, context refresh, ...) recorded by the
+ * {@link BufferingApplicationStartup} that {@code Application} installs. The full timeline is at
+ * {@code GET /actuator/startup} (ADMIN only); Spring Boot also publishes {@code application.started.time} and
+ * {@code application.ready.time}.
+ */
+@Component
+public class StartupTimingReporter implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupTimingReporter.class);
+
+    @Value("${app.startup.report.steps:10}")
+    private int steps;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        log.info("Ready {} ms after JVM start ({} ms in SpringApplication.run)",
+                ManagementFactory.getRuntimeMXBean().getUptime(), event.getTimeTaken().toMillis());
+        if (steps <= 0 || !(event.getApplicationContext().getApplicationStartup()
+                instanceof BufferingApplicationStartup startup)) {
+            return;
+        }
+        String slowest = startup.getBufferedTimeline().getEvents().stream()
+                .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+                .limit(steps)
+                .map(e -> String.format("%n  %6d ms  %s", e.getDuration().toMillis(), describe(e.getStartupStep())))
+                .collect(Collectors.joining());
+        log.info("Slowest startup steps (nested steps are included in their parent's time):{}", slowest);
+    }
+
+    private static String describe(StartupStep step) {
+        String tags = StreamSupport.stream(step.getTags().spliterator(), false)
+                .map(t -> t.getKey() + "=" + t.getValue())
+                .collect(Collectors.joining(", "));
+        return tags.isEmpty() ? step.getName() : step.getName() + " [" + tags + "]";
+    }
+}
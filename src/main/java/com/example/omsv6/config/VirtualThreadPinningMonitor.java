@@ -0,0 +1,94 @@
+package com.example.omsv6.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Streams {@code jdk.VirtualThreadPinned} JFR events while running on virtual threads. A pinned
+ * virtual thread blocks inside {@code synchronized} code or a native frame and holds on to its
+ * carrier thread, which quietly brings back the platform-thread concurrency limit.
+ *
+ * <p>Every event longer than {@code app.virtual-threads.pinned-threshold} counts towards
+ * {@code jvm.threads.virtual.pinned}. Each distinct blocking site is logged once with its stack.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final int LOGGED_FRAMES = 12;
+
+    private final Counter pinnedCount;
+    private final Timer pinnedDuration;
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.virtual-threads.pinned-threshold:20ms}")
+    private Duration threshold;
+
+    private volatile RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry) {
+        this.pinnedCount = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual threads that blocked while pinned to their carrier")
+                .register(meterRegistry);
+        this.pinnedDuration = Timer.builder("jvm.threads.virtual.pinned.duration")
+                .register(meterRegistry);
+        meterRegistry.gauge("jvm.threads.virtual.pinned.sites", reportedSites, Set::size);
+    }
+
+    @Override
+    public void start() {
+        RecordingStream rs = new RecordingStream();
+        rs.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+        rs.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+        rs.startAsync();
+        stream = rs;
+        log.info("Reporting virtual thread pinning longer than {}", threshold);
+    }
+
+    @Override
+    public void stop() {
+        RecordingStream rs = stream;
+        stream = null;
+        if (rs != null) {
+            rs.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return stream != null;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.increment();
+        pinnedDuration.record(event.getDuration());
+        if (event.getStackTrace() == null) return;
+
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        String stack = frames.stream()
+                .limit(LOGGED_FRAMES)
+                .map(f -> f.getMethod().getType().getName() + "." + f.getMethod().getName() + ":" + f.getLineNumber())
+                .collect(Collectors.joining("\n    at "));
+        if (reportedSites.add(stack)) {
+            log.warn("Virtual thread pinned for {} ms\n    at {}", event.getDuration().toMillis(), stack);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.omsv6.controller;
+
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.MissingServletRequestParameterException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+import com.example.omsv6.dto.ErrorResponse;
+import com.example.omsv6.service.ApiException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import io.micrometer.core.instrument.MeterRegistry;
+
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  // Messages are fixed per outcome ("Insufficient stock", "Order not found"); the variable parts are in details
+  @ExceptionHandler(ApiException.class)
+  public ResponseEntity<ErrorResponse> handleApiException(ApiException e, HandlerMethod handler) {
+    meterRegistry.counter("business.outcomes",
+        "operation", handler != null ? handler.getMethod().getName() : "unknown",
+        "outcome", e.getMessage()).increment();
+    Map<String,Object> details = e.getDetails().isEmpty() ? null : e.getDetails();
+    return ResponseEntity.status(e.getStatus()).body(new ErrorResponse(e.getMessage(), e.getError(), details));
+  }
+
+  @ExceptionHandler(HttpMessageNotReadableException.class)
+  public ResponseEntity<ErrorResponse> handleUnreadableBody(HttpMessageNotReadableException e) {
+    return badRequest(describe(e.getCause()));
+  }
+
+  // NDJSON batches are parsed by hand, so malformed lines surface as Jackson exceptions
+  @ExceptionHandler({JsonProcessingException.class, RuntimeJsonMappingException.class})
+  public ResponseEntity<ErrorResponse> handleMalformedJson(Exception e) {
+    return badRequest(describe(e instanceof RuntimeJsonMappingException ? e.getCause() : e));
+  }
+
+  @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+  public ResponseEntity<ErrorResponse> handleTypeMismatch(MethodArgumentTypeMismatchException e) {
+    return badRequest(e.getName() + " has an invalid value");
+  }
+
+  @ExceptionHandler(MissingServletRequestParameterException.class)
+  public ResponseEntity<ErrorResponse> handleMissingParameter(MissingServletRequestParameterException e) {
+    return badRequest(e.getParameterName() + " is required");
+  }
+
+  private ResponseEntity<ErrorResponse> badRequest(String error) {
+    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse("Validation failed", error, null));
+  }
+
+  private String describe(Throwable cause) {
+    if (cause instanceof JsonMappingException jme && !jme.getPath().isEmpty()) {
+      String field = jme.getPath().get(jme.getPath().size() - 1).getFieldName();
+      if (field != null) {
+        return field + " has an invalid value";
+      }
+    }
+    return "malformed request body";
+  }
+}
@@ -0,0 +1,29 @@
+package com.example.omsv6.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import com.example.omsv6.dto.CustomerOrderHistory;
+import com.example.omsv6.service.CustomerOrderHistoryService;
+
+@RestController
+@RequestMapping("/api/customers")
+public class CustomerController {
+
+  @Autowired
+  private CustomerOrderHistoryService customerOrderHistoryService;
+
+
+  @GetMapping("/{customerId}/order-history")
+  public CustomerOrderHistory getOrderHistory(@PathVariable String customerId) {
+    return customerOrderHistoryService.getHistory(customerId);
+  }
+
+  @PostMapping("/{customerId}/order-history/rebuild")
+  public CustomerOrderHistory rebuildOrderHistory(@PathVariable String customerId) {
+    return customerOrderHistoryService.rebuild(customerId);
+  }
+}
@@ -0,0 +1,41 @@
+package com.example.omsv6.controller;
+
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import com.example.omsv6.dto.EventPage;
+import com.example.omsv6.service.EventLogService;
+
+@RestController
+@RequestMapping("/api/events")
+public class EventController {
+
+  // The service answers by the end of the wait; this only bounds a request it somehow never answers
+  private static final Duration TIMEOUT_SLACK = Duration.ofSeconds(10);
+
+  @Autowired
+  private EventLogService eventLogService;
+
+
+  // Long-poll: answers at once when there are events after `after`, else when one commits or the wait is up.
+  // The request thread is released while waiting.
+  @GetMapping("")
+  public DeferredResult<EventPage> readEvents(@RequestParam(defaultValue = "0") long after,
+                                              @RequestParam(defaultValue = "100") int limit,
+                                              @RequestParam(defaultValue = "30") int waitSeconds) {
+    Duration wait = Duration.ofSeconds(Math.max(0, waitSeconds));
+    DeferredResult<EventPage> result = new DeferredResult<>(wait.plus(TIMEOUT_SLACK).toMillis());
+    eventLogService.read(after, limit, wait).whenComplete((page, e) -> {
+      if (e != null) {
+        result.setErrorResult(e);
+      } else {
+        result.setResult(page);
+      }
+    });
+    return result;
+  }
+}
@@ -1,9 +1,5 @@
 package com.example.omsv6.controller;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -14,6 +10,12 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import com.example.omsv6.dto.AdjustStockRequest;
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.InventoryItemCreatedResponse;
+import com.example.omsv6.dto.InventoryItemResponse;
+import com.example.omsv6.dto.InventoryListResponse;
+import com.example.omsv6.dto.StockAdjustedResponse;
 import com.example.omsv6.service.InventoryService;
 
 @RestController
@@ -25,22 +27,22 @@ public class InventoryController {
 
 
   @PostMapping("/items")
-  public Map<String,Object> createItem(@RequestBody Map<String,Object> request) {
+  public InventoryItemCreatedResponse createItem(@RequestBody CreateInventoryItemRequest request) {
     return inventoryService.createItem(request);
   }
 
   @GetMapping("/items/{sku}")
-  public Map<String,Object> getItemBySku(@PathVariable String sku) {
+  public InventoryItemResponse getItemBySku(@PathVariable String sku) {
     return inventoryService.getItemBySku(sku);
   }
 
   @PutMapping("/items/{sku}/adjust")
-  public Map<String,Object> adjustStock(@PathVariable String sku, @RequestBody Map<String,Object> request) {
+  public StockAdjustedResponse adjustStock(@PathVariable String sku, @RequestBody AdjustStockRequest request) {
     return inventoryService.adjustStock(sku, request);
   }
 
   @GetMapping("/items")
-  public Map<String,Object> listItems(@RequestParam int lowStockThreshold) {
+  public InventoryListResponse listItems(@RequestParam int lowStockThreshold) {
     return inventoryService.listItems(lowStockThreshold);
   }
 }
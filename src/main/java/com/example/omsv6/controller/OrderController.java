@@ -1,20 +1,38 @@
 package com.example.omsv6.controller;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
 import java.util.List;
-import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.example.omsv6.dto.BatchOrderResponse;
+import com.example.omsv6.dto.CancelOrderResponse;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreateOrderResponse;
+import com.example.omsv6.dto.OrderPage;
+import com.example.omsv6.dto.OrderResponse;
+import com.example.omsv6.dto.OrderStatusResponse;
+import com.example.omsv6.dto.ShippingQuoteResponse;
+import com.example.omsv6.dto.UpdateOrderStatusRequest;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.service.IdempotencyService;
+import com.example.omsv6.service.OrderBatchService;
 import com.example.omsv6.service.OrderService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.omsv6.service.ShippingQuoteService;
 
 @RestController
 @RequestMapping("/api/orders")
@@ -23,29 +41,73 @@ public class OrderController {
   @Autowired
   private OrderService orderService;
 
+  @Autowired
+  private ShippingQuoteService shippingQuoteService;
+
+  @Autowired
+  private OrderBatchService orderBatchService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private IdempotencyService idempotencyService;
+
 
   @PostMapping("")
-  public Map<String,Object> createOrder(@RequestBody Map<String,Object> request) {
-    return orderService.createOrder(request);
+  public CreateOrderResponse createOrder(@RequestBody CreateOrderRequest request,
+                                         @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                         Principal principal) {
+    return idempotencyService.execute("orders", principal.getName(), idempotencyKey, request,
+        CreateOrderResponse.class, () -> orderService.createOrder(request));
+  }
+
+  @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public BatchOrderResponse createOrdersBatch(@RequestBody List<CreateOrderRequest> lines) {
+    return orderBatchService.createOrders(lines.iterator());
+  }
+
+  // NDJSON lines are parsed lazily, one chunk at a time, straight off the request stream
+  @PostMapping(value = "/batch", consumes = "application/x-ndjson")
+  public BatchOrderResponse createOrdersBatchNdjson(InputStream body) throws IOException {
+    try (MappingIterator<CreateOrderRequest> lines = objectMapper.readerFor(CreateOrderRequest.class).readValues(body)) {
+      return orderBatchService.createOrders(lines);
+    }
   }
 
   @GetMapping("/{id}")
-  public Map<String,Object> getOrderById(@PathVariable Long id) {
+  public OrderResponse getOrderById(@PathVariable Long id) {
     return orderService.getOrderById(id);
   }
 
+  @GetMapping("/{id}/shipping-quote")
+  public ShippingQuoteResponse getShippingQuote(@PathVariable Long id) {
+    return shippingQuoteService.getShippingQuote(id);
+  }
+
   @GetMapping("")
-  public Map<String,Object> listOrders(@RequestParam String status, @RequestParam String customerId) {
-    return orderService.listOrders(status, customerId);
+  public OrderPage listOrders(@RequestParam(required = false) String status,
+                              @RequestParam(required = false) String customerId,
+                              @RequestParam(required = false) String cursor,
+                              @RequestParam(defaultValue = "50") int limit) {
+    return orderService.listOrders(status, customerId, cursor, limit);
+  }
+
+  @GetMapping(value = "/export", produces = "application/x-ndjson")
+  public StreamingResponseBody exportOrders(@RequestParam(required = false) String status,
+                                            @RequestParam(required = false) String customerId) {
+    // Validated before the response starts, so a bad filter is still a 400
+    OrderStatus filter = orderService.statusFilter(status);
+    return out -> orderService.exportOrders(filter, customerId, out);
   }
 
   @PutMapping("/{id}/status")
-  public Map<String,Object> updateOrderStatus(@PathVariable Long id, @RequestBody Map<String,Object> request) {
+  public OrderStatusResponse updateOrderStatus(@PathVariable Long id, @RequestBody UpdateOrderStatusRequest request) {
     return orderService.updateOrderStatus(id, request);
   }
 
   @DeleteMapping("/{id}")
-  public Map<String,Object> cancelOrder(@PathVariable Long id) {
+  public CancelOrderResponse cancelOrder(@PathVariable Long id) {
     return orderService.cancelOrder(id);
   }
 }
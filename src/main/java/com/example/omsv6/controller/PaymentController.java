@@ -1,16 +1,26 @@
 package com.example.omsv6.controller;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.security.Principal;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import com.example.omsv6.dto.CapturePaymentRequest;
+import com.example.omsv6.dto.CreatePaymentRequest;
+import com.example.omsv6.dto.PaymentCreatedResponse;
+import com.example.omsv6.dto.PaymentLedgerResponse;
+import com.example.omsv6.dto.PaymentResponse;
+import com.example.omsv6.dto.PaymentStatusResponse;
+import com.example.omsv6.dto.RefundPaymentRequest;
+import com.example.omsv6.service.IdempotencyService;
 import com.example.omsv6.service.PaymentService;
 
 @RestController
@@ -20,24 +30,41 @@ public class PaymentController {
   @Autowired
   private PaymentService paymentService;
 
+  @Autowired
+  private IdempotencyService idempotencyService;
+
 
+  // Provider calls run asynchronously from the payment outbox; poll GET /{id} for the outcome
   @PostMapping("")
-  public Map<String,Object> createPayment(@RequestBody Map<String,Object> request) {
-    return paymentService.createPayment(request);
+  @ResponseStatus(HttpStatus.ACCEPTED)
+  public PaymentCreatedResponse createPayment(@RequestBody CreatePaymentRequest request,
+                                              @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                              Principal principal) {
+    return idempotencyService.execute("payments", principal.getName(), idempotencyKey, request,
+        PaymentCreatedResponse.class, () -> paymentService.createPayment(request));
   }
 
   @GetMapping("/{id}")
-  public Map<String,Object> getPaymentById(@PathVariable Long id) {
+  public PaymentResponse getPaymentById(@PathVariable Long id) {
     return paymentService.getPaymentById(id);
   }
 
+  @GetMapping("/{id}/ledger")
+  public PaymentLedgerResponse getPaymentLedger(@PathVariable Long id) {
+    return paymentService.getLedger(id);
+  }
+
+  // Without a body (or amount) the whole authorization is captured
   @PostMapping("/{id}/capture")
-  public Map<String,Object> capturePayment(@PathVariable Long id) {
-    return paymentService.capturePayment(id);
+  @ResponseStatus(HttpStatus.ACCEPTED)
+  public PaymentStatusResponse capturePayment(@PathVariable Long id,
+                                              @RequestBody(required = false) CapturePaymentRequest request) {
+    return paymentService.capturePayment(id, request);
   }
 
   @PostMapping("/{id}/refund")
-  public Map<String,Object> refundPayment(@PathVariable Long id, @RequestBody Map<String,Object> request) {
+  @ResponseStatus(HttpStatus.ACCEPTED)
+  public PaymentStatusResponse refundPayment(@PathVariable Long id, @RequestBody RefundPaymentRequest request) {
     return paymentService.refundPayment(id, request);
   }
 }
@@ -1,7 +1,5 @@
 package com.example.omsv6.controller;
 
-import java.util.HashMap;
-import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -10,6 +8,13 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import com.example.omsv6.dto.LowStockReport;
+import com.example.omsv6.dto.PaymentReconciliationReport;
+import com.example.omsv6.dto.PaymentSummaryReport;
+import com.example.omsv6.dto.RollupCheckResponse;
+import com.example.omsv6.dto.RollupRebuildResponse;
+import com.example.omsv6.dto.SalesReport;
+import com.example.omsv6.service.PaymentReconciliationJob;
 import com.example.omsv6.service.ReportService;
 
 @RestController
@@ -19,19 +24,42 @@ public class ReportController {
   @Autowired
   private ReportService reportService;
 
+  @Autowired
+  private PaymentReconciliationJob paymentReconciliationJob;
 
   @GetMapping("/sales")
-  public Map<String,Object> salesReport(@RequestParam String from, @RequestParam String to) {
+  public SalesReport salesReport(@RequestParam String from, @RequestParam String to) {
     return reportService.salesReport(from, to);
   }
 
+  @PostMapping("/sales/rollups/rebuild")
+  public RollupRebuildResponse rebuildSalesRollups(@RequestParam String from, @RequestParam String to) {
+    return reportService.rebuildSalesRollups(from, to);
+  }
+
+  @GetMapping("/sales/rollups/check")
+  public RollupCheckResponse checkSalesRollups(@RequestParam String from, @RequestParam String to) {
+    return reportService.checkSalesRollups(from, to);
+  }
+
   @GetMapping("/inventory/low-stock")
-  public Map<String,Object> lowStockReport(@RequestParam int threshold) {
+  public LowStockReport lowStockReport(@RequestParam int threshold) {
     return reportService.lowStockReport(threshold);
   }
 
   @GetMapping("/payments/summary")
-  public Map<String,Object> paymentSummary(@RequestParam String from, @RequestParam String to) {
-    return reportService.paymentSummary(from, to);
+  public PaymentSummaryReport paymentSummary(@RequestParam String from, @RequestParam String to,
+                                             @RequestParam(required = false) String groupBy) {
+    return reportService.paymentSummary(from, to, groupBy);
+  }
+
+  @GetMapping("/payments/reconciliation")
+  public PaymentReconciliationReport paymentReconciliation(@RequestParam(defaultValue = "100") int limit) {
+    return paymentReconciliationJob.report(limit);
+  }
+
+  @PostMapping("/payments/reconciliation/start")
+  public PaymentReconciliationReport startPaymentReconciliation() {
+    return paymentReconciliationJob.startRun();
   }
 }
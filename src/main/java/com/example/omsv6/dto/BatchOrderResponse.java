@@ -0,0 +1,12 @@
+package com.example.omsv6.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+public record BatchOrderResponse(String message, int lineCount, int accepted, int rejected, List<LineResult> results) {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record LineResult(int line, String status, Long orderId, String error) {
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.omsv6.dto;
+
+public record CancelOrderResponse(String message, Long orderId, String status) {
+}
@@ -0,0 +1,6 @@
+package com.example.omsv6.dto;
+
+import java.math.BigDecimal;
+
+public record CapturePaymentRequest(BigDecimal amount) {
+}
@@ -0,0 +1,4 @@
+package com.example.omsv6.dto;
+
+public record CreateInventoryItemRequest(String sku, String name, Integer quantityAvailable) {
+}
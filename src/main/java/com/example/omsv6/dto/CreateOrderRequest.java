@@ -0,0 +1,18 @@
+package com.example.omsv6.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Either a single {@code sku} with its quantity and amount, or a cart of {@code lines}.
+ */
+public record CreateOrderRequest(String customerId, String sku, Integer quantity, BigDecimal amount,
+                                 List<Line> lines) {
+
+    public CreateOrderRequest(String customerId, String sku, Integer quantity, BigDecimal amount) {
+        this(customerId, sku, quantity, amount, null);
+    }
+
+    public record Line(String sku, Integer quantity, BigDecimal amount) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.omsv6.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@code reservationExpiresAt}: the order is cancelled and its stock released if it is not paid by then.
+ */
+public record CreateOrderResponse(String message, Long orderId, String status, List<Reservation> inventory,
+                                  LocalDateTime reservationExpiresAt, ShippingQuoteLink shippingQuote) {
+
+    public record Reservation(String sku, int reserved) {
+    }
+
+    public record ShippingQuoteLink(String status, String href) {
+    }
+}
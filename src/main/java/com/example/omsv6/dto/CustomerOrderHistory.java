@@ -0,0 +1,22 @@
+package com.example.omsv6.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A customer's order counts by status, lifetime spend (orders PAID, SHIPPED or DELIVERED) and most
+ * recent orders, newest first.
+ */
+public record CustomerOrderHistory(String message, String customerId, long orderCount, BigDecimal lifetimeSpend,
+                                   Map<String, Long> ordersByStatus, List<RecentOrder> recentOrders) {
+
+    public record RecentOrder(Long id, String status, BigDecimal amount, List<OrderView.Line> lines,
+                              LocalDateTime createdAt) {
+    }
+
+    public CustomerOrderHistory withMessage(String message) {
+        return new CustomerOrderHistory(message, customerId, orderCount, lifetimeSpend, ordersByStatus, recentOrders);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.omsv6.dto;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
+/**
+ * Body of every 4xx/5xx answer; {@code details} (sku, available, ...) are written as top-level fields.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ErrorResponse(String message, String error, @JsonIgnore Map<String, Object> details) {
+
+    @JsonAnyGetter
+    public Map<String, Object> anyDetails() {
+        return details;
+    }
+}
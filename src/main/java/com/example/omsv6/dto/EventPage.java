@@ -0,0 +1,16 @@
+package com.example.omsv6.dto;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A batch of the event log; the next request passes {@code nextAfter} as {@code after}.
+ */
+public record EventPage(String message, int count, List<Event> events, long nextAfter) {
+
+    public record Event(long offset, String type, String aggregateId, @JsonRawValue String payload,
+                        LocalDateTime createdAt) {
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.omsv6.dto;
+
+import com.example.omsv6.service.InventoryCache;
+
+public record InventoryItemResponse(String message, InventoryCache.Snapshot item) {
+}
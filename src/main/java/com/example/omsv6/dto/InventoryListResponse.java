@@ -0,0 +1,10 @@
+package com.example.omsv6.dto;
+
+import com.example.omsv6.service.InventoryCache;
+
+import java.util.List;
+
+public record InventoryListResponse(String message, int count, List<InventoryCache.Snapshot> items,
+                                    int lowStockThreshold, int lowStockCount,
+                                    List<InventoryCache.Snapshot> lowStockItems) {
+}
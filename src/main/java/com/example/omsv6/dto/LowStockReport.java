@@ -0,0 +1,9 @@
+package com.example.omsv6.dto;
+
+import java.util.List;
+
+public record LowStockReport(String message, int threshold, int count, List<Item> items) {
+
+    public record Item(String sku, String name, int quantityAvailable, int quantityReserved) {
+    }
+}
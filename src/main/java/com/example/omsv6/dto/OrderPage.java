@@ -0,0 +1,6 @@
+package com.example.omsv6.dto;
+
+import java.util.List;
+
+public record OrderPage(String message, int count, int limit, List<OrderView> orders, String nextCursor) {
+}
@@ -0,0 +1,4 @@
+package com.example.omsv6.dto;
+
+public record OrderStatusResponse(String message, Long orderId, String oldStatus, String newStatus) {
+}
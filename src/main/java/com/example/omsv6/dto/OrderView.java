@@ -0,0 +1,26 @@
+package com.example.omsv6.dto;
+
+import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderLine;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public record OrderView(Long id, String customerId, List<Line> lines, BigDecimal amount, String status,
+                        String shippingQuoteStatus, LocalDateTime reservationExpiresAt, LocalDateTime createdAt,
+                        LocalDateTime updatedAt) {
+
+    public record Line(String sku, int quantity, BigDecimal amount) {
+    }
+
+    public static OrderView from(OrderEntity o) {
+        List<Line> lines = new ArrayList<>(o.getLines().size());
+        for (OrderLine l : o.getLines()) {
+            lines.add(new Line(l.getSku(), l.getQuantity(), l.getAmount()));
+        }
+        return new OrderView(o.getId(), o.getCustomerId(), lines, o.getAmount(), o.getStatus().name(),
+                o.getShippingQuoteStatus(), o.getReservationExpiresAt(), o.getCreatedAt(), o.getUpdatedAt());
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.omsv6.dto;
+
+public record PaymentCreatedResponse(String message, Long paymentId, Long orderId, String status) {
+}
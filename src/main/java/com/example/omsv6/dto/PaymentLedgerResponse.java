@@ -0,0 +1,14 @@
+package com.example.omsv6.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A payment with its running balances and every ledger entry behind them, oldest first.
+ */
+public record PaymentLedgerResponse(String message, PaymentView payment, List<Entry> entries) {
+
+    public record Entry(Long id, String kind, BigDecimal amount, LocalDateTime createdAt) {
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.omsv6.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The current or last reconciliation run, with the first drift entries it recorded.
+ */
+public record PaymentReconciliationReport(String message, long runId, String status, LocalDateTime startedAt,
+                                          LocalDateTime finishedAt, long checked, long matched, long fixed,
+                                          long flagged, long skipped, String lastError, List<Drift> drift) {
+
+    public PaymentReconciliationReport withMessage(String message) {
+        return new PaymentReconciliationReport(message, runId, status, startedAt, finishedAt, checked, matched, fixed,
+                flagged, skipped, lastError, drift);
+    }
+
+    public record Drift(Long paymentId, String kind, String localStatus, String providerStatus,
+                        BigDecimal localAmount, BigDecimal providerAmount, boolean fixed, LocalDateTime detectedAt) {
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.omsv6.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PaymentStatusResponse(String message, Long paymentId, String status, BigDecimal amount) {
+}
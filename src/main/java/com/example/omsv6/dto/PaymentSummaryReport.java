@@ -0,0 +1,17 @@
+package com.example.omsv6.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Exactly one of {@code totals} (no grouping, written inline), {@code currencies} or {@code days} is set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PaymentSummaryReport(String message, LocalDateTime from, LocalDateTime to, String groupBy,
+                                   @JsonUnwrapped PaymentTotalsView totals,
+                                   Map<String, PaymentTotalsView> currencies,
+                                   Map<String, Map<String, PaymentTotalsView>> days) {
+}
@@ -0,0 +1,8 @@
+package com.example.omsv6.dto;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+public record PaymentTotalsView(long paymentCount, Map<String, Long> countByStatus, BigDecimal totalAuthorized,
+                                BigDecimal totalCaptured, BigDecimal totalRefunded) {
+}
@@ -0,0 +1,18 @@
+package com.example.omsv6.dto;
+
+import com.example.omsv6.entity.PaymentEntity;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record PaymentView(Long id, Long orderId, BigDecimal amount, String currency, String provider,
+                          String externalReference, String status, String failureReason,
+                          BigDecimal capturedAmount, BigDecimal refundedAmount, BigDecimal refundPendingAmount,
+                          LocalDateTime createdAt, LocalDateTime updatedAt) {
+
+    public static PaymentView from(PaymentEntity p) {
+        return new PaymentView(p.getId(), p.getOrderId(), p.getAmount(), p.getCurrency(), p.getProvider(),
+                p.getExternalReference(), p.getStatus().name(), p.getFailureReason(), p.getCapturedAmount(),
+                p.getRefundedAmount(), p.getRefundPendingAmount(), p.getCreatedAt(), p.getUpdatedAt());
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.omsv6.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+public record RollupCheckResponse(String message, LocalDate from, LocalDate to, int bucketsChecked, int mismatchCount,
+                                  List<Mismatch> mismatches) {
+
+    public record Mismatch(LocalDate bucketDate, String sku, String status, Totals expected, Totals actual) {
+    }
+
+    public record Totals(long quantity, BigDecimal amount, long orderCount) {
+    }
+}
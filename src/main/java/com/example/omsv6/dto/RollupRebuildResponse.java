@@ -0,0 +1,7 @@
+package com.example.omsv6.dto;
+
+import java.time.LocalDate;
+
+public record RollupRebuildResponse(String message, LocalDate from, LocalDate to, int bucketsDeleted,
+                                    int bucketsInserted) {
+}
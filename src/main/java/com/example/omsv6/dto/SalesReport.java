@@ -0,0 +1,10 @@
+package com.example.omsv6.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public record SalesReport(String message, LocalDateTime from, LocalDateTime to, long orderCount, long totalQuantity,
+                          BigDecimal totalAmount, Map<String, Long> quantityBySku,
+                          Map<String, BigDecimal> amountBySku) {
+}
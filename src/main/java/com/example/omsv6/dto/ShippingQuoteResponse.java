@@ -0,0 +1,14 @@
+package com.example.omsv6.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record ShippingQuoteResponse(String message, Long orderId, String status,
+                                    @JsonInclude(JsonInclude.Include.NON_NULL) Quote quote,
+                                    LocalDateTime updatedAt) {
+
+    public record Quote(String currency, BigDecimal amount) {
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.omsv6.dto;
+
+public record StockAdjustedResponse(String message, String sku, int quantityAvailable, int quantityReserved) {
+}
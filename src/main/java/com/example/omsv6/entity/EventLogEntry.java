@@ -0,0 +1,92 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * One change of an order, payment or inventory item, appended by {@code EventLogService} in the
+ * transaction that made the change. Offsets start at 1 and have no gaps; until the sequencer has
+ * given it one, an entry holds a negative pending key instead.
+ */
+@Entity
+@Table(name = "event_log")
+public class EventLogEntry implements Persistable<Long> {
+
+    @Id
+    private Long eventOffset;
+
+    @Column(nullable = false, length = 64)
+    private String type;
+
+    @Column(nullable = false)
+    private String aggregateId;
+
+    // JSON of the domain event
+    @Column(nullable = false, length = 100_000)
+    private String payload;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    // Offsets are assigned, so saving must insert rather than look the row up first
+    @Transient
+    private boolean isNew = true;
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        isNew = false;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @Override
+    public Long getId() {
+        return eventOffset;
+    }
+
+    public Long getEventOffset() {
+        return eventOffset;
+    }
+
+    public void setEventOffset(Long eventOffset) {
+        this.eventOffset = eventOffset;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getAggregateId() {
+        return aggregateId;
+    }
+
+    public void setAggregateId(String aggregateId) {
+        this.aggregateId = aggregateId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
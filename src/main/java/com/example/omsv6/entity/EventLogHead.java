@@ -0,0 +1,28 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * The single row holding the last offset assigned in {@code event_log}. Only the sequencer in
+ * {@code EventLogService} updates it.
+ */
+@Entity
+@Table(name = "event_log_head")
+public class EventLogHead {
+
+    public static final short ID = 1;
+
+    @Id
+    private Short id;
+
+    @Column(nullable = false)
+    private long lastOffset;
+
+    public Short getId() {
+        return id;
+    }
+
+    public long getLastOffset() {
+        return lastOffset;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.math.BigDecimal;
+
+/**
+ * One SKU of an order. Lines are stored in {@code order_lines}, keyed by order and position.
+ */
+@Embeddable
+public class OrderLine {
+
+    @Column(nullable = false)
+    private String sku;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    protected OrderLine() {
+    }
+
+    public OrderLine(String sku, int quantity, BigDecimal amount) {
+        this.sku = sku;
+        this.quantity = quantity;
+        this.amount = amount;
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+}
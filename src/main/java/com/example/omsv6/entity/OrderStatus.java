@@ -0,0 +1,64 @@
+package com.example.omsv6.entity;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Order lifecycle: CREATED → PAID → SHIPPED → DELIVERED, and CREATED or PAID → CANCELLED.
+ * Stored as its {@link #code()} in a SMALLINT column (see {@link OrderStatusConverter}); codes are
+ * part of the schema and must never be reused or renumbered.
+ */
+public enum OrderStatus {
+    CREATED(1),
+    PAID(2),
+    SHIPPED(3),
+    DELIVERED(4),
+    CANCELLED(5);
+
+    private static final OrderStatus[] BY_CODE = new OrderStatus[6];
+    private static final boolean[][] TRANSITIONS = new boolean[values().length][values().length];
+
+    static {
+        for (OrderStatus s : values()) {
+            BY_CODE[s.code] = s;
+        }
+        allow(CREATED, PAID, CANCELLED);
+        allow(PAID, SHIPPED, CANCELLED);
+        allow(SHIPPED, DELIVERED);
+    }
+
+    private final short code;
+
+    OrderStatus(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public boolean canTransitionTo(OrderStatus next) {
+        return TRANSITIONS[ordinal()][next.ordinal()];
+    }
+
+    public static OrderStatus fromCode(short code) {
+        OrderStatus s = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (s == null) {
+            throw new IllegalArgumentException("Unknown order status code " + code);
+        }
+        return s;
+    }
+
+    /**
+     * Case-insensitive lookup by name, for request parameters.
+     */
+    public static Optional<OrderStatus> parse(String name) {
+        return Arrays.stream(values()).filter(s -> s.name().equalsIgnoreCase(name.trim())).findFirst();
+    }
+
+    private static void allow(OrderStatus from, OrderStatus... to) {
+        for (OrderStatus t : to) {
+            TRANSITIONS[from.ordinal()][t.ordinal()] = true;
+        }
+    }
+}
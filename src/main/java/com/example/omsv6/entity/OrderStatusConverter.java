@@ -0,0 +1,18 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter(autoApply = true)
+public class OrderStatusConverter implements AttributeConverter<OrderStatus, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(OrderStatus status) {
+        return status != null ? status.code() : null;
+    }
+
+    @Override
+    public OrderStatus convertToEntityAttribute(Short code) {
+        return code != null ? OrderStatus.fromCode(code) : null;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * A payment whose local state disagreed with the provider's during a reconciliation run.
+ */
+@Entity
+@Table(name = "payment_drift", indexes = {
+        @Index(name = "idx_payment_drift_run_id", columnList = "run_id, id")
+})
+public class PaymentDrift {
+
+    // The provider reports a different status
+    public static final String STATUS = "STATUS";
+    // Same status, different amount
+    public static final String AMOUNT = "AMOUNT";
+    // Same status and amount, different captured balance; the amounts are the captured balances
+    public static final String CAPTURED = "CAPTURED";
+    // Same status and amount, different refunded balance; the amounts are the refunded balances
+    public static final String REFUNDED = "REFUNDED";
+    // The provider does not know the payment's reference
+    public static final String MISSING = "MISSING";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private long runId;
+
+    @Column(nullable = false)
+    private Long paymentId;
+
+    @Column(nullable = false)
+    private String kind;
+
+    @Column(nullable = false)
+    private PaymentStatus localStatus;
+
+    private String providerStatus;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal localAmount;
+
+    @Column(precision = 19, scale = 2)
+    private BigDecimal providerAmount;
+
+    // Whether the local payment was corrected to the provider's status
+    @Column(nullable = false)
+    private boolean fixed;
+
+    @Column(nullable = false)
+    private LocalDateTime detectedAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public void setRunId(long runId) {
+        this.runId = runId;
+    }
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+
+    public void setPaymentId(Long paymentId) {
+        this.paymentId = paymentId;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    public PaymentStatus getLocalStatus() {
+        return localStatus;
+    }
+
+    public void setLocalStatus(PaymentStatus localStatus) {
+        this.localStatus = localStatus;
+    }
+
+    public String getProviderStatus() {
+        return providerStatus;
+    }
+
+    public void setProviderStatus(String providerStatus) {
+        this.providerStatus = providerStatus;
+    }
+
+    public BigDecimal getLocalAmount() {
+        return localAmount;
+    }
+
+    public void setLocalAmount(BigDecimal localAmount) {
+        this.localAmount = localAmount;
+    }
+
+    public BigDecimal getProviderAmount() {
+        return providerAmount;
+    }
+
+    public void setProviderAmount(BigDecimal providerAmount) {
+        this.providerAmount = providerAmount;
+    }
+
+    public boolean isFixed() {
+        return fixed;
+    }
+
+    public void setFixed(boolean fixed) {
+        this.fixed = fixed;
+    }
+
+    public LocalDateTime getDetectedAt() {
+        return detectedAt;
+    }
+
+    public void setDetectedAt(LocalDateTime detectedAt) {
+        this.detectedAt = detectedAt;
+    }
+}
@@ -6,7 +6,11 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        @Index(name = "idx_payments_created_status_currency_amount", columnList = "created_at, status, currency, amount"),
+        @Index(name = "idx_payments_order_created", columnList = "order_id, created_at"),
+        @Index(name = "idx_payments_updated_id", columnList = "updated_at, id")
+})
 public class PaymentEntity {
 
     @Id
@@ -25,11 +29,24 @@ public class PaymentEntity {
     @Column(nullable = false)
     private String provider;
 
-    @Column(nullable = false)
+    // Set once the provider has authorized the payment
     private String externalReference;
 
     @Column(nullable = false)
-    private String status;
+    private PaymentStatus status;
+
+    private String failureReason;
+
+    // Running totals of the payment's ledger entries; refunds queued but not yet settled are held
+    // in refundPendingAmount, so capturedAmount - refundedAmount - refundPendingAmount is refundable
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal capturedAmount = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal refundedAmount = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal refundPendingAmount = BigDecimal.ZERO;
 
     @Column(nullable = false)
     private LocalDateTime createdAt;
@@ -85,14 +102,46 @@ public class PaymentEntity {
         this.externalReference = externalReference;
     }
 
-    public String getStatus() {
+    public PaymentStatus getStatus() {
         return status;
     }
 
-    public void setStatus(String status) {
+    public void setStatus(PaymentStatus status) {
         this.status = status;
     }
 
+    public String getFailureReason() {
+        return failureReason;
+    }
+
+    public void setFailureReason(String failureReason) {
+        this.failureReason = failureReason;
+    }
+
+    public BigDecimal getCapturedAmount() {
+        return capturedAmount;
+    }
+
+    public void setCapturedAmount(BigDecimal capturedAmount) {
+        this.capturedAmount = capturedAmount;
+    }
+
+    public BigDecimal getRefundedAmount() {
+        return refundedAmount;
+    }
+
+    public void setRefundedAmount(BigDecimal refundedAmount) {
+        this.refundedAmount = refundedAmount;
+    }
+
+    public BigDecimal getRefundPendingAmount() {
+        return refundPendingAmount;
+    }
+
+    public void setRefundPendingAmount(BigDecimal refundPendingAmount) {
+        this.refundPendingAmount = refundPendingAmount;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
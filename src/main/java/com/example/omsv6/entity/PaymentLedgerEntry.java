@@ -0,0 +1,77 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One movement of money on a payment, appended in the transaction that settles it and never
+ * changed afterwards. A capture of less than the authorized amount is a partial capture; a payment
+ * may have several refunds. The payment row carries the running totals.
+ */
+@Entity
+@Table(name = "payment_ledger", indexes = {
+        @Index(name = "idx_payment_ledger_payment_id", columnList = "payment_id, id"),
+        @Index(name = "idx_payment_ledger_created_kind_currency_amount", columnList = "created_at, kind, currency, amount")
+})
+public class PaymentLedgerEntry {
+
+    public static final String AUTHORIZE = "AUTHORIZE";
+    public static final String CAPTURE = "CAPTURE";
+    public static final String REFUND = "REFUND";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long paymentId;
+
+    @Column(nullable = false)
+    private String kind;
+
+    @Column(nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(nullable = false)
+    private String currency;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    protected PaymentLedgerEntry() {
+    }
+
+    public PaymentLedgerEntry(Long paymentId, String kind, BigDecimal amount, String currency, LocalDateTime createdAt) {
+        this.paymentId = paymentId;
+        this.kind = kind;
+        this.amount = amount;
+        this.currency = currency;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
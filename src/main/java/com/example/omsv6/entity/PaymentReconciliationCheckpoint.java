@@ -0,0 +1,120 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * The single row tracking the current or last payment reconciliation run: where its sweep has got
+ * to, what it found so far, and which instance holds the lease on it.
+ */
+@Entity
+@Table(name = "payment_reconciliation_checkpoint")
+public class PaymentReconciliationCheckpoint {
+
+    public static final short ID = 1;
+
+    public static final String IDLE = "IDLE";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+
+    @Id
+    private Short id;
+
+    @Column(nullable = false)
+    private long runId;
+
+    @Column(nullable = false)
+    private String status;
+
+    // Also the run's horizon: payments changed after it are left to the next run
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+
+    // (updated_at, id) of the last payment the run has checked
+    private LocalDateTime cursorUpdatedAt;
+
+    private Long cursorId;
+
+    @Column(nullable = false)
+    private long checked;
+
+    @Column(nullable = false)
+    private long matched;
+
+    @Column(nullable = false)
+    private long fixed;
+
+    @Column(nullable = false)
+    private long flagged;
+
+    @Column(nullable = false)
+    private long skipped;
+
+    private String leaseOwner;
+
+    private LocalDateTime leaseUntil;
+
+    private String lastError;
+
+    public Short getId() {
+        return id;
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public LocalDateTime getCursorUpdatedAt() {
+        return cursorUpdatedAt;
+    }
+
+    public Long getCursorId() {
+        return cursorId;
+    }
+
+    public long getChecked() {
+        return checked;
+    }
+
+    public long getMatched() {
+        return matched;
+    }
+
+    public long getFixed() {
+        return fixed;
+    }
+
+    public long getFlagged() {
+        return flagged;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.omsv6.entity;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Payment lifecycle. Every provider call has a pending state, entered when the call is queued in
+ * the outbox and left when it settles:
+ * AUTHORIZATION_PENDING → AUTHORIZED | FAILED, AUTHORIZED → CAPTURE_PENDING → CAPTURED (or back to
+ * AUTHORIZED), CAPTURED → REFUND_PENDING → REFUNDED (or back to CAPTURED). A payment nothing was
+ * taken for yet can be CANCELLED with its order.
+ *
+ * <p>Refunds may be partial and several may be queued at once: a payment stays REFUND_PENDING
+ * while any is, then becomes REFUNDED if its refunds add up to the captured amount and CAPTURED
+ * otherwise. The amounts are kept on the payment and in its ledger.
+ *
+ * <p>Stored as its {@link #code()} in a SMALLINT column (see {@link PaymentStatusConverter}); codes
+ * are part of the schema and must never be reused or renumbered.
+ */
+public enum PaymentStatus {
+    AUTHORIZATION_PENDING(1),
+    AUTHORIZED(2),
+    CAPTURE_PENDING(3),
+    CAPTURED(4),
+    REFUND_PENDING(5),
+    REFUNDED(6),
+    FAILED(7),
+    CANCELLED(8);
+
+    private static final PaymentStatus[] BY_CODE = new PaymentStatus[9];
+    private static final boolean[][] TRANSITIONS = new boolean[values().length][values().length];
+
+    static {
+        for (PaymentStatus s : values()) {
+            BY_CODE[s.code] = s;
+        }
+        allow(AUTHORIZATION_PENDING, AUTHORIZED, FAILED, CANCELLED);
+        allow(AUTHORIZED, CAPTURE_PENDING, CANCELLED);
+        allow(CAPTURE_PENDING, CAPTURED, AUTHORIZED);
+        allow(CAPTURED, REFUND_PENDING);
+        allow(REFUND_PENDING, REFUNDED, CAPTURED);
+    }
+
+    private final short code;
+
+    PaymentStatus(int code) {
+        this.code = (short) code;
+    }
+
+    public short code() {
+        return code;
+    }
+
+    public boolean canTransitionTo(PaymentStatus next) {
+        return TRANSITIONS[ordinal()][next.ordinal()];
+    }
+
+    /**
+     * The states {@code to} can be reached from, for guarded bulk updates.
+     */
+    public static Set<PaymentStatus> sourcesOf(PaymentStatus to) {
+        Set<PaymentStatus> from = EnumSet.noneOf(PaymentStatus.class);
+        for (PaymentStatus s : values()) {
+            if (s.canTransitionTo(to)) from.add(s);
+        }
+        return from;
+    }
+
+    public static PaymentStatus fromCode(short code) {
+        PaymentStatus s = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (s == null) {
+            throw new IllegalArgumentException("Unknown payment status code " + code);
+        }
+        return s;
+    }
+
+    private static void allow(PaymentStatus from, PaymentStatus... to) {
+        for (PaymentStatus t : to) {
+            TRANSITIONS[from.ordinal()][t.ordinal()] = true;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter(autoApply = true)
+public class PaymentStatusConverter implements AttributeConverter<PaymentStatus, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(PaymentStatus status) {
+        return status != null ? status.code() : null;
+    }
+
+    @Override
+    public PaymentStatus convertToEntityAttribute(Short code) {
+        return code != null ? PaymentStatus.fromCode(code) : null;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.omsv6.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * The single row naming the instance that is releasing expired order reservations, if any.
+ */
+@Entity
+@Table(name = "reservation_sweep_lease")
+public class ReservationSweepLease {
+
+    public static final short ID = 1;
+
+    @Id
+    private Short id;
+
+    private String leaseOwner;
+
+    private LocalDateTime leaseUntil;
+
+    // When the last sweep finished, on whichever instance
+    private LocalDateTime lastSweptAt;
+
+    public Short getId() {
+        return id;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public LocalDateTime getLastSweptAt() {
+        return lastSweptAt;
+    }
+}
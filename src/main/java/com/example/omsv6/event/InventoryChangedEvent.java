@@ -0,0 +1,15 @@
+package com.example.omsv6.event;
+
+import java.time.LocalDateTime;
+
+/**
+ * An item created or its available stock adjusted. Reservations and releases are not published
+ * separately; they follow from the lines of the order events.
+ */
+public record InventoryChangedEvent(
+        String sku,
+        int delta,
+        int quantityAvailable,
+        int quantityReserved,
+        LocalDateTime changedAt) {
+}
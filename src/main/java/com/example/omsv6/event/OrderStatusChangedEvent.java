@@ -0,0 +1,18 @@
+package com.example.omsv6.event;
+
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.entity.OrderStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public record OrderStatusChangedEvent(
+        Long orderId,
+        String customerId,
+        List<OrderLine> lines,
+        BigDecimal amount,
+        LocalDateTime createdAt,
+        OrderStatus oldStatus,
+        OrderStatus newStatus) {
+}
@@ -0,0 +1,15 @@
+package com.example.omsv6.event;
+
+import com.example.omsv6.entity.PaymentStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+public record PaymentCreatedEvent(
+        Long paymentId,
+        Long orderId,
+        BigDecimal amount,
+        String currency,
+        PaymentStatus status,
+        LocalDateTime createdAt) {
+}
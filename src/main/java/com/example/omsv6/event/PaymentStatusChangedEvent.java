@@ -0,0 +1,14 @@
+package com.example.omsv6.event;
+
+import com.example.omsv6.entity.PaymentStatus;
+
+import java.time.LocalDateTime;
+
+public record PaymentStatusChangedEvent(
+        Long paymentId,
+        Long orderId,
+        PaymentStatus oldStatus,
+        PaymentStatus newStatus,
+        String reason,
+        LocalDateTime changedAt) {
+}
@@ -0,0 +1,43 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.CustomerOrderStat;
+import com.example.omsv6.entity.OrderStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public interface CustomerOrderStatRepository extends JpaRepository<CustomerOrderStat, Long> {
+
+    // Touches only the oldest row of a key; see CustomerOrderHistoryService
+    @Modifying
+    @Query("update CustomerOrderStat s set s.orderCount = s.orderCount + :orderCount, s.amount = s.amount + :amount "
+            + "where s.id = (select min(s2.id) from CustomerOrderStat s2 "
+            + "where s2.customerId = :customerId and s2.status = :status)")
+    int increment(@Param("customerId") String customerId,
+                  @Param("status") OrderStatus status,
+                  @Param("orderCount") long orderCount,
+                  @Param("amount") BigDecimal amount);
+
+    // Held until commit; see CustomerOrderHistoryService
+    @Query(value = "select stripe from customer_order_stat_lock where stripe = :stripe for update", nativeQuery = true)
+    Integer lockStripe(@Param("stripe") int stripe);
+
+    // Rows: status, sum(orderCount), sum(amount)
+    @Query("select s.status, sum(s.orderCount), sum(s.amount) from CustomerOrderStat s "
+            + "where s.customerId = :customerId group by s.status")
+    List<Object[]> sumByStatus(@Param("customerId") String customerId);
+
+    @Modifying
+    @Query("delete from CustomerOrderStat s where s.customerId = :customerId")
+    int deleteByCustomer(@Param("customerId") String customerId);
+
+    @Modifying
+    @Query("insert into CustomerOrderStat (customerId, status, orderCount, amount) "
+            + "select o.customerId, o.status, count(o), coalesce(sum(o.amount), 0) from OrderEntity o "
+            + "where o.customerId = :customerId group by o.customerId, o.status")
+    int rebuildFromOrders(@Param("customerId") String customerId);
+}
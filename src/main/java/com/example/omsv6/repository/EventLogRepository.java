@@ -0,0 +1,34 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.EventLogEntry;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface EventLogRepository extends JpaRepository<EventLogEntry, Long> {
+    List<EventLogEntry> findByEventOffsetGreaterThanOrderByEventOffset(long after, Limit limit);
+
+    // A block of 1024 pending keys per value; see EventLogService
+    @Query(value = "select nextval('event_log_pending_seq')", nativeQuery = true)
+    long nextPendingBlock();
+
+    // Committed events still waiting for an offset, in append order
+    @Query("select e.eventOffset from EventLogEntry e where e.eventOffset < 0 order by e.eventOffset desc")
+    List<Long> findPendingKeys(Limit limit);
+
+    @Modifying
+    @Query("update EventLogEntry e set e.eventOffset = :offset where e.eventOffset = :pendingKey")
+    int assignOffset(@Param("pendingKey") long pendingKey, @Param("offset") long offset);
+
+    // Locks the head row until the calling transaction ends, so one sequencer runs at a time
+    @Modifying
+    @Query("update EventLogHead h set h.lastOffset = h.lastOffset + :count where h.id = 1")
+    int advanceHead(@Param("count") long count);
+
+    @Query("select h.lastOffset from EventLogHead h where h.id = 1")
+    long headOffset();
+}
@@ -0,0 +1,26 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    @Query("select r from IdempotencyRecord r where r.id = :id and r.expiresAt > :now")
+    Optional<IdempotencyRecord> findLive(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.id = :id and r.expiresAt <= :now")
+    int deleteIfExpired(@Param("id") String id, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.expiresAt <= :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
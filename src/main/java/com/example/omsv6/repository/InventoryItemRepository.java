@@ -2,11 +2,40 @@ package com.example.omsv6.repository;
 
 import com.example.omsv6.entity.InventoryItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface InventoryItemRepository extends JpaRepository<InventoryItem, Long> {
     Optional<InventoryItem> findBySku(String sku);
     List<InventoryItem> findAllByOrderBySkuAsc();
+
+    @Query("select i.sku, i.quantityAvailable from InventoryItem i where i.sku in :skus")
+    List<Object[]> findAvailableBySkuIn(@Param("skus") Collection<String> skus);
+
+    @Transactional
+    @Modifying
+    @Query("update InventoryItem i set i.quantityAvailable = i.quantityAvailable - :qty, "
+            + "i.quantityReserved = i.quantityReserved + :qty, i.updatedAt = :now "
+            + "where i.sku = :sku and i.quantityAvailable >= :qty")
+    int reserve(@Param("sku") String sku, @Param("qty") int qty, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update InventoryItem i set i.quantityAvailable = i.quantityAvailable + :qty, "
+            + "i.quantityReserved = case when i.quantityReserved >= :qty then i.quantityReserved - :qty else 0 end, "
+            + "i.updatedAt = :now where i.sku = :sku")
+    int release(@Param("sku") String sku, @Param("qty") int qty, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update InventoryItem i set i.quantityAvailable = i.quantityAvailable + :delta, i.updatedAt = :now "
+            + "where i.sku = :sku and i.quantityAvailable + :delta >= 0")
+    int adjustAvailable(@Param("sku") String sku, @Param("delta") int delta, @Param("now") LocalDateTime now);
 }
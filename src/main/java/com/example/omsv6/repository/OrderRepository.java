@@ -1,15 +1,101 @@
 package com.example.omsv6.repository;
 
 import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.PaymentStatus;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 public interface OrderRepository extends JpaRepository<OrderEntity, Long> {
-    List<OrderEntity> findAllByOrderByCreatedAtDesc();
-    List<OrderEntity> findByStatusOrderByCreatedAtDesc(String status);
-    List<OrderEntity> findByCustomerIdOrderByCreatedAtDesc(String customerId);
-    List<OrderEntity> findByStatusAndCustomerIdOrderByCreatedAtDesc(String status, String customerId);
     List<OrderEntity> findByCreatedAtBetweenOrderByCreatedAtDesc(LocalDateTime from, LocalDateTime to);
+
+    // Keyset pages on (createdAt, id); see OrderService.listOrders
+    Window<OrderEntity> findByOrderByCreatedAtDescIdDesc(ScrollPosition position, Limit limit);
+    Window<OrderEntity> findByStatusOrderByCreatedAtDescIdDesc(OrderStatus status, ScrollPosition position, Limit limit);
+    Window<OrderEntity> findByCustomerIdOrderByCreatedAtDescIdDesc(String customerId, ScrollPosition position, Limit limit);
+    Window<OrderEntity> findByStatusAndCustomerIdOrderByCreatedAtDescIdDesc(OrderStatus status, String customerId,
+                                                                           ScrollPosition position, Limit limit);
+
+    // A JPQL string rather than a derived query, so its SQL is translated once and cached
+    @Query("select o from OrderEntity o where o.customerId = :customerId order by o.createdAt desc, o.id desc")
+    List<OrderEntity> findRecentByCustomerId(@Param("customerId") String customerId, Limit limit);
+
+    // Cursor-backed streams for the NDJSON export; must be consumed inside a transaction. Lines are
+    // joined in, since the export detaches each order before lines could be batch-fetched.
+    @EntityGraph(attributePaths = "lines")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<OrderEntity> streamByOrderByCreatedAtDescIdDesc();
+
+    @EntityGraph(attributePaths = "lines")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<OrderEntity> streamByStatusOrderByCreatedAtDescIdDesc(OrderStatus status);
+
+    @EntityGraph(attributePaths = "lines")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<OrderEntity> streamByCustomerIdOrderByCreatedAtDescIdDesc(String customerId);
+
+    @EntityGraph(attributePaths = "lines")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<OrderEntity> streamByStatusAndCustomerIdOrderByCreatedAtDescIdDesc(OrderStatus status, String customerId);
+
+    // Unpaid orders whose reservation has run out, oldest expiry first (ReservationExpirySweeper); an
+    // order with a payment in one of the paying statuses is not due until that payment settles
+    @Query("select o from OrderEntity o where o.reservationExpiresAt <= :now and not exists "
+            + "(select p.id from PaymentEntity p where p.orderId = o.id and p.status in :paying) "
+            + "order by o.reservationExpiresAt, o.id")
+    List<OrderEntity> findExpiredReservations(@Param("now") LocalDateTime now,
+                                              @Param("paying") Collection<PaymentStatus> paying,
+                                              Limit limit);
+
+    // Any status change ends the reservation's expiry: only CREATED orders have one
+    @Transactional
+    @Modifying
+    @Query("update OrderEntity o set o.status = :to, o.reservationExpiresAt = null, o.updatedAt = :now "
+            + "where o.id = :id and o.status = :from")
+    int transition(@Param("id") Long id,
+                   @Param("from") OrderStatus from,
+                   @Param("to") OrderStatus to,
+                   @Param("now") LocalDateTime now);
+
+    // Bulk form of transition for a batch of expired orders, with the finder's payment guard; a smaller
+    // count means some changed meanwhile
+    @Transactional
+    @Modifying
+    @Query("update OrderEntity o set o.status = :to, o.reservationExpiresAt = null, o.updatedAt = :now "
+            + "where o.id in :ids and o.status = :from and o.reservationExpiresAt <= :now and not exists "
+            + "(select p.id from PaymentEntity p where p.orderId = o.id and p.status in :paying)")
+    int expireReservations(@Param("ids") Collection<Long> ids,
+                           @Param("from") OrderStatus from,
+                           @Param("to") OrderStatus to,
+                           @Param("paying") Collection<PaymentStatus> paying,
+                           @Param("now") LocalDateTime now);
+
+    // Own transaction: also called from after-commit listeners, where the order's transaction is already over
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query("update OrderEntity o set o.shippingQuoteStatus = :status, o.shippingQuoteAmount = :amount, "
+            + "o.shippingQuoteCurrency = :currency, o.shippingQuoteUpdatedAt = :now where o.id = :id")
+    int updateShippingQuote(@Param("id") Long id,
+                            @Param("status") String status,
+                            @Param("amount") BigDecimal amount,
+                            @Param("currency") String currency,
+                            @Param("now") LocalDateTime now);
 }
@@ -0,0 +1,11 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.PaymentDrift;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface PaymentDriftRepository extends JpaRepository<PaymentDrift, Long> {
+    List<PaymentDrift> findByRunIdOrderById(long runId, Limit limit);
+}
@@ -0,0 +1,37 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.PaymentLedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface PaymentLedgerRepository extends JpaRepository<PaymentLedgerEntry, Long> {
+    List<PaymentLedgerEntry> findByPaymentIdOrderById(Long paymentId);
+
+    interface LedgerTotals {
+        String getKind();
+        String getCurrency();
+        BigDecimal getTotalAmount();
+    }
+
+    interface DailyLedgerTotals extends LedgerTotals {
+        LocalDate getDay();
+    }
+
+    // Served from idx_payment_ledger_created_kind_currency_amount without touching the table rows
+    @Query("select l.kind as kind, l.currency as currency, sum(l.amount) as totalAmount "
+            + "from PaymentLedgerEntry l where l.createdAt between :from and :to group by l.kind, l.currency")
+    List<LedgerTotals> summarizeByKindAndCurrency(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("select cast(l.createdAt as LocalDate) as day, l.kind as kind, l.currency as currency, "
+            + "sum(l.amount) as totalAmount "
+            + "from PaymentLedgerEntry l where l.createdAt between :from and :to "
+            + "group by cast(l.createdAt as LocalDate), l.kind, l.currency")
+    List<DailyLedgerTotals> summarizeByDayKindAndCurrency(@Param("from") LocalDateTime from,
+                                                          @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,75 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.PaymentOutboxEntry;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface PaymentOutboxRepository extends JpaRepository<PaymentOutboxEntry, Long> {
+
+    // Due rows: pending and past their backoff, or claimed by a dispatcher whose lease ran out
+    @Query("select e.id from PaymentOutboxEntry e where (e.status = 'PENDING' and e.nextAttemptAt <= :now) "
+            + "or (e.status = 'IN_FLIGHT' and e.leaseUntil < :now) order by e.id")
+    List<Long> findDueIds(@Param("now") LocalDateTime now, Limit limit);
+
+    // Re-checks the due condition, so a row another dispatcher claimed in the meantime is skipped
+    @Transactional
+    @Modifying
+    @Query("update PaymentOutboxEntry e set e.status = 'IN_FLIGHT', e.leaseOwner = :owner, "
+            + "e.leaseUntil = :leaseUntil, e.attempts = e.attempts + 1 "
+            + "where e.id in :ids and ((e.status = 'PENDING' and e.nextAttemptAt <= :now) "
+            + "or (e.status = 'IN_FLIGHT' and e.leaseUntil < :now))")
+    int claim(@Param("ids") Collection<Long> ids,
+              @Param("owner") String owner,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    List<PaymentOutboxEntry> findByLeaseOwnerOrderById(String leaseOwner);
+
+    // Only the lease holder may settle a row; 0 means the lease expired and the row was reclaimed
+    @Transactional
+    @Modifying
+    @Query("update PaymentOutboxEntry e set e.status = :status, e.lastError = :error, e.processedAt = :now, "
+            + "e.leaseOwner = null, e.leaseUntil = null where e.id = :id and e.leaseOwner = :owner")
+    int finish(@Param("id") Long id,
+               @Param("owner") String owner,
+               @Param("status") String status,
+               @Param("error") String error,
+               @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update PaymentOutboxEntry e set e.status = 'PENDING', e.nextAttemptAt = :nextAttemptAt, "
+            + "e.lastError = :error, e.leaseOwner = null, e.leaseUntil = null "
+            + "where e.id = :id and e.leaseOwner = :owner")
+    int reschedule(@Param("id") Long id,
+                   @Param("owner") String owner,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                   @Param("error") String error);
+
+    // Rows of a cancelled payment the provider has never seen; a row already tried once stays, since
+    // that attempt may have reached the provider
+    @Transactional
+    @Modifying
+    @Query("update PaymentOutboxEntry e set e.status = 'CANCELLED', e.processedAt = :now "
+            + "where e.paymentId = :paymentId and e.status = 'PENDING' and e.attempts = 0")
+    int cancelUnsent(@Param("paymentId") Long paymentId, @Param("now") LocalDateTime now);
+
+    /**
+     * Row count and oldest {@code createdAt} of everything not yet settled.
+     */
+    @Query("select count(e), min(e.createdAt) from PaymentOutboxEntry e where e.status in ('PENDING', 'IN_FLIGHT')")
+    List<Object[]> backlog();
+
+    @Transactional
+    @Modifying
+    @Query("delete from PaymentOutboxEntry e where e.status in ('DONE', 'CANCELLED') and e.processedAt < :before")
+    int purgeDone(@Param("before") LocalDateTime before);
+}
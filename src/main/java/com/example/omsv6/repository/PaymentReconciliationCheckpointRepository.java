@@ -0,0 +1,64 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.PaymentReconciliationCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface PaymentReconciliationCheckpointRepository extends JpaRepository<PaymentReconciliationCheckpoint, Short> {
+
+    // Starts the next run, unless one is running or the last one started at or after :startedBefore
+    @Transactional
+    @Modifying
+    @Query("update PaymentReconciliationCheckpoint c set c.runId = c.runId + 1, c.status = 'RUNNING', "
+            + "c.startedAt = :now, c.finishedAt = null, c.cursorUpdatedAt = null, c.cursorId = null, c.checked = 0, "
+            + "c.matched = 0, c.fixed = 0, c.flagged = 0, c.skipped = 0, c.leaseOwner = null, c.leaseUntil = null, "
+            + "c.lastError = null where c.id = 1 and c.status <> 'RUNNING' "
+            + "and (c.startedAt is null or c.startedAt < :startedBefore)")
+    int startRun(@Param("now") LocalDateTime now, @Param("startedBefore") LocalDateTime startedBefore);
+
+    // Takes or renews the lease on the running run; refused while another instance holds a live one
+    @Transactional
+    @Modifying
+    @Query("update PaymentReconciliationCheckpoint c set c.leaseOwner = :owner, c.leaseUntil = :leaseUntil "
+            + "where c.id = 1 and c.status = 'RUNNING' "
+            + "and (c.leaseOwner = :owner or c.leaseOwner is null or c.leaseUntil < :now)")
+    int claim(@Param("owner") String owner,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    // Only the lease holder may move the run on; 0 means the lease was lost
+    @Modifying
+    @Query("update PaymentReconciliationCheckpoint c set c.cursorUpdatedAt = :cursorUpdatedAt, "
+            + "c.cursorId = :cursorId, c.checked = c.checked + :checked, c.matched = c.matched + :matched, "
+            + "c.fixed = c.fixed + :fixed, c.flagged = c.flagged + :flagged, c.skipped = c.skipped + :skipped, "
+            + "c.leaseUntil = :leaseUntil, c.lastError = null "
+            + "where c.id = 1 and c.status = 'RUNNING' and c.leaseOwner = :owner")
+    int advance(@Param("owner") String owner,
+                @Param("cursorUpdatedAt") LocalDateTime cursorUpdatedAt,
+                @Param("cursorId") Long cursorId,
+                @Param("checked") long checked,
+                @Param("matched") long matched,
+                @Param("fixed") long fixed,
+                @Param("flagged") long flagged,
+                @Param("skipped") long skipped,
+                @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("update PaymentReconciliationCheckpoint c set c.status = 'COMPLETED', c.finishedAt = :now, "
+            + "c.leaseOwner = null, c.leaseUntil = null "
+            + "where c.id = 1 and c.status = 'RUNNING' and c.leaseOwner = :owner")
+    int complete(@Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    // Gives the lease up after a failed page, so the next poll of any instance retries it
+    @Transactional
+    @Modifying
+    @Query("update PaymentReconciliationCheckpoint c set c.lastError = :error, c.leaseOwner = null, "
+            + "c.leaseUntil = null where c.id = 1 and c.leaseOwner = :owner")
+    int release(@Param("owner") String owner, @Param("error") String error);
+}
@@ -1,12 +1,156 @@
 package com.example.omsv6.repository;
 
 import com.example.omsv6.entity.PaymentEntity;
+import com.example.omsv6.entity.PaymentStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 
 public interface PaymentRepository extends JpaRepository<PaymentEntity, Long> {
     List<PaymentEntity> findByOrderIdOrderByCreatedAtDesc(Long orderId);
     List<PaymentEntity> findByCreatedAtBetweenOrderByCreatedAtDesc(LocalDateTime from, LocalDateTime to);
+
+    @Query("select p.status from PaymentEntity p where p.id = :id")
+    PaymentStatus findStatusById(@Param("id") Long id);
+
+    interface PaymentTotals {
+        PaymentStatus getStatus();
+        String getCurrency();
+        long getPaymentCount();
+    }
+
+    interface DailyPaymentTotals extends PaymentTotals {
+        LocalDate getDay();
+    }
+
+    // Served from idx_payments_created_status_currency_amount without touching the table rows;
+    // amounts come from the ledger (PaymentLedgerRepository)
+    @Query("select p.status as status, p.currency as currency, count(p) as paymentCount "
+            + "from PaymentEntity p where p.createdAt between :from and :to group by p.status, p.currency")
+    List<PaymentTotals> summarizeByStatusAndCurrency(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("select cast(p.createdAt as LocalDate) as day, p.status as status, p.currency as currency, "
+            + "count(p) as paymentCount "
+            + "from PaymentEntity p where p.createdAt between :from and :to "
+            + "group by cast(p.createdAt as LocalDate), p.status, p.currency")
+    List<DailyPaymentTotals> summarizeByDayStatusAndCurrency(@Param("from") LocalDateTime from,
+                                                             @Param("to") LocalDateTime to);
+
+    interface Balance {
+        PaymentStatus getStatus();
+        BigDecimal getAmount();
+        String getCurrency();
+        String getExternalReference();
+        BigDecimal getCapturedAmount();
+        BigDecimal getRefundedAmount();
+        BigDecimal getRefundPendingAmount();
+
+        default BigDecimal getRefundableAmount() {
+            return getCapturedAmount().subtract(getRefundedAmount()).subtract(getRefundPendingAmount());
+        }
+    }
+
+    @Query("select p.status as status, p.amount as amount, p.currency as currency, "
+            + "p.externalReference as externalReference, p.capturedAmount as capturedAmount, p.refundedAmount as refundedAmount, "
+            + "p.refundPendingAmount as refundPendingAmount from PaymentEntity p where p.id = :id")
+    Balance findBalanceById(@Param("id") Long id);
+
+    interface ReconciliationRow {
+        Long getId();
+        Long getOrderId();
+        PaymentStatus getStatus();
+        BigDecimal getAmount();
+        BigDecimal getCapturedAmount();
+        BigDecimal getRefundedAmount();
+        String getExternalReference();
+        LocalDateTime getUpdatedAt();
+    }
+
+    // Keyset page over idx_payments_updated_id: payments after (afterUpdatedAt, afterId), up to the horizon
+    @Query("select p.id as id, p.orderId as orderId, p.status as status, p.amount as amount, "
+            + "p.capturedAmount as capturedAmount, p.refundedAmount as refundedAmount, "
+            + "p.externalReference as externalReference, p.updatedAt as updatedAt from PaymentEntity p "
+            + "where p.updatedAt >= :afterUpdatedAt and (p.updatedAt > :afterUpdatedAt or p.id > :afterId) "
+            + "and p.updatedAt <= :horizon order by p.updatedAt, p.id")
+    List<ReconciliationRow> findForReconciliation(@Param("afterUpdatedAt") LocalDateTime afterUpdatedAt,
+                                                  @Param("afterId") Long afterId,
+                                                  @Param("horizon") LocalDateTime horizon,
+                                                  Limit limit);
+
+    // Guarded on the current status so a duplicate or stale outcome changes nothing
+    @Transactional
+    @Modifying
+    @Query("update PaymentEntity p set p.status = :to, p.failureReason = :reason, p.updatedAt = :now "
+            + "where p.id = :id and p.status = :from")
+    int transition(@Param("id") Long id,
+                   @Param("from") PaymentStatus from,
+                   @Param("to") PaymentStatus to,
+                   @Param("reason") String reason,
+                   @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update PaymentEntity p set p.status = :to, p.externalReference = :externalReference, "
+            + "p.failureReason = null, p.updatedAt = :now where p.id = :id and p.status = :from")
+    int authorize(@Param("id") Long id,
+                  @Param("from") PaymentStatus from,
+                  @Param("to") PaymentStatus to,
+                  @Param("externalReference") String externalReference,
+                  @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update PaymentEntity p set p.status = :to, p.capturedAmount = :amount, p.failureReason = null, "
+            + "p.updatedAt = :now where p.id = :id and p.status = :from")
+    int capture(@Param("id") Long id,
+                @Param("from") PaymentStatus from,
+                @Param("to") PaymentStatus to,
+                @Param("amount") BigDecimal amount,
+                @Param("now") LocalDateTime now);
+
+    // Holds the amount for a queued refund unless that would take more than is left to refund
+    @Transactional
+    @Modifying
+    @Query("update PaymentEntity p set p.status = :to, p.refundPendingAmount = p.refundPendingAmount + :amount, "
+            + "p.failureReason = null, p.updatedAt = :now where p.id = :id and p.status = :from "
+            + "and p.capturedAmount - p.refundedAmount - p.refundPendingAmount >= :amount")
+    int reserveRefund(@Param("id") Long id,
+                      @Param("from") PaymentStatus from,
+                      @Param("to") PaymentStatus to,
+                      @Param("amount") BigDecimal amount,
+                      @Param("now") LocalDateTime now);
+
+    // Releases a refund's hold, adding what the provider actually refunded (the amount, or zero)
+    @Transactional
+    @Modifying
+    @Query("update PaymentEntity p set p.refundPendingAmount = p.refundPendingAmount - :amount, "
+            + "p.refundedAmount = p.refundedAmount + :refunded, p.updatedAt = :now "
+            + "where p.id = :id and p.status = :status and p.refundPendingAmount >= :amount")
+    int settleRefund(@Param("id") Long id,
+                     @Param("status") PaymentStatus status,
+                     @Param("amount") BigDecimal amount,
+                     @Param("refunded") BigDecimal refunded,
+                     @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update PaymentEntity p set p.status = :to, p.capturedAmount = :captured, p.refundedAmount = :refunded, "
+            + "p.updatedAt = :now where p.id = :id and p.status = :from "
+            + "and p.capturedAmount = :fromCaptured and p.refundedAmount = :fromRefunded")
+    int applyProviderStatus(@Param("id") Long id,
+                            @Param("from") PaymentStatus from,
+                            @Param("fromCaptured") BigDecimal fromCaptured,
+                            @Param("fromRefunded") BigDecimal fromRefunded,
+                            @Param("to") PaymentStatus to,
+                            @Param("captured") BigDecimal captured,
+                            @Param("refunded") BigDecimal refunded,
+                            @Param("now") LocalDateTime now);
 }
@@ -0,0 +1,28 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.ReservationSweepLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface ReservationSweepLeaseRepository extends JpaRepository<ReservationSweepLease, Short> {
+
+    // Takes or renews the lease; refused while another instance holds a live one
+    @Transactional
+    @Modifying
+    @Query("update ReservationSweepLease l set l.leaseOwner = :owner, l.leaseUntil = :leaseUntil "
+            + "where l.id = 1 and (l.leaseOwner = :owner or l.leaseOwner is null or l.leaseUntil < :now)")
+    int claim(@Param("owner") String owner,
+              @Param("now") LocalDateTime now,
+              @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("update ReservationSweepLease l set l.leaseOwner = null, l.leaseUntil = null, l.lastSweptAt = :now "
+            + "where l.id = 1 and l.leaseOwner = :owner")
+    int release(@Param("owner") String owner, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,66 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.SalesRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface SalesRollupRepository extends JpaRepository<SalesRollup, Long> {
+
+    // Touches only the oldest row of a bucket; see SalesRollupService for why a bucket may have several
+    @Modifying
+    @Query("update SalesRollup r set r.quantity = r.quantity + :quantity, r.amount = r.amount + :amount, "
+            + "r.orderCount = r.orderCount + :orderCount where r.id = (select min(r2.id) from SalesRollup r2 "
+            + "where r2.bucketDate = :bucketDate and r2.sku = :sku and r2.status = :status)")
+    int increment(@Param("bucketDate") LocalDate bucketDate,
+                  @Param("sku") String sku,
+                  @Param("status") OrderStatus status,
+                  @Param("quantity") long quantity,
+                  @Param("amount") BigDecimal amount,
+                  @Param("orderCount") long orderCount);
+
+    // Held until commit; see SalesRollupService
+    @Query(value = "select stripe from sales_rollup_lock where stripe = :stripe for update", nativeQuery = true)
+    Integer lockStripe(@Param("stripe") int stripe);
+
+    @Query(value = "select stripe from sales_rollup_lock order by stripe for update", nativeQuery = true)
+    List<Integer> lockAllStripes();
+
+    // Rows: sku, sum(quantity), sum(amount), sum(orderCount)
+    @Query("select r.sku, sum(r.quantity), sum(r.amount), sum(r.orderCount) from SalesRollup r "
+            + "where r.bucketDate >= :from and r.bucketDate < :to group by r.sku")
+    List<Object[]> sumBySku(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // Rows: bucketDate, sku, status, sum(quantity), sum(amount), sum(orderCount)
+    @Query("select r.bucketDate, r.sku, r.status, sum(r.quantity), sum(r.amount), sum(r.orderCount) "
+            + "from SalesRollup r where r.bucketDate >= :from and r.bucketDate < :to "
+            + "group by r.bucketDate, r.sku, r.status")
+    List<Object[]> sumByBucket(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    @Modifying
+    @Query("delete from SalesRollup r where r.bucketDate >= :from and r.bucketDate < :to")
+    int deleteRange(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+    // An order counts once, under its first line; see SalesRollupService
+    @Modifying
+    @Query("insert into SalesRollup (bucketDate, sku, status, quantity, amount, orderCount) "
+            + "select cast(o.createdAt as LocalDate), l.sku, o.status, sum(l.quantity), sum(l.amount), "
+            + "sum(case when index(l) = 0 then 1 else 0 end) "
+            + "from OrderEntity o join o.lines l where o.createdAt >= :from and o.createdAt < :to "
+            + "group by cast(o.createdAt as LocalDate), l.sku, o.status")
+    int rebuildFromOrders(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // Rows: bucketDate, sku, status, sum(quantity), sum(amount), order count
+    @Query("select cast(o.createdAt as LocalDate), l.sku, o.status, sum(l.quantity), sum(l.amount), "
+            + "sum(case when index(l) = 0 then 1 else 0 end) "
+            + "from OrderEntity o join o.lines l where o.createdAt >= :from and o.createdAt < :to "
+            + "group by cast(o.createdAt as LocalDate), l.sku, o.status")
+    List<Object[]> aggregateOrders(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,58 @@
+package com.example.omsv6.service;
+
+import org.springframework.http.HttpStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A request that cannot be served as asked: bad input, a missing resource, a state conflict or
+ * too many requests already waiting.
+ * Thrown before anything is written, so a surrounding transaction simply rolls back; mapped to
+ * its status by {@code ApiExceptionHandler}.
+ */
+public class ApiException extends RuntimeException {
+
+    private final HttpStatus status;
+    private final String error;
+    private final Map<String, Object> details = new LinkedHashMap<>();
+
+    public ApiException(HttpStatus status, String message, String error) {
+        super(message);
+        this.status = status;
+        this.error = error;
+    }
+
+    public static ApiException badRequest(String error) {
+        return new ApiException(HttpStatus.BAD_REQUEST, "Validation failed", error);
+    }
+
+    public static ApiException notFound(String message) {
+        return new ApiException(HttpStatus.NOT_FOUND, message, null);
+    }
+
+    public static ApiException conflict(String message) {
+        return new ApiException(HttpStatus.CONFLICT, message, null);
+    }
+
+    public static ApiException unavailable(String message) {
+        return new ApiException(HttpStatus.SERVICE_UNAVAILABLE, message, null);
+    }
+
+    public ApiException with(String key, Object value) {
+        details.put(key, value);
+        return this;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Map<String, Object> getDetails() {
+        return details;
+    }
+}
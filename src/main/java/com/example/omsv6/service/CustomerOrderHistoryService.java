@@ -0,0 +1,258 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CustomerOrderHistory;
+import com.example.omsv6.dto.OrderView;
+import com.example.omsv6.entity.CustomerOrderStat;
+import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.event.OrderCreatedEvent;
+import com.example.omsv6.event.OrderStatusChangedEvent;
+import com.example.omsv6.repository.CustomerOrderStatRepository;
+import com.example.omsv6.repository.OrderRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * The customer order history read model: order counts and amounts by status in
+ * {@code customer_order_stats}, plus the most recent orders, cached per customer.
+ *
+ * <p>Stats are kept up to date from order events the way {@link SalesRollupService} keeps its
+ * buckets: deltas are folded per transaction and applied in key order just before it commits, and
+ * a key may have several rows so concurrent first orders of a customer never collide on a unique
+ * key. A read sums at most one row per status, however many orders the customer has, and the
+ * recent orders are one index range of {@code app.customers.history.recent-orders} rows.
+ *
+ * <p>Deltas and {@link #rebuild} first lock the customer's {@code customer_order_stat_lock} stripe,
+ * so a rebuild never re-derives stats under a delta that is written but not yet committed.
+ *
+ * <p>Reads are served from a size-bounded cache of the hottest customers. A transaction that
+ * changes a customer's orders evicts the entry at once and again after it completes, as
+ * {@link InventoryCache} does; {@code app.customers.history.cache.ttl} bounds staleness from
+ * changes made by other instances.
+ */
+@Service
+@Timed("service.calls")
+public class CustomerOrderHistoryService {
+
+    private static final int LOCK_STRIPES = 16;
+    private static final Set<OrderStatus> SPENT = EnumSet.of(OrderStatus.PAID, OrderStatus.SHIPPED, OrderStatus.DELIVERED);
+
+    @Autowired
+    private CustomerOrderStatRepository customerOrderStatRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final Cache<String, CustomerOrderHistory> cache;
+    private final int recentOrders;
+
+    public CustomerOrderHistoryService(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                       @Value("${app.customers.history.cache.max-size:10000}") long maxSize,
+                                       @Value("${app.customers.history.cache.ttl:30s}") Duration ttl,
+                                       @Value("${app.customers.history.recent-orders:10}") int recentOrders) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.recentOrders = recentOrders;
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "customers.order-history");
+    }
+
+    @EventListener
+    public void onOrderCreated(OrderCreatedEvent event) {
+        record(new StatKey(event.customerId(), event.status()), 1, event.amount());
+    }
+
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        record(new StatKey(event.customerId(), event.oldStatus()), -1, negate(event.amount()));
+        record(new StatKey(event.customerId(), event.newStatus()), 1, event.amount());
+    }
+
+    public CustomerOrderHistory getHistory(String customerId) {
+        if (customerId == null || customerId.isBlank()) {
+            throw ApiException.badRequest("customerId is required");
+        }
+        return cache.get(customerId, c -> readOnlyTransactionTemplate.execute(s -> load(c)));
+    }
+
+    /**
+     * Recomputes one customer's stats from their orders.
+     */
+    @Transactional
+    public CustomerOrderHistory rebuild(String customerId) {
+        if (customerId == null || customerId.isBlank()) {
+            throw ApiException.badRequest("customerId is required");
+        }
+        customerOrderStatRepository.lockStripe(stripe(customerId));
+        customerOrderStatRepository.deleteByCustomer(customerId);
+        customerOrderStatRepository.rebuildFromOrders(customerId);
+        evict(customerId);
+        return load(customerId).withMessage("Customer order history rebuilt");
+    }
+
+    private CustomerOrderHistory load(String customerId) {
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        long orderCount = 0;
+        BigDecimal spend = BigDecimal.ZERO;
+        List<Object[]> rows = new ArrayList<>(customerOrderStatRepository.sumByStatus(customerId));
+        rows.sort(Comparator.comparing(row -> (OrderStatus) row[0]));
+        for (Object[] row : rows) {
+            OrderStatus status = (OrderStatus) row[0];
+            long count = ((Number) row[1]).longValue();
+            if (count == 0) continue;
+            byStatus.put(status.name(), count);
+            orderCount += count;
+            if (SPENT.contains(status) && row[2] != null) {
+                spend = spend.add((BigDecimal) row[2]);
+            }
+        }
+
+        List<CustomerOrderHistory.RecentOrder> recent = new ArrayList<>(recentOrders);
+        for (OrderEntity o : orderRepository.findRecentByCustomerId(customerId, Limit.of(recentOrders))) {
+            List<OrderView.Line> lines = new ArrayList<>(o.getLines().size());
+            for (OrderLine l : o.getLines()) {
+                lines.add(new OrderView.Line(l.getSku(), l.getQuantity(), l.getAmount()));
+            }
+            recent.add(new CustomerOrderHistory.RecentOrder(o.getId(), o.getStatus().name(), o.getAmount(),
+                    List.copyOf(lines), o.getCreatedAt()));
+        }
+
+        return new CustomerOrderHistory("Customer order history retrieved", customerId, orderCount, spend,
+                Collections.unmodifiableMap(byStatus), List.copyOf(recent));
+    }
+
+    private void record(StatKey key, long orderCount, BigDecimal amount) {
+        cache.invalidate(key.customerId());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Delta delta = new Delta(0, BigDecimal.ZERO);
+            delta.add(orderCount, amount);
+            transactionTemplate.executeWithoutResult(s -> applyAll(Map.of(key, delta)));
+            cache.invalidate(key.customerId());
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<StatKey, Delta> pending = (Map<StatKey, Delta>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<StatKey, Delta> deltas = new TreeMap<>();
+            TransactionSynchronizationManager.bindResource(this, deltas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                // Stats, then sales rollups, then the event log; each locked in key order
+                @Override
+                public int getOrder() {
+                    return EventLogService.SYNCHRONIZATION_ORDER - 2;
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    applyAll(deltas);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CustomerOrderHistoryService.this);
+                    for (StatKey k : deltas.keySet()) {
+                        cache.invalidate(k.customerId());
+                    }
+                }
+            });
+            pending = deltas;
+        }
+        pending.computeIfAbsent(key, k -> new Delta(0, BigDecimal.ZERO)).add(orderCount, amount);
+    }
+
+    private void applyAll(Map<StatKey, Delta> deltas) {
+        SortedSet<Integer> stripes = new TreeSet<>();
+        deltas.forEach((key, delta) -> {
+            if (!delta.isZero()) stripes.add(stripe(key.customerId()));
+        });
+        for (int stripe : stripes) {
+            customerOrderStatRepository.lockStripe(stripe);
+        }
+        deltas.forEach(this::apply);
+    }
+
+    private static int stripe(String customerId) {
+        return Math.floorMod(customerId.hashCode(), LOCK_STRIPES);
+    }
+
+    private void apply(StatKey key, Delta delta) {
+        if (delta.isZero()) return;
+        if (customerOrderStatRepository.increment(key.customerId(), key.status(), delta.orderCount, delta.amount) == 0) {
+            CustomerOrderStat s = new CustomerOrderStat();
+            s.setCustomerId(key.customerId());
+            s.setStatus(key.status());
+            s.setOrderCount(delta.orderCount);
+            s.setAmount(delta.amount);
+            customerOrderStatRepository.save(s);
+        }
+    }
+
+    private void evict(String customerId) {
+        cache.invalidate(customerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(customerId);
+                }
+            });
+        }
+    }
+
+    private static BigDecimal negate(BigDecimal amount) {
+        return amount != null ? amount.negate() : BigDecimal.ZERO;
+    }
+
+    record StatKey(String customerId, OrderStatus status) implements Comparable<StatKey> {
+        @Override
+        public int compareTo(StatKey o) {
+            int c = customerId.compareTo(o.customerId);
+            if (c == 0) c = status.compareTo(o.status);
+            return c;
+        }
+    }
+
+    private static final class Delta {
+        long orderCount;
+        BigDecimal amount;
+
+        Delta(long orderCount, BigDecimal amount) {
+            this.orderCount = orderCount;
+            this.amount = amount;
+        }
+
+        void add(long c, BigDecimal a) {
+            orderCount += c;
+            amount = amount.add(a != null ? a : BigDecimal.ZERO);
+        }
+
+        boolean isZero() {
+            return orderCount == 0 && amount.signum() == 0;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.EventPage;
+import com.example.omsv6.entity.EventLogEntry;
+import com.example.omsv6.event.InventoryChangedEvent;
+import com.example.omsv6.event.OrderCreatedEvent;
+import com.example.omsv6.event.OrderStatusChangedEvent;
+import com.example.omsv6.event.PaymentCreatedEvent;
+import com.example.omsv6.event.PaymentStatusChangedEvent;
+import com.example.omsv6.repository.EventLogRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends order, payment and inventory events to {@code event_log} and serves them to consumers
+ * by offset.
+ *
+ * <p>Events are collected per transaction and inserted just before it commits, under negative
+ * pending keys in append order; the transaction takes no shared lock for them. Offsets are
+ * assigned afterwards by the sequencer: in one transaction per batch it locks the single
+ * {@code event_log_head} row, gives the committed pending events the next offsets in key order and
+ * advances the head. A batch becomes visible at once, so a reader never sees offset {@code n + 1}
+ * before {@code n} and a consumer can keep only the last offset it processed. The sequencer runs
+ * after every local commit with events and every {@code app.events.sequence-interval}, on each
+ * instance; the head lock lets one run at a time, and the others then find nothing left to do.
+ *
+ * <p>Readers long-poll: an empty read waits for the sequencer, rechecking the table every
+ * {@code app.events.recheck-interval} to pick up offsets assigned by other instances. A waiting
+ * read holds no thread: it is a future that the single {@code event-log} thread completes once
+ * events are there or the wait is up. At most {@code app.events.max-waiters} reads wait at a time;
+ * any further one is refused.
+ */
+@Service
+@Timed("service.calls")
+public class EventLogService implements DisposableBean {
+
+    /**
+     * Order of the appending synchronization; other {@code beforeCommit} work must run before it.
+     */
+    public static final int SYNCHRONIZATION_ORDER = Ordered.LOWEST_PRECEDENCE;
+
+    // Pending keys per value of event_log_pending_seq
+    private static final int PENDING_BLOCK = 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(EventLogService.class);
+
+    @Autowired
+    private EventLogRepository eventLogRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.events.max-batch:1000}")
+    private int maxBatch;
+
+    @Value("${app.events.max-wait:30s}")
+    private Duration maxWait;
+
+    @Value("${app.events.sequence-batch:500}")
+    private int sequenceBatch;
+
+    private final TransactionTemplate transactionTemplate;
+    private final int maxWaiters;
+    private final Semaphore waiting;
+    private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequenced = new AtomicLong();
+    private final AtomicBoolean wakeQueued = new AtomicBoolean();
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "event-log");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public EventLogService(PlatformTransactionManager transactionManager,
+                           @Value("${app.events.sequence-interval:200ms}") Duration sequenceInterval,
+                           @Value("${app.events.recheck-interval:1s}") Duration recheckInterval,
+                           @Value("${app.events.max-waiters:1000}") int maxWaiters) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxWaiters = maxWaiters;
+        this.waiting = new Semaphore(maxWaiters);
+        worker.scheduleWithFixedDelay(this::sequenceAndCheck, sequenceInterval.toMillis(),
+                sequenceInterval.toMillis(), TimeUnit.MILLISECONDS);
+        worker.scheduleWithFixedDelay(this::checkWaiters, recheckInterval.toMillis(),
+                recheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Waiting reads answer with nothing; a consumer reads again after the restart
+    @Override
+    public void destroy() {
+        worker.shutdownNow();
+        for (Waiter w : waiters) {
+            complete(w, List.of());
+        }
+    }
+
+    @EventListener
+    public void onOrderCreated(OrderCreatedEvent event) {
+        append("OrderCreated", String.valueOf(event.orderId()), event);
+    }
+
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        append("OrderStatusChanged", String.valueOf(event.orderId()), event);
+    }
+
+    @EventListener
+    public void onPaymentCreated(PaymentCreatedEvent event) {
+        append("PaymentCreated", String.valueOf(event.paymentId()), event);
+    }
+
+    @EventListener
+    public void onPaymentStatusChanged(PaymentStatusChangedEvent event) {
+        append("PaymentStatusChanged", String.valueOf(event.paymentId()), event);
+    }
+
+    @EventListener
+    public void onInventoryChanged(InventoryChangedEvent event) {
+        append("InventoryChanged", event.sku(), event);
+    }
+
+    /**
+     * Up to {@code limit} events after offset {@code after}, oldest first. When there are none
+     * yet, completes once one is sequenced or {@code wait} (capped at {@code app.events.max-wait})
+     * is up.
+     */
+    public CompletableFuture<EventPage> read(long after, int limit, Duration wait) {
+        if (after < 0) {
+            throw ApiException.badRequest("after must be >= 0");
+        }
+        int batch = Math.min(Math.max(1, limit), maxBatch);
+        long waitNanos = Math.min(Math.max(0, wait.toNanos()), maxWait.toNanos());
+
+        long seen = sequenced.get();
+        List<EventLogEntry> entries = find(after, batch);
+        if (!entries.isEmpty() || waitNanos == 0) {
+            return CompletableFuture.completedFuture(page(after, entries));
+        }
+        if (!waiting.tryAcquire()) {
+            throw ApiException.unavailable("Too many event reads waiting").with("maxWaiters", maxWaiters);
+        }
+        Waiter w = new Waiter(after, batch, new CompletableFuture<>());
+        waiters.add(w);
+        worker.schedule(() -> complete(w, List.of()), waitNanos, TimeUnit.NANOSECONDS);
+        // Sequenced between the read above and the registration: that check found no waiter
+        if (sequenced.get() != seen) {
+            wake();
+        }
+        return w.page();
+    }
+
+    /**
+     * The last offset assigned.
+     */
+    public long headOffset() {
+        return eventLogRepository.headOffset();
+    }
+
+    /**
+     * Gives every event committed so far its offset and returns how many it assigned. Waits for a
+     * sequencer running elsewhere to finish first.
+     */
+    public int sequence() {
+        // Checked without the lock, so an idle log costs a read rather than a write
+        if (eventLogRepository.findPendingKeys(Limit.of(1)).isEmpty()) return 0;
+        int total = 0;
+        while (true) {
+            Integer assigned = transactionTemplate.execute(status -> {
+                // Taken first: another sequencer's batch commits before this one reads
+                eventLogRepository.advanceHead(0);
+                List<Long> pendingKeys = eventLogRepository.findPendingKeys(Limit.of(sequenceBatch));
+                long offset = eventLogRepository.headOffset();
+                for (Long key : pendingKeys) {
+                    eventLogRepository.assignOffset(key, ++offset);
+                }
+                eventLogRepository.advanceHead(pendingKeys.size());
+                return pendingKeys.size();
+            });
+            total += assigned;
+            if (assigned < sequenceBatch) break;
+        }
+        if (total > 0) {
+            sequenced.incrementAndGet();
+        }
+        return total;
+    }
+
+    private void append(String type, String aggregateId, Object event) {
+        EventLogEntry entry = new EventLogEntry();
+        entry.setType(type);
+        entry.setAggregateId(aggregateId);
+        entry.setPayload(toJson(event));
+        entry.setCreatedAt(LocalDateTime.now());
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            transactionTemplate.executeWithoutResult(s -> write(new ArrayList<>(List.of(entry))));
+            wake();
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<EventLogEntry> pending = (List<EventLogEntry>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<EventLogEntry> entries = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, entries);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public int getOrder() {
+                    return SYNCHRONIZATION_ORDER;
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    write(entries);
+                }
+
+                @Override
+                public void afterCommit() {
+                    wake();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(EventLogService.this);
+                }
+            });
+            pending = entries;
+        }
+        pending.add(entry);
+    }
+
+    // Pending keys, -(block * PENDING_BLOCK + i): descending in append order, within and across blocks
+    private void write(List<EventLogEntry> entries) {
+        if (entries.isEmpty()) return;
+        long block = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (i % PENDING_BLOCK == 0) {
+                block = eventLogRepository.nextPendingBlock();
+            }
+            entries.get(i).setEventOffset(-(block * PENDING_BLOCK + i % PENDING_BLOCK));
+        }
+        eventLogRepository.saveAll(entries);
+        entries.clear();
+    }
+
+    // Many commits in a row queue a single run
+    private void wake() {
+        if (wakeQueued.compareAndSet(false, true)) {
+            try {
+                worker.execute(() -> {
+                    wakeQueued.set(false);
+                    sequenceAndCheck();
+                });
+            } catch (RejectedExecutionException e) {
+                wakeQueued.set(false);
+            }
+        }
+    }
+
+    private void sequenceAndCheck() {
+        try {
+            sequence();
+            checkWaiters();
+        } catch (RuntimeException e) {
+            log.warn("Event log sequencing failed: {}", e.getMessage());
+        }
+    }
+
+    // One read for all waiters, from the lowest offset any of them is after, each answered with its slice
+    private void checkWaiters() {
+        while (!waiters.isEmpty()) {
+            List<Waiter> parked = List.copyOf(waiters);
+            long after = Long.MAX_VALUE;
+            int batch = 1;
+            for (Waiter w : parked) {
+                after = Math.min(after, w.after());
+                batch = Math.max(batch, w.batch());
+            }
+            List<EventLogEntry> entries;
+            try {
+                entries = find(after, batch);
+            } catch (RuntimeException e) {
+                for (Waiter w : parked) {
+                    if (waiters.remove(w)) {
+                        waiting.release();
+                        w.page().completeExceptionally(e);
+                    }
+                }
+                return;
+            }
+            if (entries.isEmpty()) return;
+            for (Waiter w : parked) {
+                List<EventLogEntry> slice = slice(entries, w);
+                if (!slice.isEmpty()) {
+                    complete(w, slice);
+                }
+            }
+            // A full read may stop short of later waiters' events; the lowest waiter was answered, so read on
+            if (entries.size() < batch) return;
+        }
+    }
+
+    private static List<EventLogEntry> slice(List<EventLogEntry> entries, Waiter w) {
+        int from = 0;
+        while (from < entries.size() && entries.get(from).getEventOffset() <= w.after()) {
+            from++;
+        }
+        return entries.subList(from, Math.min(entries.size(), from + w.batch()));
+    }
+
+    // Whoever removes the waiter answers it, so the deadline and a check never both do
+    private void complete(Waiter w, List<EventLogEntry> entries) {
+        if (waiters.remove(w)) {
+            waiting.release();
+            w.page().complete(page(w.after(), entries));
+        }
+    }
+
+    private List<EventLogEntry> find(long after, int batch) {
+        return eventLogRepository.findByEventOffsetGreaterThanOrderByEventOffset(after, Limit.of(batch));
+    }
+
+    private EventPage page(long after, List<EventLogEntry> entries) {
+        List<EventPage.Event> events = new ArrayList<>(entries.size());
+        for (EventLogEntry e : entries) {
+            events.add(new EventPage.Event(e.getEventOffset(), e.getType(), e.getAggregateId(), e.getPayload(),
+                    e.getCreatedAt()));
+        }
+        long nextAfter = entries.isEmpty() ? after : entries.get(entries.size() - 1).getEventOffset();
+        return new EventPage(events.isEmpty() ? "No new events" : "Events listed", events.size(), events, nextAfter);
+    }
+
+    private record Waiter(long after, int batch, CompletableFuture<EventPage> page) {
+    }
+
+    private String toJson(Object event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize " + event.getClass().getSimpleName(), e);
+        }
+    }
+}
@@ -1,37 +1,75 @@
 package com.example.omsv6.service;
 
-import org.springframework.beans.factory.annotation.Value;
+import com.example.omsv6.config.ExternalApiProperties;
+import com.example.omsv6.config.ExternalApiRestTemplates;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 
 import java.math.BigDecimal;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
 import java.time.Instant;
 import java.util.*;
-
+import java.util.function.Supplier;
+
+/**
+ * Calls to the payment/shipping provider. Every operation runs behind its own retry, circuit
+ * breaker and bulkhead (configured under {@code resilience4j.*.instances.<operation>}), and any
+ * failure surfaces as an {@link ExternalApiException}.
+ *
+ * <p>Each operation is timed as {@code external.api.calls{operation,outcome}}, retries included;
+ * {@code outcome} is {@code success} or the lower-cased {@link ExternalApiException.Reason}.
+ */
 @Service
 public class ExternalApiClient {
 
-    private final RestTemplate restTemplate;
-
-    @Value("${external.api.base-url:https://httpbin.org}")
-    private String baseUrl;
-
-    @Value("${external.api.timeout-ms:2000}")
-    private String timeoutMs;
-
-    public ExternalApiClient(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private final ExternalApiRestTemplates restTemplates;
+    private final String baseUrl;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final RetryRegistry retryRegistry;
+    private final MeterRegistry meterRegistry;
+
+    public ExternalApiClient(ExternalApiRestTemplates restTemplates, ExternalApiProperties properties,
+                             CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry,
+                             RetryRegistry retryRegistry, MeterRegistry meterRegistry) {
+        this.restTemplates = restTemplates;
+        this.baseUrl = properties.getBaseUrl();
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.retryRegistry = retryRegistry;
+        this.meterRegistry = meterRegistry;
     }
 
-    public Map<String, Object> fetchShippingQuote(String customerId, String sku, int quantity) {
+    public Map<String, Object> fetchShippingQuote(String customerId, Map<String, Integer> quantityBySku) {
+        List<Map<String, Object>> items = new ArrayList<>(quantityBySku.size());
+        quantityBySku.forEach((sku, quantity) -> items.add(Map.of("sku", sku, "quantity", quantity)));
         Map<String, Object> payload = new HashMap<>();
         payload.put("customerId", customerId);
-        payload.put("sku", sku);
-        payload.put("quantity", quantity);
+        payload.put("items", items);
         payload.put("requestedAt", Instant.now().toString());
 
-        Map<String, Object> result = postToExternal("/post", payload);
+        Map<String, Object> result = postToExternal(ExternalApiProperties.SHIPPING_QUOTE, "/post", payload, null);
         Map<String, Object> response = new HashMap<>();
         response.put("message", "External shipping quote fetched");
         response.put("provider", "httpbin");
@@ -40,7 +78,11 @@ public class ExternalApiClient {
         return response;
     }
 
-    public String authorizePayment(Long orderId, BigDecimal amount, String currency) {
+    /**
+     * Calls for the same payment operation must reuse one {@code idempotencyKey}, so the
+     * provider executes a retried call only once.
+     */
+    public String authorizePayment(Long orderId, BigDecimal amount, String currency, String idempotencyKey) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("orderId", orderId);
         payload.put("amount", amount);
@@ -48,49 +90,166 @@ public class ExternalApiClient {
         payload.put("action", "AUTHORIZE");
         payload.put("requestedAt", Instant.now().toString());
 
-        postToExternal("/post", payload);
-        return "AUTH-" + orderId + "-" + System.currentTimeMillis();
+        postToExternal(ExternalApiProperties.AUTHORIZE, "/post", payload, idempotencyKey);
+        // httpbin issues no reference; derive it from the key so a retried authorization yields the same one
+        return "AUTH-" + idempotencyKey;
     }
 
-    public boolean capturePayment(String externalReference) {
+    public void capturePayment(String externalReference, BigDecimal amount, String idempotencyKey) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("externalReference", externalReference);
+        payload.put("amount", amount);
         payload.put("action", "CAPTURE");
         payload.put("requestedAt", Instant.now().toString());
 
-        Map<String, Object> result = postToExternal("/post", payload);
-        return result != null;
+        postToExternal(ExternalApiProperties.CAPTURE, "/post", payload, idempotencyKey);
     }
 
-    public boolean refundPayment(String externalReference, BigDecimal amount) {
+    public void refundPayment(String externalReference, BigDecimal amount, String idempotencyKey) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("externalReference", externalReference);
         payload.put("amount", amount);
         payload.put("action", "REFUND");
         payload.put("requestedAt", Instant.now().toString());
 
-        Map<String, Object> result = postToExternal("/post", payload);
-        return result != null;
+        postToExternal(ExternalApiProperties.REFUND, "/post", payload, idempotencyKey);
+    }
+
+    // Releases an authorization hold that will never be captured
+    public void voidPayment(String externalReference, BigDecimal amount, String idempotencyKey) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("externalReference", externalReference);
+        payload.put("amount", amount);
+        payload.put("action", "VOID");
+        payload.put("requestedAt", Instant.now().toString());
+
+        postToExternal(ExternalApiProperties.VOID, "/post", payload, idempotencyKey);
+    }
+
+    /**
+     * What the provider holds for the given external references. References it does not know are
+     * absent from the result.
+     */
+    public Map<String, ProviderPayment> lookupPayments(Collection<String> externalReferences) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("references", List.copyOf(externalReferences));
+        payload.put("action", "LOOKUP");
+        payload.put("requestedAt", Instant.now().toString());
+
+        Map<String, Object> result = postToExternal(ExternalApiProperties.PAYMENT_LOOKUP, "/post", payload, null);
+        Object payments = ((Map<?, ?>) result.get("body")).get("payments");
+        if (!(payments instanceof List<?> list)) {
+            throw new ExternalApiException(ExternalApiProperties.PAYMENT_LOOKUP, ExternalApiException.Reason.IO,
+                    (Integer) result.get("httpStatus"), "response lists no payments", null);
+        }
+        Map<String, ProviderPayment> found = new HashMap<>(list.size() * 2);
+        for (Object item : list) {
+            Map<?, ?> p = (Map<?, ?>) item;
+            String reference = String.valueOf(p.get("reference"));
+            found.put(reference, new ProviderPayment(reference, (String) p.get("status"), decimal(p.get("amount")),
+                    decimal(p.get("capturedAmount")), decimal(p.get("refundedAmount"))));
+        }
+        return found;
+    }
+
+    private static BigDecimal decimal(Object value) {
+        return value != null ? new BigDecimal(value.toString()) : null;
+    }
+
+    /**
+     * A payment as the provider reports it; {@code status} uses the {@code PaymentStatus} names, and
+     * {@code capturedAmount} and {@code refundedAmount} are what it has captured and refunded so far.
+     */
+    public record ProviderPayment(String reference, String status, BigDecimal amount, BigDecimal capturedAmount,
+                                  BigDecimal refundedAmount) {
+    }
+
+    private Map<String, Object> postToExternal(String operation, String path, Map<String, Object> payload,
+                                               String idempotencyKey) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return call(operation, path, payload, idempotencyKey);
+        } catch (ExternalApiException e) {
+            outcome = e.getReason().name().toLowerCase();
+            throw e;
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            sample.stop(meterRegistry.timer("external.api.calls", "operation", operation, "outcome", outcome));
+        }
+    }
+
+    private Map<String, Object> call(String operation, String path, Map<String, Object> payload,
+                                     String idempotencyKey) {
+        Supplier<Map<String, Object>> call = () -> exchange(operation, path, payload, idempotencyKey);
+        call = Bulkhead.decorateSupplier(bulkheadRegistry.bulkhead(operation), call);
+        call = CircuitBreaker.decorateSupplier(circuitBreakerRegistry.circuitBreaker(operation), call);
+        call = Retry.decorateSupplier(retryRegistry.retry(operation), call);
+
+        Map<String, Object> out;
+        try {
+            out = call.get();
+        } catch (CallNotPermittedException e) {
+            throw rejected(operation, ExternalApiException.Reason.CIRCUIT_OPEN, "circuit breaker open", e);
+        } catch (BulkheadFullException e) {
+            throw rejected(operation, ExternalApiException.Reason.BULKHEAD_FULL, "too many concurrent calls", e);
+        }
+
+        // 4xx is returned rather than thrown inside the breaker: it is our request that is wrong,
+        // not the provider that is unhealthy
+        int status = (Integer) out.get("httpStatus");
+        if (status >= 300) {
+            throw new ExternalApiException(operation, ExternalApiException.Reason.HTTP_STATUS, status,
+                    "provider returned HTTP " + status, null);
+        }
+        return out;
     }
 
-    private Map<String, Object> postToExternal(String path, Map<String, Object> payload) {
+    private Map<String, Object> exchange(String operation, String path, Map<String, Object> payload,
+                                         String idempotencyKey) {
         try {
             String url = baseUrl + path;
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_JSON);
+            if (idempotencyKey != null) {
+                headers.set(IDEMPOTENCY_KEY, idempotencyKey);
+            }
             HttpEntity<Map<String, Object>> entity = new HttpEntity<>(payload, headers);
-            ResponseEntity<Map> resp = restTemplate.exchange(url, HttpMethod.POST, entity, Map.class);
+            ResponseEntity<Map> resp = restTemplates.forOperation(operation).exchange(url, HttpMethod.POST, entity, Map.class);
             Map<String, Object> body = resp.getBody() != null ? resp.getBody() : new HashMap<>();
             Map<String, Object> out = new HashMap<>();
             out.put("httpStatus", resp.getStatusCode().value());
             out.put("body", body);
             return out;
-        } catch (Exception e) {
+        } catch (HttpClientErrorException e) {
             Map<String, Object> out = new HashMap<>();
-            out.put("httpStatus", 0);
-            out.put("error", e.getClass().getSimpleName());
-            out.put("message", e.getMessage());
+            out.put("httpStatus", e.getStatusCode().value());
             return out;
+        } catch (HttpServerErrorException e) {
+            throw new ExternalApiException(operation, ExternalApiException.Reason.HTTP_STATUS,
+                    e.getStatusCode().value(), "provider returned HTTP " + e.getStatusCode().value(), e);
+        } catch (ResourceAccessException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+                    || cause instanceof HttpConnectTimeoutException
+                    || cause instanceof ConnectionRequestTimeoutException) {
+                throw new ExternalApiConnectException(operation, String.valueOf(cause.getMessage()), e);
+            }
+            if (cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException) {
+                throw new ExternalApiException(operation, ExternalApiException.Reason.TIMEOUT, 0, "read timed out", e);
+            }
+            throw new ExternalApiException(operation, ExternalApiException.Reason.IO, 0, String.valueOf(e.getMessage()), e);
+        } catch (RestClientException e) {
+            throw new ExternalApiException(operation, ExternalApiException.Reason.IO, 0, String.valueOf(e.getMessage()), e);
         }
     }
+
+    private ExternalApiException rejected(String operation, ExternalApiException.Reason reason, String message,
+                                          RuntimeException cause) {
+        meterRegistry.counter("external.api.rejected", "operation", operation,
+                "reason", reason.name().toLowerCase()).increment();
+        return new ExternalApiException(operation, reason, 0, message, cause);
+    }
 }
@@ -0,0 +1,12 @@
+package com.example.omsv6.service;
+
+/**
+ * The request never reached the provider (connection refused, connect timeout, no pooled
+ * connection available), so retrying it cannot duplicate a payment operation.
+ */
+public class ExternalApiConnectException extends ExternalApiException {
+
+    public ExternalApiConnectException(String operation, String message, Throwable cause) {
+        super(operation, Reason.CONNECT, 0, message, cause);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.omsv6.service;
+
+/**
+ * A call to the external provider did not succeed: transport error, timeout, non-2xx status,
+ * or the call was refused locally by the circuit breaker or bulkhead.
+ */
+public class ExternalApiException extends RuntimeException {
+
+    public enum Reason { CONNECT, TIMEOUT, IO, HTTP_STATUS, CIRCUIT_OPEN, BULKHEAD_FULL }
+
+    private final String operation;
+    private final Reason reason;
+    private final int httpStatus;
+
+    public ExternalApiException(String operation, Reason reason, int httpStatus, String message, Throwable cause) {
+        super(operation + ": " + message, cause);
+        this.operation = operation;
+        this.reason = reason;
+        this.httpStatus = httpStatus;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Status returned by the provider, or 0 when no response was received.
+     */
+    public int getHttpStatus() {
+        return httpStatus;
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.entity.IdempotencyRecord;
+import com.example.omsv6.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates requests that carry an {@code Idempotency-Key}. The first request with a key runs;
+ * its response is stored in the same transaction as the work it did, and a retry with the same
+ * key and body gets that response back without running again. Reusing a key with a different
+ * body is rejected with 422.
+ *
+ * <p>Responses are looked up in a bounded in-memory cache first and in {@code idempotency_records}
+ * after a restart or on another instance; both expire after {@code app.idempotency.ttl}.
+ * Concurrent duplicates within one instance wait for the first execution instead of starting
+ * their own; across instances the primary key on the record lets only one of them commit.
+ *
+ * <p>Only successful responses are stored, so a request that failed can be retried with the
+ * same key.
+ */
+@Service
+@Timed("service.calls")
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository recordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Duration ttl;
+    private final Cache<String, Entry> entries;
+
+    public IdempotencyService(IdempotencyRecordRepository recordRepository, ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                              @Value("${app.idempotency.cache.max-size:10000}") long maxSize,
+                              @Value("${app.idempotency.ttl:24h}") Duration ttl) {
+        this.recordRepository = recordRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.ttl = ttl;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "idempotency");
+    }
+
+    /**
+     * Runs {@code action} once per {@code scope}, {@code owner} (the caller) and {@code key};
+     * without a key it simply runs.
+     */
+    public <T> T execute(String scope, String owner, String key, Object request, Class<T> responseType,
+                         Supplier<T> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw ApiException.badRequest(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String id = scope + ":" + owner + ":" + key;
+        Entry mine = new Entry(fingerprint(request), new CompletableFuture<>());
+        Entry existing = entries.asMap().putIfAbsent(id, mine);
+        if (existing != null) {
+            checkSameRequest(existing.requestHash, mine.requestHash, key);
+            String outcome = existing.response.isDone() ? "replayed" : "coalesced";
+            Stored stored = await(existing.response);
+            count(scope, outcome);
+            return stored.as(responseType, objectMapper);
+        }
+
+        try {
+            Stored stored = loadOrRun(scope, id, key, mine.requestHash, action);
+            mine.response.complete(stored);
+            return stored.as(responseType, objectMapper);
+        } catch (RuntimeException e) {
+            entries.asMap().remove(id, mine);
+            mine.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Stored loadOrRun(String scope, String id, String key, String requestHash, Supplier<?> action) {
+        Optional<IdempotencyRecord> record = recordRepository.findLive(id, LocalDateTime.now());
+        if (record.isPresent()) {
+            checkSameRequest(record.get().getRequestHash(), requestHash, key);
+            count(scope, "replayed");
+            return new Stored(null, record.get().getResponseBody());
+        }
+
+        try {
+            Stored stored = transactionTemplate.execute(status -> {
+                Object response = action.get();
+                LocalDateTime now = LocalDateTime.now();
+                recordRepository.deleteIfExpired(id, now);
+                IdempotencyRecord r = new IdempotencyRecord();
+                r.setId(id);
+                r.setRequestHash(requestHash);
+                r.setResponseBody(toJson(response));
+                r.setCreatedAt(now);
+                r.setExpiresAt(now.plus(ttl));
+                recordRepository.saveAndFlush(r);
+                return new Stored(response, r.getResponseBody());
+            });
+            count(scope, "executed");
+            return stored;
+        } catch (DataIntegrityViolationException e) {
+            // Another instance committed the same key first; our work was rolled back, answer with theirs
+            IdempotencyRecord winner = recordRepository.findLive(id, LocalDateTime.now()).orElseThrow(() -> e);
+            checkSameRequest(winner.getRequestHash(), requestHash, key);
+            log.info("Idempotency key {} was executed concurrently on another instance", id);
+            count(scope, "replayed");
+            return new Stored(null, winner.getResponseBody());
+        }
+    }
+
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.MINUTES)
+    public void purgeExpired() {
+        int purged = recordRepository.deleteExpired(LocalDateTime.now());
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency records", purged);
+        }
+    }
+
+    private static Stored await(CompletableFuture<Stored> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private void checkSameRequest(String storedHash, String requestHash, String key) {
+        if (!storedHash.equals(requestHash)) {
+            throw new ApiException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    HEADER + " was already used for a different request", null).with("idempotencyKey", key);
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot fingerprint request", e);
+        }
+    }
+
+    private String toJson(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot store response", e);
+        }
+    }
+
+    private void count(String scope, String outcome) {
+        meterRegistry.counter("idempotency.requests", "scope", scope, "outcome", outcome).increment();
+    }
+
+    private record Entry(String requestHash, CompletableFuture<Stored> response) {
+    }
+
+    // The response object when this instance produced it, otherwise only its stored JSON
+    private record Stored(Object value, String body) {
+        <T> T as(Class<T> type, ObjectMapper objectMapper) {
+            if (type.isInstance(value)) return type.cast(value);
+            try {
+                return objectMapper.readValue(body, type);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Cannot read stored response", e);
+            }
+        }
+    }
+}
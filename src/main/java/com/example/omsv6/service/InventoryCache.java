@@ -0,0 +1,84 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.repository.InventoryItemRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Read-through cache of inventory rows by SKU, plus the full SKU-ordered listing.
+ *
+ * <p>Entries are immutable snapshots read from committed data. Every stock write calls
+ * {@link #evict}, which drops the entry at once and again after the writing transaction
+ * completes: a reader that re-caches the pre-commit row in between is cleared by the second
+ * eviction. {@code app.inventory.cache.ttl} caps how long any entry can live regardless.
+ */
+@Component
+public class InventoryCache {
+
+    public record Snapshot(Long id, String sku, String name, int quantityAvailable, int quantityReserved,
+                           LocalDateTime createdAt, LocalDateTime updatedAt) {
+        static Snapshot of(InventoryItem i) {
+            return new Snapshot(i.getId(), i.getSku(), i.getName(), i.getQuantityAvailable(),
+                    i.getQuantityReserved(), i.getCreatedAt(), i.getUpdatedAt());
+        }
+    }
+
+    private static final String ALL = "all";
+
+    private final InventoryItemRepository inventoryItemRepository;
+    // Optional.empty() caches "no such SKU" for polled unknown SKUs too
+    private final Cache<String, Optional<Snapshot>> bySku;
+    private final Cache<String, List<Snapshot>> all;
+
+    public InventoryCache(InventoryItemRepository inventoryItemRepository, MeterRegistry meterRegistry,
+                          @Value("${app.inventory.cache.max-size:10000}") long maxSize,
+                          @Value("${app.inventory.cache.ttl:5s}") Duration ttl) {
+        this.inventoryItemRepository = inventoryItemRepository;
+        this.bySku = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.all = Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, bySku, "inventory.items");
+        CaffeineCacheMetrics.monitor(meterRegistry, all, "inventory.listing");
+    }
+
+    public Optional<Snapshot> get(String sku) {
+        return bySku.get(sku, s -> inventoryItemRepository.findBySku(s).map(Snapshot::of));
+    }
+
+    public List<Snapshot> getAll() {
+        return all.get(ALL, k -> inventoryItemRepository.findAllByOrderBySkuAsc().stream().map(Snapshot::of).toList());
+    }
+
+    public void evict(String sku) {
+        bySku.invalidate(sku);
+        all.invalidateAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    bySku.invalidate(sku);
+                    all.invalidateAll();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.repository.InventoryItemRepository;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Reserves and releases stock with single conditional UPDATE statements, so concurrent
+ * orders on the same SKU can never drive {@code quantityAvailable} below zero and never
+ * wait on an application-level lock. The row lock taken by the UPDATE is held only for
+ * the (short) enclosing order transaction.
+ */
+@Service
+@Timed("service.calls")
+public class InventoryReservationService {
+
+    public enum Outcome { RESERVED, INSUFFICIENT_STOCK, NOT_FOUND }
+
+    public record Reservation(Outcome outcome, int available) {
+        public boolean isReserved() {
+            return outcome == Outcome.RESERVED;
+        }
+    }
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+
+    @Autowired
+    private InventoryCache inventoryCache;
+
+    @Transactional
+    public Reservation reserve(String sku, int quantity) {
+        if (inventoryItemRepository.reserve(sku, quantity, LocalDateTime.now()) == 1) {
+            inventoryCache.evict(sku);
+            return new Reservation(Outcome.RESERVED, -1);
+        }
+        // Slow path only: find out why the guarded update did not match
+        Optional<InventoryItem> itemOpt = inventoryItemRepository.findBySku(sku);
+        return itemOpt
+                .map(item -> new Reservation(Outcome.INSUFFICIENT_STOCK, item.getQuantityAvailable()))
+                .orElseGet(() -> new Reservation(Outcome.NOT_FOUND, 0));
+    }
+
+    @Transactional
+    public boolean release(String sku, int quantity) {
+        inventoryCache.evict(sku);
+        return inventoryItemRepository.release(sku, quantity, LocalDateTime.now()) == 1;
+    }
+
+    @Transactional
+    public boolean adjustAvailable(String sku, int delta) {
+        inventoryCache.evict(sku);
+        return inventoryItemRepository.adjustAvailable(sku, delta, LocalDateTime.now()) == 1;
+    }
+}
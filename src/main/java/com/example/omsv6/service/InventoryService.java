@@ -1,8 +1,17 @@
 package com.example.omsv6.service;
 
+import com.example.omsv6.dto.AdjustStockRequest;
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.InventoryItemCreatedResponse;
+import com.example.omsv6.dto.InventoryItemResponse;
+import com.example.omsv6.dto.InventoryListResponse;
+import com.example.omsv6.dto.StockAdjustedResponse;
 import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.event.InventoryChangedEvent;
 import com.example.omsv6.repository.InventoryItemRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -10,34 +19,33 @@ import java.time.LocalDateTime;
 import java.util.*;
 
 @Service
+@Timed("service.calls")
 public class InventoryService {
 
     @Autowired
     private InventoryItemRepository inventoryItemRepository;
 
-    @Transactional
-    public Map<String, Object> createItem(Map<String, Object> request) {
-        Object skuObj = request.get("sku");
-        String sku = skuObj != null ? skuObj.toString() : "";
+    @Autowired
+    private InventoryReservationService inventoryReservationService;
 
-        Object nameObj = request.get("name");
-        String name = nameObj != null ? nameObj.toString() : "";
+    @Autowired
+    private InventoryCache inventoryCache;
 
-        Object qtyObj = request.get("quantityAvailable");
-        int qty = safeInt(qtyObj, 0);
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Transactional
+    public InventoryItemCreatedResponse createItem(CreateInventoryItemRequest request) {
+        String sku = request.sku() != null ? request.sku() : "";
+        String name = request.name() != null ? request.name() : "";
+        int qty = request.quantityAvailable() != null ? request.quantityAvailable() : 0;
 
-        Map<String, Object> response = new HashMap<>();
         if (sku.isBlank()) {
-            response.put("message", "Validation failed");
-            response.put("error", "sku is required");
-            return response;
+            throw ApiException.badRequest("sku is required");
         }
 
-        Optional<InventoryItem> existing = inventoryItemRepository.findBySku(sku);
-        if (existing.isPresent()) {
-            response.put("message", "Item already exists");
-            response.put("sku", sku);
-            return response;
+        if (inventoryItemRepository.findBySku(sku).isPresent()) {
+            throw ApiException.conflict("Item already exists").with("sku", sku);
         }
 
         InventoryItem item = new InventoryItem();
@@ -48,107 +56,58 @@ public class InventoryService {
         item.setCreatedAt(LocalDateTime.now());
         item.setUpdatedAt(LocalDateTime.now());
         item = inventoryItemRepository.save(item);
+        inventoryCache.evict(sku);
+        eventPublisher.publishEvent(new InventoryChangedEvent(sku, item.getQuantityAvailable(),
+                item.getQuantityAvailable(), 0, item.getCreatedAt()));
 
-        response.put("message", "Inventory item created");
-        response.put("itemId", item.getId());
-        response.put("sku", item.getSku());
-        response.put("quantityAvailable", item.getQuantityAvailable());
-        return response;
+        return new InventoryItemCreatedResponse("Inventory item created", item.getId(), item.getSku(),
+                item.getQuantityAvailable());
     }
 
-    public Map<String, Object> getItemBySku(String sku) {
-        Map<String, Object> response = new HashMap<>();
+    public InventoryItemResponse getItemBySku(String sku) {
         String s = sku != null ? sku : "";
-        Optional<InventoryItem> itemOpt = inventoryItemRepository.findBySku(s);
-        if (itemOpt.isEmpty()) {
-            response.put("message", "Inventory item not found");
-            response.put("sku", s);
-            return response;
-        }
-        InventoryItem item = itemOpt.get();
-        response.put("message", "Inventory item retrieved");
-        response.put("item", toItemMap(item));
-        return response;
+        InventoryCache.Snapshot item = inventoryCache.get(s)
+                .orElseThrow(() -> ApiException.notFound("Inventory item not found").with("sku", s));
+        return new InventoryItemResponse("Inventory item retrieved", item);
     }
 
     @Transactional
-    public Map<String, Object> adjustStock(String sku, Map<String, Object> request) {
-        Object deltaObj = request.get("delta");
-        int delta = safeInt(deltaObj, 0);
-
-        Map<String, Object> response = new HashMap<>();
-        String s = sku != null ? sku : "";
-        Optional<InventoryItem> itemOpt = inventoryItemRepository.findBySku(s);
-        if (itemOpt.isEmpty()) {
-            response.put("message", "Inventory item not found");
-            response.put("sku", s);
-            return response;
+    public StockAdjustedResponse adjustStock(String sku, AdjustStockRequest request) {
+        if (request.delta() == null) {
+            throw ApiException.badRequest("delta is required");
         }
+        int delta = request.delta();
 
-        InventoryItem item = itemOpt.get();
-        int newAvailable = item.getQuantityAvailable() + delta;
-        if (newAvailable < 0) {
-            response.put("message", "Insufficient available stock for adjustment");
-            response.put("sku", s);
-            response.put("available", item.getQuantityAvailable());
-            response.put("delta", delta);
-            return response;
+        String s = sku != null ? sku : "";
+        boolean adjusted = inventoryReservationService.adjustAvailable(s, delta);
+        InventoryItem item = inventoryItemRepository.findBySku(s)
+                .orElseThrow(() -> ApiException.notFound("Inventory item not found").with("sku", s));
+
+        if (!adjusted) {
+            throw ApiException.conflict("Insufficient available stock for adjustment")
+                    .with("sku", s)
+                    .with("available", item.getQuantityAvailable())
+                    .with("delta", delta);
         }
+        eventPublisher.publishEvent(new InventoryChangedEvent(s, delta, item.getQuantityAvailable(),
+                item.getQuantityReserved(), LocalDateTime.now()));
 
-        item.setQuantityAvailable(newAvailable);
-        item.setUpdatedAt(LocalDateTime.now());
-        inventoryItemRepository.save(item);
-
-        response.put("message", "Stock adjusted");
-        response.put("sku", s);
-        response.put("quantityAvailable", item.getQuantityAvailable());
-        response.put("quantityReserved", item.getQuantityReserved());
-        return response;
+        return new StockAdjustedResponse("Stock adjusted", s, item.getQuantityAvailable(), item.getQuantityReserved());
     }
 
-    public Map<String, Object> listItems(int lowStockThreshold) {
-        Map<String, Object> response = new HashMap<>();
+    // Cached snapshots are immutable and serialized as-is, so listing allocates no per-item copies
+    public InventoryListResponse listItems(int lowStockThreshold) {
         int threshold = Math.max(0, lowStockThreshold);
 
-        List<InventoryItem> items = inventoryItemRepository.findAllByOrderBySkuAsc();
-        List<Map<String, Object>> list = new ArrayList<>();
-        List<Map<String, Object>> lowStock = new ArrayList<>();
-
-        for (InventoryItem i : items) {
-            Map<String, Object> m = toItemMap(i);
-            list.add(m);
-            if (i.getQuantityAvailable() <= threshold) {
-                lowStock.add(m);
+        List<InventoryCache.Snapshot> items = inventoryCache.getAll();
+        List<InventoryCache.Snapshot> lowStock = new ArrayList<>();
+        for (InventoryCache.Snapshot i : items) {
+            if (i.quantityAvailable() <= threshold) {
+                lowStock.add(i);
             }
         }
 
-        response.put("message", "Inventory items listed");
-        response.put("count", list.size());
-        response.put("items", list);
-        response.put("lowStockThreshold", threshold);
-        response.put("lowStockCount", lowStock.size());
-        response.put("lowStockItems", lowStock);
-        return response;
-    }
-
-    private int safeInt(Object obj, int defaultValue) {
-        if (obj == null) return defaultValue;
-        try {
-            return Integer.parseInt(obj.toString());
-        } catch (Exception e) {
-            return defaultValue;
-        }
-    }
-
-    private Map<String, Object> toItemMap(InventoryItem i) {
-        Map<String, Object> m = new HashMap<>();
-        m.put("id", i.getId());
-        m.put("sku", i.getSku());
-        m.put("name", i.getName());
-        m.put("quantityAvailable", i.getQuantityAvailable());
-        m.put("quantityReserved", i.getQuantityReserved());
-        m.put("createdAt", i.getCreatedAt() != null ? i.getCreatedAt().toString() : null);
-        m.put("updatedAt", i.getUpdatedAt() != null ? i.getUpdatedAt().toString() : null);
-        return m;
+        return new InventoryListResponse("Inventory items listed", items.size(), items, threshold,
+                lowStock.size(), lowStock);
     }
 }
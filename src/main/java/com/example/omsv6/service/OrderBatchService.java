@@ -0,0 +1,231 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.BatchOrderResponse;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.event.OrderCreatedEvent;
+import com.example.omsv6.repository.InventoryItemRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Bulk order ingestion. Lines are consumed in chunks, each chunk in its own transaction:
+ * lines are grouped by SKU so every SKU is reserved with one guarded UPDATE, and orders
+ * are persisted through Hibernate JDBC batching.
+ */
+@Service
+@Timed("service.calls")
+public class OrderBatchService {
+
+    private static final int MAX_RESERVE_ATTEMPTS = 3;
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+
+    @Autowired
+    private InventoryCache inventoryCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.orders.batch.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int jdbcBatchSize;
+
+    @Value("${app.orders.reservation-ttl:30m}")
+    private Duration reservationTtl;
+
+    public OrderBatchService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public BatchOrderResponse createOrders(Iterator<CreateOrderRequest> lines) {
+        List<BatchOrderResponse.LineResult> results = new ArrayList<>();
+        List<Line> chunk = new ArrayList<>(chunkSize);
+        int index = 0;
+        while (lines.hasNext()) {
+            chunk.add(parseLine(index++, lines.next()));
+            if (chunk.size() == chunkSize) {
+                results.addAll(processChunk(chunk));
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(processChunk(chunk));
+        }
+
+        int accepted = 0;
+        for (BatchOrderResponse.LineResult r : results) {
+            if (r.orderId() != null) {
+                accepted++;
+            } else {
+                meterRegistry.counter("business.outcomes", "operation", "createOrdersBatch", "outcome", r.error())
+                        .increment();
+            }
+        }
+        return new BatchOrderResponse("Batch processed", results.size(), accepted, results.size() - accepted, results);
+    }
+
+    private List<BatchOrderResponse.LineResult> processChunk(List<Line> chunk) {
+        List<BatchOrderResponse.LineResult> results = transactionTemplate.execute(status -> {
+            // Sorted so concurrent batches lock inventory rows in the same order
+            Map<String, List<Line>> bySku = new TreeMap<>();
+            for (Line line : chunk) {
+                if (line.error == null) {
+                    bySku.computeIfAbsent(line.sku, k -> new ArrayList<>()).add(line);
+                }
+            }
+            Map<String, Integer> available = loadAvailable(bySku.keySet());
+            for (Map.Entry<String, List<Line>> e : bySku.entrySet()) {
+                reserveSku(e.getKey(), e.getValue(), available.get(e.getKey()));
+            }
+            persistAccepted(chunk);
+            return toResults(chunk);
+        });
+        return results != null ? results : List.of();
+    }
+
+    private void reserveSku(String sku, List<Line> lines, Integer available) {
+        for (int attempt = 0; attempt < MAX_RESERVE_ATTEMPTS; attempt++) {
+            if (available == null) {
+                reject(lines, "Inventory item not found");
+                return;
+            }
+
+            int total = 0;
+            for (Line line : lines) {
+                line.error = null;
+                if (total + line.quantity <= available) {
+                    total += line.quantity;
+                } else {
+                    line.error = "Insufficient stock";
+                }
+            }
+            if (total == 0) {
+                return;
+            }
+            if (inventoryItemRepository.reserve(sku, total, LocalDateTime.now()) == 1) {
+                inventoryCache.evict(sku);
+                return;
+            }
+            // Someone else reserved stock between the read and the UPDATE; re-read and retry
+            available = loadAvailable(Set.of(sku)).get(sku);
+        }
+        reject(lines, "Insufficient stock");
+    }
+
+    private Map<String, Integer> loadAvailable(Collection<String> skus) {
+        Map<String, Integer> available = new HashMap<>();
+        if (skus.isEmpty()) return available;
+        for (Object[] row : inventoryItemRepository.findAvailableBySkuIn(skus)) {
+            available.put((String) row[0], ((Number) row[1]).intValue());
+        }
+        return available;
+    }
+
+    private void persistAccepted(List<Line> chunk) {
+        LocalDateTime now = LocalDateTime.now();
+        int pending = 0;
+        List<OrderEntity> created = new ArrayList<>();
+        for (Line line : chunk) {
+            if (line.error != null) continue;
+            OrderEntity order = new OrderEntity();
+            order.setCustomerId(line.customerId);
+            order.getLines().add(new OrderLine(line.sku, line.quantity, line.amount));
+            order.setAmount(line.amount);
+            order.setStatus(OrderStatus.CREATED);
+            order.setShippingQuoteStatus(ShippingQuoteService.PENDING);
+            order.setCreatedAt(now);
+            order.setUpdatedAt(now);
+            order.setReservationExpiresAt(now.plus(reservationTtl));
+            entityManager.persist(order);
+            line.orderId = order.getId();
+            created.add(order);
+            if (++pending == jdbcBatchSize) {
+                entityManager.flush();
+                entityManager.clear();
+                pending = 0;
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        for (OrderEntity order : created) {
+            eventPublisher.publishEvent(new OrderCreatedEvent(order.getId(), order.getCustomerId(),
+                    List.copyOf(order.getLines()), order.getAmount(), order.getStatus(), order.getCreatedAt()));
+        }
+    }
+
+    private void reject(List<Line> lines, String error) {
+        for (Line line : lines) {
+            line.error = error;
+        }
+    }
+
+    private List<BatchOrderResponse.LineResult> toResults(List<Line> chunk) {
+        List<BatchOrderResponse.LineResult> results = new ArrayList<>(chunk.size());
+        for (Line line : chunk) {
+            results.add(line.error == null
+                    ? new BatchOrderResponse.LineResult(line.index, OrderStatus.CREATED.name(), line.orderId, null)
+                    : new BatchOrderResponse.LineResult(line.index, "REJECTED", null, line.error));
+        }
+        return results;
+    }
+
+    // Bad lines are reported per line rather than failing the whole batch
+    private Line parseLine(int index, CreateOrderRequest request) {
+        Line line = new Line(index);
+        line.customerId = request != null && request.customerId() != null ? request.customerId() : "";
+        line.sku = request != null && request.sku() != null ? request.sku() : "";
+        line.quantity = request != null && request.quantity() != null ? request.quantity() : 1;
+        line.amount = request != null && request.amount() != null ? request.amount() : BigDecimal.ZERO;
+
+        if (request != null && request.lines() != null) {
+            line.error = "batch lines take a single sku; send carts to POST /api/orders";
+        } else if (line.customerId.isBlank() || line.sku.isBlank()) {
+            line.error = "customerId and sku are required";
+        } else if (line.quantity <= 0) {
+            line.error = "quantity must be > 0";
+        }
+        return line;
+    }
+
+    private static final class Line {
+        final int index;
+        String customerId;
+        String sku;
+        int quantity;
+        BigDecimal amount;
+        String error;
+        Long orderId;
+
+        Line(int index) {
+            this.index = index;
+        }
+    }
+}
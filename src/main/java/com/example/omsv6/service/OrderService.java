@@ -1,250 +1,370 @@
 package com.example.omsv6.service;
 
-import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.dto.CancelOrderResponse;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreateOrderResponse;
+import com.example.omsv6.dto.OrderPage;
+import com.example.omsv6.dto.OrderResponse;
+import com.example.omsv6.dto.OrderStatusResponse;
+import com.example.omsv6.dto.OrderView;
+import com.example.omsv6.dto.UpdateOrderStatusRequest;
 import com.example.omsv6.entity.OrderEntity;
-import com.example.omsv6.entity.PaymentEntity;
-import com.example.omsv6.repository.InventoryItemRepository;
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.event.OrderCreatedEvent;
+import com.example.omsv6.event.OrderStatusChangedEvent;
 import com.example.omsv6.repository.OrderRepository;
-import com.example.omsv6.repository.PaymentRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
+
+import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
 @Service
+@Timed("service.calls")
 public class OrderService {
 
     @Autowired
     private OrderRepository orderRepository;
 
     @Autowired
-    private InventoryItemRepository inventoryItemRepository;
+    private InventoryReservationService inventoryReservationService;
 
     @Autowired
-    private PaymentRepository paymentRepository;
+    private PaymentService paymentService;
 
     @Autowired
-    private ExternalApiClient externalApiClient;
+    private ApplicationEventPublisher eventPublisher;
 
-    @Transactional
-    public Map<String, Object> createOrder(Map<String, Object> request) {
-        Object customerIdObj = request.get("customerId");
-        String customerId = customerIdObj != null ? customerIdObj.toString() : "";
+    @Autowired
+    private ObjectMapper objectMapper;
 
-        Object skuObj = request.get("sku");
-        String sku = skuObj != null ? skuObj.toString() : "";
+    @PersistenceContext
+    private EntityManager entityManager;
 
-        Object quantityObj = request.get("quantity");
-        int quantity = safeInt(quantityObj, 1);
+    @Value("${app.orders.page.max-size:200}")
+    private int maxPageSize;
 
-        Object amountObj = request.get("amount");
-        BigDecimal amount = safeBigDecimal(amountObj, "0");
+    @Value("${app.orders.max-lines:100}")
+    private int maxLines;
 
-        Map<String, Object> response = new HashMap<>();
-        if (customerId.isBlank() || sku.isBlank()) {
-            response.put("message", "Validation failed");
-            response.put("error", "customerId and sku are required");
-            return response;
-        }
-        if (quantity <= 0) {
-            response.put("message", "Validation failed");
-            response.put("error", "quantity must be > 0");
-            return response;
-        }
+    @Value("${app.orders.reservation-ttl:30m}")
+    private Duration reservationTtl;
 
-        Optional<InventoryItem> itemOpt = inventoryItemRepository.findBySku(sku);
-        if (itemOpt.isEmpty()) {
-            response.put("message", "Inventory item not found");
-            response.put("sku", sku);
-            return response;
+    /**
+     * Creates one order for a single SKU or a whole cart. Every line is reserved in this
+     * transaction, in SKU order so carts sharing SKUs always lock them in the same order and cannot
+     * deadlock; a line that cannot be reserved rolls back the lines reserved before it. Unless the
+     * order is paid or cancelled first, {@link ReservationExpirySweeper} cancels it once
+     * {@code app.orders.reservation-ttl} has passed.
+     */
+    @Transactional
+    public CreateOrderResponse createOrder(CreateOrderRequest request) {
+        String customerId = request.customerId() != null ? request.customerId() : "";
+        if (customerId.isBlank()) {
+            throw ApiException.badRequest("customerId and sku are required");
         }
+        List<OrderLine> lines = parseLines(request);
 
-        InventoryItem item = itemOpt.get();
-        if (item.getQuantityAvailable() < quantity) {
-            response.put("message", "Insufficient stock");
-            response.put("sku", sku);
-            response.put("available", item.getQuantityAvailable());
-            response.put("requested", quantity);
-            return response;
+        for (OrderLine line : inSkuOrder(lines)) {
+            InventoryReservationService.Reservation reservation =
+                    inventoryReservationService.reserve(line.getSku(), line.getQuantity());
+            if (reservation.outcome() == InventoryReservationService.Outcome.NOT_FOUND) {
+                throw ApiException.notFound("Inventory item not found").with("sku", line.getSku());
+            }
+            if (!reservation.isReserved()) {
+                throw ApiException.conflict("Insufficient stock")
+                        .with("sku", line.getSku())
+                        .with("available", reservation.available())
+                        .with("requested", line.getQuantity());
+            }
+        }
+        BigDecimal amount = BigDecimal.ZERO;
+        List<CreateOrderResponse.Reservation> reserved = new ArrayList<>(lines.size());
+        for (OrderLine line : lines) {
+            amount = amount.add(line.getAmount());
+            reserved.add(new CreateOrderResponse.Reservation(line.getSku(), line.getQuantity()));
         }
-
-        // Reserve inventory
-        item.setQuantityAvailable(item.getQuantityAvailable() - quantity);
-        item.setQuantityReserved(item.getQuantityReserved() + quantity);
-        inventoryItemRepository.save(item);
 
         OrderEntity order = new OrderEntity();
         order.setCustomerId(customerId);
-        order.setSku(sku);
-        order.setQuantity(quantity);
+        order.setLines(lines);
         order.setAmount(amount);
-        order.setStatus("CREATED");
+        order.setStatus(OrderStatus.CREATED);
+        order.setShippingQuoteStatus(ShippingQuoteService.PENDING);
         order.setCreatedAt(LocalDateTime.now());
         order.setUpdatedAt(LocalDateTime.now());
+        order.setReservationExpiresAt(order.getCreatedAt().plus(reservationTtl));
         order = orderRepository.save(order);
 
-        // External integration (e.g., shipping quote)
-        Map<String, Object> shippingQuote = externalApiClient.fetchShippingQuote(customerId, sku, quantity);
+        // One shipping quote for the whole order, fetched asynchronously after commit (see ShippingQuoteService)
+        eventPublisher.publishEvent(new OrderCreatedEvent(order.getId(), customerId, List.copyOf(lines),
+                amount, order.getStatus(), order.getCreatedAt()));
 
-        response.put("message", "Order created");
-        response.put("orderId", order.getId());
-        response.put("status", order.getStatus());
-        response.put("inventory", Map.of("sku", sku, "reserved", quantity));
-        response.put("external", shippingQuote);
-        return response;
+        return new CreateOrderResponse("Order created", order.getId(), order.getStatus().name(), reserved,
+                order.getReservationExpiresAt(),
+                new CreateOrderResponse.ShippingQuoteLink(ShippingQuoteService.PENDING,
+                        "/api/orders/" + order.getId() + "/shipping-quote"));
     }
 
-    public Map<String, Object> getOrderById(Long id) {
-        Map<String, Object> response = new HashMap<>();
-        Optional<OrderEntity> orderOpt = orderRepository.findById(id);
-        if (orderOpt.isEmpty()) {
-            response.put("message", "Order not found");
-            response.put("orderId", id);
-            return response;
-        }
-        OrderEntity o = orderOpt.get();
-        response.put("message", "Order retrieved");
-        response.put("order", toOrderMap(o));
-        return response;
+    @Transactional(readOnly = true)
+    public OrderResponse getOrderById(Long id) {
+        OrderEntity o = orderRepository.findById(id)
+                .orElseThrow(() -> ApiException.notFound("Order not found").with("orderId", id));
+        return new OrderResponse("Order retrieved", OrderView.from(o));
     }
 
-    public Map<String, Object> listOrders(String status, String customerId) {
-        Map<String, Object> response = new HashMap<>();
-        String st = status != null ? status : "";
+    @Transactional(readOnly = true)
+    public OrderPage listOrders(String status, String customerId, String cursor, int limit) {
+        OrderStatus st = statusFilter(status);
         String cid = customerId != null ? customerId : "";
+        int pageSize = Math.min(Math.max(1, limit), maxPageSize);
 
-        List<OrderEntity> orders;
-        if (!st.isBlank() && !cid.isBlank()) {
-            orders = orderRepository.findByStatusAndCustomerIdOrderByCreatedAtDesc(st, cid);
-        } else if (!st.isBlank()) {
-            orders = orderRepository.findByStatusOrderByCreatedAtDesc(st);
+        ScrollPosition position;
+        try {
+            position = decodeCursor(cursor);
+        } catch (IllegalArgumentException e) {
+            throw ApiException.badRequest("invalid cursor");
+        }
+
+        Limit pageLimit = Limit.of(pageSize);
+        Window<OrderEntity> window;
+        if (st != null && !cid.isBlank()) {
+            window = orderRepository.findByStatusAndCustomerIdOrderByCreatedAtDescIdDesc(st, cid, position, pageLimit);
+        } else if (st != null) {
+            window = orderRepository.findByStatusOrderByCreatedAtDescIdDesc(st, position, pageLimit);
         } else if (!cid.isBlank()) {
-            orders = orderRepository.findByCustomerIdOrderByCreatedAtDesc(cid);
+            window = orderRepository.findByCustomerIdOrderByCreatedAtDescIdDesc(cid, position, pageLimit);
         } else {
-            orders = orderRepository.findAllByOrderByCreatedAtDesc();
+            window = orderRepository.findByOrderByCreatedAtDescIdDesc(position, pageLimit);
         }
 
-        List<Map<String, Object>> list = new ArrayList<>();
-        for (OrderEntity o : orders) {
-            list.add(toOrderMap(o));
+        List<OrderView> list = new ArrayList<>(window.size());
+        for (OrderEntity o : window) {
+            list.add(OrderView.from(o));
         }
 
-        response.put("message", "Orders listed");
-        response.put("count", list.size());
-        response.put("orders", list);
-        return response;
+        String nextCursor = window.hasNext() && !window.isEmpty()
+                ? encodeCursor(window.getContent().get(window.size() - 1)) : null;
+        return new OrderPage("Orders listed", list.size(), pageSize, list, nextCursor);
     }
 
-    @Transactional
-    public Map<String, Object> updateOrderStatus(Long id, Map<String, Object> request) {
-        Object statusObj = request.get("status");
-        String newStatus = statusObj != null ? statusObj.toString() : "";
+    /**
+     * Writes every matching order as one JSON line, reading from a cursor-backed stream and
+     * detaching each row once written so memory stays flat regardless of result size.
+     */
+    @Transactional(readOnly = true)
+    public void exportOrders(OrderStatus status, String customerId, OutputStream out) throws IOException {
+        String cid = customerId != null ? customerId : "";
 
-        Map<String, Object> response = new HashMap<>();
-        if (newStatus.isBlank()) {
-            response.put("message", "Validation failed");
-            response.put("error", "status is required");
-            return response;
+        Stream<OrderEntity> orders;
+        if (status != null && !cid.isBlank()) {
+            orders = orderRepository.streamByStatusAndCustomerIdOrderByCreatedAtDescIdDesc(status, cid);
+        } else if (status != null) {
+            orders = orderRepository.streamByStatusOrderByCreatedAtDescIdDesc(status);
+        } else if (!cid.isBlank()) {
+            orders = orderRepository.streamByCustomerIdOrderByCreatedAtDescIdDesc(cid);
+        } else {
+            orders = orderRepository.streamByOrderByCreatedAtDescIdDesc();
         }
 
-        Optional<OrderEntity> orderOpt = orderRepository.findById(id);
-        if (orderOpt.isEmpty()) {
-            response.put("message", "Order not found");
-            response.put("orderId", id);
-            return response;
+        try (orders; JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.setRootValueSeparator(new SerializedString("\n"));
+            Iterator<OrderEntity> it = orders.iterator();
+            while (it.hasNext()) {
+                OrderEntity o = it.next();
+                writeOrder(gen, o);
+                entityManager.detach(o);
+            }
+            gen.writeRaw('\n');
         }
+    }
 
-        OrderEntity order = orderOpt.get();
-        String oldStatus = order.getStatus();
-        order.setStatus(newStatus);
-        order.setUpdatedAt(LocalDateTime.now());
-        order = orderRepository.save(order);
+    /**
+     * Moves an order along {@link OrderStatus}; CANCELLED goes through {@link #cancelOrder} so the
+     * reservation is released. Setting the current status again changes nothing.
+     */
+    @Transactional
+    public OrderStatusResponse updateOrderStatus(Long id, UpdateOrderStatusRequest request) {
+        if (request.status() == null || request.status().isBlank()) {
+            throw ApiException.badRequest("status is required");
+        }
+        OrderStatus next = parseStatus(request.status());
 
-        response.put("message", "Order status updated");
-        response.put("orderId", order.getId());
-        response.put("oldStatus", oldStatus);
-        response.put("newStatus", newStatus);
-        return response;
+        OrderEntity order = orderRepository.findById(id)
+                .orElseThrow(() -> ApiException.notFound("Order not found").with("orderId", id));
+        OrderStatus current = order.getStatus();
+        if (next == current) {
+            return new OrderStatusResponse("Order status unchanged", id, current.name(), next.name());
+        }
+        if (next == OrderStatus.CANCELLED) {
+            cancelOrder(id);
+            return new OrderStatusResponse("Order status updated", id, current.name(), next.name());
+        }
+        transition(order, next);
+        return new OrderStatusResponse("Order status updated", id, current.name(), next.name());
     }
 
     @Transactional
-    public Map<String, Object> cancelOrder(Long id) {
-        Map<String, Object> response = new HashMap<>();
-        Optional<OrderEntity> orderOpt = orderRepository.findById(id);
-        if (orderOpt.isEmpty()) {
-            response.put("message", "Order not found");
-            response.put("orderId", id);
-            return response;
-        }
-
-        OrderEntity order = orderOpt.get();
-        if ("CANCELLED".equalsIgnoreCase(order.getStatus())) {
-            response.put("message", "Order already cancelled");
-            response.put("orderId", id);
-            return response;
-        }
-
-        // Release inventory reservation
-        Optional<InventoryItem> itemOpt = inventoryItemRepository.findBySku(order.getSku());
-        if (itemOpt.isPresent()) {
-            InventoryItem item = itemOpt.get();
-            int qty = order.getQuantity();
-            item.setQuantityReserved(Math.max(0, item.getQuantityReserved() - qty));
-            item.setQuantityAvailable(item.getQuantityAvailable() + qty);
-            inventoryItemRepository.save(item);
-        }
-
-        // Mark related payment as CANCELLED if exists and not captured
-        List<PaymentEntity> payments = paymentRepository.findByOrderIdOrderByCreatedAtDesc(order.getId());
-        for (PaymentEntity p : payments) {
-            if (!"CAPTURED".equalsIgnoreCase(p.getStatus()) && !"REFUNDED".equalsIgnoreCase(p.getStatus())) {
-                p.setStatus("CANCELLED");
-                p.setUpdatedAt(LocalDateTime.now());
-                paymentRepository.save(p);
+    public CancelOrderResponse cancelOrder(Long id) {
+        OrderEntity order = orderRepository.findById(id)
+                .orElseThrow(() -> ApiException.notFound("Order not found").with("orderId", id));
+        if (order.getStatus() == OrderStatus.CANCELLED) {
+            throw ApiException.conflict("Order already cancelled").with("orderId", id);
+        }
+
+        // Flip the status first so concurrent cancels release the reservation only once
+        transition(order, OrderStatus.CANCELLED);
+        for (OrderLine line : inSkuOrder(order.getLines())) {
+            inventoryReservationService.release(line.getSku(), line.getQuantity());
+        }
+
+        // Payments nothing was taken for yet go with the order; captures and refunds stand
+        paymentService.cancelPaymentsOfOrder(id);
+
+        return new CancelOrderResponse("Order cancelled", id, OrderStatus.CANCELLED.name());
+    }
+
+    /**
+     * The status filter of a listing or export; {@code null} when none was given.
+     */
+    public OrderStatus statusFilter(String status) {
+        return status == null || status.isBlank() ? null : parseStatus(status);
+    }
+
+    private List<OrderLine> parseLines(CreateOrderRequest request) {
+        if (request.lines() == null) {
+            String sku = request.sku() != null ? request.sku() : "";
+            int quantity = request.quantity() != null ? request.quantity() : 1;
+            if (sku.isBlank()) {
+                throw ApiException.badRequest("customerId and sku are required");
+            }
+            if (quantity <= 0) {
+                throw ApiException.badRequest("quantity must be > 0");
             }
+            return new ArrayList<>(List.of(new OrderLine(sku, quantity,
+                    request.amount() != null ? request.amount() : BigDecimal.ZERO)));
         }
 
-        order.setStatus("CANCELLED");
-        order.setUpdatedAt(LocalDateTime.now());
-        orderRepository.save(order);
+        if (request.sku() != null || request.quantity() != null || request.amount() != null) {
+            throw ApiException.badRequest("give either sku, quantity and amount or lines");
+        }
+        if (request.lines().isEmpty() || request.lines().size() > maxLines) {
+            throw ApiException.badRequest("an order needs 1 to " + maxLines + " lines");
+        }
+        List<OrderLine> lines = new ArrayList<>(request.lines().size());
+        Set<String> skus = new HashSet<>();
+        for (int i = 0; i < request.lines().size(); i++) {
+            CreateOrderRequest.Line line = request.lines().get(i);
+            String sku = line != null && line.sku() != null ? line.sku() : "";
+            int quantity = line != null && line.quantity() != null ? line.quantity() : 1;
+            if (sku.isBlank()) {
+                throw ApiException.badRequest("sku is required").with("line", i);
+            }
+            if (quantity <= 0) {
+                throw ApiException.badRequest("quantity must be > 0").with("line", i);
+            }
+            if (!skus.add(sku)) {
+                throw ApiException.badRequest("each sku may appear on one line only").with("line", i).with("sku", sku);
+            }
+            lines.add(new OrderLine(sku, quantity, line.amount() != null ? line.amount() : BigDecimal.ZERO));
+        }
+        return lines;
+    }
 
-        response.put("message", "Order cancelled");
-        response.put("orderId", id);
-        response.put("status", "CANCELLED");
-        return response;
+    private static List<OrderLine> inSkuOrder(List<OrderLine> lines) {
+        List<OrderLine> sorted = new ArrayList<>(lines);
+        sorted.sort(Comparator.comparing(OrderLine::getSku));
+        return sorted;
     }
 
-    private int safeInt(Object obj, int defaultValue) {
-        if (obj == null) return defaultValue;
-        try {
-            return Integer.parseInt(obj.toString());
-        } catch (Exception e) {
-            return defaultValue;
+    private OrderStatus parseStatus(String status) {
+        return OrderStatus.parse(status).orElseThrow(() ->
+                ApiException.badRequest("status must be one of: " + Arrays.toString(OrderStatus.values())));
+    }
+
+    // Guarded on the status the order was read in, so a concurrent change makes this one fail
+    private void transition(OrderEntity order, OrderStatus next) {
+        OrderStatus current = order.getStatus();
+        if (!current.canTransitionTo(next)) {
+            throw ApiException.conflict("Illegal status transition")
+                    .with("orderId", order.getId()).with("from", current).with("to", next);
         }
+        if (orderRepository.transition(order.getId(), current, next, LocalDateTime.now()) == 0) {
+            throw ApiException.conflict("Order status changed concurrently").with("orderId", order.getId());
+        }
+        publishStatusChange(order, current, next);
     }
 
-    private BigDecimal safeBigDecimal(Object obj, String defaultValue) {
-        if (obj == null) return new BigDecimal(defaultValue);
-        try {
-            return new BigDecimal(obj.toString());
-        } catch (Exception e) {
-            return new BigDecimal(defaultValue);
+    private void publishStatusChange(OrderEntity o, OrderStatus oldStatus, OrderStatus newStatus) {
+        eventPublisher.publishEvent(new OrderStatusChangedEvent(o.getId(), o.getCustomerId(), List.copyOf(o.getLines()),
+                o.getAmount(), o.getCreatedAt(), oldStatus, newStatus));
+    }
+
+    private void writeOrder(JsonGenerator gen, OrderEntity o) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", o.getId());
+        gen.writeStringField("customerId", o.getCustomerId());
+        gen.writeArrayFieldStart("lines");
+        for (OrderLine line : o.getLines()) {
+            gen.writeStartObject();
+            gen.writeStringField("sku", line.getSku());
+            gen.writeNumberField("quantity", line.getQuantity());
+            gen.writeNumberField("amount", line.getAmount());
+            gen.writeEndObject();
         }
+        gen.writeEndArray();
+        gen.writeNumberField("amount", o.getAmount());
+        gen.writeStringField("status", o.getStatus().name());
+        gen.writeStringField("shippingQuoteStatus", o.getShippingQuoteStatus());
+        gen.writeStringField("reservationExpiresAt",
+                o.getReservationExpiresAt() != null ? ISO_LOCAL_DATE_TIME.format(o.getReservationExpiresAt()) : null);
+        // Same ISO format Jackson uses for OrderView, so exported and listed orders read alike
+        gen.writeStringField("createdAt", o.getCreatedAt() != null ? ISO_LOCAL_DATE_TIME.format(o.getCreatedAt()) : null);
+        gen.writeStringField("updatedAt", o.getUpdatedAt() != null ? ISO_LOCAL_DATE_TIME.format(o.getUpdatedAt()) : null);
+        gen.writeEndObject();
+    }
+
+    private String encodeCursor(OrderEntity last) {
+        String raw = last.getCreatedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
     }
 
-    private Map<String, Object> toOrderMap(OrderEntity o) {
-        Map<String, Object> m = new HashMap<>();
-        m.put("id", o.getId());
-        m.put("customerId", o.getCustomerId());
-        m.put("sku", o.getSku());
-        m.put("quantity", o.getQuantity());
-        m.put("amount", o.getAmount());
-        m.put("status", o.getStatus());
-        m.put("createdAt", o.getCreatedAt() != null ? o.getCreatedAt().toString() : null);
-        m.put("updatedAt", o.getUpdatedAt() != null ? o.getUpdatedAt().toString() : null);
-        return m;
+    private ScrollPosition decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            LocalDateTime createdAt = LocalDateTime.parse(raw.substring(0, sep));
+            Long id = Long.parseLong(raw.substring(sep + 1));
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put("createdAt", createdAt);
+            keys.put("id", id);
+            return ScrollPosition.forward(keys);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid cursor", e);
+        }
     }
 }
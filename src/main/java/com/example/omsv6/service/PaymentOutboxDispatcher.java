@@ -0,0 +1,266 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.entity.PaymentOutboxEntry;
+import com.example.omsv6.repository.PaymentOutboxRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Drains {@code payment_outbox}. Every poll claims up to {@code batch-size} due rows under a lease,
+ * calls the provider for them on {@code paymentOutboxExecutor} (at most {@code parallelism} at a
+ * time) and settles each row and its payment in one short transaction.
+ *
+ * <p>A dispatcher that dies mid-batch leaves its rows IN_FLIGHT; once the lease runs out any
+ * instance claims them again and repeats the call with the same idempotency key. Failures that
+ * may be transient (no response, 5xx, breaker open) are retried with exponential backoff up to
+ * {@code max-attempts}; a 4xx is final.
+ *
+ * <p>Publishes {@code payments.outbox.depth} (unsettled rows) and {@code payments.outbox.lag}
+ * (age of the oldest one), both refreshed on every poll.
+ */
+@Service
+public class PaymentOutboxDispatcher implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentOutboxDispatcher.class);
+    private static final Duration PURGE_INTERVAL = Duration.ofMinutes(10);
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final PaymentOutboxRepository outboxRepository;
+    private final PaymentService paymentService;
+    private final ExternalApiClient externalApiClient;
+    private final Executor executor;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.payments.outbox.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.payments.outbox.poll-interval:500ms}")
+    private Duration pollInterval;
+
+    @Value("${app.payments.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.payments.outbox.lease:60s}")
+    private Duration lease;
+
+    @Value("${app.payments.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${app.payments.outbox.initial-backoff:1s}")
+    private Duration initialBackoff;
+
+    @Value("${app.payments.outbox.max-backoff:5m}")
+    private Duration maxBackoff;
+
+    @Value("${app.payments.outbox.retention:7d}")
+    private Duration retention;
+
+    private volatile ScheduledExecutorService poller;
+    private volatile long depth;
+    private volatile double lagSeconds;
+    private LocalDateTime lastPurge = LocalDateTime.MIN;
+
+    public PaymentOutboxDispatcher(PaymentOutboxRepository outboxRepository, PaymentService paymentService,
+                                   ExternalApiClient externalApiClient,
+                                   @Qualifier("paymentOutboxExecutor") Executor executor,
+                                   PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.paymentService = paymentService;
+        this.externalApiClient = externalApiClient;
+        this.executor = executor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("payments.outbox.depth", this, d -> d.depth)
+                .description("Payment outbox rows not yet settled")
+                .register(meterRegistry);
+        TimeGauge.builder("payments.outbox.lag", this, TimeUnit.SECONDS, d -> d.lagSeconds)
+                .description("Age of the oldest payment outbox row not yet settled")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void start() {
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "payment-outbox-poller");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(this::poll, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        poller = s;
+    }
+
+    // Lets the batch in hand finish; anything left IN_FLIGHT is reclaimed after its lease
+    @Override
+    public void stop() {
+        ScheduledExecutorService s = poller;
+        poller = null;
+        if (s == null) return;
+        s.shutdown();
+        try {
+            s.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return poller != null;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return enabled;
+    }
+
+    private void poll() {
+        try {
+            while (poller != null && refreshBacklog() > 0) {
+                // A full batch means more rows are probably due; claim the next one right away
+                if (dispatchBatch() < batchSize) break;
+            }
+            purge();
+        } catch (RuntimeException e) {
+            log.warn("Payment outbox poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Claims and dispatches one batch, returning how many rows were claimed.
+     */
+    int dispatchBatch() {
+        String owner = UUID.randomUUID().toString();
+        List<PaymentOutboxEntry> claimed = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<Long> due = outboxRepository.findDueIds(now, Limit.of(batchSize));
+            if (due.isEmpty() || outboxRepository.claim(due, owner, now, now.plus(lease)) == 0) {
+                return List.<PaymentOutboxEntry>of();
+            }
+            return outboxRepository.findByLeaseOwnerOrderById(owner);
+        });
+        if (claimed == null || claimed.isEmpty()) return 0;
+
+        List<CompletableFuture<Void>> calls = new ArrayList<>(claimed.size());
+        for (PaymentOutboxEntry entry : claimed) {
+            calls.add(CompletableFuture.runAsync(() -> dispatch(entry, owner), executor));
+        }
+        CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).join();
+        return claimed.size();
+    }
+
+    private void dispatch(PaymentOutboxEntry entry, String owner) {
+        String externalReference;
+        try {
+            externalReference = call(entry);
+        } catch (RuntimeException e) {
+            String error = truncate(e.getMessage());
+            if (isPermanent(e) || entry.getAttempts() >= maxAttempts) {
+                log.warn("Payment {} {} failed after {} attempt(s): {}", entry.getPaymentId(),
+                        entry.getOperation(), entry.getAttempts(), error);
+                if (settle(entry, owner, PaymentOutboxEntry.FAILED, error,
+                        () -> paymentService.recordFailure(entry, error))) {
+                    count(entry, "failed");
+                }
+            } else if (outboxRepository.reschedule(entry.getId(), owner,
+                    LocalDateTime.now().plus(backoff(entry)), error) == 1) {
+                count(entry, "retry");
+            }
+            return;
+        }
+        if (settle(entry, owner, PaymentOutboxEntry.DONE, null,
+                () -> paymentService.recordSuccess(entry, externalReference))) {
+            count(entry, "success");
+        }
+    }
+
+    private String call(PaymentOutboxEntry entry) {
+        String key = entry.getIdempotencyKey();
+        switch (entry.getOperation()) {
+            case PaymentOutboxEntry.AUTHORIZE -> {
+                return externalApiClient.authorizePayment(entry.getOrderId(), entry.getAmount(), entry.getCurrency(), key);
+            }
+            case PaymentOutboxEntry.CAPTURE ->
+                    externalApiClient.capturePayment(entry.getExternalReference(), entry.getAmount(), key);
+            case PaymentOutboxEntry.REFUND ->
+                    externalApiClient.refundPayment(entry.getExternalReference(), entry.getAmount(), key);
+            case PaymentOutboxEntry.VOID ->
+                    externalApiClient.voidPayment(entry.getExternalReference(), entry.getAmount(), key);
+            default -> throw new IllegalArgumentException("Unknown operation " + entry.getOperation());
+        }
+        return null;
+    }
+
+    // The row is settled first: if our lease was lost, another dispatcher owns the outcome
+    private boolean settle(PaymentOutboxEntry entry, String owner, String outcome, String error, Runnable apply) {
+        Boolean settled = transactionTemplate.execute(status -> {
+            if (outboxRepository.finish(entry.getId(), owner, outcome, error, LocalDateTime.now()) == 0) {
+                log.info("Lease on payment outbox row {} was lost; leaving it to its new owner", entry.getId());
+                return false;
+            }
+            apply.run();
+            return true;
+        });
+        return Boolean.TRUE.equals(settled);
+    }
+
+    private boolean isPermanent(RuntimeException e) {
+        if (e instanceof IllegalArgumentException) return true;
+        return e instanceof ExternalApiException ex
+                && ex.getReason() == ExternalApiException.Reason.HTTP_STATUS
+                && ex.getHttpStatus() >= 400 && ex.getHttpStatus() < 500;
+    }
+
+    private Duration backoff(PaymentOutboxEntry entry) {
+        int doublings = Math.min(entry.getAttempts() - 1, 20);
+        Duration delay = initialBackoff.multipliedBy(1L << Math.max(0, doublings));
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+
+    private long refreshBacklog() {
+        Object[] row = outboxRepository.backlog().get(0);
+        long count = ((Number) row[0]).longValue();
+        LocalDateTime oldest = (LocalDateTime) row[1];
+        depth = count;
+        lagSeconds = oldest != null ? Math.max(0, Duration.between(oldest, LocalDateTime.now()).toMillis() / 1000.0) : 0;
+        return count;
+    }
+
+    private void purge() {
+        LocalDateTime now = LocalDateTime.now();
+        if (lastPurge.plus(PURGE_INTERVAL).isAfter(now)) return;
+        lastPurge = now;
+        int purged = outboxRepository.purgeDone(now.minus(retention));
+        if (purged > 0) {
+            log.info("Purged {} settled payment outbox rows", purged);
+        }
+    }
+
+    private void count(PaymentOutboxEntry entry, String outcome) {
+        meterRegistry.counter("payments.outbox.dispatched",
+                "operation", entry.getOperation().toLowerCase(), "outcome", outcome).increment();
+    }
+
+    private static String truncate(String message) {
+        if (message == null) return null;
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,398 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.PaymentReconciliationReport;
+import com.example.omsv6.entity.PaymentDrift;
+import com.example.omsv6.entity.PaymentReconciliationCheckpoint;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.repository.PaymentDriftRepository;
+import com.example.omsv6.repository.PaymentReconciliationCheckpointRepository;
+import com.example.omsv6.repository.PaymentRepository;
+import com.example.omsv6.repository.PaymentRepository.ReconciliationRow;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reconciles payments with the provider. A run sweeps every payment last changed before the run
+ * started, page by page in {@code (updated_at, id)} order, looks up the settled ones with a
+ * provider reference in batches of {@code lookup-batch-size} (at most {@code parallelism} at a
+ * time) and compares status, amount and the captured and refunded balances:
+ * <ul>
+ *   <li>a payment the provider has taken further along AUTHORIZED → CAPTURED → REFUNDED, for the
+ *   same amount, is moved to the provider's status and takes its captured and refunded balances,
+ *   so a partial capture or refund is booked as partial;</li>
+ *   <li>any other difference (the provider behind us, another amount or balance, an unknown
+ *   reference) is recorded in {@code payment_drift} for review and left alone.</li>
+ * </ul>
+ * Payments with a call still pending in the outbox are skipped: the outbox settles them.
+ *
+ * <p>Each page's fixes, drift rows and the run's cursor commit in one transaction, so a run holds
+ * one page in memory whatever the number of payments, and one interrupted by a restart continues
+ * after its last committed page. Runs are leased like outbox rows: one instance works on a run at
+ * a time, and another takes it over once the lease runs out. A page whose lookups fail is retried
+ * on the next poll.
+ */
+@Service
+public class PaymentReconciliationJob implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentReconciliationJob.class);
+    private static final LocalDateTime BEFORE_ANY_PAYMENT = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final Set<PaymentStatus> SETTLED = EnumSet.of(PaymentStatus.AUTHORIZED, PaymentStatus.CAPTURED,
+            PaymentStatus.REFUNDED, PaymentStatus.FAILED, PaymentStatus.CANCELLED);
+    // How far the provider can take a payment without a request from us, in order
+    private static final List<PaymentStatus> MONEY_PATH = List.of(PaymentStatus.AUTHORIZED, PaymentStatus.CAPTURED,
+            PaymentStatus.REFUNDED);
+    private static final int MAX_ERROR_LENGTH = 255;
+    private static final int MAX_REPORTED_DRIFT = 1000;
+
+    private final PaymentReconciliationCheckpointRepository checkpointRepository;
+    private final PaymentDriftRepository driftRepository;
+    private final PaymentRepository paymentRepository;
+    private final PaymentService paymentService;
+    private final ExternalApiClient externalApiClient;
+    private final Executor executor;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final String owner = UUID.randomUUID().toString();
+
+    @Value("${app.payments.reconciliation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.payments.reconciliation.poll-interval:1m}")
+    private Duration pollInterval;
+
+    @Value("${app.payments.reconciliation.interval:24h}")
+    private Duration interval;
+
+    @Value("${app.payments.reconciliation.page-size:1000}")
+    private int pageSize;
+
+    @Value("${app.payments.reconciliation.lookup-batch-size:100}")
+    private int lookupBatchSize;
+
+    @Value("${app.payments.reconciliation.lease:5m}")
+    private Duration lease;
+
+    private volatile ScheduledExecutorService poller;
+    private volatile boolean stopping;
+
+    public PaymentReconciliationJob(PaymentReconciliationCheckpointRepository checkpointRepository,
+                                    PaymentDriftRepository driftRepository, PaymentRepository paymentRepository,
+                                    PaymentService paymentService, ExternalApiClient externalApiClient,
+                                    @Qualifier("paymentReconciliationExecutor") Executor executor,
+                                    PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.checkpointRepository = checkpointRepository;
+        this.driftRepository = driftRepository;
+        this.paymentRepository = paymentRepository;
+        this.paymentService = paymentService;
+        this.externalApiClient = externalApiClient;
+        this.executor = executor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void start() {
+        stopping = false;
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "payment-reconciliation");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        poller = s;
+    }
+
+    // Lets the page in hand commit; the run continues from there on the next start or instance
+    @Override
+    public void stop() {
+        stopping = true;
+        ScheduledExecutorService s = poller;
+        poller = null;
+        if (s == null) return;
+        s.shutdown();
+        try {
+            s.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return poller != null;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return enabled;
+    }
+
+    private void poll() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            if (checkpointRepository.startRun(now, now.minus(interval)) == 1) {
+                log.info("Payment reconciliation run started");
+            }
+            runPages(Integer.MAX_VALUE);
+        } catch (RuntimeException e) {
+            log.warn("Payment reconciliation poll failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a run now, whenever the last one started, unless one is still running.
+     */
+    public PaymentReconciliationReport startRun() {
+        LocalDateTime now = LocalDateTime.now();
+        if (checkpointRepository.startRun(now, now) == 0) {
+            throw ApiException.conflict("Payment reconciliation already running");
+        }
+        return report(0).withMessage("Payment reconciliation started");
+    }
+
+    /**
+     * The current or last run, with up to {@code limit} of its drift entries.
+     */
+    public PaymentReconciliationReport report(int limit) {
+        PaymentReconciliationCheckpoint run = checkpoint();
+        List<PaymentReconciliationReport.Drift> drift = new ArrayList<>();
+        if (limit > 0) {
+            for (PaymentDrift d : driftRepository.findByRunIdOrderById(run.getRunId(),
+                    Limit.of(Math.min(limit, MAX_REPORTED_DRIFT)))) {
+                drift.add(new PaymentReconciliationReport.Drift(d.getPaymentId(), d.getKind(),
+                        d.getLocalStatus().name(), d.getProviderStatus(), d.getLocalAmount(), d.getProviderAmount(),
+                        d.isFixed(), d.getDetectedAt()));
+            }
+        }
+        return new PaymentReconciliationReport("Payment reconciliation retrieved", run.getRunId(), run.getStatus(),
+                run.getStartedAt(), run.getFinishedAt(), run.getChecked(), run.getMatched(), run.getFixed(),
+                run.getFlagged(), run.getSkipped(), run.getLastError(), drift);
+    }
+
+    /**
+     * Works on the running run for up to {@code maxPages} pages and returns how many it committed;
+     * 0 when no run is due or another instance holds it.
+     */
+    public int runPages(int maxPages) {
+        LocalDateTime now = LocalDateTime.now();
+        if (checkpointRepository.claim(owner, now, now.plus(lease)) == 0) return 0;
+
+        int pages = 0;
+        while (pages < maxPages && !stopping) {
+            PaymentReconciliationCheckpoint run = checkpoint();
+            if (!owner.equals(run.getLeaseOwner())) break;
+            List<ReconciliationRow> rows = paymentRepository.findForReconciliation(
+                    run.getCursorUpdatedAt() != null ? run.getCursorUpdatedAt() : BEFORE_ANY_PAYMENT,
+                    run.getCursorId() != null ? run.getCursorId() : 0L, run.getStartedAt(), Limit.of(pageSize));
+            if (rows.isEmpty()) {
+                complete(run);
+                break;
+            }
+
+            Map<String, ExternalApiClient.ProviderPayment> provider;
+            try {
+                provider = lookup(rows);
+            } catch (RuntimeException e) {
+                log.warn("Payment reconciliation run {} stopped at payment {}: {}", run.getRunId(), run.getCursorId(),
+                        e.getMessage());
+                checkpointRepository.release(owner, truncate(e.getMessage()));
+                break;
+            }
+            Tally tally = transactionTemplate.execute(status -> {
+                Tally t = reconcile(run.getRunId(), rows, provider);
+                ReconciliationRow last = rows.get(rows.size() - 1);
+                if (checkpointRepository.advance(owner, last.getUpdatedAt(), last.getId(), t.checked, t.matched,
+                        t.fixed, t.flagged, t.skipped, LocalDateTime.now().plus(lease)) == 0) {
+                    status.setRollbackOnly();
+                    return null;
+                }
+                return t;
+            });
+            if (tally == null) {
+                log.info("Lease on payment reconciliation run {} was lost; leaving it to its new owner", run.getRunId());
+                break;
+            }
+            tally.count(meterRegistry);
+            pages++;
+        }
+        return pages;
+    }
+
+    private Map<String, ExternalApiClient.ProviderPayment> lookup(List<ReconciliationRow> rows) {
+        List<String> references = new ArrayList<>(rows.size());
+        for (ReconciliationRow row : rows) {
+            if (isCheckable(row)) references.add(row.getExternalReference());
+        }
+        List<CompletableFuture<Map<String, ExternalApiClient.ProviderPayment>>> calls = new ArrayList<>();
+        for (int i = 0; i < references.size(); i += lookupBatchSize) {
+            List<String> batch = references.subList(i, Math.min(references.size(), i + lookupBatchSize));
+            calls.add(CompletableFuture.supplyAsync(() -> externalApiClient.lookupPayments(batch), executor));
+        }
+        Map<String, ExternalApiClient.ProviderPayment> found = new HashMap<>(references.size() * 2);
+        for (CompletableFuture<Map<String, ExternalApiClient.ProviderPayment>> call : calls) {
+            try {
+                found.putAll(call.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+        return found;
+    }
+
+    private Tally reconcile(long runId, List<ReconciliationRow> rows,
+                            Map<String, ExternalApiClient.ProviderPayment> provider) {
+        Tally t = new Tally();
+        List<PaymentDrift> drift = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (ReconciliationRow row : rows) {
+            if (!isCheckable(row)) {
+                t.skipped++;
+                continue;
+            }
+            ExternalApiClient.ProviderPayment theirs = provider.get(row.getExternalReference());
+            if (theirs == null) {
+                drift.add(drift(runId, row, PaymentDrift.MISSING, null, false, now));
+                t.flagged++;
+                continue;
+            }
+            PaymentStatus status = parse(theirs.status());
+            boolean sameAmount = theirs.amount() != null && theirs.amount().compareTo(row.getAmount()) == 0;
+            if (status == row.getStatus() && sameAmount) {
+                if (!sameBalance(row.getCapturedAmount(), theirs.capturedAmount())) {
+                    drift.add(drift(runId, row, PaymentDrift.CAPTURED, theirs.status(), row.getCapturedAmount(),
+                            theirs.capturedAmount(), now));
+                    t.flagged++;
+                } else if (!sameBalance(row.getRefundedAmount(), theirs.refundedAmount())) {
+                    drift.add(drift(runId, row, PaymentDrift.REFUNDED, theirs.status(), row.getRefundedAmount(),
+                            theirs.refundedAmount(), now));
+                    t.flagged++;
+                } else {
+                    t.matched++;
+                }
+            } else if (status == row.getStatus()) {
+                drift.add(drift(runId, row, PaymentDrift.AMOUNT, theirs, false, now));
+                t.flagged++;
+            } else if (sameAmount && isAhead(status, row.getStatus()) && balancesFollow(row, theirs)) {
+                if (paymentService.applyProviderStatus(row.getId(), row.getOrderId(), row.getStatus(), status,
+                        theirs.capturedAmount(), theirs.refundedAmount())) {
+                    drift.add(drift(runId, row, PaymentDrift.STATUS, theirs, true, now));
+                    t.fixed++;
+                } else {
+                    // Changed since it was read, so it is past this run's horizon
+                    t.skipped++;
+                }
+            } else {
+                drift.add(drift(runId, row, PaymentDrift.STATUS, theirs, false, now));
+                t.flagged++;
+            }
+        }
+        driftRepository.saveAll(drift);
+        t.checked = t.matched + t.fixed + t.flagged;
+        return t;
+    }
+
+    private void complete(PaymentReconciliationCheckpoint run) {
+        if (checkpointRepository.complete(owner, LocalDateTime.now()) == 1) {
+            log.info("Payment reconciliation run {} completed: {} checked, {} matched, {} fixed, {} flagged, {} skipped",
+                    run.getRunId(), run.getChecked(), run.getMatched(), run.getFixed(), run.getFlagged(),
+                    run.getSkipped());
+        }
+    }
+
+    private PaymentReconciliationCheckpoint checkpoint() {
+        return checkpointRepository.findById(PaymentReconciliationCheckpoint.ID).orElseThrow();
+    }
+
+    private static boolean isCheckable(ReconciliationRow row) {
+        return SETTLED.contains(row.getStatus()) && row.getExternalReference() != null;
+    }
+
+    // A balance the provider leaves out is one it has not moved
+    private static boolean sameBalance(BigDecimal ours, BigDecimal theirs) {
+        return (theirs != null ? theirs : BigDecimal.ZERO).compareTo(ours) == 0;
+    }
+
+    // The provider's balances can be booked: both reported, neither behind ours, refunds within captures
+    private static boolean balancesFollow(ReconciliationRow row, ExternalApiClient.ProviderPayment theirs) {
+        BigDecimal captured = theirs.capturedAmount();
+        BigDecimal refunded = theirs.refundedAmount();
+        return captured != null && refunded != null
+                && captured.compareTo(row.getCapturedAmount()) >= 0 && refunded.compareTo(row.getRefundedAmount()) >= 0
+                && captured.compareTo(row.getAmount()) <= 0 && refunded.compareTo(captured) <= 0;
+    }
+
+    private static boolean isAhead(PaymentStatus theirs, PaymentStatus ours) {
+        int t = MONEY_PATH.indexOf(theirs);
+        int o = MONEY_PATH.indexOf(ours);
+        return t >= 0 && o >= 0 && t > o;
+    }
+
+    private static PaymentStatus parse(String status) {
+        try {
+            return status != null ? PaymentStatus.valueOf(status) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static PaymentDrift drift(long runId, ReconciliationRow row, String kind,
+                                      ExternalApiClient.ProviderPayment theirs, boolean fixed, LocalDateTime now) {
+        PaymentDrift d = new PaymentDrift();
+        d.setRunId(runId);
+        d.setPaymentId(row.getId());
+        d.setKind(kind);
+        d.setLocalStatus(row.getStatus());
+        d.setLocalAmount(row.getAmount());
+        if (theirs != null) {
+            d.setProviderStatus(theirs.status());
+            d.setProviderAmount(theirs.amount());
+        }
+        d.setFixed(fixed);
+        d.setDetectedAt(now);
+        return d;
+    }
+
+    private static PaymentDrift drift(long runId, ReconciliationRow row, String kind, String providerStatus,
+                                      BigDecimal localAmount, BigDecimal providerAmount, LocalDateTime now) {
+        PaymentDrift d = drift(runId, row, kind, null, false, now);
+        d.setLocalAmount(localAmount);
+        d.setProviderStatus(providerStatus);
+        d.setProviderAmount(providerAmount);
+        return d;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) return null;
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+
+    private static final class Tally {
+        long checked;
+        long matched;
+        long fixed;
+        long flagged;
+        long skipped;
+
+        void count(MeterRegistry registry) {
+            registry.counter("payments.reconciliation.payments", "outcome", "matched").increment(matched);
+            registry.counter("payments.reconciliation.payments", "outcome", "fixed").increment(fixed);
+            registry.counter("payments.reconciliation.payments", "outcome", "flagged").increment(flagged);
+            registry.counter("payments.reconciliation.payments", "outcome", "skipped").increment(skipped);
+        }
+    }
+}
@@ -1,217 +1,364 @@
 package com.example.omsv6.service;
 
+import com.example.omsv6.dto.CapturePaymentRequest;
+import com.example.omsv6.dto.CreatePaymentRequest;
+import com.example.omsv6.dto.PaymentCreatedResponse;
+import com.example.omsv6.dto.PaymentLedgerResponse;
+import com.example.omsv6.dto.PaymentResponse;
+import com.example.omsv6.dto.PaymentStatusResponse;
+import com.example.omsv6.dto.PaymentView;
+import com.example.omsv6.dto.RefundPaymentRequest;
 import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderStatus;
 import com.example.omsv6.entity.PaymentEntity;
+import com.example.omsv6.entity.PaymentLedgerEntry;
+import com.example.omsv6.entity.PaymentOutboxEntry;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.event.OrderStatusChangedEvent;
+import com.example.omsv6.event.PaymentCreatedEvent;
+import com.example.omsv6.event.PaymentStatusChangedEvent;
 import com.example.omsv6.repository.OrderRepository;
+import com.example.omsv6.repository.PaymentLedgerRepository;
+import com.example.omsv6.repository.PaymentOutboxRepository;
 import com.example.omsv6.repository.PaymentRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.*;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 @Service
+@Timed("service.calls")
 public class PaymentService {
 
+    private static final Set<PaymentStatus> CANCELLABLE = PaymentStatus.sourcesOf(PaymentStatus.CANCELLED);
+    private static final Set<PaymentStatus> REFUNDABLE = EnumSet.of(PaymentStatus.CAPTURED, PaymentStatus.REFUND_PENDING);
+
     @Autowired
     private PaymentRepository paymentRepository;
 
     @Autowired
-    private OrderRepository orderRepository;
+    private PaymentOutboxRepository paymentOutboxRepository;
 
     @Autowired
-    private ExternalApiClient externalApiClient;
+    private PaymentLedgerRepository paymentLedgerRepository;
 
-    @Transactional
-    public Map<String, Object> createPayment(Map<String, Object> request) {
-        Object orderIdObj = request.get("orderId");
-        Long orderId = safeLong(orderIdObj);
+    @Autowired
+    private OrderRepository orderRepository;
 
-        Object amountObj = request.get("amount");
-        BigDecimal amount = safeBigDecimal(amountObj, "0");
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
 
-        Object currencyObj = request.get("currency");
-        String currency = currencyObj != null ? currencyObj.toString() : "USD";
+    /**
+     * Records the payment and its authorization call in one transaction; the provider is called
+     * later by {@link PaymentOutboxDispatcher}, which moves the payment on to AUTHORIZED or FAILED.
+     */
+    @Transactional
+    public PaymentCreatedResponse createPayment(CreatePaymentRequest request) {
+        Long orderId = request.orderId();
+        BigDecimal amount = request.amount() != null ? request.amount() : BigDecimal.ZERO;
+        String currency = request.currency() != null ? request.currency() : "USD";
 
-        Map<String, Object> response = new HashMap<>();
         if (orderId == null) {
-            response.put("message", "Validation failed");
-            response.put("error", "orderId is required");
-            return response;
+            throw ApiException.badRequest("orderId is required");
         }
 
-        Optional<OrderEntity> orderOpt = orderRepository.findById(orderId);
-        if (orderOpt.isEmpty()) {
-            response.put("message", "Order not found");
-            response.put("orderId", orderId);
-            return response;
-        }
-
-        OrderEntity order = orderOpt.get();
-        if ("CANCELLED".equalsIgnoreCase(order.getStatus())) {
-            response.put("message", "Cannot pay for cancelled order");
-            response.put("orderId", orderId);
-            return response;
+        OrderEntity order = orderRepository.findById(orderId)
+                .orElseThrow(() -> ApiException.notFound("Order not found").with("orderId", orderId));
+        if (order.getStatus() == OrderStatus.CANCELLED) {
+            throw ApiException.conflict("Cannot pay for cancelled order").with("orderId", orderId);
         }
 
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
             amount = order.getAmount() != null ? order.getAmount() : BigDecimal.ZERO;
         }
 
-        String externalRef = externalApiClient.authorizePayment(orderId, amount, currency);
-
         PaymentEntity p = new PaymentEntity();
         p.setOrderId(orderId);
         p.setAmount(amount);
         p.setCurrency(currency);
         p.setProvider("EXTERNAL_SIM");
-        p.setExternalReference(externalRef);
-        p.setStatus("AUTHORIZED");
+        p.setStatus(PaymentStatus.AUTHORIZATION_PENDING);
         p.setCreatedAt(LocalDateTime.now());
         p.setUpdatedAt(LocalDateTime.now());
         p = paymentRepository.save(p);
+        enqueue(p, PaymentOutboxEntry.AUTHORIZE, amount);
+        eventPublisher.publishEvent(new PaymentCreatedEvent(p.getId(), orderId, amount, currency, p.getStatus(),
+                p.getCreatedAt()));
 
-        response.put("message", "Payment authorized");
-        response.put("paymentId", p.getId());
-        response.put("orderId", orderId);
-        response.put("status", p.getStatus());
-        response.put("externalReference", p.getExternalReference());
-        return response;
+        return new PaymentCreatedResponse("Payment authorization queued", p.getId(), orderId, p.getStatus().name());
     }
 
-    public Map<String, Object> getPaymentById(Long id) {
-        Map<String, Object> response = new HashMap<>();
-        Optional<PaymentEntity> pOpt = paymentRepository.findById(id);
-        if (pOpt.isEmpty()) {
-            response.put("message", "Payment not found");
-            response.put("paymentId", id);
-            return response;
-        }
+    public PaymentResponse getPaymentById(Long id) {
+        return new PaymentResponse("Payment retrieved", PaymentView.from(findPayment(id)));
+    }
 
-        PaymentEntity p = pOpt.get();
-        response.put("message", "Payment retrieved");
-        response.put("payment", toPaymentMap(p));
-        return response;
+    public PaymentLedgerResponse getLedger(Long id) {
+        PaymentView payment = PaymentView.from(findPayment(id));
+        List<PaymentLedgerResponse.Entry> entries = paymentLedgerRepository.findByPaymentIdOrderById(id).stream()
+                .map(e -> new PaymentLedgerResponse.Entry(e.getId(), e.getKind(), e.getAmount(), e.getCreatedAt()))
+                .toList();
+        return new PaymentLedgerResponse("Payment ledger retrieved", payment, entries);
     }
 
+    /**
+     * Queues a capture of the requested amount, or of the whole authorization if none is given. A
+     * capture of less than the authorized amount releases the rest: a payment is captured once.
+     */
     @Transactional
-    public Map<String, Object> capturePayment(Long id) {
-        Map<String, Object> response = new HashMap<>();
-        Optional<PaymentEntity> pOpt = paymentRepository.findById(id);
-        if (pOpt.isEmpty()) {
-            response.put("message", "Payment not found");
-            response.put("paymentId", id);
-            return response;
+    public PaymentStatusResponse capturePayment(Long id, CapturePaymentRequest request) {
+        PaymentEntity p = findPayment(id);
+        BigDecimal captureAmount = request != null && request.amount() != null && request.amount().signum() > 0
+                ? request.amount() : p.getAmount();
+        if (captureAmount.compareTo(p.getAmount()) > 0) {
+            throw ApiException.badRequest("Capture exceeds the authorized amount")
+                    .with("paymentId", id)
+                    .with("authorized", p.getAmount());
         }
-
-        PaymentEntity p = pOpt.get();
-        if (!"AUTHORIZED".equalsIgnoreCase(p.getStatus())) {
-            response.put("message", "Payment not in AUTHORIZED state");
-            response.put("paymentId", id);
-            response.put("status", p.getStatus());
-            return response;
+        if (transition(id, p.getOrderId(), PaymentStatus.AUTHORIZED, PaymentStatus.CAPTURE_PENDING, null, LocalDateTime.now()) == 0) {
+            throw ApiException.conflict("Payment not in AUTHORIZED state")
+                    .with("paymentId", id)
+                    .with("status", p.getStatus());
         }
+        enqueue(p, PaymentOutboxEntry.CAPTURE, captureAmount);
 
-        boolean captured = externalApiClient.capturePayment(p.getExternalReference());
-        if (!captured) {
-            response.put("message", "External capture failed");
-            response.put("paymentId", id);
-            return response;
-        }
+        return new PaymentStatusResponse("Payment capture queued", id, PaymentStatus.CAPTURE_PENDING.name(), captureAmount);
+    }
 
-        p.setStatus("CAPTURED");
-        p.setUpdatedAt(LocalDateTime.now());
-        paymentRepository.save(p);
-
-        // Move order forward if needed
-        orderRepository.findById(p.getOrderId()).ifPresent(o -> {
-            if (!"CANCELLED".equalsIgnoreCase(o.getStatus())) {
-                o.setStatus("PAID");
-                o.setUpdatedAt(LocalDateTime.now());
-                orderRepository.save(o);
+    /**
+     * Queues a refund of the requested amount, or of all that is left to refund if none is given.
+     * The amount is held on the payment until the provider call settles, so refunds requested
+     * concurrently cannot add up to more than was captured; the payment is REFUND_PENDING while any
+     * refund is queued.
+     */
+    @Transactional
+    public PaymentStatusResponse refundPayment(Long id, RefundPaymentRequest request) {
+        BigDecimal requested = request.amount() != null && request.amount().signum() > 0 ? request.amount() : null;
+        PaymentEntity p = findPayment(id);
+        LocalDateTime now = LocalDateTime.now();
+
+        // The hold is guarded on the status and balance just read; if another refund got in between, read again
+        while (true) {
+            PaymentRepository.Balance b = paymentRepository.findBalanceById(id);
+            if (!REFUNDABLE.contains(b.getStatus())) {
+                throw ApiException.conflict("Only CAPTURED payments can be refunded")
+                        .with("paymentId", id)
+                        .with("status", b.getStatus());
             }
-        });
-
-        response.put("message", "Payment captured");
-        response.put("paymentId", id);
-        response.put("status", "CAPTURED");
-        return response;
+            BigDecimal refundAmount = requested != null ? requested : b.getRefundableAmount();
+            if (refundAmount.signum() <= 0 || refundAmount.compareTo(b.getRefundableAmount()) > 0) {
+                throw ApiException.conflict("Refund exceeds the amount left to refund")
+                        .with("paymentId", id)
+                        .with("refundable", b.getRefundableAmount());
+            }
+            if (paymentRepository.reserveRefund(id, b.getStatus(), PaymentStatus.REFUND_PENDING, refundAmount, now) == 1) {
+                if (b.getStatus() != PaymentStatus.REFUND_PENDING) {
+                    eventPublisher.publishEvent(new PaymentStatusChangedEvent(id, p.getOrderId(), b.getStatus(),
+                            PaymentStatus.REFUND_PENDING, null, now));
+                }
+                enqueue(p, PaymentOutboxEntry.REFUND, refundAmount);
+                return new PaymentStatusResponse("Payment refund queued", id, PaymentStatus.REFUND_PENDING.name(), refundAmount);
+            }
+        }
     }
 
+    /**
+     * Applies a provider call that succeeded. Runs in the dispatcher's transaction; a payment that
+     * has meanwhile left the pending state is left alone, except that an authorization arriving for
+     * a payment cancelled while it was in flight is voided at the provider.
+     */
     @Transactional
-    public Map<String, Object> refundPayment(Long id, Map<String, Object> request) {
-        Object amountObj = request.get("amount");
-        BigDecimal refundAmount = safeBigDecimal(amountObj, "0");
-
-        Map<String, Object> response = new HashMap<>();
-        Optional<PaymentEntity> pOpt = paymentRepository.findById(id);
-        if (pOpt.isEmpty()) {
-            response.put("message", "Payment not found");
-            response.put("paymentId", id);
-            return response;
+    public void recordSuccess(PaymentOutboxEntry entry, String externalReference) {
+        LocalDateTime now = LocalDateTime.now();
+        switch (entry.getOperation()) {
+            case PaymentOutboxEntry.AUTHORIZE -> {
+                if (paymentRepository.authorize(entry.getPaymentId(), PaymentStatus.AUTHORIZATION_PENDING,
+                        PaymentStatus.AUTHORIZED, externalReference, now) == 1) {
+                    eventPublisher.publishEvent(new PaymentStatusChangedEvent(entry.getPaymentId(), entry.getOrderId(),
+                            PaymentStatus.AUTHORIZATION_PENDING, PaymentStatus.AUTHORIZED, null, now));
+                    record(entry.getPaymentId(), PaymentLedgerEntry.AUTHORIZE, entry.getAmount(), entry.getCurrency(), now);
+                } else if (paymentRepository.authorize(entry.getPaymentId(), PaymentStatus.CANCELLED,
+                        PaymentStatus.CANCELLED, externalReference, now) == 1) {
+                    // Cancelled meanwhile: keep the reference of the hold and release it
+                    enqueue(entry.getPaymentId(), entry.getOrderId(), PaymentOutboxEntry.VOID, entry.getAmount(),
+                            entry.getCurrency(), externalReference);
+                }
+            }
+            case PaymentOutboxEntry.CAPTURE -> {
+                if (paymentRepository.capture(entry.getPaymentId(), PaymentStatus.CAPTURE_PENDING, PaymentStatus.CAPTURED,
+                        entry.getAmount(), now) == 1) {
+                    eventPublisher.publishEvent(new PaymentStatusChangedEvent(entry.getPaymentId(), entry.getOrderId(),
+                            PaymentStatus.CAPTURE_PENDING, PaymentStatus.CAPTURED, null, now));
+                    record(entry.getPaymentId(), PaymentLedgerEntry.CAPTURE, entry.getAmount(), entry.getCurrency(), now);
+                    markOrderPaid(entry.getOrderId(), now);
+                }
+            }
+            case PaymentOutboxEntry.REFUND -> {
+                if (settleRefund(entry, entry.getAmount(), null, now)) {
+                    record(entry.getPaymentId(), PaymentLedgerEntry.REFUND, entry.getAmount(), entry.getCurrency(), now);
+                }
+            }
+            case PaymentOutboxEntry.VOID -> {
+                // The payment is already CANCELLED; nothing was taken, so there is nothing to record
+            }
+            default -> throw new IllegalArgumentException("Unknown operation " + entry.getOperation());
         }
+    }
 
-        PaymentEntity p = pOpt.get();
-        if (!"CAPTURED".equalsIgnoreCase(p.getStatus())) {
-            response.put("message", "Only CAPTURED payments can be refunded");
-            response.put("paymentId", id);
-            response.put("status", p.getStatus());
-            return response;
+    /**
+     * Applies a provider call that failed for good: an authorization fails the payment, a failed
+     * capture returns it to AUTHORIZED and a failed refund releases the amount it held.
+     */
+    @Transactional
+    public void recordFailure(PaymentOutboxEntry entry, String reason) {
+        LocalDateTime now = LocalDateTime.now();
+        switch (entry.getOperation()) {
+            case PaymentOutboxEntry.AUTHORIZE ->
+                    transition(entry.getPaymentId(), entry.getOrderId(), PaymentStatus.AUTHORIZATION_PENDING, PaymentStatus.FAILED, reason, now);
+            case PaymentOutboxEntry.CAPTURE ->
+                    transition(entry.getPaymentId(), entry.getOrderId(), PaymentStatus.CAPTURE_PENDING, PaymentStatus.AUTHORIZED, reason, now);
+            case PaymentOutboxEntry.REFUND -> settleRefund(entry, BigDecimal.ZERO, reason, now);
+            // The hold expires at the provider on its own; the dispatcher has logged the failure
+            case PaymentOutboxEntry.VOID -> {
+            }
+            default -> throw new IllegalArgumentException("Unknown operation " + entry.getOperation());
         }
+    }
 
-        if (refundAmount.compareTo(BigDecimal.ZERO) <= 0) {
-            refundAmount = p.getAmount() != null ? p.getAmount() : BigDecimal.ZERO;
+    /**
+     * Cancels the payments of an order that nothing has been taken for yet; captures and refunds
+     * stand. Each payment goes through the guarded transition, so one the dispatcher moves on
+     * concurrently is re-read and cancelled from its new status while that is still possible.
+     *
+     * <p>An authorization not yet sent is dropped from the outbox in the same transaction. One
+     * already sent may still succeed; {@link #recordSuccess} then voids it. An AUTHORIZED payment
+     * has its hold voided at the provider.
+     */
+    @Transactional
+    public void cancelPaymentsOfOrder(Long orderId) {
+        LocalDateTime now = LocalDateTime.now();
+        for (PaymentEntity p : paymentRepository.findByOrderIdOrderByCreatedAtDesc(orderId)) {
+            PaymentStatus status = p.getStatus();
+            while (status != null && CANCELLABLE.contains(status)) {
+                if (transition(p.getId(), orderId, status, PaymentStatus.CANCELLED, null, now) == 1) {
+                    paymentOutboxRepository.cancelUnsent(p.getId(), now);
+                    if (status == PaymentStatus.AUTHORIZED) {
+                        PaymentRepository.Balance b = paymentRepository.findBalanceById(p.getId());
+                        enqueue(p.getId(), orderId, PaymentOutboxEntry.VOID, b.getAmount(), b.getCurrency(),
+                                b.getExternalReference());
+                    }
+                    break;
+                }
+                status = paymentRepository.findStatusById(p.getId());
+            }
         }
+    }
 
-        boolean refunded = externalApiClient.refundPayment(p.getExternalReference(), refundAmount);
-        if (!refunded) {
-            response.put("message", "External refund failed");
-            response.put("paymentId", id);
-            return response;
+    /**
+     * Moves a payment to the status the provider reports for it, as found by
+     * {@link PaymentReconciliationJob}. The provider's record of what was done wins over the request
+     * lifecycle, so any move is allowed; it is still guarded on the status and balances the payment
+     * was read with, and returns false if a capture or refund has changed them since. The payment takes the provider's
+     * captured and refunded balances, which must not be below its own, and what they add is booked
+     * to the ledger.
+     */
+    @Transactional
+    public boolean applyProviderStatus(Long id, Long orderId, PaymentStatus from, PaymentStatus to,
+                                       BigDecimal capturedAmount, BigDecimal refundedAmount) {
+        LocalDateTime now = LocalDateTime.now();
+        PaymentRepository.Balance b = paymentRepository.findBalanceById(id);
+        if (b == null || b.getStatus() != from) {
+            return false;
+        }
+        if (paymentRepository.applyProviderStatus(id, from, b.getCapturedAmount(), b.getRefundedAmount(), to,
+                capturedAmount, refundedAmount, now) == 0) {
+            return false;
+        }
+        eventPublisher.publishEvent(new PaymentStatusChangedEvent(id, orderId, from, to, null, now));
+        record(id, PaymentLedgerEntry.CAPTURE, capturedAmount.subtract(b.getCapturedAmount()), b.getCurrency(), now);
+        record(id, PaymentLedgerEntry.REFUND, refundedAmount.subtract(b.getRefundedAmount()), b.getCurrency(), now);
+        if (to == PaymentStatus.CAPTURED) {
+            markOrderPaid(orderId, now);
         }
+        return true;
+    }
 
-        p.setStatus("REFUNDED");
-        p.setUpdatedAt(LocalDateTime.now());
-        paymentRepository.save(p);
+    private void enqueue(PaymentEntity p, String operation, BigDecimal amount) {
+        enqueue(p.getId(), p.getOrderId(), operation, amount, p.getCurrency(), p.getExternalReference());
+    }
 
-        response.put("message", "Payment refunded");
-        response.put("paymentId", id);
-        response.put("status", "REFUNDED");
-        response.put("amount", refundAmount);
-        return response;
+    private void enqueue(Long paymentId, Long orderId, String operation, BigDecimal amount, String currency,
+                         String externalReference) {
+        PaymentOutboxEntry e = new PaymentOutboxEntry();
+        e.setPaymentId(paymentId);
+        e.setOrderId(orderId);
+        e.setOperation(operation);
+        e.setAmount(amount);
+        e.setCurrency(currency);
+        e.setExternalReference(externalReference);
+        e.setIdempotencyKey(UUID.randomUUID().toString());
+        e.setStatus(PaymentOutboxEntry.PENDING);
+        e.setAttempts(0);
+        e.setNextAttemptAt(LocalDateTime.now());
+        e.setCreatedAt(LocalDateTime.now());
+        paymentOutboxRepository.save(e);
+    }
+
+    // Releases a settled refund's hold; once no refund is left queued, the payment is REFUNDED if
+    // refunds add up to the captured amount and CAPTURED (refundable further) otherwise
+    private boolean settleRefund(PaymentOutboxEntry entry, BigDecimal refunded, String reason, LocalDateTime now) {
+        Long id = entry.getPaymentId();
+        if (paymentRepository.settleRefund(id, PaymentStatus.REFUND_PENDING, entry.getAmount(), refunded, now) == 0) {
+            return false;
+        }
+        PaymentRepository.Balance b = paymentRepository.findBalanceById(id);
+        if (b.getRefundPendingAmount().signum() == 0) {
+            PaymentStatus to = b.getRefundedAmount().compareTo(b.getCapturedAmount()) >= 0
+                    ? PaymentStatus.REFUNDED : PaymentStatus.CAPTURED;
+            transition(id, entry.getOrderId(), PaymentStatus.REFUND_PENDING, to, reason, now);
+        }
+        return true;
     }
 
-    private Long safeLong(Object obj) {
-        if (obj == null) return null;
-        try {
-            return Long.parseLong(obj.toString());
-        } catch (Exception e) {
-            return null;
+    private void record(Long paymentId, String kind, BigDecimal amount, String currency, LocalDateTime now) {
+        if (amount.signum() > 0) {
+            paymentLedgerRepository.save(new PaymentLedgerEntry(paymentId, kind, amount, currency, now));
         }
     }
 
-    private BigDecimal safeBigDecimal(Object obj, String defaultValue) {
-        if (obj == null) return new BigDecimal(defaultValue);
-        try {
-            return new BigDecimal(obj.toString());
-        } catch (Exception e) {
-            return new BigDecimal(defaultValue);
+    // Only a CREATED order becomes PAID; one cancelled or already further along is left as it is
+    private void markOrderPaid(Long orderId, LocalDateTime now) {
+        orderRepository.findById(orderId).ifPresent(o -> {
+            if (o.getStatus() == OrderStatus.CREATED
+                    && orderRepository.transition(orderId, OrderStatus.CREATED, OrderStatus.PAID, now) == 1) {
+                eventPublisher.publishEvent(new OrderStatusChangedEvent(o.getId(), o.getCustomerId(),
+                        List.copyOf(o.getLines()), o.getAmount(), o.getCreatedAt(), OrderStatus.CREATED, OrderStatus.PAID));
+            }
+        });
+    }
+
+    // Guarded on the current status, so a duplicate or stale outcome changes nothing
+    private int transition(Long id, Long orderId, PaymentStatus from, PaymentStatus to, String reason,
+                           LocalDateTime now) {
+        if (!from.canTransitionTo(to)) {
+            throw new IllegalStateException("Illegal payment transition " + from + " -> " + to);
+        }
+        int updated = paymentRepository.transition(id, from, to, reason, now);
+        if (updated == 1) {
+            eventPublisher.publishEvent(new PaymentStatusChangedEvent(id, orderId, from, to, reason, now));
         }
+        return updated;
     }
 
-    private Map<String, Object> toPaymentMap(PaymentEntity p) {
-        Map<String, Object> m = new HashMap<>();
-        m.put("id", p.getId());
-        m.put("orderId", p.getOrderId());
-        m.put("amount", p.getAmount());
-        m.put("currency", p.getCurrency());
-        m.put("provider", p.getProvider());
-        m.put("externalReference", p.getExternalReference());
-        m.put("status", p.getStatus());
-        m.put("createdAt", p.getCreatedAt() != null ? p.getCreatedAt().toString() : null);
-        m.put("updatedAt", p.getUpdatedAt() != null ? p.getUpdatedAt().toString() : null);
-        return m;
+    private PaymentEntity findPayment(Long id) {
+        return paymentRepository.findById(id)
+                .orElseThrow(() -> ApiException.notFound("Payment not found").with("paymentId", id));
     }
 }
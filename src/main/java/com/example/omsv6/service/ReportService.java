@@ -1,11 +1,17 @@
 package com.example.omsv6.service;
 
+import com.example.omsv6.dto.LowStockReport;
+import com.example.omsv6.dto.PaymentSummaryReport;
+import com.example.omsv6.dto.PaymentTotalsView;
+import com.example.omsv6.dto.RollupCheckResponse;
+import com.example.omsv6.dto.RollupRebuildResponse;
+import com.example.omsv6.dto.SalesReport;
 import com.example.omsv6.entity.InventoryItem;
-import com.example.omsv6.entity.OrderEntity;
-import com.example.omsv6.entity.PaymentEntity;
+import com.example.omsv6.entity.PaymentLedgerEntry;
 import com.example.omsv6.repository.InventoryItemRepository;
-import com.example.omsv6.repository.OrderRepository;
+import com.example.omsv6.repository.PaymentLedgerRepository;
 import com.example.omsv6.repository.PaymentRepository;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -16,105 +22,123 @@ import java.time.format.DateTimeParseException;
 import java.util.*;
 
 @Service
+@Timed("service.calls")
 public class ReportService {
 
     @Autowired
-    private OrderRepository orderRepository;
+    private PaymentRepository paymentRepository;
 
     @Autowired
-    private PaymentRepository paymentRepository;
+    private PaymentLedgerRepository paymentLedgerRepository;
 
     @Autowired
     private InventoryItemRepository inventoryItemRepository;
 
-    public Map<String, Object> salesReport(String from, String to) {
+    @Autowired
+    private SalesRollupService salesRollupService;
+
+    public SalesReport salesReport(String from, String to) {
         LocalDateTime fromDt = parseDateFrom(from);
         LocalDateTime toDt = parseDateTo(to);
 
-        List<OrderEntity> orders = orderRepository.findByCreatedAtBetweenOrderByCreatedAtDesc(fromDt, toDt);
+        // One row per SKU, summed over the daily rollup buckets in range
+        List<Object[]> rows = salesRollupService.sumBySku(fromDt.toLocalDate(), toDt.toLocalDate());
 
         BigDecimal totalAmount = BigDecimal.ZERO;
-        int totalQty = 0;
-        Map<String, Integer> qtyBySku = new HashMap<>();
+        long totalQty = 0;
+        long orderCount = 0;
+        Map<String, Long> qtyBySku = new HashMap<>();
         Map<String, BigDecimal> amountBySku = new HashMap<>();
 
-        for (OrderEntity o : orders) {
-            if (o.getAmount() != null) {
-                totalAmount = totalAmount.add(o.getAmount());
-            }
-            totalQty += o.getQuantity();
-            String sku = o.getSku() != null ? o.getSku() : "";
-            qtyBySku.put(sku, qtyBySku.getOrDefault(sku, 0) + o.getQuantity());
-            BigDecimal prev = amountBySku.getOrDefault(sku, BigDecimal.ZERO);
-            amountBySku.put(sku, prev.add(o.getAmount() != null ? o.getAmount() : BigDecimal.ZERO));
+        for (Object[] row : rows) {
+            String sku = (String) row[0];
+            long qty = ((Number) row[1]).longValue();
+            BigDecimal amount = row[2] != null ? (BigDecimal) row[2] : BigDecimal.ZERO;
+            long count = ((Number) row[3]).longValue();
+            if (count == 0 && qty == 0 && amount.signum() == 0) continue;
+            totalAmount = totalAmount.add(amount);
+            totalQty += qty;
+            orderCount += count;
+            qtyBySku.put(sku, qty);
+            amountBySku.put(sku, amount);
         }
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("message", "Sales report generated");
-        response.put("from", fromDt.toString());
-        response.put("to", toDt.toString());
-        response.put("orderCount", orders.size());
-        response.put("totalQuantity", totalQty);
-        response.put("totalAmount", totalAmount);
-        response.put("quantityBySku", qtyBySku);
-        response.put("amountBySku", amountBySku);
-        return response;
+        return new SalesReport("Sales report generated", fromDt, toDt, orderCount, totalQty, totalAmount,
+                qtyBySku, amountBySku);
+    }
+
+    public RollupRebuildResponse rebuildSalesRollups(String from, String to) {
+        return salesRollupService.rebuild(parseDateFrom(from).toLocalDate(), parseDateTo(to).toLocalDate());
     }
 
-    public Map<String, Object> lowStockReport(int threshold) {
+    public RollupCheckResponse checkSalesRollups(String from, String to) {
+        return salesRollupService.check(parseDateFrom(from).toLocalDate(), parseDateTo(to).toLocalDate());
+    }
+
+    public LowStockReport lowStockReport(int threshold) {
         int t = Math.max(0, threshold);
         List<InventoryItem> items = inventoryItemRepository.findAllByOrderBySkuAsc();
-        List<Map<String, Object>> low = new ArrayList<>();
+        List<LowStockReport.Item> low = new ArrayList<>();
 
         for (InventoryItem i : items) {
             if (i.getQuantityAvailable() <= t) {
-                Map<String, Object> m = new HashMap<>();
-                m.put("sku", i.getSku());
-                m.put("name", i.getName());
-                m.put("quantityAvailable", i.getQuantityAvailable());
-                m.put("quantityReserved", i.getQuantityReserved());
-                low.add(m);
+                low.add(new LowStockReport.Item(i.getSku(), i.getName(), i.getQuantityAvailable(),
+                        i.getQuantityReserved()));
             }
         }
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("message", "Low stock report generated");
-        response.put("threshold", t);
-        response.put("count", low.size());
-        response.put("items", low);
-        return response;
+        return new LowStockReport("Low stock report generated", t, low.size(), low);
     }
 
-    public Map<String, Object> paymentSummary(String from, String to) {
+    /**
+     * Counts of the payments created in the range, by status, and the money authorized, captured and
+     * refunded in it, summed from the payment ledger. Both come from aggregate queries on covering
+     * indexes; no payment or ledger entry is loaded.
+     */
+    public PaymentSummaryReport paymentSummary(String from, String to, String groupBy) {
         LocalDateTime fromDt = parseDateFrom(from);
         LocalDateTime toDt = parseDateTo(to);
+        String grouping = groupBy != null ? groupBy.trim().toLowerCase() : "";
+        if (!grouping.isEmpty() && !"day".equals(grouping) && !"currency".equals(grouping)) {
+            throw ApiException.badRequest("groupBy must be one of: currency, day");
+        }
+        String message = "Payment summary generated";
+
+        if ("day".equals(grouping)) {
+            // day -> currency -> totals
+            Map<String, Map<String, PaymentTotalsAccumulator>> byDay = new TreeMap<>();
+            for (PaymentRepository.DailyPaymentTotals row : paymentRepository.summarizeByDayStatusAndCurrency(fromDt, toDt)) {
+                byDay.computeIfAbsent(row.getDay().toString(), d -> new TreeMap<>())
+                        .computeIfAbsent(row.getCurrency(), c -> new PaymentTotalsAccumulator())
+                        .add(row);
+            }
+            for (PaymentLedgerRepository.DailyLedgerTotals row : paymentLedgerRepository.summarizeByDayKindAndCurrency(fromDt, toDt)) {
+                byDay.computeIfAbsent(row.getDay().toString(), d -> new TreeMap<>())
+                        .computeIfAbsent(row.getCurrency(), c -> new PaymentTotalsAccumulator())
+                        .add(row);
+            }
+            Map<String, Map<String, PaymentTotalsView>> days = new LinkedHashMap<>();
+            byDay.forEach((day, currencies) -> days.put(day, toTotalsByCurrency(currencies)));
+            return new PaymentSummaryReport(message, fromDt, toDt, "day", null, null, days);
+        }
 
-        List<PaymentEntity> payments = paymentRepository.findByCreatedAtBetweenOrderByCreatedAtDesc(fromDt, toDt);
-
-        BigDecimal authorized = BigDecimal.ZERO;
-        BigDecimal captured = BigDecimal.ZERO;
-        BigDecimal refunded = BigDecimal.ZERO;
-        Map<String, Integer> countByStatus = new HashMap<>();
-
-        for (PaymentEntity p : payments) {
-            String st = p.getStatus() != null ? p.getStatus() : "UNKNOWN";
-            countByStatus.put(st, countByStatus.getOrDefault(st, 0) + 1);
-            BigDecimal amt = p.getAmount() != null ? p.getAmount() : BigDecimal.ZERO;
-            if ("AUTHORIZED".equalsIgnoreCase(st)) authorized = authorized.add(amt);
-            if ("CAPTURED".equalsIgnoreCase(st)) captured = captured.add(amt);
-            if ("REFUNDED".equalsIgnoreCase(st)) refunded = refunded.add(amt);
+        List<PaymentRepository.PaymentTotals> rows = paymentRepository.summarizeByStatusAndCurrency(fromDt, toDt);
+        List<PaymentLedgerRepository.LedgerTotals> ledger = paymentLedgerRepository.summarizeByKindAndCurrency(fromDt, toDt);
+        if ("currency".equals(grouping)) {
+            Map<String, PaymentTotalsAccumulator> byCurrency = new TreeMap<>();
+            for (PaymentRepository.PaymentTotals row : rows) {
+                byCurrency.computeIfAbsent(row.getCurrency(), c -> new PaymentTotalsAccumulator()).add(row);
+            }
+            for (PaymentLedgerRepository.LedgerTotals row : ledger) {
+                byCurrency.computeIfAbsent(row.getCurrency(), c -> new PaymentTotalsAccumulator()).add(row);
+            }
+            return new PaymentSummaryReport(message, fromDt, toDt, "currency", null, toTotalsByCurrency(byCurrency), null);
         }
 
-        Map<String, Object> response = new HashMap<>();
-        response.put("message", "Payment summary generated");
-        response.put("from", fromDt.toString());
-        response.put("to", toDt.toString());
-        response.put("paymentCount", payments.size());
-        response.put("countByStatus", countByStatus);
-        response.put("totalAuthorized", authorized);
-        response.put("totalCaptured", captured);
-        response.put("totalRefunded", refunded);
-        return response;
+        PaymentTotalsAccumulator all = new PaymentTotalsAccumulator();
+        rows.forEach(all::add);
+        ledger.forEach(all::add);
+        return new PaymentSummaryReport(message, fromDt, toDt, null, all.toView(), null, null);
     }
 
     private LocalDateTime parseDateFrom(String s) {
@@ -124,7 +148,7 @@ public class ReportService {
         try {
             return LocalDate.parse(s).atStartOfDay();
         } catch (DateTimeParseException ex) {
-            return LocalDate.now().minusDays(30).atStartOfDay();
+            throw ApiException.badRequest("from must be an ISO date (yyyy-MM-dd)");
         }
     }
 
@@ -135,7 +159,41 @@ public class ReportService {
         try {
             return LocalDate.parse(s).plusDays(1).atStartOfDay();
         } catch (DateTimeParseException ex) {
-            return LocalDate.now().plusDays(1).atStartOfDay();
+            throw ApiException.badRequest("to must be an ISO date (yyyy-MM-dd)");
+        }
+    }
+
+    private Map<String, PaymentTotalsView> toTotalsByCurrency(Map<String, PaymentTotalsAccumulator> byCurrency) {
+        Map<String, PaymentTotalsView> out = new LinkedHashMap<>();
+        byCurrency.forEach((currency, totals) -> out.put(currency, totals.toView()));
+        return out;
+    }
+
+    private static final class PaymentTotalsAccumulator {
+        private long paymentCount;
+        private final Map<String, Long> countByStatus = new HashMap<>();
+        private BigDecimal authorized = BigDecimal.ZERO;
+        private BigDecimal captured = BigDecimal.ZERO;
+        private BigDecimal refunded = BigDecimal.ZERO;
+
+        void add(PaymentRepository.PaymentTotals row) {
+            paymentCount += row.getPaymentCount();
+            countByStatus.merge(row.getStatus().name(), row.getPaymentCount(), Long::sum);
+        }
+
+        void add(PaymentLedgerRepository.LedgerTotals row) {
+            BigDecimal amt = row.getTotalAmount() != null ? row.getTotalAmount() : BigDecimal.ZERO;
+            switch (row.getKind()) {
+                case PaymentLedgerEntry.AUTHORIZE -> authorized = authorized.add(amt);
+                case PaymentLedgerEntry.CAPTURE -> captured = captured.add(amt);
+                case PaymentLedgerEntry.REFUND -> refunded = refunded.add(amt);
+                default -> {
+                }
+            }
+        }
+
+        PaymentTotalsView toView() {
+            return new PaymentTotalsView(paymentCount, countByStatus, authorized, captured, refunded);
         }
     }
 }
@@ -0,0 +1,251 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.event.OrderStatusChangedEvent;
+import com.example.omsv6.repository.OrderRepository;
+import com.example.omsv6.repository.ReservationSweepLeaseRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancels orders still unpaid when their reservation expires ({@code app.orders.reservation-ttl}
+ * after creation) and releases their stock. Expired orders are read oldest expiry first from
+ * {@code idx_orders_reservation_expires_id}, which holds only unpaid orders' expiries, so a sweep
+ * reads what has expired and nothing else. Each batch of {@code batch-size} orders is one
+ * transaction: one UPDATE cancels the batch, one UPDATE per SKU (in SKU order, like order creation)
+ * releases its stock, and the usual status events and payment cancellations follow.
+ *
+ * <p>An order with a payment being authorized, authorized or being captured is skipped: it stays
+ * CREATED until its capture settles, and cancelling it then would release stock the customer is
+ * charged for. It is swept once that payment has failed or been cancelled.
+ *
+ * <p>One instance sweeps at a time, holding the lease in {@code reservation_sweep_lease}. The
+ * batch's cancelling UPDATE is still guarded on CREATED, so an order paid or cancelled meanwhile is
+ * never released twice: if it touches fewer orders than were read, the batch is rolled back and
+ * redone one guarded update per order.
+ *
+ * <p>Publishes {@code orders.reservations.expired} (orders cancelled),
+ * {@code orders.reservations.released} (stock units), {@code orders.reservations.sweep.batch}
+ * (orders per batch) and {@code orders.reservations.sweep} (sweep duration).
+ */
+@Service
+public class ReservationExpirySweeper implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(ReservationExpirySweeper.class);
+    private static final Batch CHANGED_MEANWHILE = new Batch(-1, 0);
+    private static final Batch LEASE_LOST = new Batch(-1, 0);
+    private static final Set<PaymentStatus> PAYING = EnumSet.of(PaymentStatus.AUTHORIZATION_PENDING,
+            PaymentStatus.AUTHORIZED, PaymentStatus.CAPTURE_PENDING);
+
+    private final OrderRepository orderRepository;
+    private final ReservationSweepLeaseRepository leaseRepository;
+    private final InventoryReservationService inventoryReservationService;
+    private final PaymentService paymentService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter expired;
+    private final Counter released;
+    private final DistributionSummary batchSizes;
+    private final Timer sweepTimer;
+    private final String owner = UUID.randomUUID().toString();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.orders.reservation-sweeper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.orders.reservation-sweeper.poll-interval:30s}")
+    private Duration pollInterval;
+
+    @Value("${app.orders.reservation-sweeper.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.orders.reservation-sweeper.lease:1m}")
+    private Duration lease;
+
+    private volatile ScheduledExecutorService poller;
+    private volatile boolean stopping;
+
+    public ReservationExpirySweeper(OrderRepository orderRepository, ReservationSweepLeaseRepository leaseRepository,
+                                    InventoryReservationService inventoryReservationService,
+                                    PaymentService paymentService, ApplicationEventPublisher eventPublisher,
+                                    PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.leaseRepository = leaseRepository;
+        this.inventoryReservationService = inventoryReservationService;
+        this.paymentService = paymentService;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        this.expired = Counter.builder("orders.reservations.expired")
+                .description("Unpaid orders cancelled because their reservation expired")
+                .register(meterRegistry);
+        this.released = Counter.builder("orders.reservations.released")
+                .description("Stock units released from expired reservations")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("orders.reservations.sweep.batch")
+                .description("Expired orders cancelled per batch")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder("orders.reservations.sweep")
+                .description("Duration of a reservation expiry sweep")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void start() {
+        stopping = false;
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reservation-expiry-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        poller = s;
+    }
+
+    // Lets the batch in hand commit; what is left is swept on the next poll of any instance
+    @Override
+    public void stop() {
+        stopping = true;
+        ScheduledExecutorService s = poller;
+        poller = null;
+        if (s == null) return;
+        s.shutdown();
+        try {
+            s.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return poller != null;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return enabled;
+    }
+
+    private void poll() {
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            log.warn("Reservation expiry sweep failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Cancels every order whose reservation has expired, batch by batch, and returns how many; 0
+     * when another instance holds the lease.
+     */
+    public int sweep() {
+        if (leaseRepository.claim(owner, LocalDateTime.now(), LocalDateTime.now().plus(lease)) == 0) return 0;
+        long begin = System.nanoTime();
+        int total = 0;
+        try {
+            while (!stopping) {
+                Batch batch = transactionTemplate.execute(tx -> expireBatch(tx, true));
+                if (batch == CHANGED_MEANWHILE) {
+                    batch = transactionTemplate.execute(tx -> expireBatch(tx, false));
+                }
+                if (batch == null || batch == LEASE_LOST) break;
+                total += batch.cancelled();
+                if (batch.read() < batchSize) break;
+            }
+        } finally {
+            leaseRepository.release(owner, LocalDateTime.now());
+            sweepTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+        if (total > 0) {
+            log.info("Released the reservations of {} expired orders", total);
+        }
+        return total;
+    }
+
+    // CHANGED_MEANWHILE (rolled back) when the bulk update missed some of the orders read
+    private Batch expireBatch(TransactionStatus tx, boolean bulk) {
+        LocalDateTime now = LocalDateTime.now();
+        // Renewed every batch, so a long sweep keeps it
+        if (leaseRepository.claim(owner, now, now.plus(lease)) == 0) {
+            log.info("Lease on the reservation sweep was lost; leaving it to its new owner");
+            return LEASE_LOST;
+        }
+        List<OrderEntity> orders = orderRepository.findExpiredReservations(now, PAYING, Limit.of(batchSize));
+        if (orders.isEmpty()) return new Batch(0, 0);
+        // Lines loaded, then the batch detached: each statement below would otherwise auto-flush it
+        orders.forEach(o -> Hibernate.initialize(o.getLines()));
+        entityManager.clear();
+
+        List<OrderEntity> cancelled = new ArrayList<>(orders.size());
+        if (bulk) {
+            List<Long> ids = orders.stream().map(OrderEntity::getId).toList();
+            if (orderRepository.expireReservations(ids, OrderStatus.CREATED, OrderStatus.CANCELLED, PAYING, now) != ids.size()) {
+                tx.setRollbackOnly();
+                return CHANGED_MEANWHILE;
+            }
+            cancelled.addAll(orders);
+        } else {
+            for (OrderEntity o : orders) {
+                if (orderRepository.expireReservations(List.of(o.getId()), OrderStatus.CREATED, OrderStatus.CANCELLED,
+                        PAYING, now) == 1) {
+                    cancelled.add(o);
+                }
+            }
+        }
+
+        // Stock of the whole batch, one release per SKU
+        Map<String, Integer> bySku = new TreeMap<>();
+        for (OrderEntity o : cancelled) {
+            for (OrderLine line : o.getLines()) {
+                bySku.merge(line.getSku(), line.getQuantity(), Integer::sum);
+            }
+        }
+        int units = 0;
+        for (Map.Entry<String, Integer> e : bySku.entrySet()) {
+            inventoryReservationService.release(e.getKey(), e.getValue());
+            units += e.getValue();
+        }
+
+        for (OrderEntity o : cancelled) {
+            eventPublisher.publishEvent(new OrderStatusChangedEvent(o.getId(), o.getCustomerId(),
+                    List.copyOf(o.getLines()), o.getAmount(), o.getCreatedAt(), OrderStatus.CREATED, OrderStatus.CANCELLED));
+            paymentService.cancelPaymentsOfOrder(o.getId());
+        }
+
+        expired.increment(cancelled.size());
+        released.increment(units);
+        batchSizes.record(cancelled.size());
+        return new Batch(orders.size(), cancelled.size());
+    }
+
+    private record Batch(int read, int cancelled) {
+    }
+}
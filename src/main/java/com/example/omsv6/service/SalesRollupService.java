@@ -0,0 +1,246 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.RollupCheckResponse;
+import com.example.omsv6.dto.RollupRebuildResponse;
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.SalesRollup;
+import com.example.omsv6.event.OrderCreatedEvent;
+import com.example.omsv6.event.OrderStatusChangedEvent;
+import com.example.omsv6.repository.SalesRollupRepository;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Maintains daily per-SKU, per-status sales buckets in {@code sales_rollups}.
+ *
+ * <p>Buckets sum order lines. An order is counted once, in the bucket of its first line, so the
+ * order counts of all SKUs add up to the number of orders rather than lines.
+ *
+ * <p>Order events are folded into a per-transaction delta map and applied just before the
+ * order transaction commits, so a batch of orders touches each bucket once and buckets are
+ * always updated in the same (sorted) order.
+ *
+ * <p>A bucket key is deliberately not unique: when two transactions open the same new bucket
+ * concurrently, both insert a row rather than one failing on a unique key (which would abort
+ * the order transaction) or needing a second connection. Reads sum rows per key, increments
+ * only touch the oldest row, and {@link #rebuild} folds duplicates back into one.
+ *
+ * <p>Before its deltas, a transaction locks the {@code sales_rollup_lock} stripes of their SKUs,
+ * in stripe order; {@link #rebuild} locks all of them. So a rebuild waits for the deltas in flight
+ * to commit, and transactions reaching commit during a rebuild wait for it, then add to the
+ * rebuilt buckets. Writers only wait on each other when their SKUs share a stripe.
+ */
+@Service
+@Timed("service.calls")
+public class SalesRollupService {
+
+    private static final int MAX_REPORTED_MISMATCHES = 100;
+    private static final int LOCK_STRIPES = 16;
+
+    @Autowired
+    private SalesRollupRepository salesRollupRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public SalesRollupService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener
+    public void onOrderCreated(OrderCreatedEvent event) {
+        LocalDate day = event.createdAt().toLocalDate();
+        List<OrderLine> lines = event.lines();
+        for (int i = 0; i < lines.size(); i++) {
+            OrderLine line = lines.get(i);
+            record(new BucketKey(day, line.getSku(), event.status()), line.getQuantity(), line.getAmount(), i == 0 ? 1 : 0);
+        }
+    }
+
+    @EventListener
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        LocalDate day = event.createdAt().toLocalDate();
+        List<OrderLine> lines = event.lines();
+        for (int i = 0; i < lines.size(); i++) {
+            OrderLine line = lines.get(i);
+            int orders = i == 0 ? 1 : 0;
+            record(new BucketKey(day, line.getSku(), event.oldStatus()), -line.getQuantity(), negate(line.getAmount()), -orders);
+            record(new BucketKey(day, line.getSku(), event.newStatus()), line.getQuantity(), line.getAmount(), orders);
+        }
+    }
+
+    /**
+     * Rows: sku, quantity, amount, order count for every bucket in {@code [from, to)}.
+     */
+    @Transactional(readOnly = true)
+    public List<Object[]> sumBySku(LocalDate from, LocalDate to) {
+        return salesRollupRepository.sumBySku(from, to);
+    }
+
+    @Transactional
+    public RollupRebuildResponse rebuild(LocalDate from, LocalDate to) {
+        salesRollupRepository.lockAllStripes();
+        int deleted = salesRollupRepository.deleteRange(from, to);
+        int inserted = salesRollupRepository.rebuildFromOrders(from.atStartOfDay(), to.atStartOfDay());
+        return new RollupRebuildResponse("Sales rollups rebuilt", from, to, deleted, inserted);
+    }
+
+    /**
+     * Compares the stored buckets against a fresh GROUP BY over raw orders.
+     */
+    @Transactional(readOnly = true)
+    public RollupCheckResponse check(LocalDate from, LocalDate to) {
+        Map<BucketKey, long[]> expected = new HashMap<>();
+        Map<BucketKey, BigDecimal> expectedAmount = new HashMap<>();
+        for (Object[] row : salesRollupRepository.aggregateOrders(from.atStartOfDay(), to.atStartOfDay())) {
+            BucketKey key = new BucketKey((LocalDate) row[0], (String) row[1], (OrderStatus) row[2]);
+            expected.put(key, new long[]{((Number) row[3]).longValue(), ((Number) row[5]).longValue()});
+            expectedAmount.put(key, (BigDecimal) row[4]);
+        }
+
+        List<RollupCheckResponse.Mismatch> mismatches = new ArrayList<>();
+        int mismatchCount = 0;
+        Set<BucketKey> seen = new HashSet<>();
+        for (Object[] row : salesRollupRepository.sumByBucket(from, to)) {
+            BucketKey key = new BucketKey((LocalDate) row[0], (String) row[1], (OrderStatus) row[2]);
+            long quantity = ((Number) row[3]).longValue();
+            BigDecimal amount = row[4] != null ? (BigDecimal) row[4] : BigDecimal.ZERO;
+            long orderCount = ((Number) row[5]).longValue();
+            seen.add(key);
+            long[] exp = expected.getOrDefault(key, new long[2]);
+            BigDecimal expAmount = expectedAmount.getOrDefault(key, BigDecimal.ZERO);
+            if (exp[0] != quantity || exp[1] != orderCount || expAmount.compareTo(amount) != 0) {
+                if (mismatchCount++ < MAX_REPORTED_MISMATCHES) {
+                    mismatches.add(mismatch(key, exp, expAmount, quantity, amount, orderCount));
+                }
+            }
+        }
+        for (Map.Entry<BucketKey, long[]> e : expected.entrySet()) {
+            if (!seen.contains(e.getKey())) {
+                if (mismatchCount++ < MAX_REPORTED_MISMATCHES) {
+                    mismatches.add(mismatch(e.getKey(), e.getValue(), expectedAmount.get(e.getKey()), 0, BigDecimal.ZERO, 0));
+                }
+            }
+        }
+
+        return new RollupCheckResponse(mismatchCount == 0 ? "Sales rollups consistent" : "Sales rollups inconsistent",
+                from, to, expected.size(), mismatchCount, mismatches);
+    }
+
+    private void record(BucketKey key, long quantity, BigDecimal amount, long orderCount) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            transactionTemplate.executeWithoutResult(s -> applyAll(Map.of(key, new Delta(quantity, amount, orderCount))));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<BucketKey, Delta> pending = (Map<BucketKey, Delta>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<BucketKey, Delta> deltas = new TreeMap<>();
+            TransactionSynchronizationManager.bindResource(this, deltas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public int getOrder() {
+                    return EventLogService.SYNCHRONIZATION_ORDER - 1;
+                }
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    applyAll(deltas);
+                    deltas.clear();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(SalesRollupService.this);
+                }
+            });
+            pending = deltas;
+        }
+        pending.computeIfAbsent(key, k -> new Delta(0, BigDecimal.ZERO, 0)).add(quantity, amount, orderCount);
+    }
+
+    private void applyAll(Map<BucketKey, Delta> deltas) {
+        SortedSet<Integer> stripes = new TreeSet<>();
+        deltas.forEach((key, delta) -> {
+            if (!delta.isZero()) stripes.add(Math.floorMod(key.sku().hashCode(), LOCK_STRIPES));
+        });
+        for (int stripe : stripes) {
+            salesRollupRepository.lockStripe(stripe);
+        }
+        deltas.forEach(this::apply);
+    }
+
+    private void apply(BucketKey key, Delta delta) {
+        if (delta.isZero()) return;
+        if (increment(key, delta) == 0) {
+            SalesRollup r = new SalesRollup();
+            r.setBucketDate(key.day());
+            r.setSku(key.sku());
+            r.setStatus(key.status());
+            r.setQuantity(delta.quantity);
+            r.setAmount(delta.amount);
+            r.setOrderCount(delta.orderCount);
+            salesRollupRepository.save(r);
+        }
+    }
+
+    private int increment(BucketKey key, Delta delta) {
+        return salesRollupRepository.increment(key.day(), key.sku(), key.status(),
+                delta.quantity, delta.amount, delta.orderCount);
+    }
+
+    private RollupCheckResponse.Mismatch mismatch(BucketKey key, long[] expected, BigDecimal expectedAmount,
+                                                  long quantity, BigDecimal amount, long orderCount) {
+        return new RollupCheckResponse.Mismatch(key.day(), key.sku(), key.status().name(),
+                new RollupCheckResponse.Totals(expected[0], expectedAmount, expected[1]),
+                new RollupCheckResponse.Totals(quantity, amount, orderCount));
+    }
+
+    private static BigDecimal negate(BigDecimal amount) {
+        return amount != null ? amount.negate() : BigDecimal.ZERO;
+    }
+
+    record BucketKey(LocalDate day, String sku, OrderStatus status) implements Comparable<BucketKey> {
+        @Override
+        public int compareTo(BucketKey o) {
+            int c = day.compareTo(o.day);
+            if (c == 0) c = sku.compareTo(o.sku);
+            if (c == 0) c = status.compareTo(o.status);
+            return c;
+        }
+    }
+
+    private static final class Delta {
+        long quantity;
+        BigDecimal amount;
+        long orderCount;
+
+        Delta(long quantity, BigDecimal amount, long orderCount) {
+            this.quantity = quantity;
+            this.amount = amount;
+            this.orderCount = orderCount;
+        }
+
+        void add(long q, BigDecimal a, long c) {
+            quantity += q;
+            amount = amount.add(a != null ? a : BigDecimal.ZERO);
+            orderCount += c;
+        }
+
+        boolean isZero() {
+            return quantity == 0 && orderCount == 0 && amount.signum() == 0;
+        }
+    }
+}
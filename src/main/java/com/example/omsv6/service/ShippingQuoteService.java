@@ -0,0 +1,98 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.ShippingQuoteResponse;
+import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.event.OrderCreatedEvent;
+import com.example.omsv6.repository.OrderRepository;
+import io.micrometer.core.annotation.Timed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+@Service
+@Timed("service.calls")
+public class ShippingQuoteService {
+
+    public static final String PENDING = "PENDING";
+    public static final String READY = "READY";
+    public static final String FAILED = "FAILED";
+
+    private static final Logger log = LoggerFactory.getLogger(ShippingQuoteService.class);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private ExternalApiClient externalApiClient;
+
+    @Autowired
+    @Qualifier("shippingQuoteExecutor")
+    private Executor shippingQuoteExecutor;
+
+    /**
+     * Fetches one quote for all lines of the order, only once the order insert has committed,
+     * so the HTTP call never holds a DB connection or the reserved inventory rows. When the
+     * executor's queue is full the quote is marked FAILED straight away.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onOrderCreated(OrderCreatedEvent event) {
+        try {
+            shippingQuoteExecutor.execute(() -> fetchQuote(event));
+        } catch (RejectedExecutionException e) {
+            log.warn("Shipping quote queue full; no quote for order {}", event.orderId());
+            markFailed(event.orderId());
+        }
+    }
+
+    private void fetchQuote(OrderCreatedEvent event) {
+        try {
+            Map<String, Integer> quantityBySku = new LinkedHashMap<>();
+            for (OrderLine line : event.lines()) {
+                quantityBySku.put(line.getSku(), line.getQuantity());
+            }
+            Map<String, Object> result = externalApiClient.fetchShippingQuote(event.customerId(), quantityBySku);
+            if (!isSuccessful(result)) {
+                markFailed(event.orderId());
+                return;
+            }
+            Map<?, ?> quote = (Map<?, ?>) result.get("quote");
+            BigDecimal amount = new BigDecimal(quote.get("amount").toString());
+            String currency = quote.get("currency").toString();
+            orderRepository.updateShippingQuote(event.orderId(), READY, amount, currency, LocalDateTime.now());
+        } catch (Exception e) {
+            log.warn("Shipping quote failed for order {}: {}", event.orderId(), e.getMessage());
+            markFailed(event.orderId());
+        }
+    }
+
+    public ShippingQuoteResponse getShippingQuote(Long orderId) {
+        OrderEntity o = orderRepository.findById(orderId)
+                .orElseThrow(() -> ApiException.notFound("Order not found").with("orderId", orderId));
+        String status = o.getShippingQuoteStatus() != null ? o.getShippingQuoteStatus() : PENDING;
+        ShippingQuoteResponse.Quote quote = READY.equals(status)
+                ? new ShippingQuoteResponse.Quote(o.getShippingQuoteCurrency(), o.getShippingQuoteAmount()) : null;
+        return new ShippingQuoteResponse("Shipping quote status", orderId, status, quote, o.getShippingQuoteUpdatedAt());
+    }
+
+    private void markFailed(Long orderId) {
+        orderRepository.updateShippingQuote(orderId, FAILED, null, null, LocalDateTime.now());
+    }
+
+    private boolean isSuccessful(Map<String, Object> result) {
+        if (result == null || !(result.get("echo") instanceof Map<?, ?> echo)) return false;
+        Object httpStatus = echo.get("httpStatus");
+        if (!(httpStatus instanceof Integer code)) return false;
+        return code >= 200 && code < 300;
+    }
+}
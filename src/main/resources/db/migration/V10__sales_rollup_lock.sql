@@ -0,0 +1,11 @@
+-- Stripe locks between SalesRollupService's rebuild and the deltas order transactions apply before
+-- commit. A transaction locks the stripes of its SKUs before their buckets; a rebuild locks every
+-- stripe, so it never deletes and re-derives buckets while an uncommitted delta is in them.
+
+create table sales_rollup_lock (
+    stripe smallint not null,
+    primary key (stripe)
+);
+
+insert into sales_rollup_lock (stripe) values
+    (0), (1), (2), (3), (4), (5), (6), (7), (8), (9), (10), (11), (12), (13), (14), (15);
@@ -0,0 +1,10 @@
+-- Stripe locks between CustomerOrderHistoryService's rebuild and the stats deltas order transactions
+-- apply before commit, as sales_rollup_lock does for sales rollups. Stripes are by customer id.
+
+create table customer_order_stat_lock (
+    stripe smallint not null,
+    primary key (stripe)
+);
+
+insert into customer_order_stat_lock (stripe) values
+    (0), (1), (2), (3), (4), (5), (6), (7), (8), (9), (10), (11), (12), (13), (14), (15);
@@ -0,0 +1,103 @@
+-- Schema as of the switch from ddl-auto=update to Flyway. Statuses of orders, payments and
+-- sales_rollups are OrderStatus / PaymentStatus codes (SMALLINT), never their names.
+
+create sequence orders_seq start with 1 increment by 50;
+
+create table inventory_items (
+    id bigint generated by default as identity,
+    sku varchar(255) not null,
+    name varchar(255) not null,
+    quantity_available integer not null,
+    quantity_reserved integer not null,
+    created_at timestamp(6) not null,
+    updated_at timestamp(6) not null,
+    primary key (id)
+);
+
+create unique index idx_inventory_sku on inventory_items (sku);
+
+create table orders (
+    id bigint not null,
+    customer_id varchar(255) not null,
+    sku varchar(255) not null,
+    quantity integer not null,
+    amount numeric(19, 2) not null,
+    status smallint not null,
+    created_at timestamp(6) not null,
+    updated_at timestamp(6) not null,
+    shipping_quote_status varchar(255),
+    shipping_quote_amount numeric(19, 2),
+    shipping_quote_currency varchar(255),
+    shipping_quote_updated_at timestamp(6),
+    primary key (id)
+);
+
+create index idx_orders_created_id_desc on orders (created_at desc, id desc);
+create index idx_orders_status_created_id on orders (status, created_at, id);
+create index idx_orders_customer_created_id on orders (customer_id, created_at, id);
+create index idx_orders_customer_status_created_id on orders (customer_id, status, created_at, id);
+
+create table payments (
+    id bigint generated by default as identity,
+    order_id bigint not null,
+    amount numeric(19, 2) not null,
+    currency varchar(255) not null,
+    provider varchar(255) not null,
+    external_reference varchar(255),
+    status smallint not null,
+    failure_reason varchar(255),
+    created_at timestamp(6) not null,
+    updated_at timestamp(6) not null,
+    primary key (id)
+);
+
+create index idx_payments_created_status_currency_amount on payments (created_at, status, currency, amount);
+create index idx_payments_order_created on payments (order_id, created_at);
+
+create table payment_outbox (
+    id bigint generated by default as identity,
+    payment_id bigint not null,
+    order_id bigint not null,
+    operation varchar(255) not null,
+    amount numeric(19, 2) not null,
+    currency varchar(255) not null,
+    external_reference varchar(255),
+    idempotency_key varchar(255) not null,
+    status varchar(255) not null,
+    attempts integer not null,
+    next_attempt_at timestamp(6) not null,
+    lease_owner varchar(255),
+    lease_until timestamp(6),
+    last_error varchar(255),
+    created_at timestamp(6) not null,
+    processed_at timestamp(6),
+    primary key (id),
+    constraint uk_payment_outbox_idempotency_key unique (idempotency_key)
+);
+
+create index idx_payment_outbox_status_next_attempt on payment_outbox (status, next_attempt_at);
+create index idx_payment_outbox_lease_owner on payment_outbox (lease_owner);
+
+create table idempotency_records (
+    id varchar(512) not null,
+    request_hash varchar(64) not null,
+    response_body varchar(8000) not null,
+    created_at timestamp(6) not null,
+    expires_at timestamp(6) not null,
+    primary key (id)
+);
+
+create index idx_idempotency_records_expires_at on idempotency_records (expires_at);
+
+create table sales_rollups (
+    id bigint generated by default as identity,
+    bucket_date date not null,
+    sku varchar(255) not null,
+    status smallint not null,
+    quantity bigint not null,
+    amount numeric(19, 2) not null,
+    order_count bigint not null,
+    primary key (id)
+);
+
+create index idx_sales_rollups_bucket on sales_rollups (bucket_date, sku, status);
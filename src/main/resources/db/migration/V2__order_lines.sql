@@ -0,0 +1,17 @@
+-- Orders become a header with one or more lines. Every existing order keeps its sku, quantity
+-- and amount as its only line (line_no 0); the header keeps the order total in amount.
+
+create table order_lines (
+    order_id bigint not null,
+    line_no integer not null,
+    sku varchar(255) not null,
+    quantity integer not null,
+    amount numeric(19, 2) not null,
+    primary key (order_id, line_no)
+);
+
+insert into order_lines (order_id, line_no, sku, quantity, amount)
+select id, 0, sku, quantity, amount from orders;
+
+alter table orders drop column sku;
+alter table orders drop column quantity;
@@ -0,0 +1,20 @@
+-- Ordered log of order, payment and inventory changes. Offsets are handed out from the single
+-- event_log_head row, whose lock is held from just before commit until commit, so offsets become
+-- visible in order and without gaps.
+
+create table event_log (
+    event_offset bigint not null,
+    type varchar(64) not null,
+    aggregate_id varchar(255) not null,
+    payload varchar(100000) not null,
+    created_at timestamp(6) not null,
+    primary key (event_offset)
+);
+
+create table event_log_head (
+    id smallint not null,
+    last_offset bigint not null,
+    primary key (id)
+);
+
+insert into event_log_head (id, last_offset) values (1, 0);
@@ -0,0 +1,16 @@
+-- Per-customer order counts and amounts by status, kept up to date by CustomerOrderHistoryService.
+-- Like sales_rollups, a key may have several rows (see that service); reads sum them.
+
+create table customer_order_stats (
+    id bigint generated by default as identity,
+    customer_id varchar(255) not null,
+    status smallint not null,
+    order_count bigint not null,
+    amount numeric(19, 2) not null,
+    primary key (id)
+);
+
+create index idx_customer_order_stats_customer_status on customer_order_stats (customer_id, status);
+
+insert into customer_order_stats (customer_id, status, order_count, amount)
+select customer_id, status, count(*), coalesce(sum(amount), 0) from orders group by customer_id, status;
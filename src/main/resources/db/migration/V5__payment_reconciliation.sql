@@ -0,0 +1,43 @@
+-- Reconciliation of payments against the provider (PaymentReconciliationJob). A run sweeps payments
+-- in (updated_at, id) order; its cursor and counts live in the single checkpoint row, so a run
+-- interrupted by a restart continues where its last page committed. Drift found is kept per run.
+
+create index idx_payments_updated_id on payments (updated_at, id);
+
+create table payment_reconciliation_checkpoint (
+    id smallint not null,
+    run_id bigint not null,
+    status varchar(255) not null,
+    started_at timestamp(6),
+    finished_at timestamp(6),
+    cursor_updated_at timestamp(6),
+    cursor_id bigint,
+    checked bigint not null,
+    matched bigint not null,
+    fixed bigint not null,
+    flagged bigint not null,
+    skipped bigint not null,
+    lease_owner varchar(255),
+    lease_until timestamp(6),
+    last_error varchar(255),
+    primary key (id)
+);
+
+insert into payment_reconciliation_checkpoint (id, run_id, status, checked, matched, fixed, flagged, skipped)
+values (1, 0, 'IDLE', 0, 0, 0, 0, 0);
+
+create table payment_drift (
+    id bigint generated by default as identity,
+    run_id bigint not null,
+    payment_id bigint not null,
+    kind varchar(255) not null,
+    local_status smallint not null,
+    provider_status varchar(255),
+    local_amount numeric(19, 2) not null,
+    provider_amount numeric(19, 2),
+    fixed boolean not null,
+    detected_at timestamp(6) not null,
+    primary key (id)
+);
+
+create index idx_payment_drift_run_id on payment_drift (run_id, id);
@@ -0,0 +1,36 @@
+-- Money movements per payment (PaymentService). payment_ledger is append-only; the payment row keeps
+-- the running balances so a read never sums the ledger. refund_pending_amount is what refunds still
+-- queued in the outbox have reserved, so concurrent refunds cannot take more than was captured.
+
+alter table payments add column captured_amount numeric(19, 2) default 0 not null;
+alter table payments add column refunded_amount numeric(19, 2) default 0 not null;
+alter table payments add column refund_pending_amount numeric(19, 2) default 0 not null;
+
+create table payment_ledger (
+    id bigint generated by default as identity,
+    payment_id bigint not null,
+    kind varchar(255) not null,
+    amount numeric(19, 2) not null,
+    currency varchar(255) not null,
+    created_at timestamp(6) not null,
+    primary key (id)
+);
+
+create index idx_payment_ledger_payment_id on payment_ledger (payment_id, id);
+create index idx_payment_ledger_created_kind_currency_amount on payment_ledger (created_at, kind, currency, amount);
+
+-- Existing payments: captures and refunds were always of the full amount. Statuses are
+-- PaymentStatus codes (2 AUTHORIZED .. 6 REFUNDED).
+update payments set captured_amount = amount where status in (4, 5, 6);
+update payments set refunded_amount = amount where status = 6;
+update payments p set refund_pending_amount = (
+    select coalesce(sum(o.amount), 0) from payment_outbox o
+    where o.payment_id = p.id and o.operation = 'REFUND' and o.status in ('PENDING', 'IN_FLIGHT'))
+where p.status = 5;
+
+insert into payment_ledger (payment_id, kind, amount, currency, created_at)
+select id, 'AUTHORIZE', amount, currency, created_at from payments where status between 2 and 6;
+insert into payment_ledger (payment_id, kind, amount, currency, created_at)
+select id, 'CAPTURE', amount, currency, updated_at from payments where status between 4 and 6;
+insert into payment_ledger (payment_id, kind, amount, currency, created_at)
+select id, 'REFUND', amount, currency, updated_at from payments where status = 6;
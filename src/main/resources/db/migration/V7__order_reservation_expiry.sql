@@ -0,0 +1,21 @@
+-- Stock reservations of unpaid orders expire (ReservationExpirySweeper). reservation_expires_at is set
+-- while an order is CREATED and cleared by any status change, so the expired ones are a range scan
+-- of idx_orders_reservation_expires_id. The single reservation_sweep_lease row lets one instance
+-- sweep at a time.
+
+alter table orders add column reservation_expires_at timestamp(6);
+
+create index idx_orders_reservation_expires_id on orders (reservation_expires_at, id);
+
+create table reservation_sweep_lease (
+    id smallint not null,
+    lease_owner varchar(255),
+    lease_until timestamp(6),
+    last_swept_at timestamp(6),
+    primary key (id)
+);
+
+insert into reservation_sweep_lease (id) values (1);
+
+-- Orders still unpaid when this ships get a day to be paid rather than expiring right away
+update orders set reservation_expires_at = localtimestamp + interval '1' day where status = 1;
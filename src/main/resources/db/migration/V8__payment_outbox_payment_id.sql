@@ -0,0 +1,4 @@
+-- Cancelling a payment cancels its outbox rows not yet sent (PaymentOutboxRepository.cancelUnsent).
+-- Outbox rows may now also be VOID operations and CANCELLED.
+
+create index idx_payment_outbox_payment_status on payment_outbox (payment_id, status);
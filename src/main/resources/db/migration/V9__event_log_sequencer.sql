@@ -0,0 +1,6 @@
+-- Writers no longer take offsets from event_log_head. They insert their events under pending keys,
+-- -(nextval(event_log_pending_seq) * 1024 + i), negative and in append order, and EventLogService's
+-- sequencer replaces them with offsets once committed, one batch per transaction under the head
+-- row's lock. Only the sequencer touches that row now.
+
+create sequence event_log_pending_seq start with 1 increment by 1;
@@ -0,0 +1,140 @@
+package com.example.omsv6;
+
+import com.example.omsv6.dto.*;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.service.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.ActiveProfiles;
+
+import jakarta.persistence.EntityManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The production profile with its datasource pointed at H2 in PostgreSQL mode: PostgreSQL dialect
+ * and pgjdbc pool settings. Runs the migrations (Hibernate only validates) and the main query paths,
+ * so SQL that only H2's own dialect accepts fails here without a PostgreSQL server.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:postgres-mode-test;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+    "spring.datasource.username=sa",
+    "spring.datasource.password="
+})
+@ActiveProfiles("production")
+class PostgresModeTest {
+
+  @Autowired
+  private Flyway flyway;
+
+  @Autowired
+  private Environment environment;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private OrderBatchService orderBatchService;
+
+  @Autowired
+  private PaymentService paymentService;
+
+  @Autowired
+  private ReportService reportService;
+
+  @Autowired
+  private IdempotencyService idempotencyService;
+
+  @Autowired
+  private EventLogService eventLogService;
+
+  @Autowired
+  private CustomerOrderHistoryService customerOrderHistoryService;
+
+  @Autowired
+  private PaymentReconciliationJob paymentReconciliationJob;
+
+  @Autowired
+  private ReservationExpirySweeper reservationExpirySweeper;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void productionProfileMigratesAndOnlyValidates() {
+    assertEquals("11", flyway.info().current().getVersion().getVersion());
+    assertEquals(0, flyway.info().pending().length);
+    assertEquals("validate", environment.getProperty("spring.jpa.hibernate.ddl-auto"));
+    assertEquals("false", environment.getProperty("spring.jpa.show-sql"));
+    assertInstanceOf(PostgreSQLDialect.class,
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect());
+    assertNotNull(meterRegistry.find("hikaricp.connections.acquire").tag("pool", "oms").timer());
+    assertEquals(10.0, meterRegistry.get("hikaricp.connections.max").tag("pool", "oms").gauge().value());
+  }
+
+  @Test
+  void orderPaymentAndReportQueriesRunOnTheProductionDialect() throws Exception {
+    inventoryService.createItem(new CreateInventoryItemRequest("PG-1", "PG-1", 100));
+    CreateOrderRequest request = new CreateOrderRequest("pg-cust", "PG-1", 1, new BigDecimal("10.00"));
+    Long first = idempotencyService.execute("orders", "alice", "pg-key", request, CreateOrderResponse.class,
+        () -> orderService.createOrder(request)).orderId();
+    assertEquals(first, idempotencyService.execute("orders", "alice", "pg-key", request, CreateOrderResponse.class,
+        () -> fail("replayed")).orderId());
+    BatchOrderResponse batch = orderBatchService.createOrders(List.of(request, request, request).iterator());
+    assertEquals(3, batch.accepted());
+
+    OrderPage page = orderService.listOrders("CREATED", "pg-cust", null, 2);
+    assertEquals(2, page.count());
+    assertEquals(2, orderService.listOrders("CREATED", "pg-cust", page.nextCursor(), 2).count());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    orderService.exportOrders(OrderStatus.CREATED, "pg-cust", out);
+    assertEquals(4, out.toString(StandardCharsets.UTF_8).trim().split("\n").length);
+
+    paymentService.createPayment(new CreatePaymentRequest(first, null, "USD"));
+    orderService.updateOrderStatus(first, new UpdateOrderStatusRequest("PAID"));
+    assertEquals("CANCELLED", orderService.cancelOrder(first).status());
+
+    String today = LocalDate.now().toString();
+    assertEquals(0, new BigDecimal("40.00").compareTo(reportService.salesReport(today, today).amountBySku().get("PG-1")));
+    reportService.rebuildSalesRollups(today, today);
+    assertEquals(0, reportService.checkSalesRollups(today, today).mismatchCount());
+    assertNotNull(reportService.paymentSummary(today, today, "day").days());
+
+    assertEquals(Map.of("CREATED", 3L, "CANCELLED", 1L), customerOrderHistoryService.getHistory("pg-cust").ordersByStatus());
+    assertEquals(Map.of("CREATED", 3L, "CANCELLED", 1L), customerOrderHistoryService.rebuild("pg-cust").ordersByStatus());
+
+    paymentReconciliationJob.startRun();
+    paymentReconciliationJob.runPages(Integer.MAX_VALUE);
+    assertEquals("COMPLETED", paymentReconciliationJob.report(10).status());
+    assertEquals(0, reservationExpirySweeper.sweep());
+
+    eventLogService.sequence();
+    long head = eventLogService.headOffset();
+    EventPage events = eventLogService.read(0, 1000, Duration.ZERO).join();
+    assertTrue(events.nextAfter() >= head && head > 0);
+    assertEquals(events.nextAfter(), events.count());
+  }
+}
@@ -0,0 +1,107 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.service.ExternalApiClient;
+import com.example.omsv6.service.InventoryService;
+import com.example.omsv6.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checkout latency of a cart as one multi-line order versus the former one order per item
+ * (one transaction, one reservation and one shipping quote each).
+ * Not part of the default test run: {@code mvn test -Dtest=CartCheckoutBenchmark}.
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class CartCheckoutBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(CartCheckoutBenchmark.class);
+
+  private static final int CARTS = Integer.getInteger("bench.carts", 200);
+  private static final int[] CART_SIZES = Arrays.stream(System.getProperty("bench.cart-sizes", "1,5,20")
+      .split(",")).mapToInt(Integer::parseInt).toArray();
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void cartAsOneOrderVersusOneOrderPerItem() throws Exception {
+    log.info("items   approach        p50 ms   p99 ms   orders/cart   quotes/cart");
+    for (int size : CART_SIZES) {
+      seed("PER-ITEM-" + size + "-", size);
+      seed("CART-" + size + "-", size);
+
+      long[] perItem = new long[CARTS];
+      for (int c = 0; c < CARTS; c++) {
+        long begin = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+          orderService.createOrder(new CreateOrderRequest("cust-" + c, "PER-ITEM-" + size + "-" + i, 1,
+              new BigDecimal("9.99")));
+        }
+        perItem[c] = System.nanoTime() - begin;
+      }
+      int perItemQuotes = awaitQuotes(CARTS * size);
+
+      long[] cart = new long[CARTS];
+      for (int c = 0; c < CARTS; c++) {
+        List<CreateOrderRequest.Line> lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          lines.add(new CreateOrderRequest.Line("CART-" + size + "-" + i, 1, new BigDecimal("9.99")));
+        }
+        long begin = System.nanoTime();
+        orderService.createOrder(new CreateOrderRequest("cust-" + c, null, null, null, lines));
+        cart[c] = System.nanoTime() - begin;
+      }
+      int cartQuotes = awaitQuotes(CARTS);
+
+      report(size, "order per item", perItem, size, perItemQuotes);
+      report(size, "one order", cart, 1, cartQuotes);
+    }
+  }
+
+  // Quotes are fetched after commit on the shipping-quote executor
+  private int awaitQuotes(int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 30_000;
+    int quotes = 0;
+    while (System.currentTimeMillis() < deadline) {
+      quotes = Mockito.mockingDetails(externalApiClient).getInvocations().size();
+      if (quotes >= expected) break;
+      Thread.sleep(50);
+    }
+    assertEquals(expected, quotes);
+    Mockito.clearInvocations(externalApiClient);
+    return quotes;
+  }
+
+  private void report(int size, String approach, long[] nanos, int ordersPerCart, int quotes) {
+    Arrays.sort(nanos);
+    log.info(String.format("%5d   %-14s %7.2f %8.2f %13d %13.0f", size, approach,
+        nanos[nanos.length / 2] / 1_000_000.0, nanos[(int) (nanos.length * 0.99)] / 1_000_000.0,
+        ordersPerCart, (double) quotes / CARTS));
+  }
+
+  private void seed(String prefix, int skus) {
+    for (int i = 0; i < skus; i++) {
+      inventoryService.createItem(new CreateInventoryItemRequest(prefix + i, prefix + i, CARTS));
+    }
+  }
+}
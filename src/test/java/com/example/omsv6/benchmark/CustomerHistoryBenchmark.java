@@ -0,0 +1,125 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CustomerOrderHistory;
+import com.example.omsv6.service.CustomerOrderHistoryService;
+import com.example.omsv6.service.ExternalApiClient;
+import com.example.omsv6.service.InventoryService;
+import com.example.omsv6.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of a customer's order history for a customer with {@code bench.orders} orders:
+ * <ul>
+ *   <li>full list: every order, as the export streams them;</li>
+ *   <li>live aggregate: counts and spend grouped over the customer's orders, plus the first page;</li>
+ *   <li>projection after a change: the cache entry was just evicted by a new order;</li>
+ *   <li>projection cached.</li>
+ * </ul>
+ * Not part of the default test run: {@code mvn test -Dtest=CustomerHistoryBenchmark}.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:customer-history-bench",
+    "spring.jpa.show-sql=false"
+})
+class CustomerHistoryBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(CustomerHistoryBenchmark.class);
+
+  private static final int ORDERS = Integer.getInteger("bench.orders", 20_000);
+  private static final int READS = Integer.getInteger("bench.reads", 200);
+  private static final String CUSTOMER = "bench-big";
+
+  @Autowired
+  private CustomerOrderHistoryService customerOrderHistoryService;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void projectionVersusQueryingTheOrders() throws Exception {
+    seed();
+    assertEquals(ORDERS, customerOrderHistoryService.getHistory(CUSTOMER).orderCount());
+
+    long[] fullList = new long[READS];
+    for (int i = 0; i < READS; i++) {
+      long begin = System.nanoTime();
+      orderService.exportOrders(null, CUSTOMER, OutputStream.nullOutputStream());
+      fullList[i] = System.nanoTime() - begin;
+    }
+
+    long[] liveAggregate = new long[READS];
+    for (int i = 0; i < READS; i++) {
+      long begin = System.nanoTime();
+      jdbcTemplate.queryForList("select status, count(*), sum(amount) from orders where customer_id = ? group by status",
+          CUSTOMER);
+      orderService.listOrders(null, CUSTOMER, null, 10);
+      liveAggregate[i] = System.nanoTime() - begin;
+    }
+
+    long[] afterChange = new long[READS];
+    for (int i = 0; i < READS; i++) {
+      orderService.createOrder(new CreateOrderRequest(CUSTOMER, "HIST-BENCH", 1, BigDecimal.ONE));
+      long begin = System.nanoTime();
+      CustomerOrderHistory history = customerOrderHistoryService.getHistory(CUSTOMER);
+      afterChange[i] = System.nanoTime() - begin;
+      assertEquals(ORDERS + i + 1, history.orderCount());
+    }
+
+    long[] cached = new long[READS];
+    for (int i = 0; i < READS; i++) {
+      long begin = System.nanoTime();
+      customerOrderHistoryService.getHistory(CUSTOMER);
+      cached[i] = System.nanoTime() - begin;
+    }
+
+    log.info(String.format("customer with %d orders, %d reads each", ORDERS, READS));
+    log.info("read                         p50 ms     p99 ms");
+    report("full list", fullList);
+    report("live aggregate + first page", liveAggregate);
+    report("projection after a change", afterChange);
+    report("projection cached", cached);
+  }
+
+  // Orders are inserted directly, then the stats rebuilt from them
+  private void seed() {
+    inventoryService.createItem(new CreateInventoryItemRequest("HIST-BENCH", "HIST-BENCH", READS));
+    jdbcTemplate.update("insert into orders (id, customer_id, amount, status, created_at, updated_at) "
+        + "select x, ?, 10, 1 + mod(x, 5), dateadd(minute, x, timestamp '2024-01-01 00:00:00'), "
+        + "dateadd(minute, x, timestamp '2024-01-01 00:00:00') from system_range(1, ?)", CUSTOMER, ORDERS);
+    jdbcTemplate.update("insert into order_lines (order_id, line_no, sku, quantity, amount) "
+        + "select x, 0, 'HIST-BENCH', 1, 10 from system_range(1, ?)", ORDERS);
+    // Past the seeded ids and the block Hibernate's pooled optimizer hands out below the sequence value
+    jdbcTemplate.execute("alter sequence orders_seq restart with " + (ORDERS + 100));
+    jdbcTemplate.execute("analyze");
+    customerOrderHistoryService.rebuild(CUSTOMER);
+  }
+
+  private static void report(String read, long[] nanos) {
+    Arrays.sort(nanos);
+    log.info(String.format("%-28s %7.2f %10.2f", read,
+        nanos[nanos.length / 2] / 1_000_000.0, nanos[(int) (nanos.length * 0.99)] / 1_000_000.0));
+  }
+}
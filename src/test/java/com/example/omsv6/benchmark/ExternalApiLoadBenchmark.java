@@ -0,0 +1,108 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.config.ExternalApiProperties;
+import com.example.omsv6.config.RestClientConfig;
+import com.example.omsv6.support.StubExternalApi;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrent calls against a local stub: the old bare RestTemplate versus the pooled client.
+ * Not part of the default test run: {@code mvn test -Dtest=ExternalApiLoadBenchmark}.
+ */
+class ExternalApiLoadBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(ExternalApiLoadBenchmark.class);
+
+  private static final int THREADS = Integer.getInteger("bench.threads", 64);
+  private static final int CALLS_PER_THREAD = Integer.getInteger("bench.calls", 200);
+  private static final long STUB_DELAY_MS = Long.getLong("bench.stub-delay-ms", 2);
+
+  @Test
+  void bareVersusPooled() throws Exception {
+    try (StubExternalApi stub = new StubExternalApi()) {
+      stub.setDelayMs(STUB_DELAY_MS);
+
+      run("bare RestTemplate", new RestTemplate(), stub);
+
+      ExternalApiProperties properties = new ExternalApiProperties();
+      properties.setBaseUrl(stub.baseUrl());
+      properties.getPool().setMaxPerRoute(THREADS);
+      properties.getPool().setMaxTotal(THREADS);
+      properties.getPool().setAcquireTimeout(java.time.Duration.ofSeconds(5));
+      RestClientConfig config = new RestClientConfig();
+      PoolingHttpClientConnectionManager cm = config.externalApiConnectionManager(properties);
+      try (CloseableHttpClient client = config.externalApiHttpClient(cm, properties)) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("externalApiHttpClient", client);
+        RestTemplate pooled = config.externalApiRestTemplates(properties,
+            beans.getBeanProvider(CloseableHttpClient.class), new MockEnvironment()).forOperation(ExternalApiProperties.CAPTURE);
+        stub.reset();
+        stub.setDelayMs(STUB_DELAY_MS);
+        run("pooled HttpClient 5", pooled, stub);
+        assertTrue(stub.connectionCount() <= THREADS);
+      }
+    }
+  }
+
+  private void run(String name, RestTemplate restTemplate, StubExternalApi stub) throws Exception {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    HttpEntity<Map<String, Object>> entity = new HttpEntity<>(Map.of("action", "CAPTURE"), headers);
+    String url = stub.baseUrl() + "/post";
+
+    // warm-up
+    for (int i = 0; i < 200; i++) {
+      restTemplate.exchange(url, HttpMethod.POST, entity, Map.class);
+    }
+    int warmConnections = stub.connectionCount();
+
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<long[]>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      futures.add(pool.submit(() -> {
+        long[] latencies = new long[CALLS_PER_THREAD];
+        start.await();
+        for (int i = 0; i < CALLS_PER_THREAD; i++) {
+          long begin = System.nanoTime();
+          restTemplate.exchange(url, HttpMethod.POST, entity, Map.class);
+          latencies[i] = System.nanoTime() - begin;
+        }
+        return latencies;
+      }));
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    long[] all = new long[THREADS * CALLS_PER_THREAD];
+    int n = 0;
+    for (Future<long[]> f : futures) {
+      for (long l : f.get()) all[n++] = l;
+    }
+    long wall = System.nanoTime() - begin;
+    pool.shutdown();
+    Arrays.sort(all);
+
+    log.info(String.format("%s: %d calls, %.0f req/s, p50 %.2f ms, p99 %.2f ms, connections opened %d",
+        name, all.length, all.length / (wall / 1e9), all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6,
+        stub.connectionCount() - warmConnections));
+  }
+}
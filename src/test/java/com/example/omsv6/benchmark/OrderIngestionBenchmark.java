@@ -0,0 +1,95 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.dto.BatchOrderResponse;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.repository.InventoryItemRepository;
+import com.example.omsv6.service.ExternalApiClient;
+import com.example.omsv6.service.OrderBatchService;
+import com.example.omsv6.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Throughput of the single-order path versus POST /api/orders/batch.
+ * Not part of the default test run: {@code mvn test -Dtest=OrderIngestionBenchmark}.
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class OrderIngestionBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(OrderIngestionBenchmark.class);
+
+  private static final int ORDERS = Integer.getInteger("bench.orders", 5000);
+  private static final int SKUS = 50;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private OrderBatchService orderBatchService;
+
+  @Autowired
+  private InventoryItemRepository inventoryItemRepository;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void singleVersusBatch() {
+    seed("SINGLE-");
+    seed("BULK-");
+
+    long begin = System.nanoTime();
+    for (int i = 0; i < ORDERS; i++) {
+      assertEquals("Order created", orderService.createOrder(line("SINGLE-", i)).message());
+    }
+    long single = System.nanoTime() - begin;
+
+    List<CreateOrderRequest> lines = new ArrayList<>(ORDERS);
+    for (int i = 0; i < ORDERS; i++) {
+      lines.add(line("BULK-", i));
+    }
+    begin = System.nanoTime();
+    BatchOrderResponse r = orderBatchService.createOrders(lines.iterator());
+    long batch = System.nanoTime() - begin;
+    assertEquals(ORDERS, r.accepted());
+
+    report("createOrder x" + ORDERS, single);
+    report("batch of " + ORDERS, batch);
+    log.info(String.format("speedup %.1fx", (double) single / batch));
+  }
+
+  private CreateOrderRequest line(String prefix, int i) {
+    return new CreateOrderRequest("cust-" + (i % 500), prefix + (i % SKUS), 1, new BigDecimal("9.99"));
+  }
+
+  private void report(String name, long nanos) {
+    log.info(String.format("%s: %d ms (%.0f orders/s)",
+        name, TimeUnit.NANOSECONDS.toMillis(nanos), ORDERS / (nanos / 1_000_000_000.0)));
+  }
+
+  private void seed(String prefix) {
+    for (int i = 0; i < SKUS; i++) {
+      InventoryItem item = new InventoryItem();
+      item.setSku(prefix + i);
+      item.setName(prefix + i);
+      item.setQuantityAvailable(ORDERS);
+      item.setQuantityReserved(0);
+      item.setCreatedAt(LocalDateTime.now());
+      item.setUpdatedAt(LocalDateTime.now());
+      inventoryItemRepository.save(item);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.dto.PaymentReconciliationReport;
+import com.example.omsv6.service.PaymentReconciliationJob;
+import com.example.omsv6.support.StubExternalApi;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A full reconciliation run over {@code bench.payments} payments against the local stub provider,
+ * one in a thousand of them captured there but only authorized here. Reports throughput and the
+ * live heap (after a full GC) before the run and every 100 pages of it.
+ * Not part of the default test run: {@code mvn test -Dtest=PaymentReconciliationBenchmark}.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:payment-reconciliation-bench",
+    "spring.jpa.show-sql=false",
+    "logging.level.com.example.omsv6=INFO",
+    "app.payments.reconciliation.enabled=false"
+})
+class PaymentReconciliationBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(PaymentReconciliationBenchmark.class);
+
+  private static final int PAYMENTS = Integer.getInteger("bench.payments", 1_000_000);
+  private static final int DRIFT_EVERY = 1000;
+  private static final StubExternalApi STUB = startStub();
+
+  @Autowired
+  private PaymentReconciliationJob job;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @DynamicPropertySource
+  static void provider(DynamicPropertyRegistry registry) {
+    registry.add("external.api.base-url", STUB::baseUrl);
+  }
+
+  @AfterAll
+  static void stopStub() {
+    STUB.close();
+  }
+
+  @Test
+  void millionPaymentRun() throws Exception {
+    jdbcTemplate.update("insert into payments (order_id, amount, currency, provider, external_reference, status, "
+        + "created_at, updated_at) select x, 10, 'USD', 'EXTERNAL_SIM', 'BENCH-' || x, 2, "
+        + "dateadd(second, x, timestamp '2024-01-01 00:00:00'), dateadd(second, x, timestamp '2024-01-01 00:00:00') "
+        + "from system_range(1, ?)", PAYMENTS);
+    jdbcTemplate.execute("analyze");
+
+    // Live heap after a full GC, every 100 pages: flat if the run holds a page and nothing more
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    long[] live = new long[PAYMENTS / 100_000 + 2];
+    int samples = 0;
+    live[samples++] = liveHeap(memory);
+
+    long begin = System.nanoTime();
+    long paused = 0;
+    job.startRun();
+    PaymentReconciliationReport report = job.report(0);
+    while (!"COMPLETED".equals(report.status())) {
+      job.runPages(100);
+      report = job.report(0);
+      long gc = System.nanoTime();
+      live[samples++] = liveHeap(memory);
+      paused += System.nanoTime() - gc;
+    }
+    double seconds = (System.nanoTime() - begin - paused) / 1e9;
+
+    assertEquals(PAYMENTS, report.checked());
+    assertEquals(PAYMENTS / DRIFT_EVERY, report.fixed());
+    log.info(String.format("%d payments in %.1f s (%.0f/s): %d matched, %d fixed, %d flagged",
+        PAYMENTS, seconds, PAYMENTS / seconds, report.matched(), report.fixed(), report.flagged()));
+    long min = Long.MAX_VALUE;
+    long max = 0;
+    for (int i = 1; i < samples; i++) {
+      min = Math.min(min, live[i]);
+      max = Math.max(max, live[i]);
+    }
+    log.info(String.format("live heap before the run %d MB; every 100 pages during it %d to %d MB (%d samples)",
+        live[0] >> 20, min >> 20, max >> 20, samples - 1));
+  }
+
+  private static long liveHeap(MemoryMXBean memory) {
+    System.gc();
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  private static StubExternalApi startStub() {
+    try {
+      StubExternalApi stub = new StubExternalApi();
+      Map<String, Object> authorized = Map.of("status", "AUTHORIZED", "amount", BigDecimal.TEN);
+      Map<String, Object> captured = Map.of("status", "CAPTURED", "amount", BigDecimal.TEN);
+      stub.setPayments(reference ->
+          Long.parseLong(reference.substring("BENCH-".length())) % DRIFT_EVERY == 0 ? captured : authorized);
+      return stub;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
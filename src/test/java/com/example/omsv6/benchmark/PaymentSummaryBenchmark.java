@@ -0,0 +1,133 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.dto.PaymentTotalsView;
+import com.example.omsv6.entity.PaymentEntity;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.repository.PaymentRepository;
+import com.example.omsv6.service.ExternalApiClient;
+import com.example.omsv6.service.ReportService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Legacy load-every-payment summary versus the GROUP BY projection, at growing row counts.
+ * Not part of the default test run: {@code mvn test -Dtest=PaymentSummaryBenchmark}.
+ */
+@SpringBootTest(properties = "spring.jpa.show-sql=false")
+class PaymentSummaryBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(PaymentSummaryBenchmark.class);
+
+  private static final int[] SIZES = {10_000, 100_000, Integer.getInteger("bench.payments", 300_000)};
+  private static final PaymentStatus[] STATUSES = {
+      PaymentStatus.AUTHORIZED, PaymentStatus.CAPTURED, PaymentStatus.REFUNDED, PaymentStatus.CANCELLED};
+  private static final String[] CURRENCIES = {"USD", "EUR"};
+  private static final LocalDate DAY = LocalDate.of(2031, 3, 1);
+
+  @Autowired
+  private ReportService reportService;
+
+  @Autowired
+  private PaymentRepository paymentRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void inMemoryVersusGroupBy() {
+    String from = DAY.toString();
+    int seeded = 0;
+    for (int size : SIZES) {
+      seed(seeded, size);
+      seeded = size;
+
+      // warm-up
+      legacySummary(from, from);
+      reportService.paymentSummary(from, from, null);
+
+      Runtime rt = Runtime.getRuntime();
+      System.gc();
+      long heapBefore = rt.totalMemory() - rt.freeMemory();
+      long begin = System.nanoTime();
+      BigDecimal legacyCaptured = legacySummary(from, from);
+      long legacy = System.nanoTime() - begin;
+      long legacyHeap = rt.totalMemory() - rt.freeMemory() - heapBefore;
+
+      System.gc();
+      heapBefore = rt.totalMemory() - rt.freeMemory();
+      begin = System.nanoTime();
+      PaymentTotalsView r = reportService.paymentSummary(from, from, null).totals();
+      long grouped = System.nanoTime() - begin;
+      long groupedHeap = rt.totalMemory() - rt.freeMemory() - heapBefore;
+
+      assertEquals((long) size, r.paymentCount());
+      assertEquals(0, legacyCaptured.compareTo(r.totalCaptured()));
+
+      log.info(String.format("%d payments: in-memory %d ms (~%d MB heap), group by %d ms (~%d MB heap), %.1fx",
+          size, TimeUnit.NANOSECONDS.toMillis(legacy), legacyHeap >> 20,
+          TimeUnit.NANOSECONDS.toMillis(grouped), Math.max(0, groupedHeap) >> 20, (double) legacy / grouped));
+    }
+  }
+
+  // What paymentSummary did before the aggregation moved into the queries; captured means CAPTURED
+  // or since REFUNDED, as the ledger counts it
+  private BigDecimal legacySummary(String from, String to) {
+    List<PaymentEntity> payments = paymentRepository.findByCreatedAtBetweenOrderByCreatedAtDesc(
+        LocalDate.parse(from).atStartOfDay(), LocalDate.parse(to).plusDays(1).atStartOfDay());
+    Map<String, Integer> countByStatus = new HashMap<>();
+    BigDecimal captured = BigDecimal.ZERO;
+    for (PaymentEntity p : payments) {
+      String status = p.getStatus().name();
+      countByStatus.put(status, countByStatus.getOrDefault(status, 0) + 1);
+      if ("CAPTURED".equals(status) || "REFUNDED".equals(status)) captured = captured.add(p.getAmount());
+    }
+    return captured;
+  }
+
+  private void seed(int fromIndex, int toIndex) {
+    long lastId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from payments", Long.class);
+    List<Object[]> rows = new ArrayList<>(1000);
+    for (int i = fromIndex; i < toIndex; i++) {
+      Timestamp at = Timestamp.valueOf(DAY.atTime(1, 0).plusSeconds(i % 80_000));
+      rows.add(new Object[]{(long) i, new BigDecimal("19.99"), CURRENCIES[i % CURRENCIES.length], "BENCH",
+          "BENCH-" + i, STATUSES[i % STATUSES.length].code(), at, at});
+      if (rows.size() == 1000) {
+        insert(rows);
+        rows.clear();
+      }
+    }
+    if (!rows.isEmpty()) insert(rows);
+    // The ledger entries of the new payments: an authorization each, a capture and a refund as their status implies
+    jdbcTemplate.update("insert into payment_ledger (payment_id, kind, amount, currency, created_at) "
+        + "select id, 'AUTHORIZE', amount, currency, created_at from payments where id > ? and status <> 8", lastId);
+    jdbcTemplate.update("insert into payment_ledger (payment_id, kind, amount, currency, created_at) "
+        + "select id, 'CAPTURE', amount, currency, created_at from payments where id > ? and status in (4, 6)", lastId);
+    jdbcTemplate.update("insert into payment_ledger (payment_id, kind, amount, currency, created_at) "
+        + "select id, 'REFUND', amount, currency, created_at from payments where id > ? and status = 6", lastId);
+  }
+
+  private void insert(List<Object[]> rows) {
+    jdbcTemplate.batchUpdate("insert into payments (order_id, amount, currency, provider, external_reference, status, "
+        + "created_at, updated_at) values (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+  }
+}
@@ -0,0 +1,154 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.service.ExternalApiClient;
+import com.example.omsv6.service.InventoryService;
+import com.example.omsv6.service.OrderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * What the production pool does as concurrency passes its size. Every operation is one transaction
+ * that reads an order and then holds its connection for {@code bench.hold-ms} (a stand-in for
+ * PostgreSQL round trips, which in-memory H2 does not have), so the pool rather than the CPU is the
+ * bottleneck: throughput levels off at about {@code pool / hold}, the extra callers wait in the pool
+ * ({@code hikaricp.connections.acquire}), and once that wait passes {@code connection-timeout}
+ * they fail fast ({@code hikaricp.connections.timeout}).
+ * Not part of the default test run: {@code mvn test -Dtest=PoolSaturationBenchmark}.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:pool-saturation;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.datasource.hikari.maximum-pool-size=${bench.pool:10}",
+    "spring.datasource.hikari.minimum-idle=${bench.pool:10}",
+    "spring.datasource.hikari.connection-timeout=${bench.connection-timeout:2000}",
+    "logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=OFF"
+})
+@ActiveProfiles("production")
+class PoolSaturationBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(PoolSaturationBenchmark.class);
+
+  private static final int HOLD_MS = Integer.getInteger("bench.hold-ms", 200);
+  private static final long RUN_MS = Long.getLong("bench.run-ms", 6000);
+  private static final int[] THREADS = Arrays.stream(System.getProperty("bench.threads", "1,5,10,20,40,80,160")
+      .split(",")).mapToInt(Integer::parseInt).toArray();
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Value("${spring.datasource.hikari.maximum-pool-size}")
+  private int poolSize;
+
+  @Value("${spring.datasource.hikari.connection-timeout}")
+  private long connectionTimeout;
+
+  @Test
+  void throughputAndWaitAsConcurrencyPassesThePoolSize() throws Exception {
+    jdbcTemplate.execute("create alias if not exists hold_ms for 'java.lang.Thread.sleep'");
+    inventoryService.createItem(new CreateInventoryItemRequest("POOL-1", "POOL-1", 10));
+    Long orderId = orderService.createOrder(new CreateOrderRequest("c1", "POOL-1", 1, BigDecimal.TEN)).orderId();
+
+    log.info(String.format("pool=%d, hold=%d ms, connection-timeout=%d ms, capacity ~%d ops/s",
+        poolSize, HOLD_MS, connectionTimeout, poolSize * 1000 / HOLD_MS));
+    log.info("threads    ops/s   p50 ms   p99 ms   wait mean ms   wait max ms   failed   pool timeouts");
+    for (int threads : THREADS) {
+      run(threads, orderId);
+    }
+  }
+
+  private void run(int threads, Long orderId) throws Exception {
+    Timer acquire = meterRegistry.get("hikaricp.connections.acquire").tag("pool", "oms").timer();
+    long waitsBefore = acquire.count();
+    double waitNanosBefore = acquire.totalTime(TimeUnit.NANOSECONDS);
+    double timeoutsBefore = meterRegistry.get("hikaricp.connections.timeout").tag("pool", "oms").counter().count();
+
+    List<Long> latencies = new CopyOnWriteArrayList<>();
+    AtomicLong maxWaitNanos = new AtomicLong();
+    AtomicLong failures = new AtomicLong();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MS);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        workers.add(pool.submit(() -> {
+          List<Long> mine = new ArrayList<>();
+          while (System.nanoTime() < deadline) {
+            long begin = System.nanoTime();
+            try {
+              transactionTemplate.executeWithoutResult(s -> {
+                maxWaitNanos.accumulateAndGet(System.nanoTime() - begin, Math::max);
+                orderService.getOrderById(orderId);
+                jdbcTemplate.execute("call hold_ms(" + HOLD_MS + ")");
+              });
+              mine.add(System.nanoTime() - begin);
+            } catch (CannotCreateTransactionException e) {
+              failures.incrementAndGet();
+            }
+          }
+          latencies.addAll(mine);
+        }));
+      }
+      for (Future<?> w : workers) {
+        w.get();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    long waits = acquire.count() - waitsBefore;
+    double waitMeanMs = waits == 0 ? 0
+        : (acquire.totalTime(TimeUnit.NANOSECONDS) - waitNanosBefore) / waits / 1_000_000.0;
+    double timeouts = meterRegistry.get("hikaricp.connections.timeout").tag("pool", "oms").counter().count()
+        - timeoutsBefore;
+    // Scheduled jobs (outbox dispatcher, purges) share the pool, so they can time out as well
+    assertTrue(timeouts >= failures.get(), "only pool timeouts may fail");
+
+    long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+    log.info(String.format("%7d %8.0f %8.1f %8.1f %14.1f %13.1f %8d %15.0f", threads,
+        sorted.length * 1000.0 / RUN_MS, percentile(sorted, 0.50), percentile(sorted, 0.99),
+        waitMeanMs, maxWaitNanos.get() / 1_000_000.0, failures.get(), timeouts));
+  }
+
+  private static double percentile(long[] sorted, double p) {
+    if (sorted.length == 0) return 0;
+    return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1_000_000.0;
+  }
+}
@@ -0,0 +1,75 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.service.ExternalApiClient;
+import com.example.omsv6.service.ReservationExpirySweeper;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A reservation expiry sweep over {@code bench.orders} unpaid orders, {@code bench.expired} of them
+ * expired, next to a sweep with nothing expired. Both should depend on the expired orders only, not
+ * on how many orders there are.
+ * Not part of the default test run: {@code mvn test -Dtest=ReservationExpiryBenchmark}.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:reservation-expiry-bench",
+    "spring.jpa.show-sql=false",
+    "logging.level.com.example.omsv6=INFO",
+    "app.orders.reservation-sweeper.enabled=false"
+})
+class ReservationExpiryBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(ReservationExpiryBenchmark.class);
+
+  private static final int ORDERS = Integer.getInteger("bench.orders", 1_000_000);
+  private static final int EXPIRED = Integer.getInteger("bench.expired", 2_000);
+  private static final int SKUS = 100;
+
+  @Autowired
+  private ReservationExpirySweeper sweeper;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void sweepCostFollowsTheExpiredOrders() {
+    seed();
+
+    long begin = System.nanoTime();
+    int swept = sweeper.sweep();
+    double sweepMs = (System.nanoTime() - begin) / 1e6;
+    assertEquals(EXPIRED, swept);
+    assertEquals(ORDERS - EXPIRED, jdbcTemplate.queryForObject(
+        "select sum(quantity_reserved) from inventory_items where sku like 'EXP-BENCH-%'", Integer.class));
+
+    begin = System.nanoTime();
+    assertEquals(0, sweeper.sweep());
+    double emptyMs = (System.nanoTime() - begin) / 1e6;
+
+    log.info(String.format("%d expired of %d unpaid orders: sweep %.0f ms (%.0f orders/s); nothing expired: %.1f ms",
+        EXPIRED, ORDERS, sweepMs, EXPIRED / (sweepMs / 1000), emptyMs));
+  }
+
+  // One unit of stock reserved per order; the EXPIRED lowest ids expired a minute ago, the rest in an hour
+  private void seed() {
+    jdbcTemplate.update("insert into orders (id, customer_id, amount, status, created_at, updated_at, "
+        + "reservation_expires_at) select x, 'bench-' || mod(x, 1000), 1, 1, localtimestamp, localtimestamp, "
+        + "case when x <= ? then dateadd(minute, -1, localtimestamp) else dateadd(hour, 1, localtimestamp) end "
+        + "from system_range(1, ?)", EXPIRED, ORDERS);
+    jdbcTemplate.update("insert into order_lines (order_id, line_no, sku, quantity, amount) "
+        + "select x, 0, 'EXP-BENCH-' || mod(x, ?), 1, 1 from system_range(1, ?)", SKUS, ORDERS);
+    jdbcTemplate.update("insert into inventory_items (sku, name, quantity_available, quantity_reserved, created_at, "
+        + "updated_at) select sku, 'bench', 0, count(*), localtimestamp, localtimestamp from order_lines group by sku");
+    jdbcTemplate.execute("analyze");
+  }
+}
@@ -0,0 +1,171 @@
+package com.example.omsv6.benchmark;
+
+import com.example.omsv6.Application;
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.service.InventoryService;
+import com.example.omsv6.service.OrderService;
+import com.example.omsv6.support.StubExternalApi;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * POST /api/payments at 1k-5k concurrent clients, with the default platform-thread setup versus
+ * {@code spring.threads.virtual.enabled=true}. Requests only write the payment and its outbox row;
+ * the provider calls run on the outbox dispatcher alongside the load.
+ * Needs Java 21; not part of the default test run:
+ * {@code mvn test -Dtest=VirtualThreadLoadBenchmark -Dbench.clients=1000,5000,10000}.
+ * Every in-flight client holds two sockets in this JVM, so 10k clients needs {@code ulimit -n} above 25000.
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadLoadBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreadLoadBenchmark.class);
+
+  private static final long STUB_DELAY_MS = Long.getLong("bench.stub-delay-ms", 100);
+  private static final int REQUESTS_PER_CLIENT = Integer.getInteger("bench.requests-per-client", 3);
+  private static final String AUTH = "Basic " + Base64.getEncoder()
+      .encodeToString("user:user".getBytes(StandardCharsets.UTF_8));
+
+  @Test
+  void platformVersusVirtualThreads() throws Exception {
+    int[] levels = Arrays.stream(System.getProperty("bench.clients", "1000,2500,5000").split(","))
+        .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+
+    SimpleAsyncTaskExecutor stubThreads = new SimpleAsyncTaskExecutor("stub-");
+    stubThreads.setVirtualThreads(true);
+    try (StubExternalApi stub = new StubExternalApi(stubThreads)) {
+      stub.setDelayMs(STUB_DELAY_MS);
+      for (boolean virtual : new boolean[]{false, true}) {
+        try (ConfigurableApplicationContext ctx = start(virtual, stub.baseUrl())) {
+          int port = Integer.parseInt(Objects.requireNonNull(ctx.getEnvironment().getProperty("local.server.port")));
+          long orderId = seedOrder(ctx, virtual);
+          run(port, orderId, 200, virtual ? "virtual" : "platform", false);
+          for (int clients : levels) {
+            run(port, orderId, clients, virtual ? "virtual" : "platform", true);
+          }
+        }
+      }
+    }
+  }
+
+  private ConfigurableApplicationContext start(boolean virtual, String stubUrl) {
+    // Passed as arguments so they take precedence over application.properties
+    return new SpringApplicationBuilder(Application.class, CheapPasswordHashing.class).run(
+            "--server.port=0",
+            "--server.tomcat.max-connections=30000",
+            "--server.tomcat.accept-count=10000",
+            "--spring.threads.virtual.enabled=" + virtual,
+            "--spring.datasource.url=jdbc:h2:mem:vt-bench-" + virtual,
+            "--spring.datasource.hikari.maximum-pool-size=20",
+            "--spring.jpa.show-sql=false",
+            "--logging.level.com.example.omsv6=INFO",
+            "--spring.main.allow-bean-definition-overriding=true",
+            "--external.api.base-url=" + stubUrl,
+            "--external.api.operations.authorize.read-timeout=30s",
+            "--external.api.pool.max-total=1000",
+            "--external.api.pool.max-per-route=1000",
+            "--external.api.pool.acquire-timeout=60s",
+            "--resilience4j.bulkhead.instances.authorize.max-concurrent-calls=1000",
+            "--resilience4j.bulkhead.instances.authorize.max-wait-duration=60s",
+            "--resilience4j.circuitbreaker.instances.authorize.slow-call-duration-threshold=60s");
+  }
+
+  private long seedOrder(ConfigurableApplicationContext ctx, boolean virtual) {
+    String sku = "VT-BENCH-" + virtual;
+    ctx.getBean(InventoryService.class).createItem(new CreateInventoryItemRequest(sku, sku, 10));
+    return ctx.getBean(OrderService.class)
+        .createOrder(new CreateOrderRequest("bench", sku, 1, new BigDecimal("10.00"))).orderId();
+  }
+
+  private void run(int port, long orderId, int clients, String mode, boolean report) {
+    HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/api/payments"))
+        .timeout(Duration.ofMinutes(5))
+        .header("Authorization", AUTH)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString("{\"orderId\":" + orderId + ",\"currency\":\"USD\"}"))
+        .build();
+
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    threads.resetPeakThreadCount();
+    long[] latencies = new long[clients * REQUESTS_PER_CLIENT];
+    AtomicInteger next = new AtomicInteger();
+    AtomicInteger failures = new AtomicInteger();
+
+    long begin = System.nanoTime();
+    List<CompletableFuture<Void>> all = new ArrayList<>(clients);
+    for (int c = 0; c < clients; c++) {
+      CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+      for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+        chain = chain.thenCompose(v -> {
+          long start = System.nanoTime();
+          return http.sendAsync(request, HttpResponse.BodyHandlers.ofString()).handle((resp, err) -> {
+            latencies[next.getAndIncrement()] = System.nanoTime() - start;
+            if (err != null || resp.statusCode() != 202 || !resp.body().contains("Payment authorization queued")) {
+              if (failures.incrementAndGet() == 1) {
+                log.warn("first failure: {}", err != null ? err : resp.statusCode() + " " + resp.body());
+              }
+            }
+            return null;
+          });
+        });
+      }
+      all.add(chain);
+    }
+    CompletableFuture.allOf(all.toArray(new CompletableFuture[0])).join();
+    long wall = System.nanoTime() - begin;
+    if (!report) return;
+
+    Arrays.sort(latencies);
+    Runtime rt = Runtime.getRuntime();
+    log.info(String.format("%-8s %5d clients: %6.0f req/s, p50 %5.0f ms, p99 %6.0f ms, failures %d, "
+            + "peak threads %d, heap used %d MB, rss %s",
+        mode, clients, latencies.length / (wall / 1e9), latencies[latencies.length / 2] / 1e6,
+        latencies[(int) (latencies.length * 0.99)] / 1e6, failures.get(), threads.getPeakThreadCount(),
+        (rt.totalMemory() - rt.freeMemory()) >> 20, rss()));
+  }
+
+  private static String rss() {
+    try {
+      return Files.readAllLines(Path.of("/proc/self/status")).stream()
+          .filter(l -> l.startsWith("VmRSS:")).map(l -> l.substring(6).trim()).findFirst().orElse("n/a");
+    } catch (Exception e) {
+      return "n/a";
+    }
+  }
+
+  // BCrypt on every basic-auth request would make this a password hashing benchmark
+  @TestConfiguration(proxyBeanMethods = false)
+  static class CheapPasswordHashing {
+    @Bean
+    PasswordEncoder passwordEncoder() {
+      return new BCryptPasswordEncoder(4);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package com.example.omsv6.controller;
+
+import com.example.omsv6.service.ExternalApiClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class AdminEndpointsTest {
+
+  private static final String USER_AUTH = "Basic "
+      + Base64.getEncoder().encodeToString("user:user".getBytes(StandardCharsets.UTF_8));
+
+  private static final String ADMIN_AUTH = "Basic "
+      + Base64.getEncoder().encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8));
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void onlyAnAdminRebuildsSalesRollups() throws Exception {
+    String day = LocalDate.now().minusYears(5).toString();
+    mockMvc.perform(post("/api/reports/sales/rollups/rebuild").param("from", day).param("to", day)
+            .header(HttpHeaders.AUTHORIZATION, USER_AUTH))
+        .andExpect(status().isForbidden());
+    mockMvc.perform(post("/api/reports/sales/rollups/rebuild").param("from", day).param("to", day)
+            .header(HttpHeaders.AUTHORIZATION, ADMIN_AUTH))
+        .andExpect(status().isOk());
+    mockMvc.perform(get("/api/reports/sales/rollups/check").param("from", day).param("to", day)
+            .header(HttpHeaders.AUTHORIZATION, USER_AUTH))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  void onlyAnAdminRebuildsACustomersOrderHistory() throws Exception {
+    mockMvc.perform(post("/api/customers/{id}/order-history/rebuild", "admin-cust")
+            .header(HttpHeaders.AUTHORIZATION, USER_AUTH))
+        .andExpect(status().isForbidden());
+    mockMvc.perform(post("/api/customers/{id}/order-history/rebuild", "admin-cust")
+            .header(HttpHeaders.AUTHORIZATION, ADMIN_AUTH))
+        .andExpect(status().isOk());
+    mockMvc.perform(get("/api/customers/{id}/order-history", "admin-cust")
+            .header(HttpHeaders.AUTHORIZATION, USER_AUTH))
+        .andExpect(status().isOk());
+  }
+
+  @Test
+  void onlyAnAdminStartsAPaymentReconciliation() throws Exception {
+    mockMvc.perform(post("/api/reports/payments/reconciliation/start")).andExpect(status().isUnauthorized());
+    mockMvc.perform(post("/api/reports/payments/reconciliation/start").header(HttpHeaders.AUTHORIZATION, USER_AUTH))
+        .andExpect(status().isForbidden());
+    // Started, or 409 while a run from an earlier test is still going
+    int asAdmin = mockMvc.perform(post("/api/reports/payments/reconciliation/start")
+            .header(HttpHeaders.AUTHORIZATION, ADMIN_AUTH))
+        .andReturn().getResponse().getStatus();
+    assertTrue(asAdmin == 200 || asAdmin == 409, "admin got " + asAdmin);
+    mockMvc.perform(get("/api/reports/payments/reconciliation").header(HttpHeaders.AUTHORIZATION, USER_AUTH))
+        .andExpect(status().isOk());
+  }
+}
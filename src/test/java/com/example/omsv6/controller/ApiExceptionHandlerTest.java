@@ -0,0 +1,84 @@
+package com.example.omsv6.controller;
+
+import com.example.omsv6.service.ExternalApiClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ApiExceptionHandlerTest {
+
+  private static final String AUTH = "Basic "
+      + Base64.getEncoder().encodeToString("user:user".getBytes(StandardCharsets.UTF_8));
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void invalidInputIsRejectedWith400() throws Exception {
+    mockMvc.perform(json(post("/api/orders"), "{\"sku\":\"API-1\"}"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.message").value("Validation failed"))
+        .andExpect(jsonPath("$.error").value("customerId and sku are required"));
+
+    mockMvc.perform(json(post("/api/orders"), "{\"customerId\":\"c\",\"sku\":\"API-1\",\"quantity\":\"many\"}"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error").value("quantity has an invalid value"));
+
+    mockMvc.perform(json(post("/api/orders"), "{not json"))
+        .andExpect(status().isBadRequest());
+
+    mockMvc.perform(get("/api/orders").param("cursor", "not-a-cursor").header(HttpHeaders.AUTHORIZATION, AUTH))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.error").value("invalid cursor"));
+
+    mockMvc.perform(get("/api/reports/payments/summary").param("from", "yesterday").param("to", "2030-01-01")
+            .header(HttpHeaders.AUTHORIZATION, AUTH))
+        .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void missingResourcesAndStateConflictsMapTo404And409() throws Exception {
+    mockMvc.perform(get("/api/orders/{id}", 999_999_999L).header(HttpHeaders.AUTHORIZATION, AUTH))
+        .andExpect(status().isNotFound())
+        .andExpect(jsonPath("$.message").value("Order not found"))
+        .andExpect(jsonPath("$.orderId").value(999_999_999L));
+
+    mockMvc.perform(json(post("/api/inventory/items"), "{\"sku\":\"API-2\",\"name\":\"n\",\"quantityAvailable\":1}"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.sku").value("API-2"));
+    mockMvc.perform(json(post("/api/inventory/items"), "{\"sku\":\"API-2\",\"name\":\"n\",\"quantityAvailable\":1}"))
+        .andExpect(status().isConflict());
+
+    mockMvc.perform(json(post("/api/orders"), "{\"customerId\":\"c\",\"sku\":\"API-2\",\"quantity\":5}"))
+        .andExpect(status().isConflict())
+        .andExpect(jsonPath("$.message").value("Insufficient stock"))
+        .andExpect(jsonPath("$.available").value(1))
+        .andExpect(jsonPath("$.requested").value(5));
+
+    mockMvc.perform(json(post("/api/orders"), "{\"customerId\":\"c\",\"sku\":\"API-2\",\"quantity\":1}"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.message").value("Order created"))
+        .andExpect(jsonPath("$.inventory[0].reserved").value(1));
+  }
+
+  private MockHttpServletRequestBuilder json(MockHttpServletRequestBuilder request, String body) {
+    return request.header(HttpHeaders.AUTHORIZATION, AUTH).contentType(MediaType.APPLICATION_JSON).content(body);
+  }
+}
@@ -0,0 +1,96 @@
+package com.example.omsv6.controller;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.service.ExternalApiClient;
+import com.example.omsv6.service.InventoryService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Metrics export is off in tests unless asked for
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability(tracing = false)
+class MetricsEndpointTest {
+
+  private static final String AUTH = "Basic "
+      + Base64.getEncoder().encodeToString("user:user".getBytes(StandardCharsets.UTF_8));
+
+  private static final String ADMIN_AUTH = "Basic "
+      + Base64.getEncoder().encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8));
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void prometheusExposesServiceRepositoryPoolAndOutcomeMetrics() throws Exception {
+    inventoryService.createItem(new CreateInventoryItemRequest("METRICS-1", "METRICS-1", 1));
+    mockMvc.perform(post("/api/orders").header(HttpHeaders.AUTHORIZATION, AUTH)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"customerId\":\"c1\",\"sku\":\"METRICS-1\",\"quantity\":5}"))
+        .andExpect(status().isConflict());
+    mockMvc.perform(get("/api/orders/{id}", 999_999_999L).header(HttpHeaders.AUTHORIZATION, AUTH))
+        .andExpect(status().isNotFound());
+
+    String body = mockMvc.perform(get("/actuator/prometheus").header(HttpHeaders.AUTHORIZATION, ADMIN_AUTH))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+
+    assertTrue(body.contains("service_calls_seconds_bucket{"), "service histogram");
+    assertMetric(body, "service_calls_seconds{", "class=\"com.example.omsv6.service.OrderService\"", "method=\"createOrder\"",
+        "quantile=\"0.99\"");
+    assertMetric(body, "spring_data_repository_invocations_seconds_count{", "repository=\"OrderRepository\"",
+        "method=\"findById\"");
+    assertMetric(body, "hikaricp_connections_active{");
+    assertMetric(body, "business_outcomes_total{", "operation=\"createOrder\"", "outcome=\"Insufficient stock\"");
+    assertMetric(body, "business_outcomes_total{", "operation=\"getOrderById\"", "outcome=\"Order not found\"");
+  }
+
+  @Test
+  void startupTimelineNeedsAnAdmin() throws Exception {
+    mockMvc.perform(get("/actuator/startup")).andExpect(status().isUnauthorized());
+    mockMvc.perform(get("/actuator/startup").header(HttpHeaders.AUTHORIZATION, AUTH))
+        .andExpect(status().isForbidden());
+    // Past security; the endpoint itself only exists when started through main's buffering startup
+    int asAdmin = mockMvc.perform(get("/actuator/startup").header(HttpHeaders.AUTHORIZATION, ADMIN_AUTH))
+        .andReturn().getResponse().getStatus();
+    assertTrue(asAdmin != 401 && asAdmin != 403, "admin got " + asAdmin);
+    mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+  }
+
+  @Test
+  void metricsNeedAnAdmin() throws Exception {
+    for (String path : new String[] {"/actuator/prometheus", "/actuator/metrics"}) {
+      mockMvc.perform(get(path)).andExpect(status().isUnauthorized());
+      mockMvc.perform(get(path).header(HttpHeaders.AUTHORIZATION, AUTH)).andExpect(status().isForbidden());
+      mockMvc.perform(get(path).header(HttpHeaders.AUTHORIZATION, ADMIN_AUTH)).andExpect(status().isOk());
+    }
+    mockMvc.perform(get("/actuator/info")).andExpect(status().isOk());
+  }
+
+  private static void assertMetric(String body, String name, String... labels) {
+    boolean found = body.lines().anyMatch(line -> line.startsWith(name)
+        && Arrays.stream(labels).allMatch(line::contains));
+    assertTrue(found, name + " with " + String.join(", ", labels) + " not found");
+  }
+}
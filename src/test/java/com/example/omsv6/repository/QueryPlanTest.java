@@ -0,0 +1,258 @@
+package com.example.omsv6.repository;
+
+import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.service.ExternalApiClient;
+import com.example.omsv6.support.SqlRecorder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EXPLAINs the SQL of every OrderRepository, PaymentRepository, PaymentLedgerRepository,
+ * EventLogRepository and CustomerOrderStatRepository method against a seeded dataset and fails if any of it reads the
+ * whole table. A new query method fails the test until it is added here.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:query-plan-test",
+    "spring.jpa.show-sql=false",
+    "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.example.omsv6.support.SqlRecorder",
+    "app.orders.reservation-sweeper.enabled=false"
+})
+class QueryPlanTest {
+
+  private static final int ROWS = 20_000;
+  private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+  private static final int DAYS = 30;
+  private static final Limit PAGE = Limit.of(50);
+  private static final Set<PaymentStatus> PAYING = EnumSet.of(PaymentStatus.AUTHORIZATION_PENDING,
+      PaymentStatus.AUTHORIZED, PaymentStatus.CAPTURE_PENDING);
+
+  private static boolean seeded;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @Autowired
+  private PaymentRepository paymentRepository;
+
+  @Autowired
+  private PaymentLedgerRepository paymentLedgerRepository;
+
+  @Autowired
+  private EventLogRepository eventLogRepository;
+
+  @Autowired
+  private CustomerOrderStatRepository customerOrderStatRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @BeforeEach
+  void seed() {
+    if (seeded) return;
+    String createdAt = "dateadd(second, mod(x * 7919, " + DAYS * 86_400 + "), timestamp '" + FIRST_DAY + " 00:00:00')";
+    jdbcTemplate.update("insert into orders (id, customer_id, amount, status, created_at, updated_at) "
+        + "select x, 'cust-' || mod(x, 2000), 10, 1 + mod(x, 5), "
+        + createdAt + ", " + createdAt + " from system_range(1, ?)", ROWS);
+    jdbcTemplate.update("update orders set reservation_expires_at = dateadd(minute, 30, created_at) where status = 1");
+    jdbcTemplate.update("insert into order_lines (order_id, line_no, sku, quantity, amount) "
+        + "select x, 0, 'SKU-' || mod(x, 200), 1, 10 from system_range(1, ?)", ROWS);
+    jdbcTemplate.update("insert into payments (order_id, amount, currency, provider, status, created_at, updated_at) "
+        + "select x, 10, case mod(x, 3) when 0 then 'EUR' else 'USD' end, 'PLAN', 1 + mod(x, 8), "
+        + createdAt + ", " + createdAt + " from system_range(1, ?)", ROWS);
+    jdbcTemplate.update("insert into payment_ledger (payment_id, kind, amount, currency, created_at) "
+        + "select x, case mod(x, 3) when 0 then 'AUTHORIZE' when 1 then 'CAPTURE' else 'REFUND' end, 10, 'USD', "
+        + createdAt + " from system_range(1, ?)", ROWS);
+    jdbcTemplate.update("insert into event_log (event_offset, type, aggregate_id, payload, created_at) "
+        + "select x, 'OrderCreated', x, '{}', " + createdAt + " from system_range(1, ?)", ROWS);
+    jdbcTemplate.update("update event_log_head set last_offset = ?", ROWS);
+    // And some still waiting for the sequencer, under pending keys
+    jdbcTemplate.update("insert into event_log (event_offset, type, aggregate_id, payload, created_at) "
+        + "select -x, 'OrderCreated', x, '{}', " + createdAt + " from system_range(1025, 1124)");
+    jdbcTemplate.update("insert into customer_order_stats (customer_id, status, order_count, amount) "
+        + "select customer_id, status, count(*), sum(amount) from orders group by customer_id, status");
+    jdbcTemplate.execute("analyze");
+    seeded = true;
+  }
+
+  @Test
+  void orderQueriesUseAnIndex() {
+    LocalDateTime day = FIRST_DAY.plusDays(10).atStartOfDay();
+    Map<String, Runnable> queries = new LinkedHashMap<>();
+    queries.put("findByCreatedAtBetweenOrderByCreatedAtDesc",
+        () -> orderRepository.findByCreatedAtBetweenOrderByCreatedAtDesc(day, day.plusDays(1)));
+    queries.put("findByOrderByCreatedAtDescIdDesc",
+        () -> twoPages(p -> orderRepository.findByOrderByCreatedAtDescIdDesc(p, PAGE)));
+    queries.put("findByStatusOrderByCreatedAtDescIdDesc",
+        () -> twoPages(p -> orderRepository.findByStatusOrderByCreatedAtDescIdDesc(OrderStatus.PAID, p, PAGE)));
+    queries.put("findByCustomerIdOrderByCreatedAtDescIdDesc",
+        () -> twoPages(p -> orderRepository.findByCustomerIdOrderByCreatedAtDescIdDesc("cust-7", p, Limit.of(3))));
+    queries.put("findByStatusAndCustomerIdOrderByCreatedAtDescIdDesc",
+        () -> twoPages(p -> orderRepository.findByStatusAndCustomerIdOrderByCreatedAtDescIdDesc(
+            OrderStatus.SHIPPED, "cust-7", p, Limit.of(1))));
+    queries.put("findRecentByCustomerId", () -> orderRepository.findRecentByCustomerId("cust-7", Limit.of(10)));
+    queries.put("streamByOrderByCreatedAtDescIdDesc",
+        () -> first(orderRepository.streamByOrderByCreatedAtDescIdDesc()));
+    queries.put("streamByStatusOrderByCreatedAtDescIdDesc",
+        () -> first(orderRepository.streamByStatusOrderByCreatedAtDescIdDesc(OrderStatus.PAID)));
+    queries.put("streamByCustomerIdOrderByCreatedAtDescIdDesc",
+        () -> first(orderRepository.streamByCustomerIdOrderByCreatedAtDescIdDesc("cust-7")));
+    queries.put("streamByStatusAndCustomerIdOrderByCreatedAtDescIdDesc",
+        () -> first(orderRepository.streamByStatusAndCustomerIdOrderByCreatedAtDescIdDesc(OrderStatus.SHIPPED, "cust-7")));
+    queries.put("transition",
+        () -> orderRepository.transition(7L, OrderStatus.SHIPPED, OrderStatus.DELIVERED, LocalDateTime.now()));
+    queries.put("findExpiredReservations",
+        () -> orderRepository.findExpiredReservations(day, PAYING, PAGE));
+    queries.put("expireReservations", () -> orderRepository.expireReservations(List.of(5L, 10L),
+        OrderStatus.CREATED, OrderStatus.CANCELLED, PAYING, day));
+    // Runs and commits in its own transaction, so on a row the updates above have not locked
+    queries.put("updateShippingQuote",
+        () -> orderRepository.updateShippingQuote(8L, "READY", BigDecimal.ONE, "USD", LocalDateTime.now()));
+
+    assertNoTableScans(OrderRepository.class, queries);
+  }
+
+  @Test
+  void paymentQueriesUseAnIndex() {
+    LocalDateTime day = FIRST_DAY.plusDays(10).atStartOfDay();
+    Map<String, Runnable> queries = new LinkedHashMap<>();
+    queries.put("findByOrderIdOrderByCreatedAtDesc", () -> paymentRepository.findByOrderIdOrderByCreatedAtDesc(7L));
+    queries.put("findByCreatedAtBetweenOrderByCreatedAtDesc",
+        () -> paymentRepository.findByCreatedAtBetweenOrderByCreatedAtDesc(day, day.plusDays(1)));
+    queries.put("summarizeByStatusAndCurrency",
+        () -> paymentRepository.summarizeByStatusAndCurrency(day, day.plusDays(1)));
+    queries.put("summarizeByDayStatusAndCurrency",
+        () -> paymentRepository.summarizeByDayStatusAndCurrency(day, day.plusDays(1)));
+    queries.put("transition", () -> paymentRepository.transition(7L, PaymentStatus.AUTHORIZED,
+        PaymentStatus.CAPTURE_PENDING, null, LocalDateTime.now()));
+    queries.put("authorize", () -> paymentRepository.authorize(7L, PaymentStatus.AUTHORIZATION_PENDING,
+        PaymentStatus.AUTHORIZED, "REF", LocalDateTime.now()));
+    queries.put("findStatusById", () -> paymentRepository.findStatusById(7L));
+    queries.put("findForReconciliation", () -> paymentRepository.findForReconciliation(day, 7L, day.plusDays(1), PAGE));
+    queries.put("findBalanceById", () -> paymentRepository.findBalanceById(7L));
+    queries.put("capture", () -> paymentRepository.capture(7L, PaymentStatus.CAPTURE_PENDING,
+        PaymentStatus.CAPTURED, BigDecimal.ONE, LocalDateTime.now()));
+    queries.put("reserveRefund", () -> paymentRepository.reserveRefund(7L, PaymentStatus.CAPTURED,
+        PaymentStatus.REFUND_PENDING, BigDecimal.ONE, LocalDateTime.now()));
+    queries.put("settleRefund", () -> paymentRepository.settleRefund(7L, PaymentStatus.REFUND_PENDING,
+        BigDecimal.ONE, BigDecimal.ONE, LocalDateTime.now()));
+    queries.put("applyProviderStatus", () -> paymentRepository.applyProviderStatus(7L, PaymentStatus.AUTHORIZED,
+        BigDecimal.ZERO, BigDecimal.ZERO, PaymentStatus.CAPTURED, BigDecimal.ONE, BigDecimal.ZERO, LocalDateTime.now()));
+
+    assertNoTableScans(PaymentRepository.class, queries);
+  }
+
+  @Test
+  void paymentLedgerQueriesUseAnIndex() {
+    LocalDateTime day = FIRST_DAY.plusDays(10).atStartOfDay();
+    Map<String, Runnable> queries = new LinkedHashMap<>();
+    queries.put("findByPaymentIdOrderById", () -> paymentLedgerRepository.findByPaymentIdOrderById(7L));
+    queries.put("summarizeByKindAndCurrency",
+        () -> paymentLedgerRepository.summarizeByKindAndCurrency(day, day.plusDays(1)));
+    queries.put("summarizeByDayKindAndCurrency",
+        () -> paymentLedgerRepository.summarizeByDayKindAndCurrency(day, day.plusDays(1)));
+
+    assertNoTableScans(PaymentLedgerRepository.class, queries);
+  }
+
+  @Test
+  void eventLogQueriesUseAnIndex() {
+    Map<String, Runnable> queries = new LinkedHashMap<>();
+    queries.put("findByEventOffsetGreaterThanOrderByEventOffset",
+        () -> eventLogRepository.findByEventOffsetGreaterThanOrderByEventOffset(ROWS - 100, PAGE));
+    queries.put("nextPendingBlock", () -> eventLogRepository.nextPendingBlock());
+    queries.put("findPendingKeys", () -> eventLogRepository.findPendingKeys(PAGE));
+    queries.put("assignOffset", () -> eventLogRepository.assignOffset(-1025, ROWS + 1));
+    queries.put("advanceHead", () -> eventLogRepository.advanceHead(1));
+    queries.put("headOffset", () -> eventLogRepository.headOffset());
+
+    assertNoTableScans(EventLogRepository.class, queries);
+  }
+
+  @Test
+  void customerOrderStatQueriesUseAnIndex() {
+    Map<String, Runnable> queries = new LinkedHashMap<>();
+    queries.put("increment",
+        () -> customerOrderStatRepository.increment("cust-7", OrderStatus.PAID, 1, BigDecimal.TEN));
+    queries.put("sumByStatus", () -> customerOrderStatRepository.sumByStatus("cust-7"));
+    queries.put("deleteByCustomer", () -> customerOrderStatRepository.deleteByCustomer("cust-7"));
+    queries.put("rebuildFromOrders", () -> customerOrderStatRepository.rebuildFromOrders("cust-7"));
+    queries.put("lockStripe", () -> customerOrderStatRepository.lockStripe(7));
+
+    assertNoTableScans(CustomerOrderStatRepository.class, queries);
+  }
+
+  private void assertNoTableScans(Class<?> repository, Map<String, Runnable> queries) {
+    Set<String> declared = Arrays.stream(repository.getDeclaredMethods())
+        .filter(m -> !m.isDefault())
+        .map(Method::getName)
+        .collect(Collectors.toSet());
+    assertEquals(declared, queries.keySet(), "every query method needs a plan check");
+
+    List<String> scans = new ArrayList<>();
+    // Modifying queries run too, so roll everything back
+    transactionTemplate.executeWithoutResult(tx -> {
+      tx.setRollbackOnly();
+      queries.forEach((method, query) -> {
+        List<String> statements = SqlRecorder.record(query);
+        assertFalse(statements.isEmpty(), method + " ran no SQL");
+        for (String sql : statements) {
+          String plan = explain(sql);
+          if (plan.contains(".tableScan")) {
+            scans.add(method + ":\n" + plan);
+          }
+        }
+      });
+    });
+    assertTrue(scans.isEmpty(), "table scans in " + repository.getSimpleName() + ":\n" + String.join("\n\n", scans));
+  }
+
+  private String explain(String sql) {
+    return jdbcTemplate.query(con -> con.prepareStatement("explain " + sql), rs -> {
+      StringBuilder plan = new StringBuilder();
+      while (rs.next()) {
+        plan.append(rs.getString(1));
+      }
+      return plan.toString();
+    });
+  }
+
+  // The first page and the next one, whose keyset predicate is a different statement
+  private static void twoPages(Function<ScrollPosition, Window<OrderEntity>> query) {
+    Window<OrderEntity> page = query.apply(ScrollPosition.keyset());
+    assertTrue(page.hasNext(), "seed more rows");
+    query.apply(page.positionAt(page.size() - 1));
+  }
+
+  private static void first(Stream<OrderEntity> stream) {
+    try (stream) {
+      assertTrue(stream.findFirst().isPresent());
+    }
+  }
+}
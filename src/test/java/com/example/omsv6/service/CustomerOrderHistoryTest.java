@@ -0,0 +1,185 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CustomerOrderHistory;
+import com.example.omsv6.dto.UpdateOrderStatusRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class CustomerOrderHistoryTest {
+
+  @Autowired
+  private CustomerOrderHistoryService customerOrderHistoryService;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void historyFollowsOrdersThroughTheirLifecycle() {
+    inventoryService.createItem(new CreateInventoryItemRequest("HIST-1", "HIST-1", 100));
+    Long first = order("hist-1", "10.00");
+    Long second = order("hist-1", "20.00");
+    Long third = order("hist-1", "40.00");
+
+    orderService.updateOrderStatus(first, new UpdateOrderStatusRequest("PAID"));
+    orderService.updateOrderStatus(second, new UpdateOrderStatusRequest("PAID"));
+    orderService.updateOrderStatus(second, new UpdateOrderStatusRequest("SHIPPED"));
+    orderService.cancelOrder(third);
+
+    CustomerOrderHistory history = customerOrderHistoryService.getHistory("hist-1");
+    assertEquals(3, history.orderCount());
+    assertEquals(Map.of("PAID", 1L, "SHIPPED", 1L, "CANCELLED", 1L), history.ordersByStatus());
+    assertEquals(0, new BigDecimal("30.00").compareTo(history.lifetimeSpend()));
+    assertEquals(List.of(third, second, first), history.recentOrders().stream()
+        .map(CustomerOrderHistory.RecentOrder::id).toList());
+    assertEquals("HIST-1", history.recentOrders().get(0).lines().get(0).sku());
+
+    CustomerOrderHistory rebuilt = customerOrderHistoryService.rebuild("hist-1");
+    assertEquals(history.ordersByStatus(), rebuilt.ordersByStatus());
+    assertEquals(0, history.lifetimeSpend().compareTo(rebuilt.lifetimeSpend()));
+  }
+
+  @Test
+  void repeatedReadsAreCachedUntilTheCustomerOrdersAgain() {
+    inventoryService.createItem(new CreateInventoryItemRequest("HIST-2", "HIST-2", 100));
+    order("hist-2", "5.00");
+    assertEquals(1, customerOrderHistoryService.getHistory("hist-2").orderCount());
+
+    double hitsBefore = hits();
+    for (int i = 0; i < 5; i++) {
+      assertEquals(1, customerOrderHistoryService.getHistory("hist-2").orderCount());
+    }
+    assertEquals(5, hits() - hitsBefore);
+
+    Long id = order("hist-2", "5.00");
+    CustomerOrderHistory history = customerOrderHistoryService.getHistory("hist-2");
+    assertEquals(2, history.orderCount());
+    assertEquals(id, history.recentOrders().get(0).id());
+
+    orderService.updateOrderStatus(id, new UpdateOrderStatusRequest("PAID"));
+    assertEquals(0, new BigDecimal("5.00").compareTo(customerOrderHistoryService.getHistory("hist-2").lifetimeSpend()));
+  }
+
+  @Test
+  void concurrentFirstOrdersOfACustomerAreAllCounted() throws Exception {
+    int threads = 8;
+    int ordersPerThread = 10;
+    inventoryService.createItem(new CreateInventoryItemRequest("HIST-3", "HIST-3", threads * ordersPerThread));
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> results = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        results.add(pool.submit(() -> {
+          start.await();
+          for (int i = 0; i < ordersPerThread; i++) {
+            order("hist-3", "1.00");
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> r : results) {
+        r.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertEquals(threads * ordersPerThread, customerOrderHistoryService.getHistory("hist-3").orderCount());
+    customerOrderHistoryService.rebuild("hist-3");
+    assertEquals(1, jdbcTemplate.queryForObject(
+        "select count(*) from customer_order_stats where customer_id = 'hist-3'", Integer.class));
+    assertEquals(threads * ordersPerThread, customerOrderHistoryService.getHistory("hist-3").orderCount());
+  }
+
+  @Test
+  void rebuildWaitsForDeltasInFlight() throws Exception {
+    inventoryService.createItem(new CreateInventoryItemRequest("HIST-4", "HIST-4", 100));
+    CountDownLatch applied = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    // An order whose stats delta is written but not yet committed
+    CompletableFuture<Void> order = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(s -> {
+      order("hist-4", "7.00");
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public int getOrder() {
+          return EventLogService.SYNCHRONIZATION_ORDER;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+          applied.countDown();
+          try {
+            release.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }));
+    assertTrue(applied.await(5, TimeUnit.SECONDS));
+
+    CompletableFuture<CustomerOrderHistory> rebuild =
+        CompletableFuture.supplyAsync(() -> customerOrderHistoryService.rebuild("hist-4"));
+    Thread.sleep(300);
+    assertFalse(rebuild.isDone(), "the rebuild ran under an uncommitted delta");
+    release.countDown();
+    order.get(5, TimeUnit.SECONDS);
+
+    assertEquals(1, rebuild.get(5, TimeUnit.SECONDS).orderCount());
+    assertEquals(1, customerOrderHistoryService.getHistory("hist-4").orderCount());
+  }
+
+  @Test
+  void unknownCustomerHasAnEmptyHistory() {
+    CustomerOrderHistory history = customerOrderHistoryService.getHistory("hist-nobody");
+    assertEquals(0, history.orderCount());
+    assertEquals(0, history.lifetimeSpend().signum());
+    assertTrue(history.recentOrders().isEmpty());
+    assertThrows(ApiException.class, () -> customerOrderHistoryService.getHistory(" "));
+  }
+
+  private Long order(String customerId, String amount) {
+    String sku = "HIST-" + customerId.substring("hist-".length());
+    return orderService.createOrder(new CreateOrderRequest(customerId, sku, 1, new BigDecimal(amount))).orderId();
+  }
+
+  private double hits() {
+    return meterRegistry.get("cache.gets").tags("cache", "customers.order-history", "result", "hit")
+        .functionCounter().count();
+  }
+}
@@ -0,0 +1,253 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.AdjustStockRequest;
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreatePaymentRequest;
+import com.example.omsv6.dto.EventPage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(properties = "app.events.max-waiters=4")
+class EventLogTest {
+
+  @Autowired
+  private EventLogService eventLogService;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private PaymentService paymentService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void concurrentWritersCommitInOffsetOrder() throws Exception {
+    int threads = 8;
+    int ordersPerThread = 25;
+    inventoryService.createItem(new CreateInventoryItemRequest("EVT-1", "EVT-1", threads * ordersPerThread));
+    long start = sequencedHead();
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+    try {
+      CountDownLatch go = new CountDownLatch(1);
+      List<Future<?>> writers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        writers.add(pool.submit(() -> {
+          go.await();
+          for (int i = 0; i < ordersPerThread; i++) {
+            orderService.createOrder(new CreateOrderRequest("evt-cust", "EVT-1", 1, BigDecimal.ONE));
+          }
+          return null;
+        }));
+      }
+      // Follows the log while it is written: every batch must continue exactly where the last ended
+      Future<Integer> follower = pool.submit(() -> {
+        long after = start;
+        int orders = 0;
+        while (orders < threads * ordersPerThread) {
+          EventPage page = eventLogService.read(after, 7, Duration.ofSeconds(5)).get(10, TimeUnit.SECONDS);
+          assertFalse(page.events().isEmpty(), "no event within the wait");
+          for (EventPage.Event e : page.events()) {
+            assertEquals(after + 1, e.offset(), "gap or reordering after offset " + after);
+            after = e.offset();
+            if (e.type().equals("OrderCreated") && e.payload().contains("\"EVT-1\"")) orders++;
+          }
+          assertEquals(after, page.nextAfter());
+        }
+        return orders;
+      });
+      go.countDown();
+      for (Future<?> w : writers) {
+        w.get(60, TimeUnit.SECONDS);
+      }
+      assertEquals(threads * ordersPerThread, follower.get(60, TimeUnit.SECONDS));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void rolledBackChangeLeavesNoEventAndNoGap() {
+    inventoryService.createItem(new CreateInventoryItemRequest("EVT-2", "EVT-2", 10));
+    inventoryService.createItem(new CreateInventoryItemRequest("EVT-3", "EVT-3", 1));
+    long start = sequencedHead();
+
+    assertThrows(ApiException.class, () -> orderService.createOrder(new CreateOrderRequest("evt-rollback", null, null,
+        null, List.of(new CreateOrderRequest.Line("EVT-2", 1, BigDecimal.ONE),
+            new CreateOrderRequest.Line("EVT-3", 5, BigDecimal.ONE)))));
+    inventoryService.adjustStock("EVT-2", new AdjustStockRequest(5));
+
+    eventLogService.sequence();
+    List<EventPage.Event> events = eventLogService.read(start, 1000, Duration.ZERO).join().events();
+    for (int i = 0; i < events.size(); i++) {
+      assertEquals(start + 1 + i, events.get(i).offset());
+      assertFalse(events.get(i).payload().contains("evt-rollback"));
+    }
+    EventPage.Event adjusted = events.stream().filter(e -> e.aggregateId().equals("EVT-2")).findFirst().orElseThrow();
+    assertEquals("InventoryChanged", adjusted.type());
+    assertTrue(adjusted.payload().contains("\"quantityAvailable\":15"), adjusted.payload());
+  }
+
+  @Test
+  void cancellingAnOrderLogsTheOrderAndItsPayments() throws Exception {
+    // The authorization keeps failing transiently, so the payment stays cancellable
+    when(externalApiClient.authorizePayment(anyLong(), any(), anyString(), anyString()))
+        .thenThrow(new ExternalApiException("authorize", ExternalApiException.Reason.TIMEOUT, 0, "read timed out", null));
+    inventoryService.createItem(new CreateInventoryItemRequest("EVT-4", "EVT-4", 10));
+    long start = sequencedHead();
+
+    Long orderId = orderService.createOrder(new CreateOrderRequest("evt-cancel", "EVT-4", 2, BigDecimal.TEN)).orderId();
+    Long paymentId = paymentService.createPayment(new CreatePaymentRequest(orderId, null, "USD")).paymentId();
+    orderService.cancelOrder(orderId);
+
+    List<String> logged = new ArrayList<>();
+    eventLogService.sequence();
+    for (EventPage.Event e : eventLogService.read(start, 1000, Duration.ZERO).join().events()) {
+      JsonNode payload = objectMapper.readTree(e.payload());
+      if (e.type().startsWith("Order") && e.aggregateId().equals(orderId.toString())) {
+        logged.add(e.type() + ":" + payload.path("newStatus").asText(payload.path("status").asText()));
+      } else if (e.type().startsWith("Payment") && e.aggregateId().equals(paymentId.toString())) {
+        logged.add(e.type() + ":" + payload.path("newStatus").asText(payload.path("status").asText()));
+      }
+    }
+    assertEquals(List.of("OrderCreated:CREATED", "PaymentCreated:AUTHORIZATION_PENDING",
+        "OrderStatusChanged:CANCELLED", "PaymentStatusChanged:CANCELLED"), logged);
+  }
+
+  @Test
+  void emptyReadWaitsForTheNextCommit() throws Exception {
+    long head = sequencedHead();
+    CompletableFuture<EventPage> read = eventLogService.read(head, 100, Duration.ofSeconds(10));
+    Thread.sleep(300);
+    assertFalse(read.isDone());
+
+    long begin = System.nanoTime();
+    inventoryService.createItem(new CreateInventoryItemRequest("EVT-5", "EVT-5", 3));
+    EventPage page = read.get(5, TimeUnit.SECONDS);
+
+    assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(1), "woken by the commit, not the recheck");
+    assertEquals(head + 1, page.events().get(0).offset());
+    assertEquals(page.events().get(page.count() - 1).offset(), page.nextAfter());
+  }
+
+  @Test
+  void waitersAtDifferentOffsetsEachGetTheirOwnEvents() throws Exception {
+    long head = sequencedHead();
+    CompletableFuture<EventPage> fromHead = eventLogService.read(head, 100, Duration.ofSeconds(10));
+    CompletableFuture<EventPage> fromNext = eventLogService.read(head + 1, 100, Duration.ofSeconds(10));
+
+    inventoryService.createItem(new CreateInventoryItemRequest("EVT-6", "EVT-6", 3));
+    assertEquals(head + 1, fromHead.get(5, TimeUnit.SECONDS).events().get(0).offset());
+    Thread.sleep(300);
+    assertFalse(fromNext.isDone(), "nothing after its offset yet");
+
+    inventoryService.createItem(new CreateInventoryItemRequest("EVT-7", "EVT-7", 3));
+    EventPage next = fromNext.get(5, TimeUnit.SECONDS);
+    assertEquals(head + 2, next.events().get(0).offset());
+    assertEquals("EVT-7", next.events().get(0).aggregateId());
+  }
+
+  @Test
+  void writersDoNotWaitOnTheHead() throws Exception {
+    long head = sequencedHead();
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    // Holds the head row's lock, as a slow sequencer would
+    CompletableFuture<Void> sequencer = CompletableFuture.runAsync(() -> new TransactionTemplate(transactionManager).executeWithoutResult(s -> {
+      jdbcTemplate.update("update event_log_head set last_offset = last_offset where id = 1");
+      locked.countDown();
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }));
+    assertTrue(locked.await(5, TimeUnit.SECONDS));
+    try {
+      long begin = System.nanoTime();
+      inventoryService.createItem(new CreateInventoryItemRequest("EVT-8", "EVT-8", 3));
+      assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(1), "the writer waited on the head");
+    } finally {
+      release.countDown();
+      sequencer.get(5, TimeUnit.SECONDS);
+    }
+
+    EventPage page = eventLogService.read(head, 100, Duration.ofSeconds(5)).get(10, TimeUnit.SECONDS);
+    assertEquals(head + 1, page.events().get(0).offset());
+    assertEquals("EVT-8", page.events().get(0).aggregateId());
+  }
+
+  @Test
+  void emptyReadTimesOutWithNoEvents() throws Exception {
+    long beyond = sequencedHead() + 1_000_000;
+    long begin = System.nanoTime();
+
+    EventPage page = eventLogService.read(beyond, 100, Duration.ofMillis(1500)).get(5, TimeUnit.SECONDS);
+
+    assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS.toNanos(1500));
+    assertEquals(0, page.count());
+    assertEquals(beyond, page.nextAfter());
+    assertThrows(ApiException.class, () -> eventLogService.read(-1, 100, Duration.ZERO));
+  }
+
+  @Test
+  void waitingReadsHoldNoThreadAndAreCapped() throws Exception {
+    long beyond = sequencedHead() + 1_000_000;
+    List<CompletableFuture<EventPage>> waiting = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      waiting.add(eventLogService.read(beyond, 100, Duration.ofSeconds(1)));
+    }
+    assertTrue(waiting.stream().noneMatch(CompletableFuture::isDone));
+
+    ApiException refused = assertThrows(ApiException.class,
+        () -> eventLogService.read(beyond, 100, Duration.ofSeconds(1)));
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, refused.getStatus());
+    // A read that does not wait is still served
+    assertEquals(0, eventLogService.read(beyond, 100, Duration.ZERO).join().count());
+
+    for (CompletableFuture<EventPage> read : waiting) {
+      assertEquals(0, read.get(5, TimeUnit.SECONDS).count());
+    }
+    // Their slots are free again
+    assertEquals(0, eventLogService.read(beyond, 100, Duration.ofMillis(10)).get(5, TimeUnit.SECONDS).count());
+  }
+
+  // Everything committed so far has its offset
+  private long sequencedHead() {
+    eventLogService.sequence();
+    return eventLogService.headOffset();
+  }
+}
@@ -0,0 +1,216 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.config.ExternalApiProperties;
+import com.example.omsv6.config.RestClientConfig;
+import com.example.omsv6.support.StubExternalApi;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.core.IntervalFunction;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExternalApiClientTest {
+
+  private final RestClientConfig config = new RestClientConfig();
+  private StubExternalApi stub;
+  private PoolingHttpClientConnectionManager connectionManager;
+  private CloseableHttpClient httpClient;
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private CircuitBreakerRegistry circuitBreakers;
+  private RetryRegistry retries;
+  private ExternalApiClient client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = new StubExternalApi();
+    client = newClient(stub.baseUrl());
+  }
+
+  private ExternalApiClient newClient(String baseUrl) {
+    ExternalApiProperties properties = new ExternalApiProperties();
+    properties.setBaseUrl(baseUrl);
+    ExternalApiProperties.Timeouts quote = new ExternalApiProperties.Timeouts();
+    quote.setReadTimeout(Duration.ofMillis(200));
+    properties.getOperations().put(ExternalApiProperties.SHIPPING_QUOTE, quote);
+
+    connectionManager = config.externalApiConnectionManager(properties);
+    httpClient = config.externalApiHttpClient(connectionManager, properties);
+    StaticListableBeanFactory beans = new StaticListableBeanFactory();
+    beans.addBean("externalApiHttpClient", httpClient);
+
+    circuitBreakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+        .slidingWindowSize(4)
+        .minimumNumberOfCalls(4)
+        .failureRateThreshold(50)
+        .waitDurationInOpenState(Duration.ofMinutes(1))
+        .build());
+    BulkheadRegistry bulkheads = BulkheadRegistry.of(BulkheadConfig.custom()
+        .maxConcurrentCalls(2)
+        .maxWaitDuration(Duration.ZERO)
+        .build());
+    RetryConfig paymentRetry = RetryConfig.custom()
+        .maxAttempts(3)
+        .intervalFunction(IntervalFunction.ofExponentialRandomBackoff(Duration.ofMillis(10), 2, 0.5))
+        .retryExceptions(ExternalApiConnectException.class)
+        .build();
+    retries = RetryRegistry.of(paymentRetry);
+    retries.retry(ExternalApiProperties.SHIPPING_QUOTE, RetryConfig.from(paymentRetry)
+        .retryExceptions(ExternalApiException.class)
+        .build());
+
+    return new ExternalApiClient(config.externalApiRestTemplates(properties,
+        beans.getBeanProvider(CloseableHttpClient.class), new MockEnvironment()),
+        properties, circuitBreakers, bulkheads, retries, meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    httpClient.close();
+    stub.close();
+  }
+
+  @Test
+  void sequentialCallsReuseOneConnection() {
+    for (int i = 0; i < 20; i++) {
+      client.capturePayment("AUTH-" + i, BigDecimal.ONE, "cap-" + i);
+      client.refundPayment("AUTH-" + i, BigDecimal.ONE, "ref-" + i);
+    }
+    assertEquals(40, stub.requestCount());
+    assertEquals(1, stub.connectionCount());
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    StaticListableBeanFactory beans = new StaticListableBeanFactory();
+    beans.addBean("externalApiConnectionManager", connectionManager);
+    config.externalApiPoolMetrics(beans.getBeanProvider(PoolingHttpClientConnectionManager.class)).bindTo(registry);
+    assertEquals(0.0, registry.get("external.api.pool.leased").gauge().value());
+    assertEquals(1.0, registry.get("external.api.pool.idle").gauge().value());
+    assertEquals(0.0, registry.get("external.api.pool.pending").gauge().value());
+  }
+
+  @Test
+  void paymentCallsCarryTheirIdempotencyKey() {
+    assertEquals("AUTH-auth-7", client.authorizePayment(7L, BigDecimal.TEN, "USD", "auth-7"));
+    assertEquals("AUTH-auth-7", client.authorizePayment(7L, BigDecimal.TEN, "USD", "auth-7"));
+    client.capturePayment("AUTH-auth-7", BigDecimal.ONE, "cap-7");
+    client.fetchShippingQuote("c1", Map.of("SKU", 1));
+
+    assertEquals(4, stub.requestCount());
+    assertEquals(Map.of("auth-7", 2, "cap-7", 1), stub.requestsByIdempotencyKey());
+  }
+
+  @Test
+  void readTimeoutIsAppliedPerOperation() {
+    stub.setDelayMs(1000);
+
+    long begin = System.nanoTime();
+    ExternalApiException e = assertThrows(ExternalApiException.class,
+        () -> client.fetchShippingQuote("c1", Map.of("SKU", 1)));
+    long elapsedMs = Duration.ofNanos(System.nanoTime() - begin).toMillis();
+    assertEquals(ExternalApiException.Reason.TIMEOUT, e.getReason());
+    // three ~200ms attempts, not three 1s ones
+    assertEquals(3, stub.requestCount());
+    assertTrue(elapsedMs < 1500, "quote should time out after ~200ms per attempt, took " + elapsedMs + "ms");
+
+    // capture keeps the default 2s read timeout and waits the stub out
+    client.capturePayment("AUTH-1", BigDecimal.ONE, "cap-1");
+  }
+
+  @Test
+  void serverErrorsOpenTheBreakerAndPaymentsAreNotRetried() {
+    stub.setStatus(500);
+    for (int i = 0; i < 4; i++) {
+      ExternalApiException e = assertThrows(ExternalApiException.class, () -> client.capturePayment("AUTH-1", BigDecimal.ONE, "cap-1"));
+      assertEquals(ExternalApiException.Reason.HTTP_STATUS, e.getReason());
+      assertEquals(500, e.getHttpStatus());
+    }
+    assertEquals(4, stub.requestCount());
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreakers.circuitBreaker(ExternalApiProperties.CAPTURE).getState());
+
+    ExternalApiException rejected = assertThrows(ExternalApiException.class, () -> client.capturePayment("AUTH-1", BigDecimal.ONE, "cap-1"));
+    assertEquals(ExternalApiException.Reason.CIRCUIT_OPEN, rejected.getReason());
+    assertEquals(4, stub.requestCount());
+    assertEquals(1.0, meterRegistry.get("external.api.rejected")
+        .tags("operation", "capture", "reason", "circuit_open").counter().count());
+
+    // other operations keep their own breaker
+    stub.setStatus(200);
+    client.refundPayment("AUTH-1", BigDecimal.ONE, "ref-1");
+
+    assertEquals(4, meterRegistry.get("external.api.calls")
+        .tags("operation", "capture", "outcome", "http_status").timer().count());
+    assertEquals(1, meterRegistry.get("external.api.calls")
+        .tags("operation", "capture", "outcome", "circuit_open").timer().count());
+    assertEquals(1, meterRegistry.get("external.api.calls")
+        .tags("operation", "refund", "outcome", "success").timer().count());
+  }
+
+  @Test
+  void clientErrorsDoNotCountAgainstTheProvider() {
+    stub.setStatus(422);
+    for (int i = 0; i < 6; i++) {
+      ExternalApiException e = assertThrows(ExternalApiException.class, () -> client.capturePayment("AUTH-1", BigDecimal.ONE, "cap-1"));
+      assertEquals(422, e.getHttpStatus());
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreakers.circuitBreaker(ExternalApiProperties.CAPTURE).getState());
+  }
+
+  @Test
+  void bulkheadRejectsCallsBeyondTheLimit() throws Exception {
+    stub.setDelayMs(500);
+    ExecutorService pool = Executors.newFixedThreadPool(5);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        futures.add(pool.submit(() -> client.capturePayment("AUTH-1", BigDecimal.ONE, "cap-1")));
+      }
+      int rejected = 0;
+      for (Future<?> f : futures) {
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          assertEquals(ExternalApiException.Reason.BULKHEAD_FULL, ((ExternalApiException) e.getCause()).getReason());
+          rejected++;
+        }
+      }
+      assertEquals(3, rejected);
+      assertEquals(2, stub.requestCount());
+      assertEquals(3.0, meterRegistry.get("external.api.rejected")
+          .tags("operation", "capture", "reason", "bulkhead_full").counter().count());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void connectFailuresAreRetried() throws Exception {
+    int closedPort;
+    try (ServerSocket s = new ServerSocket(0)) {
+      closedPort = s.getLocalPort();
+    }
+    ExternalApiClient down = newClient("http://127.0.0.1:" + closedPort);
+    ExternalApiException e = assertThrows(ExternalApiConnectException.class, () -> down.authorizePayment(1L, BigDecimal.TEN, "USD", "auth-1"));
+    assertEquals(ExternalApiException.Reason.CONNECT, e.getReason());
+    assertEquals(1, retries.retry(ExternalApiProperties.AUTHORIZE).getMetrics().getNumberOfFailedCallsWithRetryAttempt());
+  }
+}
@@ -0,0 +1,184 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreateOrderResponse;
+import com.example.omsv6.repository.InventoryItemRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class IdempotencyServiceTest {
+
+  @Autowired
+  private IdempotencyService idempotencyService;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private InventoryItemRepository inventoryItemRepository;
+
+  @Autowired
+  private AutowireCapableBeanFactory beanFactory;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  private final AtomicInteger runs = new AtomicInteger();
+
+  @Test
+  void retryGetsTheStoredResponseWithoutCreatingAnotherOrder() {
+    CreateOrderRequest request = createItemAndRequest("IDEM-1");
+
+    CreateOrderResponse first = createOrder(idempotencyService, "k-1", request);
+    CreateOrderResponse retry = createOrder(idempotencyService, "k-1", request);
+
+    assertEquals(first, retry);
+    assertEquals(1, runs.get());
+    assertEquals(1, reserved("IDEM-1"));
+
+    // A new key is a new order
+    createOrder(idempotencyService, "k-2", request);
+    assertEquals(2, runs.get());
+  }
+
+  @Test
+  void concurrentDuplicatesShareOneExecution() throws Exception {
+    CreateOrderRequest request = createItemAndRequest("IDEM-2");
+    double coalescedBefore = count("coalesced");
+    CountDownLatch running = new CountDownLatch(1);
+    Supplier<CreateOrderResponse> slowCreate = () -> {
+      running.countDown();
+      sleep(300);
+      runs.incrementAndGet();
+      return orderService.createOrder(request);
+    };
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<CreateOrderResponse>> responses = new ArrayList<>();
+      responses.add(pool.submit(() -> idempotencyService.execute("orders", "alice", "k-3", request,
+          CreateOrderResponse.class, slowCreate)));
+      running.await();
+      for (int i = 0; i < 7; i++) {
+        responses.add(pool.submit(() -> idempotencyService.execute("orders", "alice", "k-3", request,
+            CreateOrderResponse.class, slowCreate)));
+      }
+      Long orderId = responses.get(0).get().orderId();
+      for (Future<CreateOrderResponse> r : responses) {
+        assertEquals(orderId, r.get().orderId());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertEquals(1, runs.get());
+    assertEquals(1, reserved("IDEM-2"));
+    assertEquals(7.0, count("coalesced") - coalescedBefore);
+  }
+
+  @Test
+  void reusingAKeyForADifferentRequestIsRejected() {
+    CreateOrderRequest request = createItemAndRequest("IDEM-3");
+    createOrder(idempotencyService, "k-4", request);
+
+    CreateOrderRequest other = new CreateOrderRequest("c1", "IDEM-3", 2, null);
+    ApiException e = assertThrows(ApiException.class, () -> createOrder(idempotencyService, "k-4", other));
+    assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getStatus());
+
+    // Keys are per caller
+    idempotencyService.execute("orders", "bob", "k-4", other, CreateOrderResponse.class, () -> {
+      runs.incrementAndGet();
+      return orderService.createOrder(other);
+    });
+    assertEquals(2, runs.get());
+  }
+
+  @Test
+  void anotherInstanceAnswersFromTheDatabase() {
+    CreateOrderRequest request = createItemAndRequest("IDEM-4");
+    CreateOrderResponse first = createOrder(idempotencyService, "k-5", request);
+
+    IdempotencyService restarted = beanFactory.createBean(IdempotencyService.class);
+    assertEquals(first, createOrder(restarted, "k-5", request));
+    assertEquals(1, runs.get());
+    assertEquals(1, reserved("IDEM-4"));
+  }
+
+  @Test
+  void instancesRacingOnOneKeyCommitOnlyOnce() throws Exception {
+    CreateOrderRequest request = createItemAndRequest("IDEM-5");
+    IdempotencyService other = beanFactory.createBean(IdempotencyService.class);
+
+    CompletableFuture<CreateOrderResponse> winner = CompletableFuture.supplyAsync(
+        () -> createOrder(idempotencyService, "k-6", request));
+    // The loser creates its order only after the winner committed, then fails on the record's key
+    CreateOrderResponse loser = other.execute("orders", "alice", "k-6", request, CreateOrderResponse.class, () -> {
+      winner.join();
+      runs.incrementAndGet();
+      return orderService.createOrder(request);
+    });
+
+    assertEquals(winner.get(), loser);
+    assertEquals(2, runs.get());
+    assertEquals(1, reserved("IDEM-5"), "the losing order must be rolled back");
+  }
+
+  @Test
+  void failedRequestsAreNotStored() {
+    CreateOrderRequest request = new CreateOrderRequest("c1", "IDEM-6", 1, null);
+    assertThrows(ApiException.class, () -> createOrder(idempotencyService, "k-7", request));
+
+    inventoryService.createItem(new CreateInventoryItemRequest("IDEM-6", "IDEM-6", 5));
+    assertNotNull(createOrder(idempotencyService, "k-7", request).orderId());
+    assertEquals(2, runs.get());
+  }
+
+  private CreateOrderResponse createOrder(IdempotencyService service, String key, CreateOrderRequest request) {
+    return service.execute("orders", "alice", key, request, CreateOrderResponse.class, () -> {
+      runs.incrementAndGet();
+      return orderService.createOrder(request);
+    });
+  }
+
+  private CreateOrderRequest createItemAndRequest(String sku) {
+    inventoryService.createItem(new CreateInventoryItemRequest(sku, sku, 100));
+    return new CreateOrderRequest("c1", sku, 1, null);
+  }
+
+  private int reserved(String sku) {
+    return inventoryItemRepository.findBySku(sku).orElseThrow().getQuantityReserved();
+  }
+
+  private double count(String outcome) {
+    return meterRegistry.counter("idempotency.requests", "scope", "orders", "outcome", outcome).count();
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
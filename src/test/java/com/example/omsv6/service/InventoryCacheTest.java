@@ -0,0 +1,105 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.AdjustStockRequest;
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class InventoryCacheTest {
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private InventoryReservationService inventoryReservationService;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private OrderBatchService orderBatchService;
+
+  @Autowired
+  private InventoryCache inventoryCache;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void repeatedReadsAreServedFromTheCache() {
+    ApiException missing = assertThrows(ApiException.class, () -> inventoryService.getItemBySku("CACHE-HOT"));
+    assertEquals(HttpStatus.NOT_FOUND, missing.getStatus());
+    inventoryService.createItem(new CreateInventoryItemRequest("CACHE-HOT", "hot", 10));
+
+    double hitsBefore = hits();
+    for (int i = 0; i < 5; i++) {
+      assertEquals(10, available("CACHE-HOT"));
+    }
+    assertTrue(hits() - hitsBefore >= 4);
+  }
+
+  @Test
+  void stockWritesAreVisibleOnTheNextRead() {
+    inventoryService.createItem(new CreateInventoryItemRequest("CACHE-W", "w", 10));
+    assertEquals(10, available("CACHE-W"));
+
+    Long orderId = orderService.createOrder(
+        new CreateOrderRequest("cache", "CACHE-W", 3, new BigDecimal("3.00"))).orderId();
+    assertEquals(7, available("CACHE-W"));
+
+    inventoryService.adjustStock("CACHE-W", new AdjustStockRequest(5));
+    assertEquals(12, available("CACHE-W"));
+
+    orderService.cancelOrder(orderId);
+    assertEquals(15, available("CACHE-W"));
+
+    orderBatchService.createOrders(List.of(
+        new CreateOrderRequest("cache", "CACHE-W", 5, new BigDecimal("5.00"))).iterator());
+    assertEquals(10, available("CACHE-W"));
+    List<InventoryCache.Snapshot> items = inventoryService.listItems(0).items();
+    assertEquals(10, items.stream().filter(i -> "CACHE-W".equals(i.sku())).findFirst().orElseThrow()
+        .quantityAvailable());
+  }
+
+  @Test
+  void readDuringAnUncommittedWriteIsEvictedAtCommit() {
+    inventoryService.createItem(new CreateInventoryItemRequest("CACHE-TX", "tx", 10));
+    assertEquals(10, available("CACHE-TX"));
+
+    transactionTemplate.executeWithoutResult(status -> {
+      assertTrue(inventoryReservationService.reserve("CACHE-TX", 4).isReserved());
+      // Another request re-caches the committed (old) row while this transaction is still open
+      int seen = CompletableFuture.supplyAsync(() -> inventoryCache.get("CACHE-TX").orElseThrow().quantityAvailable()).join();
+      assertEquals(10, seen);
+    });
+
+    assertEquals(6, available("CACHE-TX"));
+  }
+
+  private int available(String sku) {
+    return inventoryCache.get(sku).orElseThrow().quantityAvailable();
+  }
+
+  private double hits() {
+    return meterRegistry.get("cache.gets").tags("cache", "inventory.items", "result", "hit").functionCounter().count();
+  }
+}
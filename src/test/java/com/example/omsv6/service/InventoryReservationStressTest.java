@@ -0,0 +1,123 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.repository.InventoryItemRepository;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hammers a single hot SKU from many threads and checks that the guarded UPDATE never
+ * oversells. Also logs reservations/second so runs can be compared; throughput is reported, not
+ * asserted, as it depends on the machine.
+ */
+@SpringBootTest
+class InventoryReservationStressTest {
+
+  private static final Logger log = LoggerFactory.getLogger(InventoryReservationStressTest.class);
+
+  private static final int THREADS = 200;
+  private static final int ATTEMPTS_PER_THREAD = 5;
+  private static final int STOCK = 400;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryReservationService inventoryReservationService;
+
+  @Autowired
+  private InventoryItemRepository inventoryItemRepository;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void concurrentOrdersOnHotSkuNeverOversell() throws Exception {
+    createItem("HOT-1", STOCK);
+    AtomicInteger created = new AtomicInteger();
+
+    long elapsedNanos = runConcurrently(() -> {
+      try {
+        orderService.createOrder(new CreateOrderRequest("c", "HOT-1", 1, null));
+        created.incrementAndGet();
+      } catch (ApiException e) {
+        assertEquals("Insufficient stock", e.getMessage());
+      }
+    });
+
+    InventoryItem item = inventoryItemRepository.findBySku("HOT-1").orElseThrow();
+    assertEquals(STOCK, created.get());
+    assertEquals(0, item.getQuantityAvailable());
+    assertEquals(STOCK, item.getQuantityReserved());
+    report("createOrder", THREADS * ATTEMPTS_PER_THREAD, elapsedNanos);
+  }
+
+  @Test
+  void concurrentReserveAndReleaseKeepTotalsConsistent() throws Exception {
+    createItem("HOT-2", STOCK);
+
+    long elapsedNanos = runConcurrently(() -> {
+      if (inventoryReservationService.reserve("HOT-2", 2).isReserved()) {
+        inventoryReservationService.release("HOT-2", 1);
+      }
+    });
+
+    InventoryItem item = inventoryItemRepository.findBySku("HOT-2").orElseThrow();
+    assertTrue(item.getQuantityAvailable() >= 0);
+    assertEquals(STOCK, item.getQuantityAvailable() + item.getQuantityReserved());
+    report("reserve+release", THREADS * ATTEMPTS_PER_THREAD, elapsedNanos);
+  }
+
+  private long runConcurrently(Runnable task) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      futures.add(pool.submit(() -> {
+        start.await();
+        for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+          task.run();
+        }
+        return null;
+      }));
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Future<?> f : futures) {
+      f.get(2, TimeUnit.MINUTES);
+    }
+    long elapsed = System.nanoTime() - begin;
+    pool.shutdown();
+    return elapsed;
+  }
+
+  private void report(String name, int operations, long elapsedNanos) {
+    double perSecond = operations / (elapsedNanos / 1_000_000_000.0);
+    log.info("{}: {} ops on {} threads in {} ms ({} ops/s)",
+        name, operations, THREADS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), Math.round(perSecond));
+  }
+
+  private void createItem(String sku, int qty) {
+    InventoryItem item = new InventoryItem();
+    item.setSku(sku);
+    item.setName(sku);
+    item.setQuantityAvailable(qty);
+    item.setQuantityReserved(0);
+    item.setCreatedAt(LocalDateTime.now());
+    item.setUpdatedAt(LocalDateTime.now());
+    inventoryItemRepository.save(item);
+  }
+}
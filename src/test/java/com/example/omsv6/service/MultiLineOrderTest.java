@@ -0,0 +1,172 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreateOrderResponse;
+import com.example.omsv6.dto.OrderView;
+import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.repository.InventoryItemRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+class MultiLineOrderTest {
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private InventoryItemRepository inventoryItemRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void cartBecomesOneOrderWithOneShippingQuote() throws Exception {
+    createItems(10, "CART-A", "CART-B", "CART-C");
+
+    CreateOrderResponse created = orderService.createOrder(cart("cart-1",
+        line("CART-C", 3, "30.00"), line("CART-A", 1, "10.00"), line("CART-B", 2, "20.00")));
+
+    assertEquals(List.of(new CreateOrderResponse.Reservation("CART-C", 3),
+        new CreateOrderResponse.Reservation("CART-A", 1), new CreateOrderResponse.Reservation("CART-B", 2)),
+        created.inventory());
+    OrderView order = orderService.getOrderById(created.orderId()).order();
+    assertEquals(List.of("CART-C", "CART-A", "CART-B"), order.lines().stream().map(OrderView.Line::sku).toList());
+    assertEquals(0, new BigDecimal("60.00").compareTo(order.amount()));
+    assertEquals(7, inventoryItemRepository.findBySku("CART-C").orElseThrow().getQuantityAvailable());
+
+    verify(externalApiClient, timeout(5000).times(1))
+        .fetchShippingQuote(eq("cart-1"), eq(Map.of("CART-C", 3, "CART-A", 1, "CART-B", 2)));
+
+    // Rolled up per line; the order itself counts once
+    assertEquals(6L, jdbcTemplate.queryForObject(
+        "select sum(quantity) from sales_rollups where sku in ('CART-A', 'CART-B', 'CART-C')", Long.class));
+    assertEquals(1L, jdbcTemplate.queryForObject(
+        "select sum(order_count) from sales_rollups where sku in ('CART-A', 'CART-B', 'CART-C')", Long.class));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    orderService.exportOrders(null, "cart-1", out);
+    JsonNode exported = objectMapper.readTree(out.toString(StandardCharsets.UTF_8).trim());
+    assertEquals(3, exported.get("lines").size());
+    assertEquals("CART-A", exported.get("lines").get(1).get("sku").asText());
+  }
+
+  @Test
+  void lineThatCannotBeReservedRollsBackTheWholeCart() {
+    createItems(10, "CART-D");
+    createItems(1, "CART-E");
+
+    ApiException e = assertThrows(ApiException.class, () -> orderService.createOrder(cart("cart-2",
+        line("CART-D", 5, "5.00"), line("CART-E", 2, "2.00"))));
+
+    assertEquals(HttpStatus.CONFLICT, e.getStatus());
+    assertEquals("CART-E", e.getDetails().get("sku"));
+    assertEquals(10, inventoryItemRepository.findBySku("CART-D").orElseThrow().getQuantityAvailable());
+  }
+
+  @Test
+  void invalidCartsAreRejected() {
+    createItems(10, "CART-F");
+
+    assertBadRequest(cart("cart-3", line("CART-F", 1, "1.00"), line("CART-F", 2, "2.00")));
+    assertBadRequest(cart("cart-3"));
+    assertBadRequest(cart("cart-3", line("CART-F", 0, "1.00")));
+    assertBadRequest(new CreateOrderRequest("cart-3", "CART-F", 1, null, List.of(line("CART-F", 1, "1.00"))));
+    assertEquals(10, inventoryItemRepository.findBySku("CART-F").orElseThrow().getQuantityAvailable());
+  }
+
+  @Test
+  void cancellingACartReleasesEveryLine() {
+    createItems(10, "CART-G", "CART-H");
+    Long id = orderService.createOrder(cart("cart-4", line("CART-H", 4, "4.00"), line("CART-G", 6, "6.00"))).orderId();
+
+    orderService.cancelOrder(id);
+
+    for (String sku : List.of("CART-G", "CART-H")) {
+      InventoryItem item = inventoryItemRepository.findBySku(sku).orElseThrow();
+      assertEquals(10, item.getQuantityAvailable());
+      assertEquals(0, item.getQuantityReserved());
+    }
+  }
+
+  @Test
+  void cartsListingSharedSkusInOppositeOrderDoNotDeadlock() throws Exception {
+    int threads = 8;
+    int cartsPerThread = 20;
+    createItems(1000, "CART-X", "CART-Y");
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> results = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        boolean xFirst = t % 2 == 0;
+        results.add(pool.submit(() -> {
+          start.await();
+          for (int i = 0; i < cartsPerThread; i++) {
+            orderService.createOrder(xFirst
+                ? cart("cart-5", line("CART-X", 1, "1.00"), line("CART-Y", 1, "1.00"))
+                : cart("cart-5", line("CART-Y", 1, "1.00"), line("CART-X", 1, "1.00")));
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> r : results) {
+        r.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertEquals(threads * cartsPerThread, inventoryItemRepository.findBySku("CART-X").orElseThrow().getQuantityReserved());
+    assertEquals(threads * cartsPerThread, inventoryItemRepository.findBySku("CART-Y").orElseThrow().getQuantityReserved());
+  }
+
+  private void assertBadRequest(CreateOrderRequest request) {
+    ApiException e = assertThrows(ApiException.class, () -> orderService.createOrder(request));
+    assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+  }
+
+  private void createItems(int quantity, String... skus) {
+    for (String sku : skus) {
+      inventoryService.createItem(new CreateInventoryItemRequest(sku, sku, quantity));
+    }
+  }
+
+  private static CreateOrderRequest cart(String customerId, CreateOrderRequest.Line... lines) {
+    return new CreateOrderRequest(customerId, null, null, null, List.of(lines));
+  }
+
+  private static CreateOrderRequest.Line line(String sku, int quantity, String amount) {
+    return new CreateOrderRequest.Line(sku, quantity, new BigDecimal(amount));
+  }
+}
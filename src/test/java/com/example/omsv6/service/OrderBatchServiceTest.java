@@ -0,0 +1,75 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.BatchOrderResponse;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.repository.InventoryItemRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class OrderBatchServiceTest {
+
+  @Autowired
+  private OrderBatchService orderBatchService;
+
+  @Autowired
+  private InventoryItemRepository inventoryItemRepository;
+
+  @Autowired
+  private OrderService orderService;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void reservesPerSkuAndReportsEachLine() {
+    createItem("BATCH-A", 5);
+    createItem("BATCH-B", 1);
+
+    List<CreateOrderRequest> lines = List.of(
+        new CreateOrderRequest("c1", "BATCH-A", 3, new BigDecimal("30.00")),
+        new CreateOrderRequest("c2", "BATCH-B", 1, null),
+        new CreateOrderRequest("c3", "BATCH-A", 3, null),
+        new CreateOrderRequest("c4", "BATCH-A", 2, null),
+        new CreateOrderRequest("c5", "MISSING", 1, null),
+        new CreateOrderRequest(null, "BATCH-A", null, null));
+
+    BatchOrderResponse response = orderBatchService.createOrders(lines.iterator());
+
+    assertEquals(6, response.lineCount());
+    assertEquals(3, response.accepted());
+    List<BatchOrderResponse.LineResult> results = response.results();
+    assertEquals("CREATED", results.get(0).status());
+    assertEquals("CREATED", results.get(1).status());
+    assertEquals("Insufficient stock", results.get(2).error());
+    assertEquals("CREATED", results.get(3).status());
+    assertEquals("Inventory item not found", results.get(4).error());
+    assertEquals("customerId and sku are required", results.get(5).error());
+
+    InventoryItem a = inventoryItemRepository.findBySku("BATCH-A").orElseThrow();
+    assertEquals(0, a.getQuantityAvailable());
+    assertEquals(5, a.getQuantityReserved());
+    Long orderId = results.get(0).orderId();
+    assertEquals("BATCH-A", orderService.getOrderById(orderId).order().lines().get(0).sku());
+  }
+
+  private void createItem(String sku, int qty) {
+    InventoryItem item = new InventoryItem();
+    item.setSku(sku);
+    item.setName(sku);
+    item.setQuantityAvailable(qty);
+    item.setQuantityReserved(0);
+    item.setCreatedAt(LocalDateTime.now());
+    item.setUpdatedAt(LocalDateTime.now());
+    inventoryItemRepository.save(item);
+  }
+}
@@ -0,0 +1,98 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.OrderPage;
+import com.example.omsv6.dto.OrderView;
+import com.example.omsv6.entity.OrderEntity;
+import com.example.omsv6.entity.OrderLine;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.repository.OrderRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class OrderListingTest {
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void keysetPagesWalkEveryOrderExactlyOnce() {
+    // Same createdAt for several rows exercises the id tie-breaker
+    LocalDateTime base = LocalDateTime.of(2024, 1, 1, 12, 0);
+    for (int i = 0; i < 23; i++) {
+      save("page-cust", "CREATED", base.plusMinutes(i / 3));
+    }
+
+    Set<Long> seen = new HashSet<>();
+    List<LocalDateTime> order = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      OrderPage page = orderService.listOrders(null, "page-cust", cursor, 5);
+      for (OrderView o : page.orders()) {
+        assertTrue(seen.add(o.id()), "order listed twice");
+        order.add(o.createdAt());
+      }
+      cursor = page.nextCursor();
+      pages++;
+    } while (cursor != null);
+
+    assertEquals(23, seen.size());
+    assertEquals(5, pages);
+    for (int i = 1; i < order.size(); i++) {
+      assertFalse(order.get(i).isAfter(order.get(i - 1)));
+    }
+  }
+
+  @Test
+  void pageSizeIsCappedAndBadCursorRejected() {
+    assertEquals(200, orderService.listOrders(null, null, null, 100_000).limit());
+    ApiException e = assertThrows(ApiException.class, () -> orderService.listOrders(null, null, "not-a-cursor", 10));
+    assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    assertEquals("invalid cursor", e.getError());
+  }
+
+  @Test
+  void exportWritesOneJsonLinePerOrder() throws Exception {
+    for (int i = 0; i < 7; i++) {
+      save("export-cust", i % 2 == 0 ? "CREATED" : "PAID", LocalDateTime.now().minusMinutes(i));
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    orderService.exportOrders(OrderStatus.PAID, "export-cust", out);
+
+    String[] lines = out.toString(StandardCharsets.UTF_8).trim().split("\n");
+    assertEquals(3, lines.length);
+    for (String line : lines) {
+      assertTrue(line.startsWith("{") && line.contains("\"status\":\"PAID\""), line);
+    }
+  }
+
+  private void save(String customerId, String status, LocalDateTime createdAt) {
+    OrderEntity o = new OrderEntity();
+    o.setCustomerId(customerId);
+    o.getLines().add(new OrderLine("SKU-L", 1, BigDecimal.ONE));
+    o.setAmount(BigDecimal.ONE);
+    o.setStatus(OrderStatus.valueOf(status));
+    o.setCreatedAt(createdAt);
+    o.setUpdatedAt(createdAt);
+    orderRepository.save(o);
+  }
+}
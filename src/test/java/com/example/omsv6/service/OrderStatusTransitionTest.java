@@ -0,0 +1,135 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.UpdateOrderStatusRequest;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.repository.InventoryItemRepository;
+import com.example.omsv6.repository.OrderRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class OrderStatusTransitionTest {
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @Autowired
+  private InventoryItemRepository inventoryItemRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void transitionTablesMatchTheLifecycle() {
+    assertTrue(OrderStatus.CREATED.canTransitionTo(OrderStatus.PAID));
+    assertTrue(OrderStatus.PAID.canTransitionTo(OrderStatus.CANCELLED));
+    assertFalse(OrderStatus.CREATED.canTransitionTo(OrderStatus.SHIPPED));
+    assertFalse(OrderStatus.DELIVERED.canTransitionTo(OrderStatus.CANCELLED));
+    assertFalse(OrderStatus.CANCELLED.canTransitionTo(OrderStatus.CREATED));
+    for (OrderStatus s : OrderStatus.values()) {
+      assertEquals(s, OrderStatus.fromCode(s.code()));
+    }
+
+    assertTrue(PaymentStatus.CAPTURE_PENDING.canTransitionTo(PaymentStatus.AUTHORIZED));
+    assertFalse(PaymentStatus.CAPTURED.canTransitionTo(PaymentStatus.CANCELLED));
+    assertEquals(Set.of(PaymentStatus.AUTHORIZATION_PENDING, PaymentStatus.AUTHORIZED),
+        PaymentStatus.sourcesOf(PaymentStatus.CANCELLED));
+    for (PaymentStatus s : PaymentStatus.values()) {
+      assertEquals(s, PaymentStatus.fromCode(s.code()));
+    }
+  }
+
+  @Test
+  void orderMovesAlongTheLifecycleOnly() {
+    Long id = createOrder("STATE-1");
+
+    ApiException illegal = assertThrows(ApiException.class,
+        () -> orderService.updateOrderStatus(id, new UpdateOrderStatusRequest("DELIVERED")));
+    assertEquals(HttpStatus.CONFLICT, illegal.getStatus());
+
+    ApiException unknown = assertThrows(ApiException.class,
+        () -> orderService.updateOrderStatus(id, new UpdateOrderStatusRequest("LOST")));
+    assertEquals(HttpStatus.BAD_REQUEST, unknown.getStatus());
+
+    assertEquals("PAID", orderService.updateOrderStatus(id, new UpdateOrderStatusRequest("paid")).newStatus());
+    assertEquals("Order status unchanged",
+        orderService.updateOrderStatus(id, new UpdateOrderStatusRequest("PAID")).message());
+    orderService.updateOrderStatus(id, new UpdateOrderStatusRequest("SHIPPED"));
+    orderService.updateOrderStatus(id, new UpdateOrderStatusRequest("DELIVERED"));
+    assertEquals(OrderStatus.DELIVERED, orderRepository.findById(id).orElseThrow().getStatus());
+
+    ApiException late = assertThrows(ApiException.class, () -> orderService.cancelOrder(id));
+    assertEquals(HttpStatus.CONFLICT, late.getStatus());
+  }
+
+  @Test
+  void concurrentCancelsReleaseTheReservationOnce() throws Exception {
+    Long id = createOrder("STATE-2");
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    int cancelled = 0;
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<?>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(pool.submit(() -> {
+          start.await();
+          return orderService.cancelOrder(id);
+        }));
+      }
+      start.countDown();
+      for (Future<?> r : results) {
+        try {
+          r.get();
+          cancelled++;
+        } catch (ExecutionException e) {
+          assertEquals(HttpStatus.CONFLICT, ((ApiException) e.getCause()).getStatus());
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertEquals(1, cancelled);
+    assertEquals(0, inventoryItemRepository.findBySku("STATE-2").orElseThrow().getQuantityReserved());
+  }
+
+  @Test
+  void statusesAreStoredAsSmallintCodes() {
+    Long id = createOrder("STATE-3");
+
+    assertEquals("SMALLINT", jdbcTemplate.queryForObject("select data_type from information_schema.columns "
+        + "where table_name = 'ORDERS' and column_name = 'STATUS'", String.class));
+    assertEquals(OrderStatus.CREATED.code(),
+        jdbcTemplate.queryForObject("select status from orders where id = ?", Short.class, id));
+  }
+
+  private Long createOrder(String sku) {
+    inventoryService.createItem(new CreateInventoryItemRequest(sku, sku, 10));
+    return orderService.createOrder(new CreateOrderRequest("c1", sku, 2, new BigDecimal("20.00"))).orderId();
+  }
+}
@@ -0,0 +1,153 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CapturePaymentRequest;
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreatePaymentRequest;
+import com.example.omsv6.dto.PaymentLedgerResponse;
+import com.example.omsv6.dto.PaymentView;
+import com.example.omsv6.dto.RefundPaymentRequest;
+import com.example.omsv6.entity.PaymentLedgerEntry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Own database: dispatchers of other cached test contexts must not drain this outbox
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:payment-ledger-test",
+    "app.payments.outbox.poll-interval=50ms"
+})
+class PaymentLedgerTest {
+
+  @Autowired
+  private PaymentService paymentService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private OrderService orderService;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void partialCaptureAndRefundsAreRecordedInTheLedger() throws Exception {
+    BigDecimal rejected = new BigDecimal("1.00");
+    doThrow(new ExternalApiException("refund", ExternalApiException.Reason.HTTP_STATUS, 422,
+        "provider returned HTTP 422", null))
+        .when(externalApiClient).refundPayment(anyString(), eq(rejected), anyString());
+    Long paymentId = authorizedPayment("LEDGER-1");
+
+    ApiException tooMuch = assertThrows(ApiException.class,
+        () -> paymentService.capturePayment(paymentId, new CapturePaymentRequest(new BigDecimal("25.00"))));
+    assertEquals(HttpStatus.BAD_REQUEST, tooMuch.getStatus());
+    paymentService.capturePayment(paymentId, new CapturePaymentRequest(new BigDecimal("15.00")));
+    await(paymentId, p -> "CAPTURED".equals(p.status()));
+
+    paymentService.refundPayment(paymentId, new RefundPaymentRequest(new BigDecimal("5.00")));
+    PaymentView partly = await(paymentId, p -> p.refundedAmount().signum() > 0);
+    assertEquals("CAPTURED", partly.status());
+
+    // Rejected by the provider: the hold is released and nothing is refunded
+    paymentService.refundPayment(paymentId, new RefundPaymentRequest(rejected));
+    PaymentView released = await(paymentId, p -> p.failureReason() != null);
+    assertEquals("CAPTURED", released.status());
+    assertEquals(0, new BigDecimal("5.00").compareTo(released.refundedAmount()));
+
+    ApiException overRefund = assertThrows(ApiException.class,
+        () -> paymentService.refundPayment(paymentId, new RefundPaymentRequest(new BigDecimal("10.01"))));
+    assertEquals(HttpStatus.CONFLICT, overRefund.getStatus());
+
+    // No amount: whatever is left
+    assertEquals(0, new BigDecimal("10.00").compareTo(
+        paymentService.refundPayment(paymentId, new RefundPaymentRequest(null)).amount()));
+    PaymentView refunded = await(paymentId, p -> "REFUNDED".equals(p.status()));
+    assertEquals(0, new BigDecimal("15.00").compareTo(refunded.refundedAmount()));
+    assertEquals(HttpStatus.CONFLICT, assertThrows(ApiException.class,
+        () -> paymentService.refundPayment(paymentId, new RefundPaymentRequest(null))).getStatus());
+
+    PaymentLedgerResponse ledger = paymentService.getLedger(paymentId);
+    assertEquals(List.of(PaymentLedgerEntry.AUTHORIZE, PaymentLedgerEntry.CAPTURE, PaymentLedgerEntry.REFUND,
+        PaymentLedgerEntry.REFUND), ledger.entries().stream().map(PaymentLedgerResponse.Entry::kind).toList());
+    assertEquals(List.of("20.00", "15.00", "5.00", "10.00"),
+        ledger.entries().stream().map(e -> e.amount().toPlainString()).toList());
+  }
+
+  @Test
+  void concurrentRefundsNeverExceedTheCapturedAmount() throws Exception {
+    Long paymentId = authorizedPayment("LEDGER-2");
+    paymentService.capturePayment(paymentId, null);
+    await(paymentId, p -> "CAPTURED".equals(p.status()));
+
+    // 16 refunds of 1.50 against 20.00 captured: 13 fit
+    int threads = 16;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      results.add(pool.submit(() -> {
+        start.await();
+        try {
+          paymentService.refundPayment(paymentId, new RefundPaymentRequest(new BigDecimal("1.50")));
+          return true;
+        } catch (ApiException e) {
+          assertEquals(HttpStatus.CONFLICT, e.getStatus());
+          return false;
+        }
+      }));
+    }
+    start.countDown();
+    int accepted = 0;
+    for (Future<Boolean> r : results) {
+      if (r.get()) accepted++;
+    }
+    pool.shutdown();
+    assertEquals(13, accepted);
+
+    PaymentView settled = await(paymentId, p -> p.refundPendingAmount().signum() == 0
+        && p.refundedAmount().compareTo(new BigDecimal("19.50")) == 0);
+    assertEquals("CAPTURED", settled.status());
+    BigDecimal ledgerRefunds = paymentService.getLedger(paymentId).entries().stream()
+        .filter(e -> PaymentLedgerEntry.REFUND.equals(e.kind()))
+        .map(PaymentLedgerResponse.Entry::amount)
+        .reduce(BigDecimal.ZERO, BigDecimal::add);
+    assertEquals(0, new BigDecimal("19.50").compareTo(ledgerRefunds));
+  }
+
+  private Long authorizedPayment(String sku) throws InterruptedException {
+    when(externalApiClient.authorizePayment(anyLong(), any(), anyString(), anyString()))
+        .thenAnswer(inv -> "AUTH-" + inv.getArgument(3));
+    inventoryService.createItem(new CreateInventoryItemRequest(sku, sku, 10));
+    Long orderId = orderService.createOrder(new CreateOrderRequest("c1", sku, 1, new BigDecimal("20.00"))).orderId();
+    Long paymentId = paymentService.createPayment(new CreatePaymentRequest(orderId, null, "USD")).paymentId();
+    await(paymentId, p -> "AUTHORIZED".equals(p.status()));
+    return paymentId;
+  }
+
+  private PaymentView await(Long paymentId, Predicate<PaymentView> condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    PaymentView payment = paymentService.getPaymentById(paymentId).payment();
+    while (!condition.test(payment) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      payment = paymentService.getPaymentById(paymentId).payment();
+    }
+    assertTrue(condition.test(payment), "payment " + paymentId + " stuck in " + payment.status());
+    return payment;
+  }
+}
@@ -0,0 +1,179 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.Application;
+import com.example.omsv6.support.StubExternalApi;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the application in a child JVM on a file-based H2 database, kills it with SIGKILL while
+ * authorization calls are in flight, then starts it again on the same database.
+ */
+class PaymentOutboxCrashTest {
+
+  private static final int PAYMENTS = 12;
+  private static final String AUTH = "Basic "
+      + Base64.getEncoder().encodeToString("user:user".getBytes(StandardCharsets.UTF_8));
+
+  private final HttpClient http = HttpClient.newHttpClient();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void everyPaymentCompletesOnceAfterAKillMidDispatch() throws Exception {
+    try (StubExternalApi stub = new StubExternalApi()) {
+      stub.setDelayMs(2000);
+      int port = freePort();
+
+      List<Long> paymentIds;
+      Process first = launch(stub, port, "first");
+      try {
+        awaitUp(first, port, "first");
+        paymentIds = createPayments(port);
+        awaitPaymentCalls(stub);
+        first.destroyForcibly().waitFor();
+      } finally {
+        first.destroyForcibly();
+      }
+
+      stub.setDelayMs(0);
+      Process second = launch(stub, port, "second");
+      try {
+        awaitUp(second, port, "second");
+        Set<String> references = new HashSet<>();
+        for (Long id : paymentIds) {
+          references.add(awaitAuthorized(port, id));
+        }
+
+        Map<String, Integer> requestsByKey = stub.requestsByIdempotencyKey();
+        assertEquals(PAYMENTS, requestsByKey.size(), "one idempotency key per payment");
+        assertEquals(requestsByKey.keySet().stream().map(k -> "AUTH-" + k).collect(Collectors.toSet()), references);
+        assertTrue(requestsByKey.values().stream().anyMatch(n -> n > 1),
+            "calls cut off by the kill are repeated with their original key: " + requestsByKey.values());
+      } finally {
+        second.destroy();
+        second.waitFor();
+      }
+    }
+  }
+
+  private Process launch(StubExternalApi stub, int port, String name) throws IOException {
+    List<String> command = List.of(
+        Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+        "-Xmx256m",
+        "-cp", System.getProperty("java.class.path"),
+        Application.class.getName(),
+        "--server.port=" + port,
+        // WRITE_DELAY=0: a commit is on disk before it returns, as with a real database
+        "--spring.datasource.url=jdbc:h2:file:" + dir.resolve("oms") + ";WRITE_DELAY=0",
+        "--spring.jpa.show-sql=false",
+        "--spring.h2.console.enabled=false",
+        "--logging.level.root=WARN",
+        "--logging.level.com.example.omsv6=INFO",
+        "--external.api.base-url=" + stub.baseUrl(),
+        "--app.payments.outbox.poll-interval=100ms",
+        "--app.payments.outbox.batch-size=8",
+        "--app.payments.outbox.parallelism=4",
+        "--app.payments.outbox.lease=5s");
+    return new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(dir.resolve(name + ".log").toFile())
+        .start();
+  }
+
+  private void awaitUp(Process process, int port, String name) throws Exception {
+    long deadline = System.currentTimeMillis() + 180_000;
+    while (System.currentTimeMillis() < deadline) {
+      if (!process.isAlive()) {
+        fail(name + " instance exited:\n" + Files.readString(dir.resolve(name + ".log")));
+      }
+      try {
+        if (send(HttpRequest.newBuilder(uri(port, "/actuator/health")).GET()).statusCode() == 200) return;
+      } catch (ConnectException e) {
+        // not listening yet
+      }
+      Thread.sleep(250);
+    }
+    fail(name + " instance did not start");
+  }
+
+  private List<Long> createPayments(int port) throws Exception {
+    String sku = "CRASH-" + UUID.randomUUID();
+    post(port, "/api/inventory/items", "{\"sku\":\"" + sku + "\",\"name\":\"crash\",\"quantityAvailable\":100}", 200);
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < PAYMENTS; i++) {
+      long orderId = post(port, "/api/orders",
+          "{\"customerId\":\"c" + i + "\",\"sku\":\"" + sku + "\",\"quantity\":1,\"amount\":10}", 200)
+          .get("orderId").asLong();
+      ids.add(post(port, "/api/payments", "{\"orderId\":" + orderId + "}", 202).get("paymentId").asLong());
+    }
+    return ids;
+  }
+
+  // Payment calls carry an idempotency key; shipping quotes, which reach the stub first, do not
+  private void awaitPaymentCalls(StubExternalApi stub) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (stub.requestsByIdempotencyKey().isEmpty()) {
+      assertTrue(System.currentTimeMillis() < deadline, "dispatcher never called the provider");
+      Thread.sleep(10);
+    }
+  }
+
+  private String awaitAuthorized(int port, Long paymentId) throws Exception {
+    long deadline = System.currentTimeMillis() + 60_000;
+    JsonNode payment;
+    do {
+      HttpResponse<String> resp = send(HttpRequest.newBuilder(uri(port, "/api/payments/" + paymentId))
+          .header("Authorization", AUTH).GET());
+      payment = objectMapper.readTree(resp.body()).get("payment");
+      if ("AUTHORIZED".equals(payment.get("status").asText())) {
+        return payment.get("externalReference").asText();
+      }
+      Thread.sleep(100);
+    } while (System.currentTimeMillis() < deadline);
+    return fail("payment " + paymentId + " stuck in " + payment.get("status").asText());
+  }
+
+  private JsonNode post(int port, String path, String body, int expectedStatus) throws Exception {
+    HttpResponse<String> resp = send(HttpRequest.newBuilder(uri(port, path))
+        .header("Authorization", AUTH)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body)));
+    assertEquals(expectedStatus, resp.statusCode(), resp.body());
+    return objectMapper.readTree(resp.body());
+  }
+
+  private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+    return http.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static URI uri(int port, String path) {
+    return URI.create("http://127.0.0.1:" + port + path);
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket s = new ServerSocket(0)) {
+      return s.getLocalPort();
+    }
+  }
+}
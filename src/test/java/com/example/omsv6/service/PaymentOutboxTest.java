@@ -0,0 +1,274 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreatePaymentRequest;
+import com.example.omsv6.dto.PaymentView;
+import com.example.omsv6.dto.RefundPaymentRequest;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.PaymentEntity;
+import com.example.omsv6.entity.PaymentOutboxEntry;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.repository.OrderRepository;
+import com.example.omsv6.repository.PaymentOutboxRepository;
+import com.example.omsv6.repository.PaymentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Own database: dispatchers of other cached test contexts must not drain this outbox
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:payment-outbox-test",
+    "app.payments.outbox.poll-interval=50ms",
+    "app.payments.outbox.initial-backoff=50ms"
+})
+class PaymentOutboxTest {
+
+  @Autowired
+  private PaymentService paymentService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @Autowired
+  private PaymentRepository paymentRepository;
+
+  @Autowired
+  private PaymentOutboxRepository outboxRepository;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void paymentMovesThroughTheOutboxWithOneKeyPerOperation() throws Exception {
+    when(externalApiClient.authorizePayment(anyLong(), any(), anyString(), anyString()))
+        .thenAnswer(inv -> "AUTH-" + inv.getArgument(3));
+    double succeeded = meterRegistry.counter("payments.outbox.dispatched",
+        "operation", "capture", "outcome", "success").count();
+    Long orderId = createOrder("OUTBOX-1");
+
+    Long paymentId = paymentService.createPayment(new CreatePaymentRequest(orderId, null, "USD")).paymentId();
+    PaymentView authorized = await(paymentId, p -> "AUTHORIZED".equals(p.status()));
+    String authorizeKey = keyOf(paymentId, PaymentOutboxEntry.AUTHORIZE);
+    assertEquals("AUTH-" + authorizeKey, authorized.externalReference());
+
+    assertEquals(PaymentStatus.CAPTURE_PENDING.name(), paymentService.capturePayment(paymentId, null).status());
+    await(paymentId, p -> "CAPTURED".equals(p.status()));
+    assertEquals(OrderStatus.PAID, orderRepository.findById(orderId).orElseThrow().getStatus());
+
+    // A partial refund leaves the payment captured, with the rest still refundable
+    paymentService.refundPayment(paymentId, new RefundPaymentRequest(new BigDecimal("4.00")));
+    PaymentView refunded = await(paymentId, p -> p.refundedAmount().signum() > 0);
+    assertEquals("CAPTURED", refunded.status());
+    assertEquals(0, new BigDecimal("4.00").compareTo(refunded.refundedAmount()));
+
+    verify(externalApiClient).authorizePayment(eq(orderId), eq(new BigDecimal("20.00")), eq("USD"), eq(authorizeKey));
+    verify(externalApiClient).capturePayment(authorized.externalReference(), new BigDecimal("20.00"),
+        keyOf(paymentId, PaymentOutboxEntry.CAPTURE));
+    verify(externalApiClient).refundPayment(authorized.externalReference(), new BigDecimal("4.00"),
+        keyOf(paymentId, PaymentOutboxEntry.REFUND));
+    assertEquals(1.0, meterRegistry.counter("payments.outbox.dispatched",
+        "operation", "capture", "outcome", "success").count() - succeeded);
+    assertNotNull(meterRegistry.find("payments.outbox.depth").gauge());
+    assertNotNull(meterRegistry.find("payments.outbox.lag").timeGauge());
+  }
+
+  @Test
+  void transientFailureIsRetriedWithTheSameKey() throws Exception {
+    when(externalApiClient.authorizePayment(anyLong(), any(), anyString(), anyString()))
+        .thenThrow(new ExternalApiException("authorize", ExternalApiException.Reason.TIMEOUT, 0, "read timed out", null))
+        .thenAnswer(inv -> "AUTH-" + inv.getArgument(3));
+    Long orderId = createOrder("OUTBOX-2");
+
+    Long paymentId = paymentService.createPayment(new CreatePaymentRequest(orderId, null, "USD")).paymentId();
+    await(paymentId, p -> "AUTHORIZED".equals(p.status()));
+
+    ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+    verify(externalApiClient, times(2)).authorizePayment(eq(orderId), any(), eq("USD"), keys.capture());
+    assertEquals(keys.getAllValues().get(0), keys.getAllValues().get(1));
+    PaymentOutboxEntry entry = entryOf(paymentId, PaymentOutboxEntry.AUTHORIZE);
+    assertEquals(PaymentOutboxEntry.DONE, entry.getStatus());
+    assertEquals(2, entry.getAttempts());
+  }
+
+  @Test
+  void rejectedCaptureReturnsPaymentToAuthorized() throws Exception {
+    when(externalApiClient.authorizePayment(anyLong(), any(), anyString(), anyString())).thenReturn("AUTH-X");
+    doThrow(new ExternalApiException("capture", ExternalApiException.Reason.HTTP_STATUS, 422,
+        "provider returned HTTP 422", null))
+        .when(externalApiClient).capturePayment(anyString(), any(), anyString());
+    Long orderId = createOrder("OUTBOX-3");
+
+    Long paymentId = paymentService.createPayment(new CreatePaymentRequest(orderId, null, "USD")).paymentId();
+    await(paymentId, p -> "AUTHORIZED".equals(p.status()));
+    paymentService.capturePayment(paymentId, null);
+
+    PaymentView payment = await(paymentId, p -> p.failureReason() != null);
+    assertEquals("AUTHORIZED", payment.status());
+    assertTrue(payment.failureReason().contains("422"));
+    assertEquals(PaymentOutboxEntry.FAILED, entryOf(paymentId, PaymentOutboxEntry.CAPTURE).getStatus());
+    verify(externalApiClient, times(1)).capturePayment(anyString(), any(), anyString());
+    assertEquals(OrderStatus.CREATED, orderRepository.findById(orderId).orElseThrow().getStatus());
+  }
+
+  @Test
+  void rowsOfADeadDispatcherAreReclaimedOnceTheLeaseExpires() throws Exception {
+    when(externalApiClient.authorizePayment(anyLong(), any(), anyString(), anyString())).thenReturn("AUTH-Y");
+    Long orderId = createOrder("OUTBOX-4");
+
+    PaymentEntity p = new PaymentEntity();
+    p.setOrderId(orderId);
+    p.setAmount(new BigDecimal("20.00"));
+    p.setCurrency("USD");
+    p.setProvider("EXTERNAL_SIM");
+    p.setStatus(PaymentStatus.AUTHORIZATION_PENDING);
+    p.setCreatedAt(LocalDateTime.now());
+    p.setUpdatedAt(LocalDateTime.now());
+    p = paymentRepository.save(p);
+
+    // As left behind by a dispatcher that crashed after claiming the row
+    PaymentOutboxEntry e = new PaymentOutboxEntry();
+    e.setPaymentId(p.getId());
+    e.setOrderId(orderId);
+    e.setOperation(PaymentOutboxEntry.AUTHORIZE);
+    e.setAmount(p.getAmount());
+    e.setCurrency("USD");
+    e.setIdempotencyKey(UUID.randomUUID().toString());
+    e.setStatus(PaymentOutboxEntry.IN_FLIGHT);
+    e.setAttempts(1);
+    e.setLeaseOwner("crashed");
+    e.setLeaseUntil(LocalDateTime.now().plusSeconds(2));
+    e.setNextAttemptAt(LocalDateTime.now());
+    e.setCreatedAt(LocalDateTime.now());
+    outboxRepository.save(e);
+
+    Thread.sleep(500);
+    assertEquals(PaymentStatus.AUTHORIZATION_PENDING.name(), paymentService.getPaymentById(p.getId()).payment().status());
+
+    await(p.getId(), v -> "AUTHORIZED".equals(v.status()));
+    verify(externalApiClient).authorizePayment(eq(orderId), any(), eq("USD"), eq(e.getIdempotencyKey()));
+    assertEquals(2, entryOf(p.getId(), PaymentOutboxEntry.AUTHORIZE).getAttempts());
+  }
+
+  @Test
+  void cancellingAnAuthorizedPaymentVoidsItsHold() throws Exception {
+    when(externalApiClient.authorizePayment(anyLong(), any(), anyString(), anyString()))
+        .thenAnswer(inv -> "AUTH-" + inv.getArgument(3));
+    Long orderId = createOrder("OUTBOX-5");
+    Long paymentId = paymentService.createPayment(new CreatePaymentRequest(orderId, null, "USD")).paymentId();
+    String reference = await(paymentId, p -> "AUTHORIZED".equals(p.status())).externalReference();
+
+    orderService.cancelOrder(orderId);
+
+    assertEquals("CANCELLED", paymentService.getPaymentById(paymentId).payment().status());
+    awaitEntry(paymentId, PaymentOutboxEntry.VOID, PaymentOutboxEntry.DONE);
+    verify(externalApiClient).voidPayment(reference, new BigDecimal("20.00"), keyOf(paymentId, PaymentOutboxEntry.VOID));
+  }
+
+  @Test
+  void anAuthorizationNotYetSentIsDroppedWhenItsOrderIsCancelled() throws Exception {
+    Long orderId = createOrder("OUTBOX-6");
+    // One transaction, so no dispatcher sees the row before the cancel
+    Long paymentId = transactionTemplate.execute(tx -> {
+      Long id = paymentService.createPayment(new CreatePaymentRequest(orderId, null, "USD")).paymentId();
+      orderService.cancelOrder(orderId);
+      return id;
+    });
+
+    Thread.sleep(300);
+    assertEquals(PaymentOutboxEntry.CANCELLED, entryOf(paymentId, PaymentOutboxEntry.AUTHORIZE).getStatus());
+    assertEquals("CANCELLED", paymentService.getPaymentById(paymentId).payment().status());
+    verify(externalApiClient, never()).authorizePayment(eq(orderId), any(), anyString(), anyString());
+    verify(externalApiClient, never()).voidPayment(any(), any(), anyString());
+  }
+
+  @Test
+  void anAuthorizationInFlightWhenItsOrderIsCancelledIsVoided() throws Exception {
+    CountDownLatch called = new CountDownLatch(1);
+    CountDownLatch proceed = new CountDownLatch(1);
+    when(externalApiClient.authorizePayment(anyLong(), any(), anyString(), anyString())).thenAnswer(inv -> {
+      called.countDown();
+      assertTrue(proceed.await(5, TimeUnit.SECONDS));
+      return "AUTH-" + inv.getArgument(3);
+    });
+    Long orderId = createOrder("OUTBOX-7");
+    Long paymentId = paymentService.createPayment(new CreatePaymentRequest(orderId, null, "USD")).paymentId();
+    assertTrue(called.await(5, TimeUnit.SECONDS));
+
+    orderService.cancelOrder(orderId);
+    assertEquals(PaymentOutboxEntry.IN_FLIGHT, entryOf(paymentId, PaymentOutboxEntry.AUTHORIZE).getStatus());
+    proceed.countDown();
+
+    awaitEntry(paymentId, PaymentOutboxEntry.VOID, PaymentOutboxEntry.DONE);
+    PaymentView payment = paymentService.getPaymentById(paymentId).payment();
+    assertEquals("CANCELLED", payment.status());
+    String reference = "AUTH-" + keyOf(paymentId, PaymentOutboxEntry.AUTHORIZE);
+    assertEquals(reference, payment.externalReference());
+    verify(externalApiClient).voidPayment(reference, new BigDecimal("20.00"), keyOf(paymentId, PaymentOutboxEntry.VOID));
+  }
+
+  private Long createOrder(String sku) {
+    inventoryService.createItem(new CreateInventoryItemRequest(sku, sku, 10));
+    return orderService.createOrder(new CreateOrderRequest("c1", sku, 1, new BigDecimal("20.00"))).orderId();
+  }
+
+  private PaymentView await(Long paymentId, Predicate<PaymentView> condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    PaymentView payment = paymentService.getPaymentById(paymentId).payment();
+    while (!condition.test(payment) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      payment = paymentService.getPaymentById(paymentId).payment();
+    }
+    assertTrue(condition.test(payment), "payment " + paymentId + " stuck in " + payment.status());
+    return payment;
+  }
+
+  private void awaitEntry(Long paymentId, String operation, String status) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline && outboxRepository.findAll().stream().noneMatch(e ->
+        e.getPaymentId().equals(paymentId) && e.getOperation().equals(operation) && e.getStatus().equals(status))) {
+      Thread.sleep(20);
+    }
+    assertEquals(status, entryOf(paymentId, operation).getStatus());
+  }
+
+  private PaymentOutboxEntry entryOf(Long paymentId, String operation) {
+    List<PaymentOutboxEntry> entries = outboxRepository.findAll().stream()
+        .filter(e -> e.getPaymentId().equals(paymentId) && e.getOperation().equals(operation))
+        .toList();
+    assertEquals(1, entries.size());
+    return entries.get(0);
+  }
+
+  private String keyOf(Long paymentId, String operation) {
+    return entryOf(paymentId, operation).getIdempotencyKey();
+  }
+}
@@ -0,0 +1,274 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.PaymentReconciliationReport;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.entity.PaymentDrift;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.repository.OrderRepository;
+import com.example.omsv6.repository.PaymentLedgerRepository;
+import com.example.omsv6.repository.PaymentRepository;
+import com.example.omsv6.support.StubExternalApi;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Own database, and the job is driven by the test rather than its poller
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:payment-reconciliation-test",
+    "spring.jpa.show-sql=false",
+    "app.payments.reconciliation.enabled=false",
+    "app.payments.reconciliation.page-size=4",
+    "app.payments.reconciliation.lookup-batch-size=2"
+})
+class PaymentReconciliationTest {
+
+  // What the provider holds, by external reference
+  private static final Map<String, Map<String, Object>> PROVIDER = new ConcurrentHashMap<>();
+  private static final StubExternalApi STUB = startStub();
+
+  @Autowired
+  private PaymentReconciliationJob job;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @Autowired
+  private PaymentRepository paymentRepository;
+
+  @Autowired
+  private PaymentLedgerRepository paymentLedgerRepository;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @DynamicPropertySource
+  static void provider(DynamicPropertyRegistry registry) {
+    registry.add("external.api.base-url", STUB::baseUrl);
+  }
+
+  @AfterAll
+  static void stopStub() {
+    STUB.close();
+  }
+
+  @Test
+  void driftIsFixedWhenTheProviderIsAheadAndFlaggedOtherwise() {
+    inventoryService.createItem(new CreateInventoryItemRequest("REC-1", "REC-1", 10));
+    Long orderId = orderService.createOrder(new CreateOrderRequest("rec-cust", "REC-1", 1, BigDecimal.TEN)).orderId();
+    LocalDateTime updatedAt = LocalDateTime.now().minusHours(1);
+
+    Long capturedThere = payment(orderId, PaymentStatus.AUTHORIZED, "REC-A", updatedAt, "CAPTURED", "10.00");
+    Long behindThere = payment(orderId, PaymentStatus.CAPTURED, "REC-B", updatedAt, "AUTHORIZED", "10.00");
+    Long unknownThere = payment(orderId, PaymentStatus.AUTHORIZED, "REC-C", updatedAt, null, null);
+    Long otherAmount = payment(orderId, PaymentStatus.CAPTURED, "REC-D", updatedAt, "CAPTURED", "9.99");
+    Long matching = payment(orderId, PaymentStatus.REFUNDED, "REC-E", updatedAt, "REFUNDED", "10.00");
+    Long pending = payment(orderId, PaymentStatus.CAPTURE_PENDING, "REC-F", updatedAt, "CAPTURED", "10.00");
+
+    job.startRun();
+    assertThrows(ApiException.class, () -> job.startRun());
+    runToCompletion();
+
+    PaymentReconciliationReport report = job.report(1000);
+    assertEquals("COMPLETED", report.status());
+    assertEquals(report.checked(), report.matched() + report.fixed() + report.flagged());
+    Map<Long, String> drift = report.drift().stream().collect(Collectors.toMap(
+        PaymentReconciliationReport.Drift::paymentId, d -> d.kind() + (d.fixed() ? ":fixed" : "")));
+    assertEquals(PaymentDrift.STATUS + ":fixed", drift.get(capturedThere));
+    assertEquals(PaymentDrift.STATUS, drift.get(behindThere));
+    assertEquals(PaymentDrift.MISSING, drift.get(unknownThere));
+    assertEquals(PaymentDrift.AMOUNT, drift.get(otherAmount));
+    assertNull(drift.get(matching));
+    assertNull(drift.get(pending));
+
+    assertEquals(PaymentStatus.CAPTURED, paymentRepository.findStatusById(capturedThere));
+    assertEquals(0, BigDecimal.TEN.compareTo(paymentRepository.findBalanceById(capturedThere).getCapturedAmount()));
+    assertEquals(OrderStatus.PAID, orderRepository.findById(orderId).orElseThrow().getStatus());
+    assertEquals(PaymentStatus.CAPTURED, paymentRepository.findStatusById(behindThere));
+    assertEquals(PaymentStatus.CAPTURE_PENDING, paymentRepository.findStatusById(pending));
+    assertNull(STUB.lookupsByReference().get("REC-F"), "payments the outbox is settling are not looked up");
+  }
+
+  @Test
+  void balancesAreComparedWhenStatusAndAmountAgree() {
+    LocalDateTime updatedAt = LocalDateTime.now().minusHours(1);
+    Long partlyRefunded = payment(PaymentStatus.CAPTURED, "BAL-A", updatedAt, "10.00", "4.00", "10.00", "4.00");
+    Long refundedThere = payment(PaymentStatus.CAPTURED, "BAL-B", updatedAt, "10.00", "0.00", "10.00", "4.00");
+    Long capturedLess = payment(PaymentStatus.CAPTURED, "BAL-C", updatedAt, "10.00", "0.00", "6.00", "0.00");
+
+    job.startRun();
+    runToCompletion();
+
+    Map<Long, PaymentReconciliationReport.Drift> drift = job.report(1000).drift().stream()
+        .collect(Collectors.toMap(PaymentReconciliationReport.Drift::paymentId, d -> d));
+    assertNull(drift.get(partlyRefunded));
+    assertEquals(PaymentDrift.REFUNDED, drift.get(refundedThere).kind());
+    assertEquals(0, BigDecimal.ZERO.compareTo(drift.get(refundedThere).localAmount()));
+    assertEquals(0, new BigDecimal("4.00").compareTo(drift.get(refundedThere).providerAmount()));
+    assertEquals(PaymentDrift.CAPTURED, drift.get(capturedLess).kind());
+    assertEquals(0, new BigDecimal("6.00").compareTo(drift.get(capturedLess).providerAmount()));
+    assertFalse(drift.get(capturedLess).fixed());
+    assertEquals(0, BigDecimal.TEN.compareTo(paymentRepository.findBalanceById(capturedLess).getCapturedAmount()));
+  }
+
+  @Test
+  void aPartialCaptureOrRefundByTheProviderIsBookedAsPartial() {
+    LocalDateTime updatedAt = LocalDateTime.now().minusHours(1);
+    Long partlyCaptured = payment(1L, PaymentStatus.AUTHORIZED, "PART-A", updatedAt, null, null);
+    PROVIDER.put("PART-A", Map.of("status", "CAPTURED", "amount", BigDecimal.TEN,
+        "capturedAmount", new BigDecimal("6.00"), "refundedAmount", BigDecimal.ZERO));
+    Long partlyRefunded = payment(1L, PaymentStatus.CAPTURED, "PART-B", updatedAt, null, null);
+    PROVIDER.put("PART-B", Map.of("status", "REFUNDED", "amount", BigDecimal.TEN,
+        "capturedAmount", BigDecimal.TEN, "refundedAmount", new BigDecimal("4.00")));
+    // No balances reported: nothing to book, so it is left for review
+    Long unreported = payment(1L, PaymentStatus.AUTHORIZED, "PART-C", updatedAt, null, null);
+    PROVIDER.put("PART-C", Map.of("status", "CAPTURED", "amount", BigDecimal.TEN));
+
+    job.startRun();
+    runToCompletion();
+
+    PaymentRepository.Balance captured = paymentRepository.findBalanceById(partlyCaptured);
+    assertEquals(PaymentStatus.CAPTURED, captured.getStatus());
+    assertEquals(0, new BigDecimal("6.00").compareTo(captured.getCapturedAmount()));
+    assertEquals(List.of("CAPTURE:6.00"), ledger(partlyCaptured));
+
+    PaymentRepository.Balance refunded = paymentRepository.findBalanceById(partlyRefunded);
+    assertEquals(PaymentStatus.REFUNDED, refunded.getStatus());
+    assertEquals(0, BigDecimal.TEN.compareTo(refunded.getCapturedAmount()));
+    assertEquals(0, new BigDecimal("4.00").compareTo(refunded.getRefundedAmount()));
+    assertEquals(List.of("REFUND:4.00"), ledger(partlyRefunded));
+
+    assertEquals(PaymentStatus.AUTHORIZED, paymentRepository.findStatusById(unreported));
+    assertEquals(List.of(), ledger(unreported));
+    PaymentReconciliationReport.Drift drift = job.report(1000).drift().stream()
+        .filter(d -> d.paymentId().equals(unreported)).findFirst().orElseThrow();
+    assertEquals(PaymentDrift.STATUS, drift.kind());
+    assertFalse(drift.fixed());
+  }
+
+  @Test
+  void aRunContinuesFromItsCheckpointOnAnotherInstance() {
+    int payments = 30;
+    // Older than anything else in the table, so they make up the run's first pages
+    LocalDateTime updatedAt = LocalDateTime.of(2020, 1, 1, 0, 0);
+    for (int i = 0; i < payments; i++) {
+      payment(1L, PaymentStatus.AUTHORIZED, "RES-" + i, updatedAt.plusSeconds(i), "AUTHORIZED", "10.00");
+    }
+
+    job.startRun();
+    assertEquals(2, job.runPages(2));
+
+    // The instance working on it dies with its lease still running: nobody else takes over yet
+    jdbcTemplate.update("update payment_reconciliation_checkpoint set lease_owner = 'dead', lease_until = ?",
+        Timestamp.valueOf(LocalDateTime.now().plusHours(1)));
+    assertEquals(0, job.runPages(1));
+
+    // Once it has run out, this instance continues; a provider failure leaves the cursor where it was
+    jdbcTemplate.update("update payment_reconciliation_checkpoint set lease_until = ?",
+        Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)));
+    STUB.setStatus(503);
+    try {
+      assertEquals(0, job.runPages(1));
+    } finally {
+      STUB.setStatus(200);
+    }
+    PaymentReconciliationReport stopped = job.report(0);
+    assertEquals("RUNNING", stopped.status());
+    assertEquals(8, stopped.checked());
+    assertNotNull(stopped.lastError());
+
+    runToCompletion();
+    PaymentReconciliationReport report = job.report(0);
+    assertEquals("COMPLETED", report.status());
+    assertNull(report.lastError());
+    assertTrue(report.matched() >= payments, "matched " + report.matched());
+
+    Map<String, Integer> lookups = STUB.lookupsByReference();
+    for (int i = 0; i < payments; i++) {
+      // Pages 1 and 2 were committed before the takeover and are not looked up again
+      if (i < 8 || i >= 12) {
+        assertEquals(1, lookups.get("RES-" + i), "lookups of RES-" + i);
+      } else {
+        assertTrue(lookups.get("RES-" + i) > 1, "the failed page is looked up again");
+      }
+    }
+  }
+
+  private List<String> ledger(Long paymentId) {
+    return paymentLedgerRepository.findByPaymentIdOrderById(paymentId).stream()
+        .map(e -> e.getKind() + ":" + e.getAmount().setScale(2)).toList();
+  }
+
+  private void runToCompletion() {
+    for (int i = 0; i < 100 && !"COMPLETED".equals(job.report(0).status()); i++) {
+      job.runPages(Integer.MAX_VALUE);
+    }
+  }
+
+  private Long payment(Long orderId, PaymentStatus status, String reference, LocalDateTime updatedAt,
+                       String providerStatus, String providerAmount) {
+    // Balances as a full capture and a full refund leave them, on both sides
+    jdbcTemplate.update("insert into payments (order_id, amount, currency, provider, external_reference, status, "
+            + "captured_amount, refunded_amount, created_at, updated_at) "
+            + "values (?, 10.00, 'USD', 'EXTERNAL_SIM', ?, ?, ?, ?, ?, ?)",
+        orderId, reference, status.code(), captured(status.name(), BigDecimal.TEN),
+        refunded(status.name(), BigDecimal.TEN), Timestamp.valueOf(updatedAt), Timestamp.valueOf(updatedAt));
+    if (providerStatus != null) {
+      BigDecimal amount = new BigDecimal(providerAmount);
+      PROVIDER.put(reference, Map.of("status", providerStatus, "amount", amount,
+          "capturedAmount", captured(providerStatus, amount), "refundedAmount", refunded(providerStatus, amount)));
+    }
+    return jdbcTemplate.queryForObject("select id from payments where external_reference = ?", Long.class, reference);
+  }
+
+  private Long payment(PaymentStatus status, String reference, LocalDateTime updatedAt, String captured,
+                       String refunded, String providerCaptured, String providerRefunded) {
+    Long id = payment(1L, status, reference, updatedAt, status.name(), "10.00");
+    jdbcTemplate.update("update payments set captured_amount = ?, refunded_amount = ? where id = ?",
+        new BigDecimal(captured), new BigDecimal(refunded), id);
+    PROVIDER.put(reference, Map.of("status", status.name(), "amount", BigDecimal.TEN,
+        "capturedAmount", new BigDecimal(providerCaptured), "refundedAmount", new BigDecimal(providerRefunded)));
+    return id;
+  }
+
+  private static BigDecimal captured(String status, BigDecimal amount) {
+    return status.equals("CAPTURED") || status.equals("REFUNDED") ? amount : BigDecimal.ZERO;
+  }
+
+  private static BigDecimal refunded(String status, BigDecimal amount) {
+    return status.equals("REFUNDED") ? amount : BigDecimal.ZERO;
+  }
+
+  private static StubExternalApi startStub() {
+    try {
+      StubExternalApi stub = new StubExternalApi();
+      stub.setPayments(PROVIDER::get);
+      return stub;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.PaymentTotalsView;
+import com.example.omsv6.entity.PaymentEntity;
+import com.example.omsv6.entity.PaymentLedgerEntry;
+import com.example.omsv6.entity.PaymentStatus;
+import com.example.omsv6.repository.PaymentLedgerRepository;
+import com.example.omsv6.repository.PaymentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class PaymentSummaryTest {
+
+  @Autowired
+  private ReportService reportService;
+
+  @Autowired
+  private PaymentRepository paymentRepository;
+
+  @Autowired
+  private PaymentLedgerRepository paymentLedgerRepository;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void summaryIsAggregatedInTheDatabase() {
+    // A day no other test writes payments on
+    LocalDateTime day1 = LocalDateTime.of(2030, 6, 1, 10, 0);
+    LocalDateTime day2 = LocalDateTime.of(2030, 6, 2, 23, 59, 59);
+    save(day1, "CAPTURED", "USD", "10.00");
+    save(day1, "CAPTURED", "EUR", "5.00");
+    save(day1, "AUTHORIZED", "USD", "7.50");
+    save(day2, "REFUNDED", "USD", "3.00");
+    save(day2.plusSeconds(2), "CAPTURED", "USD", "100.00");
+    // Partially refunded: still CAPTURED, but the refund counts
+    Long partial = save(day2, "CAPTURED", "USD", "8.00");
+    paymentLedgerRepository.save(new PaymentLedgerEntry(partial, PaymentLedgerEntry.REFUND, new BigDecimal("2.00"), "USD", day2));
+
+    PaymentTotalsView total = reportService.paymentSummary("2030-06-01", "2030-06-02", null).totals();
+    assertEquals(5L, total.paymentCount());
+    assertEquals(0, new BigDecimal("33.50").compareTo(total.totalAuthorized()));
+    assertEquals(0, new BigDecimal("26.00").compareTo(total.totalCaptured()));
+    assertEquals(0, new BigDecimal("5.00").compareTo(total.totalRefunded()));
+    assertEquals(3L, total.countByStatus().get("CAPTURED"));
+
+    Map<String, PaymentTotalsView> currencies =
+        reportService.paymentSummary("2030-06-01", "2030-06-02", "currency").currencies();
+    assertEquals(4L, currencies.get("USD").paymentCount());
+    assertEquals(0, new BigDecimal("5.00").compareTo(currencies.get("EUR").totalCaptured()));
+
+    Map<String, Map<String, PaymentTotalsView>> days =
+        reportService.paymentSummary("2030-06-01", "2030-06-02", "day").days();
+    assertEquals(2, days.size());
+    assertEquals(2L, days.get("2030-06-01").get("USD").paymentCount());
+    assertEquals(0, new BigDecimal("5.00").compareTo(days.get("2030-06-02").get("USD").totalRefunded()));
+  }
+
+  // The payment with the ledger entries its status implies, all at the same time
+  private Long save(LocalDateTime at, String status, String currency, String amount) {
+    PaymentEntity p = new PaymentEntity();
+    p.setOrderId(1L);
+    p.setAmount(new BigDecimal(amount));
+    p.setCurrency(currency);
+    p.setProvider("TEST");
+    p.setExternalReference("REF-" + System.nanoTime());
+    p.setStatus(PaymentStatus.valueOf(status));
+    p.setCreatedAt(at);
+    p.setUpdatedAt(at);
+    Long id = paymentRepository.save(p).getId();
+    BigDecimal value = new BigDecimal(amount);
+    paymentLedgerRepository.save(new PaymentLedgerEntry(id, PaymentLedgerEntry.AUTHORIZE, value, currency, at));
+    if (!"AUTHORIZED".equals(status)) {
+      paymentLedgerRepository.save(new PaymentLedgerEntry(id, PaymentLedgerEntry.CAPTURE, value, currency, at));
+    }
+    if ("REFUNDED".equals(status)) {
+      paymentLedgerRepository.save(new PaymentLedgerEntry(id, PaymentLedgerEntry.REFUND, value, currency, at));
+    }
+    return id;
+  }
+}
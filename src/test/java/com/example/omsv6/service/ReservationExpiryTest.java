@@ -0,0 +1,148 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateInventoryItemRequest;
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreateOrderResponse;
+import com.example.omsv6.dto.UpdateOrderStatusRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Own database, and the sweeper only runs when a test calls it
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:reservation-expiry-test",
+    "app.orders.reservation-sweeper.enabled=false",
+    "app.orders.reservation-sweeper.batch-size=2"
+})
+class ReservationExpiryTest {
+
+  @Autowired
+  private ReservationExpirySweeper sweeper;
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private InventoryService inventoryService;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void expiredUnpaidOrdersAreCancelledAndTheirStockReleased() {
+    inventoryService.createItem(new CreateInventoryItemRequest("EXP-1", "EXP-1", 100));
+    inventoryService.createItem(new CreateInventoryItemRequest("EXP-2", "EXP-2", 100));
+    List<Long> unpaid = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      CreateOrderResponse created = orderService.createOrder(new CreateOrderRequest("exp-cust", null, null, null,
+          List.of(new CreateOrderRequest.Line("EXP-1", 2, BigDecimal.ONE),
+              new CreateOrderRequest.Line("EXP-2", 3, BigDecimal.ONE))));
+      assertNotNull(created.reservationExpiresAt());
+      unpaid.add(created.orderId());
+    }
+    Long paid = orderService.createOrder(new CreateOrderRequest("exp-cust", "EXP-1", 1, BigDecimal.ONE)).orderId();
+    orderService.updateOrderStatus(paid, new UpdateOrderStatusRequest("PAID"));
+    Long live = orderService.createOrder(new CreateOrderRequest("exp-cust", "EXP-1", 1, BigDecimal.ONE)).orderId();
+    expire(unpaid.toArray(Long[]::new));
+
+    double expiredBefore = meterRegistry.get("orders.reservations.expired").counter().count();
+    double releasedBefore = meterRegistry.get("orders.reservations.released").counter().count();
+
+    // Batches of two: 2, 2, 1
+    assertEquals(5, sweeper.sweep());
+    for (Long id : unpaid) {
+      assertEquals("CANCELLED", orderService.getOrderById(id).order().status());
+    }
+    assertEquals("PAID", orderService.getOrderById(paid).order().status());
+    assertNull(orderService.getOrderById(paid).order().reservationExpiresAt());
+    assertEquals("CREATED", orderService.getOrderById(live).order().status());
+    assertEquals(2, inventoryService.getItemBySku("EXP-1").item().quantityReserved());
+    assertEquals(98, inventoryService.getItemBySku("EXP-1").item().quantityAvailable());
+    assertEquals(0, inventoryService.getItemBySku("EXP-2").item().quantityReserved());
+    assertEquals(100, inventoryService.getItemBySku("EXP-2").item().quantityAvailable());
+
+    assertEquals(5, meterRegistry.get("orders.reservations.expired").counter().count() - expiredBefore);
+    assertEquals(25, meterRegistry.get("orders.reservations.released").counter().count() - releasedBefore);
+    assertTrue(meterRegistry.get("orders.reservations.sweep.batch").summary().count() >= 3);
+    assertTrue(meterRegistry.get("orders.reservations.sweep").timer().count() >= 1);
+
+    assertEquals(0, sweeper.sweep());
+  }
+
+  @Test
+  void anOrderPaidMeanwhileKeepsItsStock() {
+    inventoryService.createItem(new CreateInventoryItemRequest("EXP-3", "EXP-3", 10));
+    Long first = orderService.createOrder(new CreateOrderRequest("exp-cust", "EXP-3", 1, BigDecimal.ONE)).orderId();
+    Long raced = orderService.createOrder(new CreateOrderRequest("exp-cust", "EXP-3", 1, BigDecimal.ONE)).orderId();
+    expire(first, raced);
+    // Paid between the sweeper's read and its update: the bulk update misses it
+    jdbcTemplate.update("update orders set status = 2 where id = ?", raced);
+
+    assertEquals(1, sweeper.sweep());
+    assertEquals("CANCELLED", orderService.getOrderById(first).order().status());
+    assertEquals("PAID", orderService.getOrderById(raced).order().status());
+    assertEquals(1, inventoryService.getItemBySku("EXP-3").item().quantityReserved());
+    jdbcTemplate.update("update orders set reservation_expires_at = null where id = ?", raced);
+  }
+
+  @Test
+  void anOrderWithACaptureInFlightIsNotExpired() {
+    inventoryService.createItem(new CreateInventoryItemRequest("EXP-5", "EXP-5", 10));
+    Long id = orderService.createOrder(new CreateOrderRequest("exp-cust", "EXP-5", 2, BigDecimal.ONE)).orderId();
+    expire(id);
+    // CAPTURE_PENDING: the order turns PAID once the provider confirms the capture
+    jdbcTemplate.update("insert into payments (order_id, amount, currency, provider, status, created_at, updated_at) "
+        + "values (?, 1, 'USD', 'EXTERNAL_SIM', 3, localtimestamp, localtimestamp)", id);
+
+    assertEquals(0, sweeper.sweep());
+    assertEquals("CREATED", orderService.getOrderById(id).order().status());
+    assertEquals(2, inventoryService.getItemBySku("EXP-5").item().quantityReserved());
+
+    // The capture failed and the payment was cancelled: nothing is paying for the order any more
+    jdbcTemplate.update("update payments set status = 8 where order_id = ?", id);
+    assertEquals(1, sweeper.sweep());
+    assertEquals("CANCELLED", orderService.getOrderById(id).order().status());
+    assertEquals(0, inventoryService.getItemBySku("EXP-5").item().quantityReserved());
+  }
+
+  @Test
+  void aLeaseHeldElsewhereSkipsTheSweep() {
+    inventoryService.createItem(new CreateInventoryItemRequest("EXP-4", "EXP-4", 10));
+    Long id = orderService.createOrder(new CreateOrderRequest("exp-cust", "EXP-4", 1, BigDecimal.ONE)).orderId();
+    expire(id);
+    jdbcTemplate.update("update reservation_sweep_lease set lease_owner = 'other-pod', lease_until = ?",
+        LocalDateTime.now().plusMinutes(5));
+
+    assertEquals(0, sweeper.sweep());
+    assertEquals("CREATED", orderService.getOrderById(id).order().status());
+
+    // Expired lease: taken over
+    jdbcTemplate.update("update reservation_sweep_lease set lease_until = ?", LocalDateTime.now().minusSeconds(1));
+    assertEquals(1, sweeper.sweep());
+    assertEquals("CANCELLED", orderService.getOrderById(id).order().status());
+    assertEquals(0, inventoryService.getItemBySku("EXP-4").item().quantityReserved());
+  }
+
+  private void expire(Long... ids) {
+    for (Long id : ids) {
+      jdbcTemplate.update("update orders set reservation_expires_at = ? where id = ?",
+          LocalDateTime.now().minusMinutes(1), id);
+    }
+  }
+}
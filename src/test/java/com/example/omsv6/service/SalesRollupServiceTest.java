@@ -0,0 +1,152 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.RollupCheckResponse;
+import com.example.omsv6.dto.SalesReport;
+import com.example.omsv6.dto.UpdateOrderStatusRequest;
+import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.entity.OrderStatus;
+import com.example.omsv6.repository.InventoryItemRepository;
+import com.example.omsv6.repository.SalesRollupRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class SalesRollupServiceTest {
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private OrderBatchService orderBatchService;
+
+  @Autowired
+  private ReportService reportService;
+
+  @Autowired
+  private SalesRollupService salesRollupService;
+
+  @Autowired
+  private SalesRollupRepository salesRollupRepository;
+
+  @Autowired
+  private InventoryItemRepository inventoryItemRepository;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void reportIsServedFromRollupsAndMatchesRawOrders() {
+    createItem("ROLL-A", 100);
+    createItem("ROLL-B", 100);
+    Long first = orderService.createOrder(
+        new CreateOrderRequest("c1", "ROLL-A", 2, new BigDecimal("20.00"))).orderId();
+    orderService.createOrder(new CreateOrderRequest("c2", "ROLL-A", 1, new BigDecimal("10.00")));
+    orderBatchService.createOrders(List.of(
+        new CreateOrderRequest("c3", "ROLL-B", 4, new BigDecimal("8.00")),
+        new CreateOrderRequest("c4", "ROLL-B", 1, new BigDecimal("2.00"))).iterator());
+    orderService.updateOrderStatus(first, new UpdateOrderStatusRequest("PAID"));
+    orderService.cancelOrder(first);
+
+    String today = LocalDate.now().toString();
+    SalesReport report = reportService.salesReport(today, today);
+    Map<String, Long> qtyBySku = report.quantityBySku();
+    Map<String, BigDecimal> amountBySku = report.amountBySku();
+    assertEquals(3L, qtyBySku.get("ROLL-A"));
+    assertEquals(5L, qtyBySku.get("ROLL-B"));
+    assertEquals(0, new BigDecimal("30.00").compareTo(amountBySku.get("ROLL-A")));
+    assertEquals(0, new BigDecimal("10.00").compareTo(amountBySku.get("ROLL-B")));
+
+    assertFalse(hasMismatch(reportService.checkSalesRollups(today, today), "ROLL-A"));
+    assertFalse(hasMismatch(reportService.checkSalesRollups(today, today), "ROLL-B"));
+  }
+
+  @Test
+  void checkerDetectsDriftAndRebuildRepairsIt() {
+    createItem("ROLL-C", 10);
+    orderService.createOrder(new CreateOrderRequest("c1", "ROLL-C", 1, new BigDecimal("5.00")));
+    String today = LocalDate.now().toString();
+
+    transactionTemplate.executeWithoutResult(s ->
+        salesRollupRepository.increment(LocalDate.now(), "ROLL-C", OrderStatus.CREATED, 7, BigDecimal.ONE, 3));
+    assertTrue(hasMismatch(reportService.checkSalesRollups(today, today), "ROLL-C"));
+
+    reportService.rebuildSalesRollups(today, today);
+    assertEquals(0, reportService.checkSalesRollups(today, today).mismatchCount());
+    assertEquals(1L, reportService.salesReport(today, today).quantityBySku().get("ROLL-C"));
+  }
+
+  @Test
+  void rebuildWaitsForDeltasInFlight() throws Exception {
+    createItem("ROLL-D", 10);
+    String today = LocalDate.now().toString();
+    CountDownLatch applied = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    // An order whose rollup delta is written but not yet committed
+    CompletableFuture<Void> order = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(s -> {
+      orderService.createOrder(new CreateOrderRequest("c1", "ROLL-D", 3, new BigDecimal("9.00")));
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public int getOrder() {
+          return EventLogService.SYNCHRONIZATION_ORDER;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+          applied.countDown();
+          try {
+            release.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    }));
+    assertTrue(applied.await(5, TimeUnit.SECONDS));
+
+    CompletableFuture<?> rebuild = CompletableFuture.runAsync(() -> reportService.rebuildSalesRollups(today, today));
+    Thread.sleep(300);
+    assertFalse(rebuild.isDone(), "the rebuild ran under an uncommitted delta");
+    release.countDown();
+    order.get(5, TimeUnit.SECONDS);
+    rebuild.get(5, TimeUnit.SECONDS);
+
+    assertFalse(hasMismatch(reportService.checkSalesRollups(today, today), "ROLL-D"));
+    assertEquals(3L, reportService.salesReport(today, today).quantityBySku().get("ROLL-D"));
+  }
+
+  // Other test classes share the database, so only look at this test's SKUs
+  private boolean hasMismatch(RollupCheckResponse check, String sku) {
+    return check.mismatches().stream().anyMatch(m -> sku.equals(m.sku()));
+  }
+
+  private void createItem(String sku, int qty) {
+    InventoryItem item = new InventoryItem();
+    item.setSku(sku);
+    item.setName(sku);
+    item.setQuantityAvailable(qty);
+    item.setQuantityReserved(0);
+    item.setCreatedAt(LocalDateTime.now());
+    item.setUpdatedAt(LocalDateTime.now());
+    inventoryItemRepository.save(item);
+  }
+}
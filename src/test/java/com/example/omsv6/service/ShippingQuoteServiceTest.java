@@ -0,0 +1,125 @@
+package com.example.omsv6.service;
+
+import com.example.omsv6.dto.CreateOrderRequest;
+import com.example.omsv6.dto.CreateOrderResponse;
+import com.example.omsv6.dto.ShippingQuoteResponse;
+import com.example.omsv6.entity.InventoryItem;
+import com.example.omsv6.repository.InventoryItemRepository;
+import com.example.omsv6.repository.OrderRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// One worker and one queued quote, so a third concurrent quote is rejected
+@SpringBootTest(properties = {
+    "app.shipping-quote.pool-size=1",
+    "app.shipping-quote.queue-capacity=1"
+})
+class ShippingQuoteServiceTest {
+
+  @Autowired
+  private OrderService orderService;
+
+  @Autowired
+  private ShippingQuoteService shippingQuoteService;
+
+  @Autowired
+  private InventoryItemRepository inventoryItemRepository;
+
+  @Autowired
+  private OrderRepository orderRepository;
+
+  @MockBean
+  private ExternalApiClient externalApiClient;
+
+  @Test
+  void quoteIsFetchedAfterCommitAndAttachedToOrder() throws Exception {
+    createItem("SQ-1", 10);
+    AtomicBoolean calledInTransaction = new AtomicBoolean(true);
+    when(externalApiClient.fetchShippingQuote(anyString(), anyMap())).thenAnswer(inv -> {
+      calledInTransaction.set(TransactionSynchronizationManager.isActualTransactionActive());
+      return Map.of(
+          "echo", Map.of("httpStatus", 200),
+          "quote", Map.of("currency", "USD", "amount", "5.99"));
+    });
+
+    CreateOrderResponse created = orderService.createOrder(new CreateOrderRequest("c1", "SQ-1", 2, null));
+    Long orderId = created.orderId();
+    assertEquals("PENDING", created.shippingQuote().status());
+
+    ShippingQuoteResponse quote = awaitQuote(orderId);
+    assertEquals("READY", quote.status());
+    assertEquals("5.99", quote.quote().amount().toString());
+    assertFalse(calledInTransaction.get(), "quote must be fetched outside the order transaction");
+  }
+
+  @Test
+  void failedQuoteDoesNotRollBackOrder() throws Exception {
+    createItem("SQ-2", 10);
+    when(externalApiClient.fetchShippingQuote(anyString(), anyMap()))
+        .thenThrow(new IllegalStateException("provider down"));
+
+    Long orderId = orderService.createOrder(new CreateOrderRequest("c1", "SQ-2", 1, null)).orderId();
+
+    assertEquals("FAILED", awaitQuote(orderId).status());
+    assertTrue(orderRepository.findById(orderId).isPresent());
+  }
+
+  @Test
+  void quoteRejectedByAFullQueueIsMarkedFailed() throws Exception {
+    createItem("SQ-3", 10);
+    CountDownLatch release = new CountDownLatch(1);
+    when(externalApiClient.fetchShippingQuote(anyString(), anyMap())).thenAnswer(inv -> {
+      release.await(5, TimeUnit.SECONDS);
+      return Map.of(
+          "echo", Map.of("httpStatus", 200),
+          "quote", Map.of("currency", "USD", "amount", "5.99"));
+    });
+
+    Long running = orderService.createOrder(new CreateOrderRequest("c1", "SQ-3", 1, null)).orderId();
+    Long queued = orderService.createOrder(new CreateOrderRequest("c1", "SQ-3", 1, null)).orderId();
+    Long rejected = orderService.createOrder(new CreateOrderRequest("c1", "SQ-3", 1, null)).orderId();
+
+    // Marked on the request thread, in its own transaction, before createOrder returned
+    assertEquals("FAILED", shippingQuoteService.getShippingQuote(rejected).status());
+    assertTrue(orderRepository.findById(rejected).isPresent());
+    verify(externalApiClient, atMost(2)).fetchShippingQuote(anyString(), anyMap());
+
+    release.countDown();
+    assertEquals("READY", awaitQuote(running).status());
+    assertEquals("READY", awaitQuote(queued).status());
+  }
+
+  private ShippingQuoteResponse awaitQuote(Long orderId) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    ShippingQuoteResponse quote = shippingQuoteService.getShippingQuote(orderId);
+    while ("PENDING".equals(quote.status()) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      quote = shippingQuoteService.getShippingQuote(orderId);
+    }
+    return quote;
+  }
+
+  private void createItem(String sku, int qty) {
+    InventoryItem item = new InventoryItem();
+    item.setSku(sku);
+    item.setName(sku);
+    item.setQuantityAvailable(qty);
+    item.setQuantityReserved(0);
+    item.setCreatedAt(LocalDateTime.now());
+    item.setUpdatedAt(LocalDateTime.now());
+    inventoryItemRepository.save(item);
+  }
+}
@@ -0,0 +1,35 @@
+package com.example.omsv6.support;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL Hibernate prepares on the calling thread while {@link #record} runs. Install with
+ * {@code spring.jpa.properties.hibernate.session_factory.statement_inspector}.
+ */
+public class SqlRecorder implements StatementInspector {
+
+  private static final ThreadLocal<List<String>> RECORDING = new ThreadLocal<>();
+
+  public static List<String> record(Runnable action) {
+    List<String> sql = new ArrayList<>();
+    RECORDING.set(sql);
+    try {
+      action.run();
+    } finally {
+      RECORDING.remove();
+    }
+    return sql;
+  }
+
+  @Override
+  public String inspect(String sql) {
+    List<String> sqls = RECORDING.get();
+    if (sqls != null) {
+      sqls.add(sql);
+    }
+    return sql;
+  }
+}
@@ -0,0 +1,165 @@
+package com.example.omsv6.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Local stand-in for the payment/shipping provider. Echoes {@code {"ok":true}} after an optional
+ * delay and records how many distinct client connections (remote ports) it has seen, and how
+ * many requests arrived with each {@code Idempotency-Key}. Once given a {@link #setPayments payment
+ * lookup}, it answers payment lookups from it and counts how often each reference was looked up.
+ */
+public class StubExternalApi implements AutoCloseable {
+
+  private static final byte[] BODY = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+  private static final ObjectMapper JSON = new ObjectMapper();
+
+  static {
+    // Otherwise Nagle + delayed ACK add ~40ms to every response the JDK server writes in two parts
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final HttpServer server;
+  private final Set<String> connections = ConcurrentHashMap.newKeySet();
+  private final Map<String, AtomicInteger> idempotencyKeys = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile Function<String, Map<String, Object>> payments;
+  private volatile long delayMs;
+  private volatile int status = 200;
+
+  public StubExternalApi() throws IOException {
+    this(Executors.newCachedThreadPool());
+  }
+
+  public StubExternalApi(Executor executor) throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+    server.setExecutor(executor);
+    server.createContext("/", exchange -> {
+      requests.incrementAndGet();
+      connections.add(exchange.getRemoteAddress().toString());
+      String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+      if (key != null) {
+        idempotencyKeys.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+      }
+      byte[] request;
+      try (InputStream in = exchange.getRequestBody()) {
+        request = in.readAllBytes();
+      }
+      byte[] body = BODY;
+      Function<String, Map<String, Object>> lookup = payments;
+      if (lookup != null) {
+        JsonNode json = JSON.readTree(request);
+        if ("LOOKUP".equals(json.path("action").asText())) {
+          body = JSON.writeValueAsBytes(Map.of("payments", lookUp(json.path("references"), lookup)));
+        }
+      }
+      if (delayMs > 0) {
+        try {
+          Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+  }
+
+  public String baseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  public void setDelayMs(long delayMs) {
+    this.delayMs = delayMs;
+  }
+
+  public void setStatus(int status) {
+    this.status = status;
+  }
+
+  /**
+   * What the provider holds per external reference: {@code status} and {@code amount}, or null
+   * for a reference it does not know.
+   */
+  public void setPayments(Function<String, Map<String, Object>> payments) {
+    this.payments = payments;
+  }
+
+  public int requestCount() {
+    return requests.get();
+  }
+
+  public int connectionCount() {
+    return connections.size();
+  }
+
+  /**
+   * Requests seen per idempotency key; a provider would execute each key once.
+   */
+  public Map<String, Integer> requestsByIdempotencyKey() {
+    Map<String, Integer> counts = new ConcurrentHashMap<>();
+    idempotencyKeys.forEach((k, v) -> counts.put(k, v.get()));
+    return counts;
+  }
+
+  /**
+   * Lookups seen per external reference.
+   */
+  public Map<String, Integer> lookupsByReference() {
+    Map<String, Integer> counts = new ConcurrentHashMap<>();
+    lookups.forEach((k, v) -> counts.put(k, v.get()));
+    return counts;
+  }
+
+  public void reset() {
+    requests.set(0);
+    connections.clear();
+    idempotencyKeys.clear();
+    lookups.clear();
+    payments = null;
+    delayMs = 0;
+    status = 200;
+  }
+
+  private List<Map<String, Object>> lookUp(JsonNode references, Function<String, Map<String, Object>> lookup) {
+    List<Map<String, Object>> found = new ArrayList<>();
+    for (JsonNode r : references) {
+      String reference = r.asText();
+      lookups.computeIfAbsent(reference, k -> new AtomicInteger()).incrementAndGet();
+      Map<String, Object> payment = lookup.apply(reference);
+      if (payment != null) {
+        Map<String, Object> p = new HashMap<>(payment);
+        p.put("reference", reference);
+        found.add(p);
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+}